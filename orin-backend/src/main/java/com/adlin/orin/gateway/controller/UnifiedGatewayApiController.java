@@ -4,24 +4,39 @@ import com.adlin.orin.gateway.adapter.ProviderAdapter;
 import com.adlin.orin.gateway.dto.ChatCompletionRequest;
 import com.adlin.orin.gateway.dto.ChatCompletionResponse;
 import com.adlin.orin.gateway.dto.EmbeddingRequest;
+import com.adlin.orin.gateway.dto.EmbeddingResponse;
+import com.adlin.orin.gateway.service.ChatCompletionCache;
+import com.adlin.orin.gateway.service.EmbeddingMicroBatcher;
+import com.adlin.orin.gateway.service.HedgingService;
+import com.adlin.orin.gateway.service.ProviderLoadTracker;
 import com.adlin.orin.gateway.service.ProviderRegistry;
+import com.adlin.orin.gateway.service.RequestCoalescer;
 import com.adlin.orin.gateway.service.RouterService;
+import com.adlin.orin.modules.apikey.entity.GatewaySecret;
+import com.adlin.orin.modules.apikey.service.GatewaySecretService;
+import com.adlin.orin.modules.monitor.service.LatencyRollupService;
 import com.adlin.orin.modules.task.entity.TaskEntity.TaskPriority;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 统一网关控制器
@@ -109,7 +124,10 @@ public class UnifiedGatewayApiController {
             @RequestBody ChatCompletionRequest request,
             @RequestHeader(value = "X-Provider-Id", required = false) String providerId,
             @RequestHeader(value = "X-Routing-Strategy", required = false) String routingStrategy,
-            @RequestHeader(value = "X-Trace-Id", required = false) String traceId) {
+            @RequestHeader(value = "X-Trace-Id", required = false) String traceId,
+            @RequestHeader(value = ChatCompletionCache.CACHE_HEADER, required = false) String cacheDirective,
+            HttpServletRequest httpRequest) {
+        long startedAt = System.nanoTime();
 
         // 生成或使用传入的 trace_id
         final String finalTraceId;
@@ -136,26 +154,50 @@ public class UnifiedGatewayApiController {
             providerMono = Mono.justOrEmpty(routerService.selectProvider(request, strategy));
         }
 
-        // 执行请求
+        // 执行请求（先查响应缓存，流式调用命中时按 SSE 回放）
+        String tenant = resolveTenant(httpRequest);
+        boolean reusable = responseCache.isReusable(request, cacheDirective);
         return providerMono
                 .flatMap(provider -> {
                     log.info("Selected provider: {} (type: {})", provider.getProviderName(),
                             provider.getProviderType());
 
-                    if (Boolean.TRUE.equals(request.getStream())) {
-                        Flux<ServerSentEvent<ChatCompletionResponse>> stream = provider.chatCompletionStream(request)
-                                .map(response -> ServerSentEvent.builder(response).build());
-                        return Mono.just(ResponseEntity.ok()
-                                .header(TRACE_ID_HEADER, finalTraceId)
-                                .contentType(MediaType.TEXT_EVENT_STREAM)
-                                .body((Object) stream));
-                    } else {
-                        // 非流式响应 - 透传 trace_id 到下游
-                        return provider.chatCompletion(request, finalTraceId)
-                                .map(response -> ResponseEntity.ok()
-                                        .header(TRACE_ID_HEADER, finalTraceId)
-                                        .body((Object) response));
-                    }
+                    return responseCache.lookup(tenant, provider.getProviderName(), request, cacheDirective)
+                            .flatMap(lookup -> {
+                                if (Boolean.TRUE.equals(request.getStream())) {
+                                    Flux<ChatCompletionResponse> chunks = lookup.isHit()
+                                            ? responseCache.replay(lookup.getResponse())
+                                            : lookup.record(requestCoalescer.chatCompletionStream(
+                                                    tenant, provider.getProviderName(), request, reusable,
+                                                    () -> loadTracker.observeStream(provider, request.getModel(),
+                                                            provider.chatCompletionStream(request))))
+                                                    .doOnComplete(() -> recordLatency(startedAt, provider,
+                                                            request.getModel()));
+                                    Flux<ServerSentEvent<ChatCompletionResponse>> stream = chunks
+                                            .map(response -> ServerSentEvent.builder(response).build());
+                                    return Mono.just(ResponseEntity.ok()
+                                            .header(TRACE_ID_HEADER, finalTraceId)
+                                            .header(ChatCompletionCache.CACHE_HEADER, lookup.getStatus())
+                                            .contentType(MediaType.TEXT_EVENT_STREAM)
+                                            .body((Object) stream));
+                                }
+                                if (lookup.isHit()) {
+                                    return Mono.just(ResponseEntity.ok()
+                                            .header(TRACE_ID_HEADER, finalTraceId)
+                                            .header(ChatCompletionCache.CACHE_HEADER, lookup.getStatus())
+                                            .body((Object) lookup.getResponse()));
+                                }
+                                // 非流式响应 - 透传 trace_id 到下游（合并的请求沿用首个请求的 trace_id）
+                                return requestCoalescer.chatCompletion(tenant, provider.getProviderName(),
+                                                request, reusable,
+                                                () -> callChatCompletion(provider, request, finalTraceId))
+                                        .doOnSuccess(response -> recordLatency(startedAt, provider, request.getModel()))
+                                        .doOnNext(lookup::store)
+                                        .map(response -> ResponseEntity.ok()
+                                                .header(TRACE_ID_HEADER, finalTraceId)
+                                                .header(ChatCompletionCache.CACHE_HEADER, lookup.getStatus())
+                                                .body((Object) response));
+                            });
                 })
                 .switchIfEmpty(Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
                         .header(TRACE_ID_HEADER, finalTraceId)
@@ -177,8 +219,11 @@ public class UnifiedGatewayApiController {
     @PostMapping(value = "/chat/completions/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<ChatCompletionResponse>> chatCompletionsStream(
             @RequestBody ChatCompletionRequest request,
-            @RequestHeader(value = "X-Provider-Id", required = false) String providerId) {
+            @RequestHeader(value = "X-Provider-Id", required = false) String providerId,
+            @RequestHeader(value = ChatCompletionCache.CACHE_HEADER, required = false) String cacheDirective,
+            HttpServletRequest httpRequest) {
         log.info("Stream chat completion request: model={}, providerId={}", request.getModel(), providerId);
+        long startedAt = System.nanoTime();
 
         // 选择Provider
         ProviderAdapter provider;
@@ -192,7 +237,17 @@ public class UnifiedGatewayApiController {
             return Flux.error(new RuntimeException("No available provider"));
         }
 
-        return provider.chatCompletionStream(request)
+        ProviderAdapter selected = provider;
+        String tenant = resolveTenant(httpRequest);
+        boolean reusable = responseCache.isReusable(request, cacheDirective);
+        return responseCache.lookup(tenant, provider.getProviderName(), request, cacheDirective)
+                .flatMapMany(lookup -> lookup.isHit()
+                        ? responseCache.replay(lookup.getResponse())
+                        : lookup.record(requestCoalescer.chatCompletionStream(tenant, selected.getProviderName(),
+                                        request, reusable,
+                                        () -> loadTracker.observeStream(selected, request.getModel(),
+                                                selected.chatCompletionStream(request))))
+                                .doOnComplete(() -> recordLatency(startedAt, selected, request.getModel())))
                 .map(response -> ServerSentEvent.builder(response).build())
                 .doOnError(e -> log.error("Stream error: {}", e.getMessage()));
     }
@@ -205,8 +260,10 @@ public class UnifiedGatewayApiController {
     @PostMapping("/embeddings")
     public Mono<ResponseEntity<Object>> embeddings(
             @RequestBody EmbeddingRequest request,
-            @RequestHeader(value = "X-Provider-Id", required = false) String providerId) {
+            @RequestHeader(value = "X-Provider-Id", required = false) String providerId,
+            HttpServletRequest httpRequest) {
         log.info("Embedding request: model={}, providerId={}", request.getModel(), providerId);
+        long startedAt = System.nanoTime();
 
         // 选择Provider（优先OpenAI类型）
         Mono<ProviderAdapter> providerMono;
@@ -218,8 +275,14 @@ public class UnifiedGatewayApiController {
                     providerRegistry.getHealthyProvidersByType("openai").stream().findFirst());
         }
 
+        String tenant = resolveTenant(httpRequest);
         return providerMono
-                .flatMap(provider -> provider.embedding(request).map(response -> ResponseEntity.ok((Object) response)))
+                .flatMap(provider -> requestCoalescer.embedding(tenant,
+                                provider.getProviderName(), request,
+                                () -> embeddingBatcher.embedding(provider.getProviderName(), request,
+                                        batched -> callEmbedding(provider, batched)))
+                        .doOnSuccess(response -> recordLatency(startedAt, provider, request.getModel()))
+                        .map(response -> ResponseEntity.ok((Object) response)))
                 .switchIfEmpty(Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
                         .body((Object) createError("No available provider for embeddings", "service_unavailable"))))
                 .onErrorResume(e -> {
@@ -290,7 +353,10 @@ public class UnifiedGatewayApiController {
     @Operation(summary = "路由统计", description = "获取路由服务的统计信息")
     @GetMapping("/routing/stats")
     public ResponseEntity<Map<String, Object>> getRoutingStats() {
-        return ResponseEntity.ok(routerService.getRoutingStatistics());
+        Map<String, Object> stats = new HashMap<>(routerService.getRoutingStatistics());
+        stats.put("hedging", hedgingService.getStatistics());
+        stats.put("embeddingBatching", embeddingBatcher.getStatistics());
+        return ResponseEntity.ok(stats);
     }
 
     /**
@@ -310,6 +376,13 @@ public class UnifiedGatewayApiController {
     }
 
     private final com.adlin.orin.modules.workflow.service.WorkflowService workflowService;
+    private final LatencyRollupService latencyRollupService;
+    private final ChatCompletionCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final ProviderLoadTracker loadTracker;
+    private final HedgingService hedgingService;
+    private final EmbeddingMicroBatcher embeddingBatcher;
+    private final GatewaySecretService gatewaySecretService;
 
     /**
      * 执行工作流
@@ -338,6 +411,68 @@ public class UnifiedGatewayApiController {
                 });
     }
 
+    /**
+     * 非流式补全的上游调用；短请求在主 Provider 迟迟未返回时向备选 Provider 对冲
+     */
+    private Mono<ChatCompletionResponse> callChatCompletion(ProviderAdapter provider, ChatCompletionRequest request,
+                                                            String traceId) {
+        Mono<ChatCompletionResponse> primary = loadTracker.observe(provider, request.getModel(),
+                provider.chatCompletion(request, traceId));
+        if (!hedgingService.isHedgeable(request)) {
+            return primary;
+        }
+        return hedgingService.hedge(request.getModel(), primary,
+                () -> routerService.selectAlternate(provider, request.getModel())
+                        .map(alternate -> loadTracker.observe(alternate, request.getModel(),
+                                alternate.chatCompletion(request, traceId)))
+                        .orElse(Mono.empty()));
+    }
+
+    /**
+     * 嵌入的上游调用（短且幂等，总是允许对冲）
+     */
+    private Mono<EmbeddingResponse> callEmbedding(ProviderAdapter provider, EmbeddingRequest request) {
+        return hedgingService.hedge(request.getModel(),
+                loadTracker.observe(provider, request.getModel(), provider.embedding(request)),
+                () -> routerService.selectAlternate(provider, request.getModel())
+                        .map(alternate -> loadTracker.observe(alternate, request.getModel(), alternate.embedding(request)))
+                        .orElse(Mono.empty()));
+    }
+
+    /**
+     * 解析响应缓存 / 请求合并的租户：代理过滤器已校验的 API Key，其次为请求头里的 sk-orin Key，
+     * 再次为 JWT 登录用户（与同一用户的 API Key 共用租户）；都没有时返回 null，不共享结果
+     */
+    private String resolveTenant(HttpServletRequest httpRequest) {
+        if (httpRequest.getAttribute("apiKey") instanceof GatewaySecret apiKey) {
+            return ChatCompletionCache.tenantOf(apiKey);
+        }
+        String rawKey = extractApiKey(httpRequest);
+        if (rawKey != null) {
+            Optional<GatewaySecret> validated = gatewaySecretService.validateClientAccessSecret(rawKey);
+            if (validated.isPresent()) {
+                httpRequest.setAttribute("apiKey", validated.get());
+                return ChatCompletionCache.tenantOf(validated.get());
+            }
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)
+                && authentication.getName() != null && !authentication.getName().isBlank()) {
+            return "user:" + authentication.getName();
+        }
+        return null;
+    }
+
+    private String extractApiKey(HttpServletRequest httpRequest) {
+        String authHeader = httpRequest.getHeader("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ") && authHeader.substring(7).startsWith("sk-orin-")) {
+            return authHeader.substring(7);
+        }
+        String headerApiKey = httpRequest.getHeader("X-API-Key");
+        return headerApiKey != null && !headerApiKey.isBlank() ? headerApiKey : null;
+    }
+
     /**
      * 创建错误响应
      */
@@ -351,4 +486,12 @@ public class UnifiedGatewayApiController {
         return error;
     }
 
+    /**
+     * 记录一次成功调用的端到端延迟（流式为整个流完成的耗时）
+     */
+    private void recordLatency(long startedAtNanos, ProviderAdapter provider, String model) {
+        latencyRollupService.recordRequest(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos),
+                provider.getProviderName(), model, null);
+    }
+
 }
@@ -0,0 +1,49 @@
+package com.adlin.orin.gateway.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 网关请求规范化工具：属性与 Map 键排序、去掉 null 字段，
+ * 使语义相同的请求得到相同的 JSON 和摘要（响应缓存与请求合并共用）
+ */
+final class CanonicalRequests {
+
+    static final ObjectMapper MAPPER = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .build();
+
+    private CanonicalRequests() {
+    }
+
+    /**
+     * 规范化的 JSON 树；stream 标志不影响结果内容，统一去掉
+     *
+     * @throws IllegalArgumentException 请求无法序列化时
+     */
+    static ObjectNode tree(Object request) {
+        ObjectNode node = MAPPER.valueToTree(request);
+        node.remove("stream");
+        return node;
+    }
+
+    static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
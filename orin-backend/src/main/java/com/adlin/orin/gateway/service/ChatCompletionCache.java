@@ -0,0 +1,605 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.dto.ChatCompletionRequest;
+import com.adlin.orin.gateway.dto.ChatCompletionResponse;
+import com.adlin.orin.modules.apikey.entity.GatewaySecret;
+import com.adlin.orin.modules.knowledge.component.EmbeddingService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 聊天补全响应缓存（位于 ProviderAdapter.chatCompletion 之前）
+ *
+ * - 精确层：键为 租户 + Provider + 规范化请求 JSON（属性 / Map 键排序、去掉 null 与 stream）的 SHA-256，
+ *   值为序列化后的响应字节，Caffeine 按字节数加权淘汰，并按租户单独限额（超额时先淘汰该租户最早写入的条目）
+ * - 语义层：需配置开启且请求头 X-Orin-Cache: semantic 显式选择；同一租户 / Provider / 参数 / 上文的请求
+ *   归入一个分区，按最后一条 user 消息的归一化向量做余弦相似度匹配，超过阈值即复用精确层中的响应
+ * - 默认只缓存确定性请求（temperature 不超过上限且 n = 1），X-Orin-Cache: exact 可强制缓存，bypass 跳过
+ * - 流式调用方命中时按 SSE 分片回放；流式未命中的结果在流结束后聚合写入缓存
+ */
+@Slf4j
+@Service
+public class ChatCompletionCache {
+
+    public static final String CACHE_HEADER = "X-Orin-Cache";
+
+    public enum Mode {
+        AUTO, EXACT, SEMANTIC, BYPASS;
+
+        public static Mode parse(String directive) {
+            if (directive == null || directive.isBlank()) {
+                return AUTO;
+            }
+            return switch (directive.trim().toLowerCase()) {
+                case "exact" -> EXACT;
+                case "semantic" -> SEMANTIC;
+                case "bypass", "no-cache", "no-store" -> BYPASS;
+                default -> AUTO;
+            };
+        }
+    }
+
+    private static final ObjectMapper CANONICAL_MAPPER = CanonicalRequests.MAPPER;
+
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int SEMANTIC_ENTRY_OVERHEAD_BYTES = 96;
+
+    private final ObjectProvider<EmbeddingService> embeddingServiceProvider;
+    private final long tenantMaxBytes;
+    private final Duration semanticTtl;
+
+    /** 精确层：key -> 响应字节 */
+    private final Cache<String, Entry> exact;
+    /** 语义层：分区 key -> 该分区的向量索引（不可变，整体替换以便重新计算权重） */
+    private final Cache<String, Partition> semantic;
+    /** 每个租户在精确层中占用的字节数及写入顺序 */
+    private final Map<String, TenantUsage> tenants = new ConcurrentHashMap<>();
+
+    private final Counter exactHits;
+    private final Counter semanticHits;
+    private final Counter misses;
+    private final Counter bypassed;
+
+    @Value("${orin.gateway.response-cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${orin.gateway.response-cache.max-temperature:0.0}")
+    private double maxTemperature = 0.0;
+
+    @Value("${orin.gateway.response-cache.semantic.enabled:false}")
+    private boolean semanticEnabled = false;
+
+    @Value("${orin.gateway.response-cache.semantic.threshold:0.95}")
+    private double semanticThreshold = 0.95;
+
+    @Value("${orin.gateway.response-cache.semantic.max-entries-per-partition:256}")
+    private int maxEntriesPerPartition = 256;
+
+    public ChatCompletionCache(ObjectProvider<EmbeddingService> embeddingServiceProvider,
+            MeterRegistry meterRegistry,
+            @Value("${orin.gateway.response-cache.ttl-seconds:600}") long ttlSeconds,
+            @Value("${orin.gateway.response-cache.max-mb:128}") long maxMb,
+            @Value("${orin.gateway.response-cache.tenant-max-mb:16}") long tenantMaxMb,
+            @Value("${orin.gateway.response-cache.semantic.ttl-seconds:600}") long semanticTtlSeconds,
+            @Value("${orin.gateway.response-cache.semantic.max-mb:32}") long semanticMaxMb) {
+        this.embeddingServiceProvider = embeddingServiceProvider;
+        this.tenantMaxBytes = Math.max(1, tenantMaxMb) * 1024 * 1024;
+        this.semanticTtl = Duration.ofSeconds(Math.max(1, semanticTtlSeconds));
+        this.exact = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, maxMb) * 1024 * 1024)
+                .weigher((String key, Entry entry) -> entry.weight())
+                .expireAfterWrite(Duration.ofSeconds(Math.max(1, ttlSeconds)))
+                .executor(Runnable::run)
+                .removalListener((String key, Entry entry, RemovalCause cause) -> {
+                    if (key != null && entry != null) {
+                        release(key, entry, cause);
+                    }
+                })
+                .build();
+        this.semantic = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, semanticMaxMb) * 1024 * 1024)
+                .weigher((String key, Partition partition) -> partition.weight())
+                .expireAfterAccess(semanticTtl)
+                .build();
+        this.exactHits = lookupCounter(meterRegistry, "exact_hit");
+        this.semanticHits = lookupCounter(meterRegistry, "semantic_hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.bypassed = lookupCounter(meterRegistry, "bypass");
+        Gauge.builder("gateway.response_cache.bytes", this, ChatCompletionCache::weightedBytes)
+                .description("Bytes held by the exact response cache tier")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("gateway.response_cache.lookups")
+                .description("Chat completion response cache lookups by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 缓存租户：API Key 所属用户，其次为 Key 本身；无法确定租户时返回 null，此时不读写缓存、不合并请求
+     */
+    public static String tenantOf(GatewaySecret apiKey) {
+        if (apiKey == null) {
+            return null;
+        }
+        if (apiKey.getUserId() != null && !apiKey.getUserId().isBlank()) {
+            return "user:" + apiKey.getUserId();
+        }
+        return "key:" + apiKey.getSecretId();
+    }
+
+    /**
+     * 查询缓存。总会发出一个 Lookup：命中时携带响应，未命中时用于回写。
+     * 语义层需要调用嵌入模型，放在 boundedElastic 上执行。
+     */
+    public Mono<Lookup> lookup(String tenant, String providerName, ChatCompletionRequest request, String directive) {
+        Mode mode = Mode.parse(directive);
+        if (tenant == null || !isCacheable(request, mode)) {
+            bypassed.increment();
+            return Mono.just(Lookup.BYPASS);
+        }
+        ObjectNode canonical;
+        try {
+            canonical = CanonicalRequests.tree(request);
+        } catch (IllegalArgumentException e) {
+            log.debug("Response cache skipped, request not serializable: {}", e.getMessage());
+            bypassed.increment();
+            return Mono.just(Lookup.BYPASS);
+        }
+        String key = CanonicalRequests.sha256(tenant + '\n' + providerName + '\n' + canonical);
+
+        ChatCompletionResponse cached = read(exact.getIfPresent(key));
+        if (cached != null) {
+            exactHits.increment();
+            return Mono.just(new Lookup(this, tenant, key, null, null, cached, "HIT"));
+        }
+        String prompt = mode == Mode.SEMANTIC ? lastUserPrompt(request) : null;
+        EmbeddingService embeddingService = prompt != null && semanticEnabled
+                ? embeddingServiceProvider.getIfAvailable() : null;
+        if (embeddingService == null) {
+            misses.increment();
+            return Mono.just(new Lookup(this, tenant, key, null, null, null, "MISS"));
+        }
+        // 去掉最后一条 user 消息后的请求决定分区：模型、参数与上文都一致时才比较提示词语义
+        ((ArrayNode) canonical.get("messages")).remove(canonical.get("messages").size() - 1);
+        String partitionKey = CanonicalRequests.sha256(tenant + '\n' + providerName + '\n' + canonical);
+        return Mono.fromCallable(() -> semanticLookup(embeddingService, tenant, key, partitionKey, prompt))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Lookup semanticLookup(EmbeddingService embeddingService, String tenant, String key,
+            String partitionKey, String prompt) {
+        float[] vector;
+        try {
+            vector = normalize(embeddingService.embed(prompt));
+        } catch (RuntimeException e) {
+            log.debug("Semantic cache embedding failed, using exact tier only: {}", e.getMessage());
+            misses.increment();
+            return new Lookup(this, tenant, key, null, null, null, "MISS");
+        }
+        if (vector != null) {
+            Partition partition = semantic.getIfPresent(partitionKey);
+            long now = System.currentTimeMillis();
+            SemanticEntry best = null;
+            double bestScore = semanticThreshold;
+            if (partition != null) {
+                for (SemanticEntry candidate : partition.entries()) {
+                    if (candidate.expiresAt() > now && candidate.vector().length == vector.length) {
+                        double score = dot(candidate.vector(), vector);
+                        if (score >= bestScore) {
+                            best = candidate;
+                            bestScore = score;
+                        }
+                    }
+                }
+            }
+            ChatCompletionResponse cached = best != null ? read(exact.getIfPresent(best.exactKey())) : null;
+            if (cached != null) {
+                semanticHits.increment();
+                return new Lookup(this, tenant, key, null, null, cached, "SEMANTIC_HIT");
+            }
+        }
+        misses.increment();
+        return new Lookup(this, tenant, key, partitionKey, vector, null, "MISS");
+    }
+
+    private boolean isCacheable(ChatCompletionRequest request, Mode mode) {
+        if (!enabled || request == null || request.getMessages() == null || request.getMessages().isEmpty()) {
+            return false;
+        }
+        return isReusable(request, mode);
+    }
+
+    /**
+     * 请求的结果能否给其他相同请求复用（与缓存开关无关，RequestCoalescer 合并在途请求时也按此判断）：
+     * n = 1，且 temperature 不超过上限或调用方通过 X-Orin-Cache 显式选择 exact / semantic；bypass 总是不复用
+     */
+    public boolean isReusable(ChatCompletionRequest request, String directive) {
+        return request != null && isReusable(request, Mode.parse(directive));
+    }
+
+    private boolean isReusable(ChatCompletionRequest request, Mode mode) {
+        if (mode == Mode.BYPASS || (request.getN() != null && request.getN() != 1)) {
+            return false;
+        }
+        // 非确定性采样的结果默认不复用，调用方显式选择 exact / semantic 时视为接受复用
+        return mode != Mode.AUTO || request.getTemperature() == null || request.getTemperature() <= maxTemperature;
+    }
+
+    private static String lastUserPrompt(ChatCompletionRequest request) {
+        ChatCompletionRequest.Message last = request.getMessages().get(request.getMessages().size() - 1);
+        if (last == null || !"user".equals(last.getRole()) || last.getContent() == null || last.getContent().isBlank()) {
+            return null;
+        }
+        return last.getContent();
+    }
+
+    private void store(Lookup lookup, ChatCompletionResponse response) {
+        if (!isStorable(response)) {
+            return;
+        }
+        byte[] body;
+        try {
+            body = CANONICAL_MAPPER.writeValueAsBytes(response);
+        } catch (Exception e) {
+            log.debug("Response cache skipped, response not serializable: {}", e.getMessage());
+            return;
+        }
+        Entry entry = new Entry(lookup.tenant, body, ENTRY_OVERHEAD_BYTES + lookup.key.length() * 2 + body.length);
+        if (entry.weight() > tenantMaxBytes) {
+            return;
+        }
+        // 先记账再写入：并发淘汰触发的释放总能找到对应的占用
+        tenants.compute(lookup.tenant, (tenant, usage) -> {
+            TenantUsage current = usage != null ? usage : new TenantUsage();
+            current.bytes += entry.weight();
+            current.keys.remove(lookup.key);
+            current.keys.add(lookup.key);
+            return current;
+        });
+        exact.put(lookup.key, entry);
+        enforceTenantLimit(lookup.tenant, lookup.key);
+
+        if (lookup.partitionKey != null && lookup.vector != null) {
+            long expiresAt = System.currentTimeMillis() + semanticTtl.toMillis();
+            SemanticEntry added = new SemanticEntry(lookup.vector, lookup.key, expiresAt);
+            semantic.asMap().compute(lookup.partitionKey, (k, partition) -> {
+                long now = System.currentTimeMillis();
+                List<SemanticEntry> entries = new ArrayList<>();
+                if (partition != null) {
+                    for (SemanticEntry existing : partition.entries()) {
+                        if (existing.expiresAt() > now && !existing.exactKey().equals(lookup.key)) {
+                            entries.add(existing);
+                        }
+                    }
+                }
+                entries.add(added);
+                int overflow = entries.size() - Math.max(1, maxEntriesPerPartition);
+                return new Partition(List.copyOf(overflow > 0 ? entries.subList(overflow, entries.size()) : entries));
+            });
+        }
+    }
+
+    private static boolean isStorable(ChatCompletionResponse response) {
+        if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
+            return false;
+        }
+        for (ChatCompletionResponse.Choice choice : response.getChoices()) {
+            if (choice.getMessage() == null || choice.getMessage().getContent() == null
+                    || choice.getMessage().getContent().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 租户超出限额时按写入顺序淘汰该租户最早的条目（刚写入的条目除外）
+     */
+    private void enforceTenantLimit(String tenant, String justWritten) {
+        while (true) {
+            String[] victim = new String[1];
+            tenants.computeIfPresent(tenant, (t, usage) -> {
+                if (usage.bytes > tenantMaxBytes) {
+                    for (String key : usage.keys) {
+                        if (!key.equals(justWritten)) {
+                            victim[0] = key;
+                            break;
+                        }
+                    }
+                }
+                return usage;
+            });
+            if (victim[0] == null) {
+                return;
+            }
+            if (exact.asMap().remove(victim[0]) == null) {
+                // 已过期或被全局淘汰但尚未通知，只清理顺序记录
+                tenants.computeIfPresent(tenant, (t, usage) -> {
+                    usage.keys.remove(victim[0]);
+                    return usage;
+                });
+            }
+        }
+    }
+
+    private void release(String key, Entry entry, RemovalCause cause) {
+        tenants.computeIfPresent(entry.tenant(), (tenant, usage) -> {
+            usage.bytes -= entry.weight();
+            if (cause != RemovalCause.REPLACED) {
+                usage.keys.remove(key);
+            }
+            return usage.keys.isEmpty() && usage.bytes <= 0 ? null : usage;
+        });
+    }
+
+    private static ChatCompletionResponse read(Entry entry) {
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return CANONICAL_MAPPER.readValue(entry.body(), ChatCompletionResponse.class);
+        } catch (Exception e) {
+            log.debug("Cached response unreadable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 将完整响应按 SSE 分片回放：每个 choice 一个内容分片，最后一个分片携带 finish_reason 与 usage
+     */
+    public Flux<ChatCompletionResponse> replay(ChatCompletionResponse response) {
+        List<ChatCompletionResponse> chunks = new ArrayList<>();
+        List<ChatCompletionResponse.Choice> finished = new ArrayList<>();
+        for (ChatCompletionResponse.Choice choice : response.getChoices()) {
+            ChatCompletionRequest.Message message = choice.getMessage();
+            String role = message.getRole() != null ? message.getRole() : "assistant";
+            chunks.add(chunk(response, ChatCompletionResponse.Choice.builder()
+                    .index(choice.getIndex())
+                    .message(ChatCompletionRequest.Message.builder().role(role).content(message.getContent()).build())
+                    .delta(ChatCompletionResponse.Delta.builder().role(role).content(message.getContent()).build())
+                    .build(), null));
+            finished.add(ChatCompletionResponse.Choice.builder()
+                    .index(choice.getIndex())
+                    .finishReason(choice.getFinishReason() != null ? choice.getFinishReason() : "stop")
+                    .delta(new ChatCompletionResponse.Delta())
+                    .build());
+        }
+        ChatCompletionResponse last = chunk(response, null, response.getUsage());
+        last.setChoices(finished);
+        chunks.add(last);
+        return Flux.fromIterable(chunks);
+    }
+
+    private static ChatCompletionResponse chunk(ChatCompletionResponse response, ChatCompletionResponse.Choice choice,
+            ChatCompletionResponse.Usage usage) {
+        return ChatCompletionResponse.builder()
+                .id(response.getId())
+                .object("chat.completion.chunk")
+                .created(response.getCreated())
+                .model(response.getModel())
+                .provider(response.getProvider())
+                .choices(choice != null ? List.of(choice) : null)
+                .usage(usage)
+                .build();
+    }
+
+    /**
+     * 将流式分片聚合为一个完整响应（兼容内容放在 message 或 delta 中的两种分片）
+     */
+    static ChatCompletionResponse aggregate(List<ChatCompletionResponse> chunks) {
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        ChatCompletionResponse first = chunks.get(0);
+        Map<Integer, StringBuilder> contents = new TreeMap<>();
+        Map<Integer, String> roles = new TreeMap<>();
+        Map<Integer, String> finishReasons = new TreeMap<>();
+        ChatCompletionResponse.Usage usage = null;
+        for (ChatCompletionResponse chunk : chunks) {
+            if (chunk.getUsage() != null) {
+                usage = chunk.getUsage();
+            }
+            if (chunk.getChoices() == null) {
+                continue;
+            }
+            for (ChatCompletionResponse.Choice choice : chunk.getChoices()) {
+                int index = choice.getIndex() != null ? choice.getIndex() : 0;
+                String role = null;
+                String content = null;
+                if (choice.getDelta() != null) {
+                    role = choice.getDelta().getRole();
+                    content = choice.getDelta().getContent();
+                } else if (choice.getMessage() != null) {
+                    role = choice.getMessage().getRole();
+                    content = choice.getMessage().getContent();
+                }
+                if (role != null) {
+                    roles.putIfAbsent(index, role);
+                }
+                if (content != null) {
+                    contents.computeIfAbsent(index, i -> new StringBuilder()).append(content);
+                }
+                if (choice.getFinishReason() != null) {
+                    finishReasons.put(index, choice.getFinishReason());
+                }
+            }
+        }
+        List<ChatCompletionResponse.Choice> choices = new ArrayList<>();
+        contents.forEach((index, content) -> choices.add(ChatCompletionResponse.Choice.builder()
+                .index(index)
+                .message(ChatCompletionRequest.Message.builder()
+                        .role(roles.getOrDefault(index, "assistant"))
+                        .content(content.toString())
+                        .build())
+                .finishReason(finishReasons.get(index))
+                .build()));
+        return ChatCompletionResponse.builder()
+                .id(first.getId())
+                .object("chat.completion")
+                .created(first.getCreated())
+                .model(first.getModel())
+                .provider(first.getProvider())
+                .choices(choices)
+                .usage(usage)
+                .build();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("entries", exact.estimatedSize());
+        stats.put("bytes", weightedBytes());
+        stats.put("tenants", tenants.size());
+        stats.put("semanticPartitions", semantic.estimatedSize());
+        stats.put("exactHits", (long) exactHits.count());
+        stats.put("semanticHits", (long) semanticHits.count());
+        stats.put("misses", (long) misses.count());
+        return stats;
+    }
+
+    long tenantBytes(String tenant) {
+        TenantUsage usage = tenants.get(tenant);
+        return usage != null ? usage.bytes : 0L;
+    }
+
+    private double weightedBytes() {
+        return exact.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    private static float[] normalize(List<Float> embedding) {
+        if (embedding == null || embedding.isEmpty()) {
+            return null;
+        }
+        float[] vector = new float[embedding.size()];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i);
+            norm += vector[i] * vector[i];
+        }
+        if (norm == 0) {
+            return null;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(String tenant, byte[] body, int weight) {
+    }
+
+    private record SemanticEntry(float[] vector, String exactKey, long expiresAt) {
+    }
+
+    private record Partition(List<SemanticEntry> entries) {
+        int weight() {
+            int weight = 64;
+            for (SemanticEntry entry : entries) {
+                weight += SEMANTIC_ENTRY_OVERHEAD_BYTES + entry.vector().length * Float.BYTES;
+            }
+            return weight;
+        }
+    }
+
+    private static final class TenantUsage {
+        private long bytes;
+        private final LinkedHashSet<String> keys = new LinkedHashSet<>();
+    }
+
+    /**
+     * 一次缓存查询的结果；未命中时持有回写所需的键与向量
+     */
+    public static final class Lookup {
+
+        static final Lookup BYPASS = new Lookup(null, null, null, null, null, null, "BYPASS");
+
+        private final ChatCompletionCache cache;
+        private final String tenant;
+        private final String key;
+        private final String partitionKey;
+        private final float[] vector;
+        private final ChatCompletionResponse response;
+        private final String status;
+
+        private Lookup(ChatCompletionCache cache, String tenant, String key, String partitionKey, float[] vector,
+                ChatCompletionResponse response, String status) {
+            this.cache = cache;
+            this.tenant = tenant;
+            this.key = key;
+            this.partitionKey = partitionKey;
+            this.vector = vector;
+            this.response = response;
+            this.status = status;
+        }
+
+        public boolean isHit() {
+            return response != null;
+        }
+
+        public ChatCompletionResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * HIT / SEMANTIC_HIT / MISS / BYPASS，写入响应头 X-Orin-Cache
+         */
+        public String getStatus() {
+            return status;
+        }
+
+        public void store(ChatCompletionResponse completed) {
+            if (cache != null && response == null) {
+                cache.store(this, completed);
+            }
+        }
+
+        /**
+         * 透传上游流，正常结束后把聚合结果写入缓存；出错或取消时不写
+         */
+        public Flux<ChatCompletionResponse> record(Flux<ChatCompletionResponse> upstream) {
+            if (cache == null || response != null) {
+                return upstream;
+            }
+            return Flux.defer(() -> {
+                List<ChatCompletionResponse> chunks = new ArrayList<>();
+                return upstream
+                        .doOnNext(chunks::add)
+                        .doOnComplete(() -> store(aggregate(chunks)));
+            });
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.dto.EmbeddingRequest;
+import com.adlin.orin.gateway.dto.EmbeddingResponse;
+import com.adlin.orin.modules.knowledge.component.EmbeddingBatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 嵌入请求微批（server-side micro-batching）
+ *
+ * 并发到达的单输入 /v1/embeddings 请求按 Provider + 模型 + user 聚成一个多输入上游请求，
+ * 向量按下标分发回各调用方：
+ * - 批次由第一个请求开启，max-wait-ms 到期、条数达到 max-batch-size 或估算 token 将超过 max-tokens 时发出
+ * - 同一批次内文本相同的请求共用一个输入位置
+ * - 上游失败或缺少某个位置的向量时，对应调用方收到同一个错误（不逐条重试，交给客户端）
+ * - usage 按各输入估算 token 的占比拆分
+ *
+ * 多输入请求、超过 max-tokens 的单条文本直接透传。调用方取消不会取消已发出的批次，结果丢弃即可。
+ */
+@Slf4j
+@Service
+public class EmbeddingMicroBatcher {
+
+    private final Map<String, Batch> open = new ConcurrentHashMap<>();
+    private final Counter requests;
+    private final Counter upstreamCalls;
+    private final DistributionSummary batchSize;
+
+    @Value("${orin.gateway.embedding-batch.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${orin.gateway.embedding-batch.max-wait-ms:5}")
+    private long maxWaitMs = 5;
+
+    @Value("${orin.gateway.embedding-batch.max-batch-size:64}")
+    private int maxBatchSize = 64;
+
+    @Value("${orin.gateway.embedding-batch.max-tokens:8192}")
+    private int maxTokens = 8192;
+
+    public EmbeddingMicroBatcher(MeterRegistry meterRegistry) {
+        this.requests = Counter.builder("gateway.embedding_batch.requests")
+                .description("Single-input embedding requests served through micro-batches")
+                .register(meterRegistry);
+        this.upstreamCalls = Counter.builder("gateway.embedding_batch.upstream_calls")
+                .description("Batched upstream embedding calls")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("gateway.embedding_batch.size")
+                .description("Distinct inputs per batched upstream embedding call")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 以微批方式执行一次嵌入请求
+     *
+     * @param providerName 目标 Provider（批次维度之一）
+     * @param request      调用方的请求
+     * @param upstream     发出（批量）请求的上游调用
+     */
+    public Mono<EmbeddingResponse> embedding(String providerName, EmbeddingRequest request,
+            Function<EmbeddingRequest, Mono<EmbeddingResponse>> upstream) {
+        String text = enabled ? singleInput(request) : null;
+        if (text == null) {
+            return upstream.apply(request);
+        }
+        int tokens = EmbeddingBatcher.estimateTokens(text);
+        if (tokens > maxTokens) {
+            return upstream.apply(request);
+        }
+        String key = providerName + '\n' + request.getModel() + '\n' + request.getUser();
+        return Mono.defer(() -> {
+            Sinks.One<EmbeddingResponse> sink = Sinks.one();
+            enqueue(key, request, text, tokens, sink, upstream);
+            return sink.asMono();
+        });
+    }
+
+    private void enqueue(String key, EmbeddingRequest request, String text, int tokens,
+            Sinks.One<EmbeddingResponse> sink, Function<EmbeddingRequest, Mono<EmbeddingResponse>> upstream) {
+        requests.increment();
+        Batch[] ready = new Batch[2];
+        Batch[] opened = new Batch[1];
+        open.compute(key, (k, batch) -> {
+            if (batch != null && !batch.contains(text) && batch.tokens + tokens > maxTokens) {
+                ready[0] = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(request.getModel(), request.getUser(), upstream);
+                opened[0] = batch;
+            }
+            batch.add(text, tokens, sink);
+            if (batch.size() >= maxBatchSize) {
+                ready[1] = batch;
+                return null;
+            }
+            return batch;
+        });
+        if (opened[0] != null && opened[0] != ready[1]) {
+            Batch batch = opened[0];
+            Schedulers.parallel().schedule(() -> {
+                if (open.remove(key, batch)) {
+                    send(batch);
+                }
+            }, maxWaitMs, TimeUnit.MILLISECONDS);
+        }
+        for (Batch batch : ready) {
+            if (batch != null) {
+                send(batch);
+            }
+        }
+    }
+
+    /**
+     * 发出一个批次；上游适配器可能是阻塞实现，放到 boundedElastic 上执行，不占用定时线程
+     */
+    private void send(Batch batch) {
+        List<String> inputs = new ArrayList<>(batch.waiters.keySet());
+        upstreamCalls.increment();
+        batchSize.record(inputs.size());
+        EmbeddingRequest batched = EmbeddingRequest.builder()
+                .model(batch.model)
+                .input(inputs)
+                .user(batch.user)
+                .build();
+        Mono.defer(() -> batch.upstream.apply(batched))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(response -> scatter(batch, inputs, response),
+                        error -> batch.failAll(error),
+                        () -> batch.failAll(new IllegalStateException("Embedding batch returned no response")));
+    }
+
+    private void scatter(Batch batch, List<String> inputs, EmbeddingResponse response) {
+        Map<Integer, List<Double>> vectors = new HashMap<>();
+        List<EmbeddingResponse.EmbeddingData> data = response.getData() != null ? response.getData() : List.of();
+        for (int i = 0; i < data.size(); i++) {
+            EmbeddingResponse.EmbeddingData item = data.get(i);
+            vectors.put(item.getIndex() != null ? item.getIndex() : i, item.getEmbedding());
+        }
+        EmbeddingResponse.Usage usage = response.getUsage();
+        for (int i = 0; i < inputs.size(); i++) {
+            String text = inputs.get(i);
+            List<Double> vector = vectors.get(i);
+            if (vector == null) {
+                batch.fail(text, new IllegalStateException(
+                        "Embedding batch returned no vector for input " + i + " of " + inputs.size()));
+                continue;
+            }
+            EmbeddingResponse single = EmbeddingResponse.builder()
+                    .object(response.getObject())
+                    .model(response.getModel())
+                    .data(List.of(EmbeddingResponse.EmbeddingData.builder().index(0).embedding(vector).build()))
+                    .usage(usage != null ? shareOf(usage, batch.tokensOf(text), batch.tokens) : null)
+                    .build();
+            batch.waiters.get(text).forEach(sink -> sink.tryEmitValue(single));
+        }
+    }
+
+    static EmbeddingResponse.Usage shareOf(EmbeddingResponse.Usage usage, int tokens, int totalTokens) {
+        double share = totalTokens > 0 ? tokens / (double) totalTokens : 0;
+        return EmbeddingResponse.Usage.builder()
+                .promptTokens(usage.getPromptTokens() != null ? (int) Math.round(usage.getPromptTokens() * share) : null)
+                .totalTokens(usage.getTotalTokens() != null ? (int) Math.round(usage.getTotalTokens() * share) : null)
+                .build();
+    }
+
+    /**
+     * 请求是否只有一条文本输入（字符串或单元素字符串数组）；否则返回 null
+     */
+    static String singleInput(EmbeddingRequest request) {
+        Object input = request != null ? request.getInput() : null;
+        if (input instanceof String text) {
+            return text;
+        }
+        if (input instanceof List<?> list && list.size() == 1 && list.get(0) instanceof String text) {
+            return text;
+        }
+        return null;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        double calls = upstreamCalls.count();
+        stats.put("requests", (long) requests.count());
+        stats.put("upstreamCalls", (long) calls);
+        stats.put("avgBatchSize", calls > 0 ? batchSize.mean() : 0.0);
+        stats.put("maxBatchSize", (long) batchSize.max());
+        stats.put("openBatches", open.size());
+        return stats;
+    }
+
+    /**
+     * 正在收集中的批次；只在 open.compute 内修改，发出后只读
+     */
+    private static final class Batch {
+        private final String model;
+        private final String user;
+        private final Function<EmbeddingRequest, Mono<EmbeddingResponse>> upstream;
+        private final Map<String, List<Sinks.One<EmbeddingResponse>>> waiters = new LinkedHashMap<>();
+        private final Map<String, Integer> tokensByText = new HashMap<>();
+        private int tokens;
+
+        private Batch(String model, String user, Function<EmbeddingRequest, Mono<EmbeddingResponse>> upstream) {
+            this.model = model;
+            this.user = user;
+            this.upstream = upstream;
+        }
+
+        boolean contains(String text) {
+            return waiters.containsKey(text);
+        }
+
+        void add(String text, int textTokens, Sinks.One<EmbeddingResponse> sink) {
+            waiters.computeIfAbsent(text, t -> {
+                tokensByText.put(t, textTokens);
+                tokens += textTokens;
+                return new ArrayList<>();
+            }).add(sink);
+        }
+
+        int size() {
+            return waiters.size();
+        }
+
+        int tokensOf(String text) {
+            return tokensByText.getOrDefault(text, 0);
+        }
+
+        void fail(String text, Throwable error) {
+            waiters.get(text).forEach(sink -> sink.tryEmitError(error));
+        }
+
+        void failAll(Throwable error) {
+            log.warn("Embedding batch of {} inputs for model {} failed: {}", waiters.size(), model, error.getMessage());
+            waiters.values().forEach(sinks -> sinks.forEach(sink -> sink.tryEmitError(error)));
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.dto.ChatCompletionRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 对冲请求（hedged requests），用于短小、幂等的调用（嵌入、小 max_tokens 的分类类补全）
+ *
+ * 主请求在该模型滚动 p90 内未返回时，向备选 Provider（没有同类备选时为同一 Provider）再发一次，
+ * 先返回结果的一方胜出，另一方被取消。主请求在对冲发出前失败时直接返回失败，不做重试。
+ *
+ * - 滚动 p90：每个模型一个 HdrHistogram Recorder，按 rotate-ms 轮转，保留最近 window-slots 个区间
+ * - 预算：10 秒窗口内对冲数不超过请求数 × budget-ratio，限制额外花费
+ * - 指标：对冲前后的 p99（主请求 p99 对被取消的主请求按取消时已耗时计，是下界）及额外请求比例。
+ *   落败的主请求立即取消，不在后台跑完，避免额外花费并让 ProviderLoadTracker 的在途计数及时回落
+ */
+@Slf4j
+@Service
+public class HedgingService {
+
+    private static final int BUDGET_WINDOW_SECONDS = 10;
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int STATS_SLOTS = 6;
+
+    private final ConcurrentHashMap<String, RollingLatency> modelLatency = new ConcurrentHashMap<>();
+    private final RollingLatency observed;
+    private final RollingLatency primaryOnly;
+    private final BudgetWindow budget = new BudgetWindow();
+    private final Counter requests;
+    private final Counter hedges;
+    private final Counter hedgeWins;
+    private final Counter budgetDenied;
+    private LongSupplier nanoClock = System::nanoTime;
+
+    @Value("${orin.gateway.hedging.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${orin.gateway.hedging.budget-ratio:0.05}")
+    private double budgetRatio = 0.05;
+
+    @Value("${orin.gateway.hedging.min-samples:20}")
+    private int minSamples = 20;
+
+    @Value("${orin.gateway.hedging.min-delay-ms:10}")
+    private long minDelayMs = 10;
+
+    @Value("${orin.gateway.hedging.max-series:1000}")
+    private int maxSeries = 1000;
+
+    @Value("${orin.gateway.hedging.window-slots:6}")
+    private int windowSlots = 6;
+
+    /**
+     * 补全请求 max_tokens 不超过该值时才视为“短请求”参与对冲
+     */
+    @Value("${orin.gateway.hedging.max-completion-tokens:64}")
+    private int maxCompletionTokens = 64;
+
+    public HedgingService(MeterRegistry meterRegistry) {
+        this.observed = new RollingLatency(STATS_SLOTS);
+        this.primaryOnly = new RollingLatency(STATS_SLOTS);
+        this.requests = Counter.builder("gateway.hedging.requests")
+                .description("Requests eligible for hedging")
+                .register(meterRegistry);
+        this.hedges = Counter.builder("gateway.hedging.hedges")
+                .description("Extra upstream requests sent as hedges")
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("gateway.hedging.wins")
+                .description("Hedged requests answered first by the hedge")
+                .register(meterRegistry);
+        this.budgetDenied = Counter.builder("gateway.hedging.budget_denied")
+                .description("Hedges skipped because the hedging budget was exhausted")
+                .register(meterRegistry);
+        Gauge.builder("gateway.hedging.p99_ms", observed, RollingLatency::p99)
+                .description("Rolling p99 of hedge-eligible requests as served")
+                .tag("series", "observed")
+                .register(meterRegistry);
+        Gauge.builder("gateway.hedging.p99_ms", primaryOnly, RollingLatency::p99)
+                .description("Rolling p99 of the primary attempt alone (lower bound when cancelled)")
+                .tag("series", "primary")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 补全请求是否足够短、可以对冲：非流式且显式限制了较小的 max_tokens
+     */
+    public boolean isHedgeable(ChatCompletionRequest request) {
+        return enabled && !Boolean.TRUE.equals(request.getStream())
+                && request.getMaxTokens() != null && request.getMaxTokens() <= maxCompletionTokens;
+    }
+
+    /**
+     * 以对冲方式执行调用
+     *
+     * @param model     模型（滚动 p90 的维度）
+     * @param primary   主请求
+     * @param alternate 对冲请求，只在需要对冲时才创建
+     */
+    public <T> Mono<T> hedge(String model, Mono<T> primary, Supplier<Mono<T>> alternate) {
+        if (!enabled) {
+            return primary;
+        }
+        return Mono.defer(() -> {
+            requests.increment();
+            budget.add(nowSecond(), 1, 0);
+            RollingLatency latency = latencyOf(model);
+            long startedAt = nanoClock.getAsLong();
+            long delayMs = latency != null && latency.count() >= minSamples
+                    ? Math.max(minDelayMs, latency.p90()) : -1;
+
+            AtomicBoolean primaryDone = new AtomicBoolean();
+            Mono<T> primaryAttempt = primary
+                    .doOnSuccess(value -> {
+                        long elapsed = elapsedMs(startedAt);
+                        if (primaryDone.compareAndSet(false, true)) {
+                            primaryOnly.record(elapsed);
+                        }
+                        if (latency != null) {
+                            latency.record(elapsed);
+                        }
+                    })
+                    .doOnError(e -> primaryDone.set(true));
+            if (delayMs < 0) {
+                return primaryAttempt.doOnSuccess(value -> observed.record(elapsedMs(startedAt)));
+            }
+
+            // 对冲胜出时主请求被取消，按取消时已耗时计入主请求分布（下界）
+            Mono<T> primaryView = primaryAttempt
+                    .doOnCancel(() -> {
+                        if (primaryDone.compareAndSet(false, true)) {
+                            primaryOnly.record(elapsedMs(startedAt));
+                        }
+                    });
+
+            // 对冲一方的失败 / 空结果不参与竞争，只有结果才能胜出；主请求的任何信号都直接生效
+            Mono<T> hedgeAttempt = Mono.delay(Duration.ofMillis(delayMs))
+                    .flatMap(tick -> {
+                        if (primaryDone.get() || !tryAcquireHedge()) {
+                            return Mono.<T>never();
+                        }
+                        hedges.increment();
+                        return alternate.get()
+                                .doOnSuccess(value -> {
+                                    if (value != null) {
+                                        hedgeWins.increment();
+                                        if (latency != null) {
+                                            latency.record(elapsedMs(startedAt) - delayMs);
+                                        }
+                                    }
+                                })
+                                .onErrorResume(e -> {
+                                    log.debug("Hedge request for model {} failed: {}", model, e.getMessage());
+                                    return Mono.never();
+                                })
+                                .switchIfEmpty(Mono.never());
+                    });
+            return Mono.firstWithSignal(primaryView, hedgeAttempt)
+                    .doOnSuccess(value -> observed.record(elapsedMs(startedAt)));
+        });
+    }
+
+    private boolean tryAcquireHedge() {
+        long now = nowSecond();
+        synchronized (budget) {
+            long[] totals = budget.totals(now);
+            if (totals[1] + 1 > totals[0] * budgetRatio) {
+                budgetDenied.increment();
+                return false;
+            }
+            budget.add(now, 0, 1);
+            return true;
+        }
+    }
+
+    private RollingLatency latencyOf(String model) {
+        if (model == null || model.isBlank()) {
+            return null;
+        }
+        RollingLatency latency = modelLatency.get(model);
+        if (latency == null) {
+            // 模型名来自请求，限制序列数量
+            if (modelLatency.size() >= maxSeries) {
+                return null;
+            }
+            latency = modelLatency.computeIfAbsent(model, k -> new RollingLatency(windowSlots));
+        }
+        return latency;
+    }
+
+    /**
+     * 轮转各模型的滚动直方图并刷新缓存的分位数
+     */
+    @Scheduled(fixedDelayString = "${orin.gateway.hedging.rotate-ms:10000}")
+    public void rotate() {
+        modelLatency.values().forEach(RollingLatency::rotate);
+        observed.rotate();
+        primaryOnly.rotate();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        double total = requests.count();
+        stats.put("requests", (long) total);
+        stats.put("hedges", (long) hedges.count());
+        stats.put("hedgeWins", (long) hedgeWins.count());
+        stats.put("budgetDenied", (long) budgetDenied.count());
+        stats.put("extraRequestRatio", total > 0 ? hedges.count() / total : 0.0);
+        stats.put("p99Ms", observed.p99());
+        stats.put("primaryP99Ms", primaryOnly.p99());
+        stats.put("models", modelLatency.size());
+        return stats;
+    }
+
+    long hedgeDelayMs(String model) {
+        RollingLatency latency = modelLatency.get(model);
+        return latency != null && latency.count() >= minSamples ? Math.max(minDelayMs, latency.p90()) : -1;
+    }
+
+    void setClock(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    private long elapsedMs(long startedAtNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - startedAtNanos);
+    }
+
+    private static long nowSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * 滚动延迟分布：记录走 Recorder 无锁，轮转时合并最近若干区间并缓存分位数
+     */
+    static final class RollingLatency {
+        private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+        private final Histogram[] slots;
+        private int next;
+        private volatile long p90;
+        private volatile long p99;
+        private volatile long count;
+
+        RollingLatency(int slots) {
+            this.slots = new Histogram[Math.max(1, slots)];
+        }
+
+        void record(long latencyMs) {
+            recorder.recordValue(Math.max(0L, latencyMs));
+        }
+
+        synchronized void rotate() {
+            slots[next] = recorder.getIntervalHistogram();
+            next = (next + 1) % slots.length;
+            Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+            for (Histogram slot : slots) {
+                if (slot != null) {
+                    merged.add(slot);
+                }
+            }
+            count = merged.getTotalCount();
+            p90 = count > 0 ? merged.getValueAtPercentile(90) : 0;
+            p99 = count > 0 ? merged.getValueAtPercentile(99) : 0;
+        }
+
+        long p90() {
+            return p90;
+        }
+
+        long p99() {
+            return p99;
+        }
+
+        long count() {
+            return count;
+        }
+    }
+
+    /** 按秒分槽的环形窗口：请求数与对冲数 */
+    private static final class BudgetWindow {
+        private final long[] seconds = new long[BUDGET_WINDOW_SECONDS];
+        private final long[] requests = new long[BUDGET_WINDOW_SECONDS];
+        private final long[] hedges = new long[BUDGET_WINDOW_SECONDS];
+
+        synchronized void add(long now, long requestDelta, long hedgeDelta) {
+            int slot = (int) (now % BUDGET_WINDOW_SECONDS);
+            if (seconds[slot] != now) {
+                seconds[slot] = now;
+                requests[slot] = 0;
+                hedges[slot] = 0;
+            }
+            requests[slot] += requestDelta;
+            hedges[slot] += hedgeDelta;
+        }
+
+        synchronized long[] totals(long now) {
+            long totalRequests = 0;
+            long totalHedges = 0;
+            for (int i = 0; i < BUDGET_WINDOW_SECONDS; i++) {
+                if (now - seconds[i] < BUDGET_WINDOW_SECONDS) {
+                    totalRequests += requests[i];
+                    totalHedges += hedges[i];
+                }
+            }
+            return new long[]{totalRequests, totalHedges};
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.adapter.ProviderAdapter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Provider 实时负载跟踪（自适应路由的数据来源）
+ *
+ * 按 Provider + 模型维护：
+ * - 时间衰减 EWMA 延迟与错误率（流式调用取首个分片的延迟）
+ * - 在途请求数
+ * - 连续失败 / 错误率超阈值时摘除（outlier ejection），摘除时长随次数递增；恢复后进入慢启动，权重线性爬升
+ *
+ * 所有状态都在响应路径上通过 CAS 无锁更新，选择路径只读快照。
+ * 429、5xx、超时和连接失败计为 Provider 错误；其它 4xx 属于请求本身的问题，不计入。
+ */
+@Slf4j
+@Service
+public class ProviderLoadTracker {
+
+    private final Cache<String, Stats> stats = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(30))
+            .maximumSize(10_000)
+            .build();
+
+    private LongSupplier clock = System::currentTimeMillis;
+
+    @Value("${orin.gateway.routing.decay-ms:10000}")
+    private long decayMs = 10_000;
+
+    @Value("${orin.gateway.routing.consecutive-errors:5}")
+    private int consecutiveErrors = 5;
+
+    @Value("${orin.gateway.routing.eject-error-rate:0.5}")
+    private double ejectErrorRate = 0.5;
+
+    @Value("${orin.gateway.routing.eject-min-samples:20}")
+    private int ejectMinSamples = 20;
+
+    @Value("${orin.gateway.routing.base-ejection-ms:30000}")
+    private long baseEjectionMs = 30_000;
+
+    @Value("${orin.gateway.routing.max-ejection-ms:300000}")
+    private long maxEjectionMs = 300_000;
+
+    @Value("${orin.gateway.routing.slow-start-ms:30000}")
+    private long slowStartMs = 30_000;
+
+    @Value("${orin.gateway.routing.slow-start-min-weight:0.1}")
+    private double slowStartMinWeight = 0.1;
+
+    /**
+     * 跟踪一次非流式上游调用（订阅时计入在途，结束时更新统计）
+     */
+    public <T> Mono<T> observe(ProviderAdapter provider, String model, Mono<T> call) {
+        return Mono.defer(() -> {
+            Call tracked = begin(provider, model);
+            return call
+                    .doOnSuccess(value -> tracked.success())
+                    .doOnError(tracked::failure)
+                    .doOnCancel(tracked::cancel);
+        });
+    }
+
+    /**
+     * 跟踪一次流式上游调用：首个分片到达时记录延迟，之后的错误仍计入错误率
+     */
+    public <T> Flux<T> observeStream(ProviderAdapter provider, String model, Flux<T> call) {
+        return Flux.defer(() -> {
+            Call tracked = begin(provider, model);
+            AtomicBoolean first = new AtomicBoolean(true);
+            return call
+                    .doOnNext(value -> {
+                        if (first.compareAndSet(true, false)) {
+                            tracked.firstChunk();
+                        }
+                    })
+                    .doOnComplete(tracked::success)
+                    .doOnError(tracked::failure)
+                    .doOnCancel(tracked::cancel);
+        });
+    }
+
+    Call begin(ProviderAdapter provider, String model) {
+        Stats s = stats.get(key(provider, model), Stats::new);
+        s.inFlight.incrementAndGet();
+        return new Call(s, clock.getAsLong());
+    }
+
+    /**
+     * 某 Provider + 模型当前的路由快照
+     */
+    public View view(ProviderAdapter provider, String model) {
+        Stats s = stats.getIfPresent(key(provider, model));
+        long now = clock.getAsLong();
+        if (s == null) {
+            return new View(Double.NaN, 0.0, 0, false, 1.0);
+        }
+        Ewma ewma = s.ewma.get();
+        long ejectedUntil = s.ejectedUntil.get();
+        boolean ejected = ejectedUntil > now;
+        return new View(ewma.samples() > 0 ? ewma.latencyMs() : Double.NaN, ewma.errorRate(),
+                s.inFlight.get(), ejected, ejected ? 0.0 : slowStartWeight(s.warmingSince.get(), now));
+    }
+
+    /**
+     * 慢启动权重：从 warmingSince 起在 slowStartMs 内由最小权重线性升到 1
+     */
+    double slowStartWeight(long warmingSince, long now) {
+        if (warmingSince <= 0 || slowStartMs <= 0 || now - warmingSince >= slowStartMs) {
+            return 1.0;
+        }
+        double progress = Math.max(0, now - warmingSince) / (double) slowStartMs;
+        return slowStartMinWeight + (1.0 - slowStartMinWeight) * progress;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long now = clock.getAsLong();
+        stats.asMap().forEach((key, s) -> {
+            Ewma ewma = s.ewma.get();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("latencyMs", Math.round(ewma.latencyMs()));
+            item.put("errorRate", Math.round(ewma.errorRate() * 1000) / 1000.0);
+            item.put("inFlight", s.inFlight.get());
+            item.put("ejected", s.ejectedUntil.get() > now);
+            item.put("ejections", s.ejections.get());
+            item.put("weight", slowStartWeight(s.warmingSince.get(), now));
+            result.put(key, item);
+        });
+        return result;
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    private static String key(ProviderAdapter provider, String model) {
+        return provider.getProviderName() + '|' + (model != null ? model : "*");
+    }
+
+    static boolean isProviderError(Throwable error) {
+        if (error instanceof WebClientResponseException response) {
+            int status = response.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return error instanceof TimeoutException || error instanceof WebClientRequestException
+                || error.getCause() instanceof TimeoutException;
+    }
+
+    private void record(Stats s, long latencyMs, boolean error) {
+        long now = clock.getAsLong();
+        s.ewma.updateAndGet(current -> current.update(latencyMs, error, now, decayMs));
+        if (!error) {
+            s.consecutiveFailures.set(0);
+            return;
+        }
+        int failures = s.consecutiveFailures.incrementAndGet();
+        Ewma ewma = s.ewma.get();
+        if (failures >= consecutiveErrors || (ewma.samples() >= ejectMinSamples && ewma.errorRate() >= ejectErrorRate)) {
+            eject(s, now);
+        }
+    }
+
+    private void eject(Stats s, long now) {
+        long until = s.ejectedUntil.get();
+        if (until > now) {
+            return;
+        }
+        // 只有赢得 CAS 的一方累加摘除次数，并发失败不会拉长后续摘除时长
+        int ejections = s.ejections.get() + 1;
+        long duration = Math.min(maxEjectionMs, baseEjectionMs * ejections);
+        if (s.ejectedUntil.compareAndSet(until, now + duration)) {
+            s.ejections.incrementAndGet();
+            // 恢复后重新评估：清空错误率样本并从摘除结束时刻开始慢启动
+            s.ewma.updateAndGet(Ewma::resetErrors);
+            s.consecutiveFailures.set(0);
+            s.warmingSince.set(now + duration);
+            log.warn("Provider {} ejected from routing for {} ms: ejections={}", s.key, duration, ejections);
+        }
+    }
+
+    /**
+     * 路由快照；latencyMs 为 NaN 表示尚无样本
+     */
+    public record View(double latencyMs, double errorRate, int inFlight, boolean ejected, double weight) {
+    }
+
+    private record Ewma(double latencyMs, double errorRate, long samples, long updatedAt) {
+
+        static final Ewma EMPTY = new Ewma(0, 0, 0, 0);
+
+        Ewma update(long latency, boolean error, long now, long decayMs) {
+            if (samples == 0) {
+                return new Ewma(error ? 0 : latency, error ? 1 : 0, 1, now);
+            }
+            double alpha = 1 - Math.exp(-Math.max(1, now - updatedAt) / (double) Math.max(1, decayMs));
+            // 失败的调用不更新延迟（超时等会把延迟拉到无意义的值），只影响错误率
+            double nextLatency = error ? latencyMs : latencyMs + alpha * (latency - latencyMs);
+            double nextError = errorRate + alpha * ((error ? 1 : 0) - errorRate);
+            return new Ewma(nextLatency, nextError, samples + 1, now);
+        }
+
+        Ewma resetErrors() {
+            return new Ewma(latencyMs, 0, samples > 0 ? 1 : 0, updatedAt);
+        }
+    }
+
+    private static final class Stats {
+        private final String key;
+        private final AtomicReference<Ewma> ewma = new AtomicReference<>(Ewma.EMPTY);
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger ejections = new AtomicInteger();
+        private final AtomicLong ejectedUntil = new AtomicLong();
+        // 仅在摘除恢复后设置；新出现的 Provider / 模型直接按满权重参与路由
+        private final AtomicLong warmingSince = new AtomicLong();
+
+        private Stats(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * 一次在途调用；结束信号只生效一次
+     */
+    final class Call {
+        private final Stats stats;
+        private final long startedAt;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile boolean latencyRecorded;
+
+        private Call(Stats stats, long startedAt) {
+            this.stats = stats;
+            this.startedAt = startedAt;
+        }
+
+        void firstChunk() {
+            latencyRecorded = true;
+            record(stats, clock.getAsLong() - startedAt, false);
+        }
+
+        void success() {
+            if (done.compareAndSet(false, true)) {
+                stats.inFlight.decrementAndGet();
+                if (!latencyRecorded) {
+                    record(stats, clock.getAsLong() - startedAt, false);
+                }
+            }
+        }
+
+        void failure(Throwable error) {
+            if (done.compareAndSet(false, true)) {
+                stats.inFlight.decrementAndGet();
+                if (isProviderError(error)) {
+                    record(stats, clock.getAsLong() - startedAt, true);
+                }
+            }
+        }
+
+        void cancel() {
+            if (done.compareAndSet(false, true)) {
+                stats.inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -31,6 +31,11 @@ public class ProviderRegistry {
      */
     private final Map<String, Long> lastHealthCheck = new ConcurrentHashMap<>();
 
+    /**
+     * Provider最近一次由不健康恢复的时间，自适应路由据此慢启动；新注册的 Provider 不慢启动
+     */
+    private final Map<String, Long> healthySince = new ConcurrentHashMap<>();
+
     /**
      * 健康检查间隔（毫秒）
      */
@@ -58,6 +63,7 @@ public class ProviderRegistry {
         providers.remove(providerId);
         healthStatus.remove(providerId);
         lastHealthCheck.remove(providerId);
+        healthySince.remove(providerId);
         log.info("Provider unregistered: {}", providerId);
     }
 
@@ -129,6 +135,21 @@ public class ProviderRegistry {
         return Collections.unmodifiableMap(new HashMap<>(healthStatus));
     }
 
+    /**
+     * Provider最近一次恢复健康的时间戳（毫秒），未知时返回 0
+     *
+     * @param adapter Provider适配器
+     * @return 恢复时间
+     */
+    public long getHealthySince(ProviderAdapter adapter) {
+        for (Map.Entry<String, ProviderAdapter> entry : providers.entrySet()) {
+            if (entry.getValue() == adapter) {
+                return healthySince.getOrDefault(entry.getKey(), 0L);
+            }
+        }
+        return 0L;
+    }
+
     /**
      * 检查Provider健康状态
      * 
@@ -150,7 +171,10 @@ public class ProviderRegistry {
         // 执行健康检查
         return provider.healthCheck()
                 .doOnNext(healthy -> {
-                    healthStatus.put(providerId, healthy);
+                    Boolean previous = healthStatus.put(providerId, healthy);
+                    if (healthy && !Boolean.TRUE.equals(previous)) {
+                        healthySince.put(providerId, System.currentTimeMillis());
+                    }
                     lastHealthCheck.put(providerId, System.currentTimeMillis());
                     if (!healthy) {
                         log.warn("Provider {} is unhealthy", providerId);
@@ -0,0 +1,134 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.dto.ChatCompletionRequest;
+import com.adlin.orin.gateway.dto.ChatCompletionResponse;
+import com.adlin.orin.gateway.dto.EmbeddingRequest;
+import com.adlin.orin.gateway.dto.EmbeddingResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 上游请求合并（single-flight）
+ *
+ * 同一租户、同一 Provider 上规范化后完全相同的请求在执行期间只向上游发一次：
+ * - 第一个请求成为 leader 发起调用，期间到达的相同请求订阅同一个结果
+ * - 流式请求共享同一个上游 Flux，并回放已收到的分片，晚加入的调用方也能拿到完整输出
+ * - 所有调用方都取消时上游订阅随之取消；结束（成功 / 失败 / 取消）后立即移出在途表，
+ *   之后的相同请求重新发起调用（结果复用交给 ChatCompletionCache）
+ *
+ * 租户（ChatCompletionCache.tenantOf）与请求体里的 user 字段都参与合并键，不同租户、不同终端用户的请求不会被合并；
+ * 无法确定租户（tenant 为 null）的请求不合并。
+ * 聊天请求只有在响应缓存认为可复用（确定性采样，或通过 X-Orin-Cache 显式选择复用）时才合并，
+ * 否则每个调用方都应拿到独立的采样结果。共享的响应对象调用方只读不改。
+ */
+@Slf4j
+@Service
+public class RequestCoalescer {
+
+    private final Map<String, Flux<?>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Value("${orin.gateway.coalescing.enabled:true}")
+    private boolean enabled = true;
+
+    public RequestCoalescer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("gateway.coalescing.in_flight", inFlight, Map::size)
+                .description("Distinct upstream calls currently shared by coalesced requests")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 合并执行一次非流式聊天请求（流式 chatCompletionStream 参数相同）
+     *
+     * @param tenant   调用方租户，见 ChatCompletionCache.tenantOf
+     * @param reusable 结果能否给其他调用方复用，见 ChatCompletionCache.isReusable；否则不合并
+     */
+    public Mono<ChatCompletionResponse> chatCompletion(String tenant, String providerName,
+            ChatCompletionRequest request, boolean reusable, Supplier<Mono<ChatCompletionResponse>> upstream) {
+        String key = reusable ? keyOf("chat", tenant, providerName, request) : null;
+        return key == null ? upstream.get() : join("chat", key, () -> upstream.get().flux()).next();
+    }
+
+    public Flux<ChatCompletionResponse> chatCompletionStream(String tenant, String providerName,
+            ChatCompletionRequest request, boolean reusable, Supplier<Flux<ChatCompletionResponse>> upstream) {
+        String key = reusable ? keyOf("stream", tenant, providerName, request) : null;
+        return key == null ? upstream.get() : join("stream", key, upstream);
+    }
+
+    public Mono<EmbeddingResponse> embedding(String tenant, String providerName, EmbeddingRequest request,
+            Supplier<Mono<EmbeddingResponse>> upstream) {
+        String key = keyOf("embedding", tenant, providerName, request);
+        return key == null ? upstream.get() : join("embedding", key, () -> upstream.get().flux()).next();
+    }
+
+    private String keyOf(String kind, String tenant, String providerName, Object request) {
+        if (!enabled || tenant == null || request == null) {
+            return null;
+        }
+        try {
+            return kind + ':' + CanonicalRequests.sha256(tenant + '\n' + providerName + '\n'
+                    + CanonicalRequests.tree(request));
+        } catch (IllegalArgumentException e) {
+            log.debug("Request not coalesced, not serializable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 订阅时才决定 leader / follower，避免组装期与执行期之间的竞争
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Flux<T> join(String kind, String key, Supplier<Flux<T>> upstream) {
+        return Flux.defer(() -> {
+            boolean[] leader = new boolean[1];
+            Flux<T> shared = (Flux<T>) inFlight.computeIfAbsent(key, k -> {
+                leader[0] = true;
+                return share(key, upstream);
+            });
+            counter(kind, leader[0] ? "leader" : "coalesced").increment();
+            return shared;
+        });
+    }
+
+    private <T> Flux<T> share(String key, Supplier<Flux<T>> upstream) {
+        Flux<?>[] self = new Flux<?>[1];
+        Flux<T> shared = Flux.defer(upstream)
+                .doFinally(signal -> inFlight.remove(key, self[0]))
+                .replay()
+                .refCount();
+        self[0] = shared;
+        return shared;
+    }
+
+    private Counter counter(String kind, String role) {
+        return counters.computeIfAbsent(kind + ':' + role, k -> Counter.builder("gateway.coalescing.requests")
+                .description("Gateway LLM / embedding requests by coalescing role; coalesced = upstream calls saved")
+                .tag("kind", kind)
+                .tag("role", role)
+                .register(meterRegistry));
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new TreeMap<>();
+        stats.put("inFlight", inFlight.size());
+        counters.forEach((name, counter) -> stats.put(name, (long) counter.count()));
+        return stats;
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+}
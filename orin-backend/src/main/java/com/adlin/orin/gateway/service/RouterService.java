@@ -5,11 +5,14 @@ import com.adlin.orin.gateway.config.GatewayModelProperties;
 import com.adlin.orin.gateway.dto.ChatCompletionRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -23,6 +26,13 @@ public class RouterService {
 
     private final ProviderRegistry providerRegistry;
     private final GatewayModelProperties modelProperties;
+    private final ProviderLoadTracker loadTracker;
+
+    /**
+     * 自适应路由中错误率的惩罚系数：得分 = 延迟 × (在途 + 1) × (1 + 系数 × 错误率) / 慢启动权重
+     */
+    @Value("${orin.gateway.routing.error-penalty:10}")
+    private double errorPenalty = 10;
 
     /**
      * 路由策略枚举
@@ -46,7 +56,12 @@ public class RouterService {
         /**
          * 优先级
          */
-        PRIORITY
+        PRIORITY,
+
+        /**
+         * 自适应：按实时延迟、错误率、在途数做 P2C 选择，摘除异常 Provider，恢复后慢启动
+         */
+        ADAPTIVE
     }
 
     private final AtomicInteger roundRobinIndex = new AtomicInteger(0);
@@ -71,6 +86,7 @@ public class RouterService {
             case LOWEST_COST -> selectLowestCost(healthyProviders, request);
             case RANDOM -> selectRandom(healthyProviders);
             case PRIORITY -> selectByPriority(healthyProviders);
+            case ADAPTIVE -> selectAdaptive(healthyProviders, modelOf(request));
         };
     }
 
@@ -138,7 +154,7 @@ public class RouterService {
             return selectProviderByType("local", request);
         }
 
-        return selectProvider(request, RoutingStrategy.LOWEST_COST);
+        return selectProvider(request, defaultStrategy());
     }
 
     /**
@@ -156,8 +172,47 @@ public class RouterService {
             return Optional.empty();
         }
 
-        // 在同类型中选择最低成本
-        return selectLowestCost(providers, request);
+        // 在同类型中按默认策略选择（未配置自适应时为最低成本）
+        return defaultStrategy() == RoutingStrategy.ADAPTIVE
+                ? selectAdaptive(providers, modelOf(request))
+                : selectLowestCost(providers, request);
+    }
+
+    /**
+     * 为对冲请求选择备选Provider：同类型的其它健康Provider中按自适应策略选择；
+     * 没有同类备选时返回主Provider本身（再发一次，可能落到上游的另一个实例）
+     *
+     * @param primary 主Provider
+     * @param model   模型名称
+     * @return 备选Provider
+     */
+    public Optional<ProviderAdapter> selectAlternate(ProviderAdapter primary, String model) {
+        List<ProviderAdapter> peers = providerRegistry.getHealthyProvidersByType(primary.getProviderType()).stream()
+                .filter(provider -> provider != primary)
+                .toList();
+        if (peers.isEmpty()) {
+            return Optional.of(primary);
+        }
+        return selectAdaptive(peers, model);
+    }
+
+    private static String modelOf(ChatCompletionRequest request) {
+        return request != null ? request.getModel() : null;
+    }
+
+    /**
+     * 配置的默认路由策略（orin.gateway.model-mapping.default-strategy），无效时为最低成本
+     */
+    private RoutingStrategy defaultStrategy() {
+        String configured = modelProperties.getDefaultStrategy();
+        if (configured == null || configured.isBlank()) {
+            return RoutingStrategy.LOWEST_COST;
+        }
+        try {
+            return RoutingStrategy.valueOf(configured.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return RoutingStrategy.LOWEST_COST;
+        }
     }
 
     /**
@@ -189,6 +244,59 @@ public class RouterService {
         return selected;
     }
 
+    /**
+     * 自适应选择（power of two choices）
+     * 排除被摘除的 Provider（全部被摘除时退回全集），随机取两个比较得分，得分低者胜出
+     */
+    private Optional<ProviderAdapter> selectAdaptive(List<ProviderAdapter> providers, String model) {
+        if (providers.isEmpty()) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        List<ProviderAdapter> candidates = new ArrayList<>(providers.size());
+        List<ProviderLoadTracker.View> views = new ArrayList<>(providers.size());
+        for (ProviderAdapter provider : providers) {
+            ProviderLoadTracker.View view = loadTracker.view(provider, model);
+            if (!view.ejected()) {
+                double recovering = loadTracker.slowStartWeight(providerRegistry.getHealthySince(provider), now);
+                candidates.add(provider);
+                views.add(new ProviderLoadTracker.View(view.latencyMs(), view.errorRate(), view.inFlight(),
+                        false, Math.min(view.weight(), recovering)));
+            }
+        }
+        if (candidates.isEmpty()) {
+            log.warn("All {} providers are ejected, routing across all of them", providers.size());
+            for (ProviderAdapter provider : providers) {
+                ProviderLoadTracker.View view = loadTracker.view(provider, model);
+                candidates.add(provider);
+                views.add(new ProviderLoadTracker.View(view.latencyMs(), view.errorRate(), view.inFlight(), false, 1.0));
+            }
+        }
+        if (candidates.size() == 1) {
+            return Optional.of(candidates.get(0));
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        ProviderLoadTracker.View a = views.get(first);
+        ProviderLoadTracker.View b = views.get(second);
+        // 无样本的一方借用对方的延迟，由在途数与权重决定，避免新 Provider 被饿死或一拥而上
+        double latencyA = Double.isNaN(a.latencyMs()) ? (Double.isNaN(b.latencyMs()) ? 1 : b.latencyMs()) : a.latencyMs();
+        double latencyB = Double.isNaN(b.latencyMs()) ? latencyA : b.latencyMs();
+        ProviderAdapter selected = score(a, latencyA) <= score(b, latencyB) ? candidates.get(first) : candidates.get(second);
+        log.debug("Adaptive selected provider: {}", selected.getProviderName());
+        return Optional.of(selected);
+    }
+
+    private double score(ProviderLoadTracker.View view, double latencyMs) {
+        return Math.max(1, latencyMs) * (view.inFlight() + 1) * (1 + errorPenalty * view.errorRate())
+                / Math.max(0.01, view.weight());
+    }
+
     /**
      * 随机选择
      */
@@ -233,6 +341,8 @@ public class RouterService {
         stats.put("healthyProviders", providerRegistry.getHealthyProviders().size());
         stats.put("totalProviders", providerRegistry.getAllProviders().size());
         stats.put("currentRoundRobinIndex", roundRobinIndex);
+        stats.put("defaultStrategy", defaultStrategy());
+        stats.put("providerLoad", loadTracker.snapshot());
         return stats;
     }
 }
@@ -15,7 +15,8 @@ import java.time.LocalDateTime;
 @Table(name = "gateway_secrets", indexes = {
         @Index(name = "idx_gateway_secret_type_provider_status", columnList = "secretType,provider,status"),
         @Index(name = "idx_gateway_secret_user", columnList = "userId"),
-        @Index(name = "idx_gateway_secret_key_hash", columnList = "keyHash")
+        @Index(name = "idx_gateway_secret_key_hash", columnList = "keyHash"),
+        @Index(name = "idx_gateway_secret_type_key_prefix", columnList = "secretType,keyPrefix")
 })
 @Data
 @Builder
@@ -2,8 +2,14 @@ package com.adlin.orin.modules.apikey.repository;
 
 import com.adlin.orin.modules.apikey.entity.GatewaySecret;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +21,28 @@ public interface GatewaySecretRepository extends JpaRepository<GatewaySecret, St
     List<GatewaySecret> findBySecretTypeAndStatus(GatewaySecret.SecretType secretType,
                                                   GatewaySecret.SecretStatus status);
 
+    List<GatewaySecret> findBySecretTypeAndStatusAndKeyPrefix(GatewaySecret.SecretType secretType,
+                                                              GatewaySecret.SecretStatus status,
+                                                              String keyPrefix);
+
+    /**
+     * 历史迁移的密钥 key_prefix 不是标准长度的公开前缀，无法按前缀定位
+     */
+    @Query("""
+            SELECT s FROM GatewaySecret s
+            WHERE s.secretType = :secretType AND s.status = :status
+              AND (s.keyPrefix IS NULL OR LENGTH(s.keyPrefix) <> :prefixLength)
+            """)
+    List<GatewaySecret> findLegacyPrefixSecrets(@Param("secretType") GatewaySecret.SecretType secretType,
+                                                @Param("status") GatewaySecret.SecretStatus status,
+                                                @Param("prefixLength") int prefixLength);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE GatewaySecret s SET s.lastUsedAt = :lastUsedAt WHERE s.secretId IN :secretIds")
+    int updateLastUsedAt(@Param("secretIds") Collection<String> secretIds,
+                         @Param("lastUsedAt") LocalDateTime lastUsedAt);
+
     List<GatewaySecret> findBySecretTypeOrderByUpdatedAtDesc(GatewaySecret.SecretType secretType);
 
     List<GatewaySecret> findBySecretTypeAndProviderIgnoreCaseAndStatusOrderByUpdatedAtDesc(
@@ -3,22 +3,37 @@ package com.adlin.orin.modules.apikey.service;
 import com.adlin.orin.modules.apikey.entity.GatewaySecret;
 import com.adlin.orin.modules.apikey.repository.GatewaySecretRepository;
 import com.adlin.orin.security.EncryptionUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 统一网关密钥中心服务。
@@ -30,11 +45,34 @@ public class GatewaySecretService {
 
     private static final String CLIENT_KEY_PREFIX = "sk-orin-";
     private static final int KEY_LENGTH = 32;
+    /**
+     * 密钥前 16 位（sk-orin- + 8 位随机串）作为公开的 key_prefix，也是校验时的索引查找 ID
+     */
+    private static final int KEY_PREFIX_LENGTH = 16;
 
     private final GatewaySecretRepository gatewaySecretRepository;
     private final EncryptionUtil encryptionUtil;
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
     private final SecureRandom secureRandom = new SecureRandom();
+    private final byte[] verifiedCacheHmacKey = randomBytes(32);
+    private final ThreadLocal<Mac> verifiedCacheMac = ThreadLocal.withInitial(this::newVerifiedCacheMac);
+    private final Map<String, LocalDateTime> pendingLastUsed = new ConcurrentHashMap<>();
+    private volatile Cache<String, GatewaySecret> verifiedCache;
+
+    /**
+     * 校验成功缓存的有效期：禁用 / 删除 / 轮换在本节点立即生效，其它节点最迟在 TTL 后生效
+     */
+    @Value("${orin.gateway.secret.verified-cache.ttl-seconds:30}")
+    private long verifiedCacheTtlSeconds = 30;
+
+    @Value("${orin.gateway.secret.verified-cache.max-size:10000}")
+    private long verifiedCacheMaxSize = 10000;
+
+    /**
+     * 前缀未命中时是否再比对 key_prefix 非标准的历史迁移密钥（没有此类密钥时可关闭）
+     */
+    @Value("${orin.gateway.secret.legacy-prefix-scan:true}")
+    private boolean legacyPrefixScan = true;
 
     @Transactional
     public ClientAccessSecretWithValue createClientAccessSecret(String userId,
@@ -54,7 +92,7 @@ public class GatewaySecretService {
                 .secretType(GatewaySecret.SecretType.CLIENT_ACCESS)
                 .status(GatewaySecret.SecretStatus.ACTIVE)
                 .keyHash(passwordEncoder.encode(rawSecret))
-                .keyPrefix(secretValue.substring(0, Math.min(16, secretValue.length())))
+                .keyPrefix(secretValue.substring(0, Math.min(KEY_PREFIX_LENGTH, secretValue.length())))
                 .encryptedSecret(encryptionUtil.encrypt(secretValue))
                 .last4(secretValue.substring(Math.max(0, secretValue.length() - 4)))
                 .userId(userId)
@@ -73,33 +111,71 @@ public class GatewaySecretService {
         return new ClientAccessSecretWithValue(secret, secretValue);
     }
 
+    /**
+     * 校验调用方密钥。
+     *
+     * 按 (secret_type, key_prefix) 索引取候选行，通常只有一行、只做一次 BCrypt 比对，耗时与密钥总数无关；
+     * 校验成功的结果以 HMAC(原始密钥) 为键短期缓存，lastUsedAt 记在内存中由定时任务批量落库。
+     */
     public Optional<GatewaySecret> validateClientAccessSecret(String apiKeyString) {
         if (apiKeyString == null || !apiKeyString.startsWith(CLIENT_KEY_PREFIX)) {
             return Optional.empty();
         }
 
-        String rawSecret = apiKeyString.substring(CLIENT_KEY_PREFIX.length());
-        List<GatewaySecret> candidates = gatewaySecretRepository.findBySecretTypeAndStatus(
-                GatewaySecret.SecretType.CLIENT_ACCESS,
-                GatewaySecret.SecretStatus.ACTIVE);
-
-        for (GatewaySecret candidate : candidates) {
-            if (candidate.getKeyHash() == null || candidate.getKeyHash().isBlank()) {
-                continue;
-            }
-            if (!matchesHash(rawSecret, candidate.getKeyHash())) {
-                continue;
-            }
-            if (candidate.isExpired() || candidate.isQuotaExceeded()) {
+        String cacheKey = verifiedCacheKey(apiKeyString);
+        GatewaySecret cached = verifiedCache().getIfPresent(cacheKey);
+        if (cached != null) {
+            if (cached.getStatus() != GatewaySecret.SecretStatus.ACTIVE
+                    || cached.isExpired() || cached.isQuotaExceeded()) {
+                verifiedCache().invalidate(cacheKey);
                 return Optional.empty();
             }
+            markUsed(cached);
+            return Optional.of(cached);
+        }
 
-            candidate.setLastUsedAt(LocalDateTime.now());
-            gatewaySecretRepository.save(candidate);
-            return Optional.of(candidate);
+        String rawSecret = apiKeyString.substring(CLIENT_KEY_PREFIX.length());
+        Optional<GatewaySecret> matched = findMatchingClientAccessSecret(apiKeyString, rawSecret);
+        if (matched.isEmpty()) {
+            return Optional.empty();
+        }
+        GatewaySecret candidate = matched.get();
+        if (candidate.isExpired() || candidate.isQuotaExceeded()) {
+            return Optional.empty();
         }
 
-        return Optional.empty();
+        verifiedCache().put(cacheKey, candidate);
+        markUsed(candidate);
+        return Optional.of(candidate);
+    }
+
+    /**
+     * 将内存中累积的 lastUsedAt 批量写回数据库：按时间戳分组，每组一次 UPDATE ... IN（时间戳精确到秒）
+     */
+    @Scheduled(fixedDelayString = "${orin.gateway.secret.last-used-flush-ms:10000}")
+    public void flushLastUsed() {
+        if (pendingLastUsed.isEmpty()) {
+            return;
+        }
+        Map<LocalDateTime, List<String>> byUsedAt = new TreeMap<>();
+        for (String secretId : new ArrayList<>(pendingLastUsed.keySet())) {
+            LocalDateTime usedAt = pendingLastUsed.remove(secretId);
+            if (usedAt != null) {
+                byUsedAt.computeIfAbsent(usedAt, k -> new ArrayList<>()).add(secretId);
+            }
+        }
+        byUsedAt.forEach((usedAt, secretIds) -> {
+            try {
+                gatewaySecretRepository.updateLastUsedAt(secretIds, usedAt);
+            } catch (Exception e) {
+                log.warn("Failed to flush lastUsedAt for {} gateway secrets: {}", secretIds.size(), e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void flushLastUsedOnShutdown() {
+        flushLastUsed();
     }
 
     @Transactional
@@ -212,6 +288,7 @@ public class GatewaySecretService {
         secret.setStatus(status);
         secret.setUpdatedBy(operator);
         gatewaySecretRepository.save(secret);
+        evictVerified(secretId);
         return true;
     }
 
@@ -226,6 +303,7 @@ public class GatewaySecretService {
         secret.setStatus(GatewaySecret.SecretStatus.DELETED);
         secret.setUpdatedBy(operator);
         gatewaySecretRepository.save(secret);
+        evictVerified(secretId);
         return true;
     }
 
@@ -273,12 +351,13 @@ public class GatewaySecretService {
         String rawSecret = secretValue.substring(CLIENT_KEY_PREFIX.length());
 
         secret.setKeyHash(passwordEncoder.encode(rawSecret));
-        secret.setKeyPrefix(secretValue.substring(0, Math.min(16, secretValue.length())));
+        secret.setKeyPrefix(secretValue.substring(0, Math.min(KEY_PREFIX_LENGTH, secretValue.length())));
         secret.setEncryptedSecret(encryptionUtil.encrypt(secretValue));
         secret.setLast4(secretValue.substring(Math.max(0, secretValue.length() - 4)));
         secret.setRotationAt(LocalDateTime.now());
         secret.setUpdatedBy(operator);
         gatewaySecretRepository.save(secret);
+        evictVerified(secretId);
 
         return Optional.of(new ClientAccessSecretWithValue(secret, secretValue));
     }
@@ -289,6 +368,7 @@ public class GatewaySecretService {
             Long used = secret.getUsedTokens() != null ? secret.getUsedTokens() : 0L;
             secret.setUsedTokens(used + tokensUsed);
             gatewaySecretRepository.save(secret);
+            evictVerified(secretId);
         });
     }
 
@@ -297,9 +377,90 @@ public class GatewaySecretService {
         gatewaySecretRepository.findBySecretId(secretId).ifPresent(secret -> {
             secret.setUsedTokens(0L);
             gatewaySecretRepository.save(secret);
+            evictVerified(secretId);
         });
     }
 
+    private Optional<GatewaySecret> findMatchingClientAccessSecret(String apiKeyString, String rawSecret) {
+        List<GatewaySecret> candidates = apiKeyString.length() >= KEY_PREFIX_LENGTH
+                ? gatewaySecretRepository.findBySecretTypeAndStatusAndKeyPrefix(
+                        GatewaySecret.SecretType.CLIENT_ACCESS,
+                        GatewaySecret.SecretStatus.ACTIVE,
+                        apiKeyString.substring(0, KEY_PREFIX_LENGTH))
+                : List.of();
+        Optional<GatewaySecret> matched = firstMatching(candidates, rawSecret);
+        if (matched.isPresent() || !legacyPrefixScan) {
+            return matched;
+        }
+        return firstMatching(gatewaySecretRepository.findLegacyPrefixSecrets(
+                GatewaySecret.SecretType.CLIENT_ACCESS,
+                GatewaySecret.SecretStatus.ACTIVE,
+                KEY_PREFIX_LENGTH), rawSecret);
+    }
+
+    private Optional<GatewaySecret> firstMatching(List<GatewaySecret> candidates, String rawSecret) {
+        for (GatewaySecret candidate : candidates) {
+            if (matchesHash(rawSecret, candidate.getKeyHash())) {
+                return Optional.of(candidate);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void markUsed(GatewaySecret secret) {
+        // 截断到秒，同一秒内使用的密钥可以合并成一条 UPDATE
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        secret.setLastUsedAt(now);
+        pendingLastUsed.put(secret.getSecretId(), now);
+    }
+
+    private void evictVerified(String secretId) {
+        Cache<String, GatewaySecret> cache = verifiedCache;
+        if (cache != null && secretId != null) {
+            cache.asMap().values().removeIf(secret -> secretId.equals(secret.getSecretId()));
+        }
+    }
+
+    private Cache<String, GatewaySecret> verifiedCache() {
+        Cache<String, GatewaySecret> cache = verifiedCache;
+        if (cache == null) {
+            synchronized (this) {
+                if (verifiedCache == null) {
+                    verifiedCache = Caffeine.newBuilder()
+                            .maximumSize(Math.max(1, verifiedCacheMaxSize))
+                            .expireAfterWrite(Duration.ofSeconds(Math.max(1, verifiedCacheTtlSeconds)))
+                            .build();
+                }
+                cache = verifiedCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 缓存键为进程内随机密钥的 HMAC，缓存内容泄露时也无法还原或离线比对原始密钥
+     */
+    private String verifiedCacheKey(String apiKeyString) {
+        byte[] digest = verifiedCacheMac.get().doFinal(apiKeyString.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private Mac newVerifiedCacheMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(verifiedCacheHmacKey, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        secureRandom.nextBytes(bytes);
+        return bytes;
+    }
+
     private String generateSecretKey() {
         byte[] randomBytes = new byte[KEY_LENGTH];
         secureRandom.nextBytes(randomBytes);
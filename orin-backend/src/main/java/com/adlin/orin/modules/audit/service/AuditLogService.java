@@ -2,6 +2,7 @@ package com.adlin.orin.modules.audit.service;
 
 import com.adlin.orin.modules.audit.entity.AuditLog;
 import com.adlin.orin.modules.audit.repository.AuditLogRepository;
+import com.adlin.orin.modules.monitor.service.UsageRollupService;
 import com.adlin.orin.modules.system.service.LogConfigService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,16 +28,19 @@ public class AuditLogService {
     private final LogConfigService logConfigService;
     private final com.adlin.orin.modules.monitor.service.PricingService pricingService;
     private com.adlin.orin.modules.alert.service.AlertService alertService;
+    private final UsageRollupService usageRollupService;
 
     @Autowired
     public AuditLogService(AuditLogRepository auditLogRepository,
                           LogConfigService logConfigService,
                           com.adlin.orin.modules.monitor.service.PricingService pricingService,
-                          @Lazy com.adlin.orin.modules.alert.service.AlertService alertService) {
+                          @Lazy com.adlin.orin.modules.alert.service.AlertService alertService,
+                          UsageRollupService usageRollupService) {
         this.auditLogRepository = auditLogRepository;
         this.logConfigService = logConfigService;
         this.pricingService = pricingService;
         this.alertService = alertService;
+        this.usageRollupService = usageRollupService;
     }
 
     /**
@@ -173,6 +177,8 @@ public class AuditLogService {
             }
 
             auditLogRepository.save(auditLog);
+            // 增量更新分钟/小时/天预聚合，仪表盘不再回扫审计日志
+            usageRollupService.record(auditLog);
             log.info("Audit log saved successfully: id={}, providerId={}, conversationId={}, endpoint={}",
                     auditLog.getId(),
                     providerId, conversationId, endpoint);
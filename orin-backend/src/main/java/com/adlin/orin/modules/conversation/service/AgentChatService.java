@@ -27,6 +27,7 @@ import com.adlin.orin.modules.knowledge.service.KnowledgeManageService;
 import com.adlin.orin.modules.knowledge.service.KnowledgeGraphService;
 import com.adlin.orin.modules.knowledge.service.meta.MetaKnowledgeService;
 import com.adlin.orin.modules.model.service.OllamaIntegrationService;
+import com.adlin.orin.modules.monitor.service.LatencyRollupService;
 import com.adlin.orin.modules.skill.entity.McpService;
 import com.adlin.orin.modules.skill.repository.McpServiceRepository;
 import com.adlin.orin.modules.skill.service.SkillService;
@@ -67,6 +68,7 @@ public class AgentChatService {
     private final ToolExecutionLogService toolExecutionLogService;
     private final SkillService skillService;
     private final ObjectMapper objectMapper;
+    private final LatencyRollupService latencyRollupService;
 
     private KbStructureTool kbStructureTool;
     private KbSearchTool kbSearchTool;
@@ -94,7 +96,8 @@ public class AgentChatService {
             ToolExecutor toolExecutor,
             ToolExecutionLogService toolExecutionLogService,
             SkillService skillService,
-            ObjectMapper objectMapper) {
+            ObjectMapper objectMapper,
+            LatencyRollupService latencyRollupService) {
         this.sessionRepository = sessionRepository;
         this.agentManageService = agentManageService;
         this.conversationLogService = conversationLogService;
@@ -117,6 +120,7 @@ public class AgentChatService {
         this.toolExecutionLogService = toolExecutionLogService;
         this.skillService = skillService;
         this.objectMapper = objectMapper;
+        this.latencyRollupService = latencyRollupService;
         // Initialize tools
         this.kbStructureTool = new KbStructureTool(knowledgeBaseRepository, documentRepository);
         this.kbSearchTool = new KbSearchTool(retrievalService);
@@ -539,6 +543,10 @@ public class AgentChatService {
                 || aiResponse.startsWith("智能体返回为空")));
         String modelName = (String) agentResult.getOrDefault("model",
                 agentMetadata != null ? agentMetadata.getModelName() : "");
+        if (success) {
+            latencyRollupService.recordRequest(responseTime, (String) agentResult.get("provider"), modelName,
+                    session.getAgentId());
+        }
 
         ConversationLog conversationLog = ConversationLog.builder()
                 .conversationId(sessionId)
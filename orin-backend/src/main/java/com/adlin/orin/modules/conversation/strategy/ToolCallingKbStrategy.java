@@ -432,19 +432,21 @@ public class ToolCallingKbStrategy {
             return "没有可检索的知识库或查询词为空。";
         }
 
+        int topK = retrievalTopK != null ? retrievalTopK : 5;
+        String rerankModel = Boolean.TRUE.equals(retrievalEnableRerank) ? retrievalRerankModel : null;
+        // 多个知识库并发检索，整体耗时取决于最慢的知识库；超时的知识库被跳过
+        Map<String, List<VectorStoreProvider.SearchResult>> resultsByKb =
+                retrievalService.hybridSearchAll(
+                        allowedKbIds,
+                        query,
+                        topK,
+                        retrievalEmbeddingModel,
+                        retrievalAlpha,
+                        retrievalThreshold,
+                        rerankModel);
+
         StringBuilder sb = new StringBuilder();
-        for (String kbId : allowedKbIds) {
-            int topK = retrievalTopK != null ? retrievalTopK : 5;
-            String rerankModel = Boolean.TRUE.equals(retrievalEnableRerank) ? retrievalRerankModel : null;
-            List<VectorStoreProvider.SearchResult> results =
-                    retrievalService.hybridSearch(
-                            kbId,
-                            query,
-                            topK,
-                            retrievalEmbeddingModel,
-                            retrievalAlpha,
-                            retrievalThreshold,
-                            rerankModel);
+        for (List<VectorStoreProvider.SearchResult> results : resultsByKb.values()) {
             for (VectorStoreProvider.SearchResult r : results) {
                 Map<String, Object> meta = r.getMetadata();
                 String docId = meta != null ? String.valueOf(meta.getOrDefault("doc_id", "")) : "";
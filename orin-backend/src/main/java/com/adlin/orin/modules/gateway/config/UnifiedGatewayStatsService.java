@@ -9,18 +9,32 @@ import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRouteRepository;
 import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceInstanceRepository;
 import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceRepository;
 import com.adlin.orin.gateway.service.ProviderRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
+/**
+ * 网关流量统计
+ *
+ * 请求路径上只更新本节点内存中的 {@link LongAdder} 计数器与按路由的延迟直方图，
+ * 不访问 Redis；后台每 flush-interval-ms（默认 1 秒）把增量快照成一批，用一次 Lua 脚本原子地 INCRBY / HINCRBY 到 Redis。
+ * 读取时以 Redis 中的集群累计值为准，再合并本节点尚未刷出的增量，因此概览与趋势仍是集群维度的数字。
+ * 每批带唯一的 flush id，脚本按 id 去重；刷写失败时原样重试同一批，
+ * 即使 Redis 已执行而响应丢失也不会重复计数。
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -41,9 +55,53 @@ public class UnifiedGatewayStatsService {
     private static final String STATS_ROUTE_COUNT = "gateway:stats:route:";
     private static final String STATS_ROUTE_LATENCY_SUM = "gateway:stats:route_latency_sum:";
     private static final String STATS_ROUTE_LATENCY_COUNT = "gateway:stats:route_latency_count:";
+    private static final String STATS_ROUTE_LATENCY_HISTOGRAM = "gateway:stats:route_latency_hist:";
+    private static final String STATS_FLUSH_MARKER = "gateway:stats:flush:";
+    private static final long MINUTE_BUCKET_TTL_SECONDS = 7200;
+    private static final long FLUSH_MARKER_TTL_SECONDS = 3600;
+    /** 延迟直方图桶上界（毫秒），最后一个桶为溢出桶 */
+    static final long[] LATENCY_BUCKET_BOUNDS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
     private static final DateTimeFormatter MINUTE_BUCKET_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd:HH:mm");
     private static final DateTimeFormatter TIME_LABEL_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
 
+    /**
+     * 原子写入一批增量；KEYS[1] 为 flush id 标记，已存在说明该批已写入过，直接返回 0。
+     * ARGV[1] 为标记过期时间(秒)，之后 KEYS[i] (i >= 2) 各对应一组 ARGV：hash 字段（空串表示普通计数）、增量、过期时间(秒，0 不设置)
+     */
+    private static final String FLUSH_SCRIPT = """
+            if not redis.call('SET', KEYS[1], '1', 'NX', 'EX', ARGV[1]) then
+                return 0
+            end
+            for i = 2, #KEYS do
+                local base = (i - 2) * 3 + 1
+                local field = ARGV[base + 1]
+                local delta = ARGV[base + 2]
+                local ttl = tonumber(ARGV[base + 3])
+                if field == '' then
+                    redis.call('INCRBY', KEYS[i], delta)
+                else
+                    redis.call('HINCRBY', KEYS[i], field, delta)
+                end
+                if ttl > 0 then
+                    redis.call('EXPIRE', KEYS[i], ttl)
+                end
+            end
+            return 1
+            """;
+
+    static final RedisScript<Long> FLUSH = RedisScript.of(FLUSH_SCRIPT, Long.class);
+
+    private final PendingCounter totalRequests = new PendingCounter();
+    private final PendingCounter totalErrors = new PendingCounter();
+    private final PendingCounter latencySum = new PendingCounter();
+    private final PendingCounter latencyCount = new PendingCounter();
+    private final ConcurrentHashMap<String, PendingCounter> minuteCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RouteStats> routeStats = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+    private long flushSequence;
+    /** 已发出但未确认写入的批次，下个周期原样重试 */
+    private FlushBatch unacknowledged;
+
     public UnifiedGatewayOverviewResponse getOverview() {
         long totalRequests = getTotalRequests();
         double qps = calculateQPS();
@@ -112,31 +170,35 @@ public class UnifiedGatewayStatsService {
     }
 
     public List<Map<String, Object>> getTrends(int hours) {
-        List<Map<String, Object>> trends = new ArrayList<>();
         LocalDateTime now = LocalDateTime.now();
-
+        List<LocalDateTime> times = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
         for (int i = hours * 4; i >= 0; i--) {
             LocalDateTime time = now.minusMinutes(i * 15L);
-            String minuteKey = minuteKey(time);
-            String countStr = redisTemplate.opsForValue().get(minuteKey);
+            times.add(time);
+            keys.add(minuteKey(time));
+        }
+        // 一次 MGET 读取所有时间点的集群计数
+        List<String> values = redisTemplate.opsForValue().multiGet(keys);
 
+        List<Map<String, Object>> trends = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String countStr = values != null && i < values.size() ? values.get(i) : null;
             Map<String, Object> point = new HashMap<>();
-            point.put("time", time.format(TIME_LABEL_FORMATTER));
-            point.put("requests", countStr != null ? Integer.parseInt(countStr) : 0);
+            point.put("time", times.get(i).format(TIME_LABEL_FORMATTER));
+            point.put("requests", parseLong(countStr) + pendingMinute(keys.get(i)));
             trends.add(point);
         }
         return trends;
     }
 
     public void incrementRequestCount() {
-        redisTemplate.opsForValue().increment(STATS_TOTAL_REQUESTS);
-        String minuteKey = minuteKey(LocalDateTime.now());
-        redisTemplate.opsForValue().increment(minuteKey);
-        redisTemplate.expire(minuteKey, 7200, java.util.concurrent.TimeUnit.SECONDS);
+        totalRequests.add(1);
+        minuteCounters.computeIfAbsent(minuteKey(LocalDateTime.now()), k -> new PendingCounter()).add(1);
     }
 
     public void incrementErrorCount() {
-        redisTemplate.opsForValue().increment(STATS_TOTAL_ERRORS);
+        totalErrors.add(1);
     }
 
     public void recordUnifiedRoute(String routeName, int statusCode, long latencyMs) {
@@ -146,28 +208,82 @@ public class UnifiedGatewayStatsService {
         }
 
         long safeLatency = Math.max(0L, latencyMs);
-        redisTemplate.opsForValue().increment(STATS_LATENCY_SUM, safeLatency);
-        redisTemplate.opsForValue().increment(STATS_LATENCY_COUNT);
-        redisTemplate.opsForValue().increment(STATS_ROUTE_COUNT + routeName);
-        redisTemplate.opsForValue().increment(STATS_ROUTE_LATENCY_SUM + routeName, safeLatency);
-        redisTemplate.opsForValue().increment(STATS_ROUTE_LATENCY_COUNT + routeName);
+        latencySum.add(safeLatency);
+        latencyCount.add(1);
+        routeStats.computeIfAbsent(routeName, k -> new RouteStats()).record(safeLatency);
+    }
+
+    /**
+     * 把本节点累积的增量原子地刷到 Redis；上一批未确认时先重试上一批
+     *
+     * @return 本次写出的计数项数
+     */
+    @Scheduled(fixedDelayString = "${orin.gateway.stats.flush-interval-ms:1000}")
+    public synchronized int flush() {
+        if (unacknowledged == null) {
+            FlushBatch batch = snapshot();
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            unacknowledged = batch;
+        }
+
+        FlushBatch batch = unacknowledged;
+        try {
+            redisTemplate.execute(FLUSH, batch.keys, batch.args.toArray());
+        } catch (Exception e) {
+            log.warn("Failed to flush gateway stats to Redis, retrying batch {} next cycle: {}", batch.id, e.getMessage());
+            return 0;
+        }
+
+        unacknowledged = null;
+        batch.commits.forEach(Runnable::run);
+        evictClosedMinutes();
+        return batch.size();
+    }
+
+    /**
+     * 每个计数器只读取一次 pending，批次确认后按读取值提交
+     */
+    private FlushBatch snapshot() {
+        FlushBatch batch = new FlushBatch(nodeId + ':' + (++flushSequence));
+        batch.add(totalRequests, STATS_TOTAL_REQUESTS, null, 0);
+        batch.add(totalErrors, STATS_TOTAL_ERRORS, null, 0);
+        batch.add(latencySum, STATS_LATENCY_SUM, null, 0);
+        batch.add(latencyCount, STATS_LATENCY_COUNT, null, 0);
+        minuteCounters.forEach((key, counter) -> batch.add(counter, key, null, MINUTE_BUCKET_TTL_SECONDS));
+        routeStats.forEach((routeName, stats) -> {
+            // 路由请求数同时是路由延迟样本数，一次快照写两个键
+            long count = stats.count.pending();
+            if (count > 0) {
+                batch.increment(STATS_ROUTE_COUNT + routeName, null, count, 0);
+                batch.increment(STATS_ROUTE_LATENCY_COUNT + routeName, null, count, 0);
+                batch.commits.add(() -> stats.count.commit(count));
+            }
+            batch.add(stats.latencySum, STATS_ROUTE_LATENCY_SUM + routeName, null, 0);
+            for (int i = 0; i < stats.buckets.length; i++) {
+                batch.add(stats.buckets[i], STATS_ROUTE_LATENCY_HISTOGRAM + routeName, bucketField(i), 0);
+            }
+        });
+        return batch;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
     }
 
     private long getTotalRequests() {
-        String val = redisTemplate.opsForValue().get(STATS_TOTAL_REQUESTS);
-        return val != null ? Long.parseLong(val) : 0L;
+        return parseLong(redisTemplate.opsForValue().get(STATS_TOTAL_REQUESTS)) + totalRequests.pending();
     }
 
     private double calculateQPS() {
         LocalDateTime now = LocalDateTime.now();
-        int requestsInLastMinute = 0;
+        long requestsInLastMinute = 0;
 
         for (int i = 0; i < 6; i++) {
             String minuteKey = minuteKey(now.minusMinutes(i));
-            String val = redisTemplate.opsForValue().get(minuteKey);
-            if (val != null) {
-                requestsInLastMinute += Integer.parseInt(val);
-            }
+            requestsInLastMinute += parseLong(redisTemplate.opsForValue().get(minuteKey)) + pendingMinute(minuteKey);
         }
         return requestsInLastMinute / 60.0;
     }
@@ -179,21 +295,20 @@ public class UnifiedGatewayStatsService {
     private double getErrorRate() {
         long total = getTotalRequests();
         if (total == 0) return 0.0;
-        String errorsStr = redisTemplate.opsForValue().get(STATS_TOTAL_ERRORS);
-        long errors = errorsStr != null ? Long.parseLong(errorsStr) : 0;
+        long errors = parseLong(redisTemplate.opsForValue().get(STATS_TOTAL_ERRORS)) + totalErrors.pending();
         return Math.min(errors, total) * 100.0 / total;
     }
 
     private Double getAverageLatency() {
         LocalDateTime since = LocalDateTime.now().minusHours(1);
         Double auditAverage = auditLogRepository.findAverageLatencySince(since);
-        long latencyCount = parseLong(redisTemplate.opsForValue().get(STATS_LATENCY_COUNT));
-        if (latencyCount <= 0) {
+        long count = parseLong(redisTemplate.opsForValue().get(STATS_LATENCY_COUNT)) + latencyCount.pending();
+        if (count <= 0) {
             return auditAverage;
         }
 
-        long latencySum = parseLong(redisTemplate.opsForValue().get(STATS_LATENCY_SUM));
-        double unifiedAverage = latencySum * 1.0 / latencyCount;
+        long sum = parseLong(redisTemplate.opsForValue().get(STATS_LATENCY_SUM)) + latencySum.pending();
+        double unifiedAverage = sum * 1.0 / count;
         if (auditAverage == null) {
             return unifiedAverage;
         }
@@ -252,17 +367,20 @@ public class UnifiedGatewayStatsService {
     }
 
     private List<UnifiedGatewayOverviewResponse.RouteTrafficSummary> getUnifiedTopRoutes(int limit) {
-        Set<String> routeKeys = redisTemplate.keys(STATS_ROUTE_COUNT + "*");
-        if (routeKeys == null || routeKeys.isEmpty()) {
+        Set<String> routeNames = unifiedRouteNames();
+        if (routeNames.isEmpty()) {
             return List.of();
         }
 
-        return routeKeys.stream()
-                .map(key -> {
-                    String routeName = key.substring(STATS_ROUTE_COUNT.length());
-                    long count = parseLong(redisTemplate.opsForValue().get(key));
-                    long latencySum = parseLong(redisTemplate.opsForValue().get(STATS_ROUTE_LATENCY_SUM + routeName));
-                    long latencyCount = parseLong(redisTemplate.opsForValue().get(STATS_ROUTE_LATENCY_COUNT + routeName));
+        return routeNames.stream()
+                .map(routeName -> {
+                    RouteStats local = routeStats.get(routeName);
+                    long count = parseLong(redisTemplate.opsForValue().get(STATS_ROUTE_COUNT + routeName))
+                            + (local != null ? local.count.pending() : 0L);
+                    long latencySum = parseLong(redisTemplate.opsForValue().get(STATS_ROUTE_LATENCY_SUM + routeName))
+                            + (local != null ? local.latencySum.pending() : 0L);
+                    long latencyCount = parseLong(redisTemplate.opsForValue().get(STATS_ROUTE_LATENCY_COUNT + routeName))
+                            + (local != null ? local.count.pending() : 0L);
                     double avgLatency = latencyCount > 0 ? latencySum * 1.0 / latencyCount : 0;
                     return UnifiedGatewayOverviewResponse.RouteTrafficSummary.builder()
                             .routeId(null)
@@ -270,6 +388,7 @@ public class UnifiedGatewayStatsService {
                             .pathPattern(routeName)
                             .requestCount(count)
                             .avgLatencyMs(Math.round(avgLatency * 100.0) / 100.0)
+                            .p95LatencyMs(percentile(routeHistogram(routeName, local), 0.95))
                             .build();
                 })
                 .sorted(Comparator.comparing(UnifiedGatewayOverviewResponse.RouteTrafficSummary::getRequestCount).reversed())
@@ -278,8 +397,79 @@ public class UnifiedGatewayStatsService {
     }
 
     private int countUnifiedRoutes() {
+        return unifiedRouteNames().size();
+    }
+
+    /**
+     * 集群中已刷出的路由与本节点尚未刷出的路由之并集
+     */
+    private Set<String> unifiedRouteNames() {
+        Set<String> routeNames = new HashSet<>();
         Set<String> routeKeys = redisTemplate.keys(STATS_ROUTE_COUNT + "*");
-        return routeKeys == null ? 0 : routeKeys.size();
+        if (routeKeys != null) {
+            routeKeys.forEach(key -> routeNames.add(key.substring(STATS_ROUTE_COUNT.length())));
+        }
+        routeNames.addAll(routeStats.keySet());
+        return routeNames;
+    }
+
+    /**
+     * 合并 Redis 中的集群直方图与本节点未刷出的桶计数
+     */
+    private long[] routeHistogram(String routeName, RouteStats local) {
+        long[] counts = new long[LATENCY_BUCKET_BOUNDS_MS.length + 1];
+        Map<Object, Object> stored = redisTemplate.opsForHash().entries(STATS_ROUTE_LATENCY_HISTOGRAM + routeName);
+        if (stored != null) {
+            for (int i = 0; i < counts.length; i++) {
+                Object value = stored.get(bucketField(i));
+                counts[i] = value != null ? parseLong(value.toString()) : 0L;
+            }
+        }
+        if (local != null) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += local.buckets[i].pending();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 由直方图估算分位数，取命中桶的上界；落入溢出桶时返回最大上界
+     */
+    static Double percentile(long[] counts, double quantile) {
+        long total = Arrays.stream(counts).sum();
+        if (total <= 0) {
+            return null;
+        }
+        long rank = (long) Math.ceil(total * quantile);
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= rank) {
+                return (double) LATENCY_BUCKET_BOUNDS_MS[Math.min(i, LATENCY_BUCKET_BOUNDS_MS.length - 1)];
+            }
+        }
+        return (double) LATENCY_BUCKET_BOUNDS_MS[LATENCY_BUCKET_BOUNDS_MS.length - 1];
+    }
+
+    private static String bucketField(int index) {
+        return index < LATENCY_BUCKET_BOUNDS_MS.length ? String.valueOf(LATENCY_BUCKET_BOUNDS_MS[index]) : "+Inf";
+    }
+
+    private long pendingMinute(String minuteKey) {
+        PendingCounter counter = minuteCounters.get(minuteKey);
+        return counter != null ? counter.pending() : 0L;
+    }
+
+    /**
+     * 已刷完的历史分钟桶不会再有写入，移出内存；保留当前与上一分钟应对跨分钟的并发写
+     */
+    private void evictClosedMinutes() {
+        LocalDateTime now = LocalDateTime.now();
+        String current = minuteKey(now);
+        String previous = minuteKey(now.minusMinutes(1));
+        minuteCounters.entrySet().removeIf(e -> !e.getKey().equals(current) && !e.getKey().equals(previous)
+                && e.getValue().pending() == 0);
     }
 
     private int asInt(Object value) {
@@ -299,4 +489,84 @@ public class UnifiedGatewayStatsService {
             return 0L;
         }
     }
+
+    /**
+     * 只增不减的条带计数器；flushed 记录已刷到 Redis 的部分，pending = sum - flushed。
+     * 不使用 sumThenReset，避免与并发写交错时丢失增量。
+     */
+    private static final class PendingCounter {
+        private final LongAdder adder = new LongAdder();
+        private volatile long flushed;
+
+        void add(long value) {
+            adder.add(value);
+        }
+
+        long pending() {
+            return Math.max(0L, adder.sum() - flushed);
+        }
+
+        void commit(long delta) {
+            flushed += delta;
+        }
+    }
+
+    /**
+     * 一批待写入的增量：keys / args 即 {@link #FLUSH} 的 KEYS / ARGV，commits 在 Redis 确认后执行
+     */
+    private static final class FlushBatch {
+        private final String id;
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> args = new ArrayList<>();
+        private final List<Runnable> commits = new ArrayList<>();
+
+        FlushBatch(String id) {
+            this.id = id;
+            keys.add(STATS_FLUSH_MARKER + id);
+            args.add(String.valueOf(FLUSH_MARKER_TTL_SECONDS));
+        }
+
+        void add(PendingCounter counter, String key, String field, long ttlSeconds) {
+            long delta = counter.pending();
+            if (delta > 0) {
+                increment(key, field, delta, ttlSeconds);
+                commits.add(() -> counter.commit(delta));
+            }
+        }
+
+        void increment(String key, String field, long delta, long ttlSeconds) {
+            keys.add(key);
+            args.add(field != null ? field : "");
+            args.add(String.valueOf(delta));
+            args.add(String.valueOf(ttlSeconds));
+        }
+
+        int size() {
+            return keys.size() - 1;
+        }
+
+        boolean isEmpty() {
+            return size() == 0;
+        }
+    }
+
+    /** 单条路由的请求数、延迟总和与延迟直方图 */
+    private static final class RouteStats {
+        private final PendingCounter count = new PendingCounter();
+        private final PendingCounter latencySum = new PendingCounter();
+        private final PendingCounter[] buckets = new PendingCounter[LATENCY_BUCKET_BOUNDS_MS.length + 1];
+
+        RouteStats() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new PendingCounter();
+            }
+        }
+
+        void record(long latencyMs) {
+            count.add(1);
+            latencySum.add(latencyMs);
+            int index = Arrays.binarySearch(LATENCY_BUCKET_BOUNDS_MS, latencyMs);
+            buckets[index >= 0 ? index : -index - 1].add(1);
+        }
+    }
 }
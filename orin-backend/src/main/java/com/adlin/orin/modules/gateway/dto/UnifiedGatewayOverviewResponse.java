@@ -49,5 +49,6 @@ public class UnifiedGatewayOverviewResponse {
         private String pathPattern;
         private Long requestCount;
         private Double avgLatencyMs;
+        private Double p95LatencyMs;
     }
 }
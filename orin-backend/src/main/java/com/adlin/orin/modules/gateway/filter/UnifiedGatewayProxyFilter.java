@@ -4,16 +4,18 @@ import com.adlin.orin.modules.apikey.entity.GatewaySecret;
 import com.adlin.orin.modules.apikey.service.GatewaySecretService;
 import com.adlin.orin.modules.gateway.config.UnifiedGatewayStatsService;
 import com.adlin.orin.modules.gateway.entity.UnifiedGatewayAuditLog;
-import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRetryPolicy;
 import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayAuditLogRepository;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRetryPolicyRepository;
 import com.adlin.orin.modules.gateway.service.UnifiedGatewayAclService;
+import com.adlin.orin.modules.gateway.service.UnifiedGatewayAuditLogWriter;
 import com.adlin.orin.modules.gateway.service.UnifiedGatewayCircuitBreakerService;
+import com.adlin.orin.modules.gateway.service.UnifiedGatewayEffectivePolicyCache;
 import com.adlin.orin.modules.gateway.service.UnifiedGatewayRateLimiterService;
+import com.adlin.orin.modules.gateway.service.UnifiedGatewayRetryBudget;
 import com.adlin.orin.modules.gateway.service.UnifiedGatewayRuntimeRoutingService;
+import com.adlin.orin.modules.monitor.service.LatencyRollupService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -23,18 +25,40 @@ import org.springframework.beans.factory.annotation.Value;
 import org.slf4j.MDC;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.util.AntPathMatcher;
-import org.springframework.util.StreamUtils;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
-
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 统一网关过滤器 —— 全流量入口
@@ -46,6 +70,11 @@ import java.util.*;
  *   ④ 若匹配本地路由 (LOCAL) —— ACL ✓、认证、路由级限流、审计 → chain.doFilter()
  *   ⑤ 若匹配代理路由 (PROXY) —— ACL ✓、认证、路由级限流、熔断、重试 → 转发上游
  *
+ * 代理转发为流式：请求体与响应体逐块透传（含 SSE 逐事件 flush），
+ * 只有配置了重试且请求体不超过 replay-buffer-bytes 时才缓冲请求体用于重放。
+ * 读请求体、写响应体是阻塞 Servlet IO，在专用的代理 IO 线程池上执行；同时在途的代理调用数
+ * 受 max-concurrent-streams 限制，超出时直接返回 503，而不是在共享线程池里排队。
+ *
  * 本地路由 (LOCAL)：targetUrl 为空且 serviceId 为空的路由配置项。
  * 用于对 ORIN 自身端点（/api/v1/**、/v1/**）施加 ACL、认证、路由级限流和审计，
  * 不做代理转发，最终仍由本地 Controller 处理。
@@ -59,17 +88,36 @@ public class UnifiedGatewayProxyFilter implements Filter {
     private final UnifiedGatewayAclService aclService;
     private final UnifiedGatewayRuntimeRoutingService routingService;
     private final UnifiedGatewayStatsService statsService;
-    private final UnifiedGatewayAuditLogRepository auditLogRepository;
+    private final UnifiedGatewayAuditLogWriter auditLogWriter;
     private final GatewaySecretService gatewaySecretService;
     private final ObjectMapper objectMapper;
     private final UnifiedGatewayRateLimiterService rateLimiterService;
     private final UnifiedGatewayCircuitBreakerService circuitBreakerService;
-    private final UnifiedGatewayRetryPolicyRepository retryPolicyRepository;
-    private WebClient webClient = buildWebClient(10 * 1024 * 1024);
+    private final UnifiedGatewayEffectivePolicyCache policyCache;
+    private final UnifiedGatewayRetryBudget retryBudget;
+    private final LatencyRollupService latencyRollupService;
 
     @Value("${orin.gateway.proxy.max-body-bytes:10485760}")
     private int maxProxyBodyBytes = 10 * 1024 * 1024;
 
+    /**
+     * 重试需要重放请求体时的缓冲上限；超过上限的请求体直接流式转发，本次不重试
+     */
+    @Value("${orin.gateway.proxy.replay-buffer-bytes:1048576}")
+    private int replayBufferBytes = 1024 * 1024;
+
+    /**
+     * 同时在途的代理调用（含流式 / SSE 长连接）上限；每个调用最多同时占用两个代理 IO 线程（读请求体、写响应体）
+     */
+    @Value("${orin.gateway.proxy.max-concurrent-streams:256}")
+    private int maxConcurrentStreams = 256;
+
+    private volatile Semaphore streamPermits;
+    private volatile Scheduler ioScheduler;
+    private volatile WebClient webClient;
+
+    private static final int STREAM_CHUNK_BYTES = 8192;
+    private static final int STREAM_PREFETCH = 16;
     private static final String ATTR_ROUTE = "gateway.route";
     private static final String ATTR_TARGET_URL = "gateway.targetUrl";
     private static final String TRACE_ID_HEADER = "X-Trace-Id";
@@ -88,14 +136,37 @@ public class UnifiedGatewayProxyFilter implements Filter {
 
     @PostConstruct
     void initWebClient() {
-        this.webClient = buildWebClient(maxProxyBodyBytes);
+        webClient();
+    }
+
+    @PreDestroy
+    void shutdownIoPool() {
+        if (ioScheduler != null) {
+            ioScheduler.dispose();
+        }
     }
 
-    private static WebClient buildWebClient(int maxBodyBytes) {
-        return WebClient.builder()
-                .clientConnector(new org.springframework.http.client.reactive.ReactorClientHttpConnector())
-                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(maxBodyBytes))
-                .build();
+    /**
+     * 只构建一次并预热 Reactor Netty（事件循环、原生传输、DNS 解析器）：这些资源默认在第一次请求订阅时才初始化，
+     * 冷启动要 1~3 秒，而路由超时从订阅时开始计时，不预热的话部署后第一批短超时路由的请求会直接超时
+     */
+    private WebClient webClient() {
+        WebClient current = webClient;
+        if (current == null) {
+            synchronized (this) {
+                if (webClient == null) {
+                    reactor.netty.http.client.HttpClient httpClient = reactor.netty.http.client.HttpClient.create();
+                    httpClient.warmup().block();
+                    int maxBodyBytes = maxProxyBodyBytes;
+                    webClient = WebClient.builder()
+                            .clientConnector(new org.springframework.http.client.reactive.ReactorClientHttpConnector(httpClient))
+                            .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(maxBodyBytes))
+                            .build();
+                }
+                current = webClient;
+            }
+        }
+        return current;
     }
 
     // =========================================================================
@@ -168,7 +239,7 @@ public class UnifiedGatewayProxyFilter implements Filter {
             statsService.incrementErrorCount();
             writeError(httpRequest, httpResponse, HttpStatus.UNAUTHORIZED,
                     "Authentication required for this route", traceId);
-            saveAuditLog(httpRequest, matchedRoute, resolvedRoute.getTargetUrl(),
+            saveAuditLog(httpRequest, traceId, matchedRoute, resolvedRoute.getTargetUrl(),
                     resolvedRoute.getTargetService(), HttpStatus.UNAUTHORIZED.value(),
                     "DENY", "Missing authentication", 0L);
             return;
@@ -177,7 +248,7 @@ public class UnifiedGatewayProxyFilter implements Filter {
             statsService.incrementErrorCount();
             writeError(httpRequest, httpResponse, HttpStatus.UNAUTHORIZED,
                     "API key required by ACL rule", traceId);
-            saveAuditLog(httpRequest, matchedRoute, resolvedRoute.getTargetUrl(),
+            saveAuditLog(httpRequest, traceId, matchedRoute, resolvedRoute.getTargetUrl(),
                     resolvedRoute.getTargetService(), HttpStatus.UNAUTHORIZED.value(),
                     "DENY", "ACL requires API key", 0L);
             return;
@@ -188,7 +259,7 @@ public class UnifiedGatewayProxyFilter implements Filter {
             statsService.incrementErrorCount();
             writeError(httpRequest, httpResponse, HttpStatus.TOO_MANY_REQUESTS,
                     "Rate limit exceeded", traceId);
-            saveAuditLog(httpRequest, matchedRoute, resolvedRoute.getTargetUrl(),
+            saveAuditLog(httpRequest, traceId, matchedRoute, resolvedRoute.getTargetUrl(),
                     resolvedRoute.getTargetService(), HttpStatus.TOO_MANY_REQUESTS.value(),
                     "DENY", "Rate limit exceeded", 0L);
             return;
@@ -203,7 +274,7 @@ public class UnifiedGatewayProxyFilter implements Filter {
                 statsService.incrementErrorCount();
                 writeError(httpRequest, httpResponse, HttpStatus.SERVICE_UNAVAILABLE,
                         "Circuit breaker is open", traceId);
-                saveAuditLog(httpRequest, matchedRoute, resolvedRoute.getTargetUrl(),
+                saveAuditLog(httpRequest, traceId, matchedRoute, resolvedRoute.getTargetUrl(),
                         resolvedRoute.getTargetService(), HttpStatus.SERVICE_UNAVAILABLE.value(),
                         "DENY", "Circuit breaker open", 0L);
                 return;
@@ -248,7 +319,7 @@ public class UnifiedGatewayProxyFilter implements Filter {
             if (status >= 400) {
                 statsService.incrementErrorCount();
             }
-            saveAuditLog(request, null, null, targetService, status,
+            saveAuditLog(request, traceId, null, null, targetService, status,
                     targetService, message, latency);
         }
         if (caught instanceof IOException ioe) throw ioe;
@@ -273,7 +344,7 @@ public class UnifiedGatewayProxyFilter implements Filter {
             if (status <= 0) status = 200;
             boolean ok = status < 400;
             if (!ok) statsService.incrementErrorCount();
-            saveAuditLog(request, route, null, "LOCAL", status,
+            saveAuditLog(request, traceId, route, null, "LOCAL", status,
                     ok ? "SUCCESS" : "ERROR", caught != null ? caught.getMessage() : null, latency);
         }
         // 原样重新抛出，不吞异常
@@ -304,126 +375,348 @@ public class UnifiedGatewayProxyFilter implements Filter {
         } catch (IllegalArgumentException ex) {
             writeError(request, response, HttpStatus.METHOD_NOT_ALLOWED,
                     "Unsupported method: " + method, traceId);
-            saveAuditLog(request, route, targetUrl, resolvedRoute.getTargetService(),
+            saveAuditLog(request, traceId, route, targetUrl, resolvedRoute.getTargetService(),
                     HttpStatus.METHOD_NOT_ALLOWED.value(), "ERROR", "Unsupported method", 0L);
             return;
         }
 
-        int maxAttempts = resolveMaxAttempts(route);
-        Set<Integer> retryStatusCodes = resolveRetryStatusCodes(route);
-        long retryInitialMs = resolveRetryInitialMs(route);
-        double retryBackoff = resolveRetryBackoff(route);
+        UnifiedGatewayEffectivePolicyCache.Retry retry = policyCache.forRoute(route).retry();
+        int maxAttempts = retry.maxAttempts();
 
         long contentLength = request.getContentLengthLong();
         if (contentLength > maxProxyBodyBytes) {
-            writeError(request, response, HttpStatus.PAYLOAD_TOO_LARGE,
-                    "Request body exceeds gateway proxy limit", traceId);
-            saveAuditLog(request, route, targetUrl, resolvedRoute.getTargetService(),
-                    HttpStatus.PAYLOAD_TOO_LARGE.value(), "ERROR", "Request body too large", 0L);
-            statsService.incrementErrorCount();
+            writePayloadTooLarge(request, response, route, resolvedRoute, traceId);
             return;
         }
 
-        byte[] requestBody = StreamUtils.copyToByteArray(request.getInputStream());
-        if (requestBody.length > maxProxyBodyBytes) {
-            writeError(request, response, HttpStatus.PAYLOAD_TOO_LARGE,
-                    "Request body exceeds gateway proxy limit", traceId);
-            saveAuditLog(request, route, targetUrl, resolvedRoute.getTargetService(),
-                    HttpStatus.PAYLOAD_TOO_LARGE.value(), "ERROR", "Request body too large", 0L);
-            statsService.incrementErrorCount();
+        // 请求体：只有需要重放（配置了重试）时才在上限内缓冲，否则边读边转发
+        LimitedInputStream requestStream = new LimitedInputStream(request.getInputStream(), maxProxyBodyBytes);
+        byte[] replayBody = null;
+        InputStream streamingBody = null;
+        try {
+            if (!hasRequestBody(request, contentLength)) {
+                replayBody = new byte[0];
+            } else if (maxAttempts > 1 && contentLength <= replayBufferBytes) {
+                byte[] head = requestStream.readNBytes(replayBufferBytes + 1);
+                if (head.length <= replayBufferBytes) {
+                    replayBody = head;
+                } else {
+                    streamingBody = new SequenceInputStream(new ByteArrayInputStream(head), requestStream);
+                }
+            } else {
+                streamingBody = requestStream;
+            }
+        } catch (IOException e) {
+            if (!requestStream.isExceeded()) throw e;
+        }
+        if (requestStream.isExceeded()) {
+            writePayloadTooLarge(request, response, route, resolvedRoute, traceId);
+            return;
+        }
+        if (replayBody == null && maxAttempts > 1) {
+            log.debug("Request body exceeds replay buffer ({} bytes), retries disabled: {} {}",
+                    replayBufferBytes, method, targetUrl);
+            maxAttempts = 1;
+        }
+
+        Semaphore permits = streamPermits();
+        if (!permits.tryAcquire()) {
+            writeCapacityExhausted(request, response, route, resolvedRoute, traceId);
             return;
         }
+
         HttpHeaders requestHeaders = buildRequestHeaders(request, route, traceId);
-        int timeout = route.getTimeoutMs() != null ? route.getTimeoutMs() : 30000;
-
-        byte[] responseBody = null;
-        org.springframework.http.HttpStatus responseStatus = null;
-        org.springframework.http.HttpHeaders responseHeaders = null;
-        Exception lastException = null;
-
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            try {
-                org.springframework.web.reactive.function.client.ClientResponse clientResponse =
-                        webClient.method(httpMethod)
-                                .uri(targetUrl)
-                                .headers(headers -> headers.addAll(requestHeaders))
-                                .bodyValue(requestBody)
-                                .exchange()
-                                .block(java.time.Duration.ofMillis(timeout));
-
-                if (clientResponse == null) {
-                    lastException = new IOException("No response from upstream");
-                    if (attempt < maxAttempts) {
-                        sleepBackoff(retryInitialMs, retryBackoff, attempt);
-                        continue;
+        java.time.Duration timeout = java.time.Duration.ofMillis(route.getTimeoutMs() != null ? route.getTimeoutMs() : 30000);
+        retryBudget.recordRequest(route.getId());
+
+        ProxyCall call = new ProxyCall(request, response, route, resolvedRoute, traceId, method, httpMethod,
+                requestHeaders, replayBody, streamingBody, requestStream, maxAttempts, retry, timeout, start);
+        Scheduler io = ioScheduler();
+        // 名额须在完成异步上下文之前归还（doFinally 晚于下游完成回调）
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable releasePermit = () -> {
+            if (released.compareAndSet(false, true)) permits.release();
+        };
+        Mono<Void> exchange = sendWithRetry(call, 1)
+                // 写回客户端是阻塞 IO，放到代理 IO 线程池，不占用 Netty IO 线程；池满时释放上游响应并按 503 处理
+                .flatMap(upstream -> Mono.fromRunnable(() -> respond(call, upstream))
+                        .subscribeOn(io)
+                        .onErrorResume(RejectedExecutionException.class, e -> upstream.releaseBody()
+                                .onErrorResume(ignored -> Mono.empty())
+                                .then(Mono.error(e))))
+                .onErrorResume(e -> Mono.fromRunnable(() -> fail(call, e))
+                        .subscribeOn(io)
+                        // 错误响应很小，线程池已满时直接在当前线程写出
+                        .onErrorResume(RejectedExecutionException.class, r -> Mono.fromRunnable(() -> fail(call, e))))
+                .then()
+                .doOnTerminate(releasePermit)
+                .doOnCancel(releasePermit);
+
+        if (!request.isAsyncSupported()) {
+            exchange.block();
+            return;
+        }
+        // 异步模式：等待上游与退避期间不占用容器工作线程
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(0); // 各阶段已有超时（路由超时 / 流式空闲超时）
+        // 先注册监听器再订阅：订阅后交换可能立即结束，监听器须已就位
+        Disposable.Swap subscription = Disposables.swap();
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                subscription.dispose();
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                subscription.dispose();
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        subscription.update(exchange
+                .doFinally(signal -> completeQuietly(asyncContext))
+                .subscribe());
+    }
+
+    /**
+     * 发送一次请求；失败或命中重试状态码时，在重试预算内按退避延迟（定时器调度，不睡眠线程）重发
+     */
+    private Mono<ClientResponse> sendWithRetry(ProxyCall call, int attempt) {
+        WebClient.RequestBodySpec spec = webClient().method(call.httpMethod())
+                .uri(call.targetUrl())
+                .headers(headers -> headers.addAll(call.requestHeaders()));
+        Mono<ClientResponse> once = (call.replayBody() != null
+                ? spec.bodyValue(call.replayBody())
+                : spec.body(BodyInserters.fromDataBuffers(streamRequestBody(call.streamingBody()))))
+                .exchange()
+                .timeout(call.timeout())
+                .switchIfEmpty(Mono.error(() -> new IOException("No response from upstream")));
+
+        return once
+                .flatMap(clientResponse -> {
+                    int status = clientResponse.statusCode().value();
+                    if (attempt < call.maxAttempts() && call.retry().retryStatusCodes().contains(status)
+                            && retryBudget.tryAcquireRetry(call.route().getId())) {
+                        log.warn("Retry {}/{}: {} {} status={}",
+                                attempt, call.maxAttempts(), call.method(), call.targetUrl(), status);
+                        return clientResponse.releaseBody()
+                                .onErrorResume(e -> Mono.empty())
+                                .then(Mono.error(new RetryableStatusException(status)));
                     }
-                    break;
-                }
+                    return Mono.just(clientResponse);
+                })
+                .onErrorResume(e -> {
+                    boolean retryable = e instanceof RetryableStatusException
+                            || (attempt < call.maxAttempts() && !call.requestStream().isExceeded()
+                                && retryBudget.tryAcquireRetry(call.route().getId()));
+                    if (!retryable) {
+                        return Mono.error(e);
+                    }
+                    if (!(e instanceof RetryableStatusException)) {
+                        log.warn("Retry {}/{}: {} {} error={}",
+                                attempt, call.maxAttempts(), call.method(), call.targetUrl(), e.getMessage());
+                    }
+                    return Mono.delay(backoffDelay(call.retry(), attempt))
+                            .then(Mono.defer(() -> sendWithRetry(call, attempt + 1)));
+                });
+    }
 
-                responseStatus = org.springframework.http.HttpStatus.valueOf(clientResponse.statusCode().value());
-                responseHeaders = clientResponse.headers().asHttpHeaders();
-                responseBody = clientResponse.bodyToMono(byte[].class).block(java.time.Duration.ofMillis(timeout));
-                if (responseBody != null && responseBody.length > maxProxyBodyBytes) {
-                    throw new IOException("Upstream response body exceeds gateway proxy limit");
-                }
+    private void respond(ProxyCall call, ClientResponse upstream) {
+        HttpServletResponse response = call.response();
+        int status = upstream.statusCode().value();
+        HttpHeaders responseHeaders = upstream.headers().asHttpHeaders();
+        response.setStatus(status);
+        responseHeaders.forEach((name, values) -> {
+            if (!isHopByHopHeader(name)) values.forEach(v -> response.addHeader(name, v));
+        });
+        response.setHeader(TRACE_ID_HEADER, call.traceId());
 
-                if (attempt < maxAttempts && retryStatusCodes.contains(responseStatus.value())) {
-                    log.warn("Retry {}/{}: {} {} status={}",
-                            attempt, maxAttempts, method, targetUrl, responseStatus.value());
-                    sleepBackoff(retryInitialMs, retryBackoff, attempt);
-                    continue;
-                }
-                lastException = null;
-                break;
-            } catch (WebClientResponseException e) {
-                lastException = e;
-                responseStatus = org.springframework.http.HttpStatus.valueOf(e.getStatusCode().value());
-                if (attempt < maxAttempts && retryStatusCodes.contains(e.getStatusCode().value())) {
-                    log.warn("Retry {}/{}: {} {} error={}",
-                            attempt, maxAttempts, method, targetUrl, e.getMessage());
-                    sleepBackoff(retryInitialMs, retryBackoff, attempt);
-                } else {
-                    break;
-                }
-            } catch (Exception e) {
-                lastException = e;
-                if (attempt < maxAttempts) {
-                    log.warn("Retry {}/{}: {} {} error={}",
-                            attempt, maxAttempts, method, targetUrl, e.getMessage());
-                    sleepBackoff(retryInitialMs, retryBackoff, attempt);
+        // 响应体逐块写回；响应头已发出，中途出错只能断开，不能再改写为 502
+        String streamError;
+        boolean clientAborted = false;
+        try {
+            streamError = streamResponseBody(upstream, responseHeaders, response, call.timeout());
+        } catch (IOException e) {
+            clientAborted = true;
+            streamError = "Client aborted: " + e.getMessage();
+        } catch (RuntimeException e) {
+            streamError = "Proxy response failed: " + e.getMessage();
+        }
+        long latency = System.currentTimeMillis() - call.start();
+
+        boolean upstreamSuccess = upstream.statusCode().is2xxSuccessful() && (streamError == null || clientAborted);
+        circuitBreakerService.recordResult(call.route(), upstreamSuccess);
+        if (streamError != null) {
+            log.warn("Proxy stream interrupted: {} {} {}", call.method(), call.targetUrl(), streamError);
+        }
+
+        boolean ok = upstreamSuccess && streamError == null;
+        saveAuditLog(call.request(), call.traceId(), call.route(), call.targetUrl(),
+                call.resolvedRoute().getTargetService(), status, ok ? "SUCCESS" : "ERROR", streamError, latency);
+        if (!ok) statsService.incrementErrorCount();
+    }
+
+    private void fail(ProxyCall call, Throwable error) {
+        try {
+            if (call.requestStream().isExceeded()) {
+                writePayloadTooLarge(call.request(), call.response(), call.route(), call.resolvedRoute(), call.traceId());
+                return;
+            }
+            long latency = System.currentTimeMillis() - call.start();
+            if (isRejected(error)) {
+                writeCapacityExhausted(call.request(), call.response(), call.route(), call.resolvedRoute(),
+                        call.traceId());
+                return;
+            }
+            String errMsg = Exceptions.unwrap(error).getMessage();
+            log.error("Proxy failed after retries: {} {} {}", call.method(), call.targetUrl(), errMsg);
+            statsService.incrementErrorCount();
+            circuitBreakerService.recordResult(call.route(), false);
+            writeError(call.request(), call.response(), HttpStatus.BAD_GATEWAY,
+                    "UnifiedGateway upstream request failed", call.traceId());
+            saveAuditLog(call.request(), call.traceId(), call.route(), call.targetUrl(),
+                    call.resolvedRoute().getTargetService(), HttpStatus.BAD_GATEWAY.value(), "ERROR", errMsg, latency);
+        } catch (Exception e) {
+            log.warn("Failed to write gateway proxy error: {}", e.getMessage());
+        }
+    }
+
+    private void completeQuietly(AsyncContext asyncContext) {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            log.debug("Gateway async context already completed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 请求体按需读取：上游连接有写入需求时才从客户端读下一块，读取放在代理 IO 线程池避免阻塞 Netty IO 线程
+     */
+    private Flux<DataBuffer> streamRequestBody(InputStream body) {
+        return DataBufferUtils.readInputStream(() -> body, DefaultDataBufferFactory.sharedInstance, STREAM_CHUNK_BYTES)
+                .subscribeOn(ioScheduler());
+    }
+
+    private Semaphore streamPermits() {
+        Semaphore current = streamPermits;
+        if (current == null) {
+            synchronized (this) {
+                if (streamPermits == null) {
+                    streamPermits = new Semaphore(Math.max(1, maxConcurrentStreams));
                 }
+                current = streamPermits;
             }
         }
+        return current;
+    }
 
-        long latency = System.currentTimeMillis() - start;
+    /**
+     * 代理 IO 线程池：线程数为在途上限的两倍（每个调用最多同时读写各占一个），
+     * 队列有界、满了直接拒绝（AbortPolicy），拒绝由调用方转成 503
+     */
+    private Scheduler ioScheduler() {
+        Scheduler current = ioScheduler;
+        if (current == null) {
+            synchronized (this) {
+                if (ioScheduler == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    int limit = Math.max(1, maxConcurrentStreams);
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(limit * 2, limit * 2, 60L, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(limit), r -> {
+                                Thread t = new Thread(r, "gateway-proxy-io-" + counter.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            }, new ThreadPoolExecutor.AbortPolicy());
+                    executor.allowCoreThreadTimeOut(true);
+                    ioScheduler = Schedulers.fromExecutorService(executor, "gateway-proxy-io");
+                }
+                current = ioScheduler;
+            }
+        }
+        return current;
+    }
 
-        if (lastException != null || responseStatus == null) {
-            String errMsg = lastException != null ? lastException.getMessage() : "No response";
-            log.error("Proxy failed after {} attempt(s): {}", maxAttempts, errMsg);
-            statsService.incrementErrorCount();
-            circuitBreakerService.recordResult(route, false);
-            writeError(request, response, HttpStatus.BAD_GATEWAY,
-                    "UnifiedGateway upstream request failed", traceId);
-            saveAuditLog(request, route, targetUrl, resolvedRoute.getTargetService(),
-                    HttpStatus.BAD_GATEWAY.value(), "ERROR", errMsg, latency);
-            return;
+    private static boolean isRejected(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof RejectedExecutionException) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        boolean upstreamSuccess = responseStatus.is2xxSuccessful();
-        circuitBreakerService.recordResult(route, upstreamSuccess);
+    /**
+     * 逐块把上游响应写回客户端；事件流或未声明长度的响应每块都 flush，首字节时间与上游一致。
+     * 消费端每处理完一批才向上游请求下一批（背压），空闲超过路由超时即中止。
+     *
+     * @return 上游中途出错时的错误信息，正常结束返回 null
+     * @throws IOException 向客户端写入失败（客户端断开）
+     */
+    private String streamResponseBody(ClientResponse upstream, HttpHeaders headers,
+                                      HttpServletResponse response, java.time.Duration idleTimeout) throws IOException {
+        MediaType contentType = headers.getContentType();
+        boolean flushEachChunk = headers.getContentLength() < 0
+                || (contentType != null && MediaType.TEXT_EVENT_STREAM.isCompatibleWith(contentType));
+        ServletOutputStream out = response.getOutputStream();
+        if (flushEachChunk) {
+            response.flushBuffer();
+        }
 
-        response.setStatus(responseStatus.value());
-        if (responseHeaders != null) {
-            responseHeaders.forEach((name, values) -> {
-                if (!isHopByHopHeader(name)) values.forEach(v -> response.addHeader(name, v));
-            });
+        Flux<DataBuffer> body = upstream.bodyToFlux(DataBuffer.class)
+                .timeout(idleTimeout)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        try (java.util.stream.Stream<DataBuffer> chunks = body.toStream(STREAM_PREFETCH)) {
+            Iterator<DataBuffer> iterator = chunks.iterator();
+            while (true) {
+                DataBuffer chunk;
+                try {
+                    if (!iterator.hasNext()) break;
+                    chunk = iterator.next();
+                } catch (RuntimeException e) {
+                    return "Upstream stream failed: " + Exceptions.unwrap(e).getMessage();
+                }
+                try {
+                    byte[] bytes = new byte[chunk.readableByteCount()];
+                    chunk.read(bytes);
+                    out.write(bytes);
+                } finally {
+                    DataBufferUtils.release(chunk);
+                }
+                if (flushEachChunk) out.flush();
+            }
         }
-        response.setHeader(TRACE_ID_HEADER, traceId);
-        if (responseBody != null) response.getOutputStream().write(responseBody);
+        return null;
+    }
+
+    private void writePayloadTooLarge(HttpServletRequest request, HttpServletResponse response,
+                                      UnifiedGatewayRoute route,
+                                      UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolvedRoute,
+                                      String traceId) throws IOException {
+        writeError(request, response, HttpStatus.PAYLOAD_TOO_LARGE,
+                "Request body exceeds gateway proxy limit", traceId);
+        saveAuditLog(request, traceId, route, resolvedRoute.getTargetUrl(), resolvedRoute.getTargetService(),
+                HttpStatus.PAYLOAD_TOO_LARGE.value(), "ERROR", "Request body too large", 0L);
+        statsService.incrementErrorCount();
+    }
 
-        saveAuditLog(request, route, targetUrl, resolvedRoute.getTargetService(),
-                responseStatus.value(), upstreamSuccess ? "SUCCESS" : "ERROR", null, latency);
-        if (!upstreamSuccess) statsService.incrementErrorCount();
+    private void writeCapacityExhausted(HttpServletRequest request, HttpServletResponse response,
+                                        UnifiedGatewayRoute route,
+                                        UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolvedRoute,
+                                        String traceId) throws IOException {
+        log.warn("Gateway proxy capacity exhausted ({} concurrent streams): {} {}",
+                maxConcurrentStreams, request.getMethod(), resolvedRoute.getTargetUrl());
+        writeError(request, response, HttpStatus.SERVICE_UNAVAILABLE,
+                "Gateway proxy capacity exhausted", traceId);
+        saveAuditLog(request, traceId, route, resolvedRoute.getTargetUrl(), resolvedRoute.getTargetService(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(), "DENY", "Proxy stream capacity exhausted", 0L);
+        statsService.incrementErrorCount();
     }
 
     // =========================================================================
@@ -452,61 +745,9 @@ public class UnifiedGatewayProxyFilter implements Filter {
         return path != null && RESCUE_PATTERNS.stream().anyMatch(pattern -> pathMatcher.match(pattern, path));
     }
 
-    private int resolveMaxAttempts(UnifiedGatewayRoute route) {
-        if (route.getRetryPolicyId() != null) {
-            return retryPolicyRepository.findById(route.getRetryPolicyId())
-                    .filter(p -> Boolean.TRUE.equals(p.getEnabled()))
-                    .map(UnifiedGatewayRetryPolicy::getMaxAttempts)
-                    .orElse(1);
-        }
-        int retryCount = route.getRetryCount() != null ? route.getRetryCount() : 0;
-        return 1 + retryCount;
-    }
-
-    private Set<Integer> resolveRetryStatusCodes(UnifiedGatewayRoute route) {
-        if (route.getRetryPolicyId() != null) {
-            return retryPolicyRepository.findById(route.getRetryPolicyId())
-                    .filter(p -> Boolean.TRUE.equals(p.getEnabled()))
-                    .map(p -> parseStatusCodes(p.getRetryOnStatusCodes()))
-                    .orElse(Set.of(500, 502, 503, 504));
-        }
-        return Set.of(500, 502, 503, 504);
-    }
-
-    private long resolveRetryInitialMs(UnifiedGatewayRoute route) {
-        if (route.getRetryPolicyId() != null) {
-            return retryPolicyRepository.findById(route.getRetryPolicyId())
-                    .filter(p -> Boolean.TRUE.equals(p.getEnabled()))
-                    .map(p -> p.getInitialIntervalMs() != null ? p.getInitialIntervalMs().longValue() : 100L)
-                    .orElse(100L);
-        }
-        return 100L;
-    }
-
-    private double resolveRetryBackoff(UnifiedGatewayRoute route) {
-        if (route.getRetryPolicyId() != null) {
-            return retryPolicyRepository.findById(route.getRetryPolicyId())
-                    .filter(p -> Boolean.TRUE.equals(p.getEnabled()))
-                    .map(p -> p.getBackoffMultiplier() != null ? p.getBackoffMultiplier() : 2.0)
-                    .orElse(2.0);
-        }
-        return 2.0;
-    }
-
-    private Set<Integer> parseStatusCodes(String csv) {
-        if (csv == null || csv.isBlank()) return Set.of();
-        Set<Integer> codes = new HashSet<>();
-        for (String s : csv.split(",")) {
-            try { codes.add(Integer.parseInt(s.trim())); } catch (NumberFormatException ignored) {}
-        }
-        return codes;
-    }
-
-    private void sleepBackoff(long initialMs, double multiplier, int attempt) {
-        long delay = (long) (initialMs * Math.pow(multiplier, attempt - 1));
-        try { Thread.sleep(Math.min(delay, 5000)); } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-        }
+    private java.time.Duration backoffDelay(UnifiedGatewayEffectivePolicyCache.Retry retry, int attempt) {
+        long delay = (long) (retry.initialIntervalMs() * Math.pow(retry.backoffMultiplier(), attempt - 1));
+        return java.time.Duration.ofMillis(Math.max(0, Math.min(delay, 5000)));
     }
 
     private Optional<GatewaySecret> resolveApiKey(HttpServletRequest request) {
@@ -555,6 +796,11 @@ public class UnifiedGatewayProxyFilter implements Filter {
         return headers;
     }
 
+    /** 无 Content-Length 且非分块传输的请求没有请求体（如普通 GET） */
+    private boolean hasRequestBody(HttpServletRequest request, long contentLength) {
+        return contentLength > 0 || (contentLength < 0 && request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null);
+    }
+
     private boolean isHopByHopHeader(String name) {
         return name != null && HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.ROOT));
     }
@@ -588,7 +834,10 @@ public class UnifiedGatewayProxyFilter implements Filter {
         response.getWriter().write(objectMapper.writeValueAsString(body));
     }
 
-    private void saveAuditLog(HttpServletRequest request, UnifiedGatewayRoute route,
+    /**
+     * 追加一条审计记录；traceId 由调用方传入（响应阶段可能在其它线程执行，MDC 不可用）
+     */
+    private void saveAuditLog(HttpServletRequest request, String traceId, UnifiedGatewayRoute route,
                                String targetUrl, String targetService,
                                Integer statusCode, String result,
                                String errorMessage, long latencyMs) {
@@ -599,7 +848,7 @@ public class UnifiedGatewayProxyFilter implements Filter {
 
             UnifiedGatewayAuditLog logEntity = UnifiedGatewayAuditLog.builder()
                     .routeId(route != null ? route.getId() : null)
-                    .traceId(resolveTraceId(request))
+                    .traceId(traceId)
                     .method(request.getMethod())
                     .path(request.getRequestURI())
                     .targetService(targetService)
@@ -613,9 +862,73 @@ public class UnifiedGatewayProxyFilter implements Filter {
                     .errorMessage(errorMessage)
                     .createdAt(LocalDateTime.now())
                     .build();
-            auditLogRepository.save(logEntity);
+            auditLogWriter.append(logEntity);
+            if (route != null) {
+                latencyRollupService.recordRoute(route.getName(), latencyMs);
+            }
         } catch (Exception ex) {
-            log.warn("Failed to save gateway audit log: {}", ex.getMessage());
+            log.warn("Failed to build gateway audit log: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * 限制请求体总长度（未声明 Content-Length 的分块上传只能边读边计数）
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+        private volatile boolean exceeded;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        boolean isExceeded() {
+            return exceeded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count(n);
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            count += n;
+            if (count > limit) {
+                exceeded = true;
+                throw new IOException("Request body exceeds gateway proxy limit");
+            }
+        }
+    }
+
+    /** 一次代理调用的上下文（跨线程传递） */
+    private record ProxyCall(HttpServletRequest request, HttpServletResponse response,
+                             UnifiedGatewayRoute route,
+                             UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolvedRoute,
+                             String traceId, String method, org.springframework.http.HttpMethod httpMethod,
+                             HttpHeaders requestHeaders, byte[] replayBody, InputStream streamingBody,
+                             LimitedInputStream requestStream, int maxAttempts,
+                             UnifiedGatewayEffectivePolicyCache.Retry retry, java.time.Duration timeout,
+                             long start) {
+        String targetUrl() {
+            return resolvedRoute.getTargetUrl();
+        }
+    }
+
+    /** 上游返回了可重试状态码（响应体已释放），交给 onErrorResume 统一调度重试 */
+    private static final class RetryableStatusException extends RuntimeException {
+        RetryableStatusException(int status) {
+            super("Retryable upstream status " + status, null, false, false);
         }
     }
 }
@@ -2,6 +2,7 @@ package com.adlin.orin.modules.gateway.scheduler;
 
 import com.adlin.orin.modules.gateway.entity.UnifiedGatewayServiceInstance;
 import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceInstanceRepository;
+import com.adlin.orin.modules.gateway.service.UnifiedGatewayRouteTable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
@@ -11,6 +12,7 @@ import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 import java.util.Random;
 
 @Slf4j
@@ -21,6 +23,7 @@ public class ServiceHealthChecker {
     private final UnifiedGatewayServiceInstanceRepository instanceRepository;
     private final RedisTemplate<String, String> redisTemplate;
     private final RestTemplate restTemplate;
+    private final UnifiedGatewayRouteTable routeTable;
 
     private static final String HEALTH_KEY_PREFIX = "gateway:health:";
     private static final int MAX_CONSECUTIVE_FAILURES = 3;
@@ -28,6 +31,7 @@ public class ServiceHealthChecker {
     @Scheduled(fixedDelay = 30000)
     public void checkHealth() {
         List<UnifiedGatewayServiceInstance> instances = instanceRepository.findAll();
+        boolean statusChanged = false;
 
         for (UnifiedGatewayServiceInstance instance : instances) {
             if (!instance.getEnabled()) {
@@ -45,11 +49,20 @@ public class ServiceHealthChecker {
                 Thread.currentThread().interrupt();
             }
 
-            performHealthCheck(instance);
+            statusChanged |= performHealthCheck(instance);
+        }
+
+        // 实例上下线会改变可路由目标，重建路由表
+        if (statusChanged) {
+            routeTable.invalidate();
         }
     }
 
-    private void performHealthCheck(UnifiedGatewayServiceInstance instance) {
+    /**
+     * @return 实例状态是否发生变化
+     */
+    private boolean performHealthCheck(UnifiedGatewayServiceInstance instance) {
+        String previousStatus = instance.getStatus();
         String url = buildHealthCheckUrl(instance);
         long start = System.currentTimeMillis();
 
@@ -82,6 +95,7 @@ public class ServiceHealthChecker {
             log.warn("Health check FAILED for instance {}:{}: {}",
                     instance.getHost(), instance.getPort(), e.getMessage());
         }
+        return !Objects.equals(previousStatus, instance.getStatus());
     }
 
     private String buildHealthCheckUrl(UnifiedGatewayServiceInstance instance) {
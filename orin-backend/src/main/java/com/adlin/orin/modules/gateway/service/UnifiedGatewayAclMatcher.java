@@ -0,0 +1,189 @@
+package com.adlin.orin.modules.gateway.service;
+
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayAclRule;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编译后的 ACL 规则集（不可变）
+ *
+ * - 规则按优先级降序编号，匹配结果取编号最小（优先级最高）且路径也匹配的规则
+ * - IPv4 CIDR 插入二进制前缀树，一次自顶向下遍历即可得到包含该 IP 的全部规则
+ * - 非 CIDR 的 IP 写法按字符串精确匹配；ipPattern 为空的规则匹配任意 IP
+ */
+public final class UnifiedGatewayAclMatcher {
+
+    public static final UnifiedGatewayAclMatcher EMPTY = compile(List.of());
+
+    private final List<Rule> rules;
+    private final BitSet anyIp;
+    private final Map<String, BitSet> exactIps;
+    private final Node cidrRoot;
+
+    private UnifiedGatewayAclMatcher(List<Rule> rules, BitSet anyIp, Map<String, BitSet> exactIps, Node cidrRoot) {
+        this.rules = rules;
+        this.anyIp = anyIp;
+        this.exactIps = exactIps;
+        this.cidrRoot = cidrRoot;
+    }
+
+    /**
+     * @param enabledRules 已启用的规则，按优先级降序
+     */
+    public static UnifiedGatewayAclMatcher compile(List<UnifiedGatewayAclRule> enabledRules) {
+        List<Rule> rules = new ArrayList<>(enabledRules.size());
+        BitSet anyIp = new BitSet();
+        Map<String, BitSet> exactIps = new HashMap<>();
+        Node cidrRoot = new Node();
+
+        for (UnifiedGatewayAclRule entity : enabledRules) {
+            int index = rules.size();
+            rules.add(new Rule(entity.getId(), entity.getName(), entity.getType(), entity.getPathPattern(),
+                    Boolean.TRUE.equals(entity.getApiKeyRequired())));
+
+            String pattern = entity.getIpPattern();
+            if (pattern == null || pattern.isEmpty()) {
+                anyIp.set(index);
+                continue;
+            }
+            for (String part : pattern.split(",")) {
+                String p = part.trim();
+                if (p.isEmpty()) {
+                    // 与原逐条匹配一致：列表中的空项视为匹配任意 IP
+                    anyIp.set(index);
+                } else if (p.contains("/")) {
+                    insertCidr(cidrRoot, p, index);
+                } else {
+                    exactIps.computeIfAbsent(p, k -> new BitSet()).set(index);
+                }
+            }
+        }
+        return new UnifiedGatewayAclMatcher(List.copyOf(rules), anyIp, exactIps, cidrRoot);
+    }
+
+    /**
+     * @return 命中的最高优先级规则，未命中返回 null
+     */
+    public Rule match(String ip, String path) {
+        BitSet candidates = (BitSet) anyIp.clone();
+        if (ip != null) {
+            BitSet exact = exactIps.get(ip);
+            if (exact != null) {
+                candidates.or(exact);
+            }
+            long address = parseIpv4(ip);
+            if (address >= 0) {
+                collectCidrMatches(address, candidates);
+            }
+        }
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Rule rule = rules.get(i);
+            if (rule.pathPattern() == null || matchesPath(rule.pathPattern(), path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    private void collectCidrMatches(long address, BitSet into) {
+        Node node = cidrRoot;
+        for (int bit = 31; node != null; bit--) {
+            if (node.rules != null) {
+                into.or(node.rules);
+            }
+            if (bit < 0) {
+                break;
+            }
+            node = ((address >>> bit) & 1L) == 0 ? node.zero : node.one;
+        }
+    }
+
+    private static void insertCidr(Node root, String cidr, int ruleIndex) {
+        String[] parts = cidr.split("/");
+        if (parts.length != 2) {
+            return;
+        }
+        long network = parseIpv4(parts[0].trim());
+        int prefix;
+        try {
+            prefix = Integer.parseInt(parts[1].trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (network < 0 || prefix < 0 || prefix > 32) {
+            return;
+        }
+        Node node = root;
+        for (int i = 0; i < prefix; i++) {
+            if (((network >>> (31 - i)) & 1L) == 0) {
+                if (node.zero == null) node.zero = new Node();
+                node = node.zero;
+            } else {
+                if (node.one == null) node.one = new Node();
+                node = node.one;
+            }
+        }
+        if (node.rules == null) {
+            node.rules = new BitSet();
+        }
+        node.rules.set(ruleIndex);
+    }
+
+    /**
+     * @return 32 位无符号地址，非法 IPv4 返回 -1
+     */
+    static long parseIpv4(String ip) {
+        long result = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c == '.') {
+                if (value < 0 || ++octets > 3) return -1;
+                result = (result << 8) | value;
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) return -1;
+            } else {
+                return -1;
+            }
+        }
+        if (value < 0 || octets != 3) return -1;
+        return (result << 8) | value;
+    }
+
+    static boolean matchesPath(String pattern, String path) {
+        if (path == null) return false;
+        if (pattern.equals(path)) return true;
+        if (pattern.endsWith("/**")) {
+            return path.startsWith(pattern.substring(0, pattern.length() - 3));
+        }
+        if (pattern.endsWith("/*")) {
+            String prefix = pattern.substring(0, pattern.length() - 2);
+            int slashIdx = path.indexOf('/', prefix.length());
+            return path.startsWith(prefix) && (slashIdx == -1 || slashIdx == path.length());
+        }
+        return false;
+    }
+
+    public record Rule(Long id, String name, String type, String pathPattern, boolean apiKeyRequired) {
+        public boolean isWhitelist() {
+            return "WHITELIST".equals(type);
+        }
+    }
+
+    private static final class Node {
+        private Node zero;
+        private Node one;
+        private BitSet rules;
+    }
+}
@@ -20,6 +20,7 @@ import java.util.stream.Collectors;
 public class UnifiedGatewayAclService {
 
     private final UnifiedGatewayAclRuleRepository aclRepository;
+    private final UnifiedGatewayEffectivePolicyCache policyCache;
 
     public List<UnifiedGatewayAclRuleResponse> getAllRules() {
         return aclRepository.findAllByOrderByPriorityDesc().stream()
@@ -46,6 +47,7 @@ public class UnifiedGatewayAclService {
                 .enabled(request.getEnabled() != null ? request.getEnabled() : true)
                 .build();
         rule = aclRepository.save(rule);
+        policyCache.invalidate();
         log.info("Created ACL rule: {} ({})", rule.getName(), rule.getId());
         return UnifiedGatewayAclRuleResponse.fromEntity(rule);
     }
@@ -63,6 +65,7 @@ public class UnifiedGatewayAclService {
         if (request.getPriority() != null) rule.setPriority(request.getPriority());
         if (request.getEnabled() != null) rule.setEnabled(request.getEnabled());
         rule = aclRepository.save(rule);
+        policyCache.invalidate();
         log.info("Updated ACL rule: {} ({})", rule.getName(), rule.getId());
         return UnifiedGatewayAclRuleResponse.fromEntity(rule);
     }
@@ -73,30 +76,24 @@ public class UnifiedGatewayAclService {
             throw new RuntimeException("ACL rule not found: " + id);
         }
         aclRepository.deleteById(id);
+        policyCache.invalidate();
         log.info("Deleted ACL rule: {}", id);
     }
 
     public Map<String, Object> testIp(String ip, String path) {
-        List<UnifiedGatewayAclRule> rules = aclRepository.findByEnabledOrderByPriorityDesc(true);
-
         Map<String, Object> result = new HashMap<>();
         result.put("ip", ip);
         result.put("path", path);
 
-        for (UnifiedGatewayAclRule rule : rules) {
-            boolean ipMatches = matchesIp(rule.getIpPattern(), ip);
-            boolean pathMatches = rule.getPathPattern() == null ||
-                                  matchesPath(rule.getPathPattern(), path);
-
-            if (ipMatches && pathMatches) {
-                result.put("matched", true);
-                result.put("ruleId", rule.getId());
-                result.put("ruleName", rule.getName());
-                result.put("ruleType", rule.getType());
-                result.put("action", "WHITELIST".equals(rule.getType()) ? "ALLOW" : "DENY");
-                result.put("apiKeyRequired", Boolean.TRUE.equals(rule.getApiKeyRequired()));
-                return result;
-            }
+        UnifiedGatewayAclMatcher.Rule rule = policyCache.acl().match(ip, path);
+        if (rule != null) {
+            result.put("matched", true);
+            result.put("ruleId", rule.id());
+            result.put("ruleName", rule.name());
+            result.put("ruleType", rule.type());
+            result.put("action", rule.isWhitelist() ? "ALLOW" : "DENY");
+            result.put("apiKeyRequired", rule.apiKeyRequired());
+            return result;
         }
 
         result.put("matched", false);
@@ -106,58 +103,7 @@ public class UnifiedGatewayAclService {
     }
 
     public boolean isAllowed(String clientIp, String path) {
-        Map<String, Object> testResult = testIp(clientIp, path);
-        return "ALLOW".equals(testResult.get("action"));
-    }
-
-    private boolean matchesIp(String pattern, String ip) {
-        if (pattern == null || pattern.isEmpty()) return true;
-        if (pattern.contains(",")) {
-            for (String p : pattern.split(",")) {
-                if (matchesIp(p.trim(), ip)) return true;
-            }
-            return false;
-        }
-        if (pattern.contains("/")) {
-            return isInCidr(pattern, ip);
-        }
-        return pattern.equals(ip);
-    }
-
-    private boolean isInCidr(String cidr, String ip) {
-        try {
-            String[] parts = cidr.split("/");
-            String network = parts[0];
-            int prefix = Integer.parseInt(parts[1]);
-
-            long networkLong = ipToLong(network);
-            long ipLong = ipToLong(ip);
-            long mask = (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
-
-            return (networkLong & mask) == (ipLong & mask);
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
-    private long ipToLong(String ip) {
-        String[] octets = ip.split("\\.");
-        return (Long.parseLong(octets[0]) << 24) |
-               (Long.parseLong(octets[1]) << 16) |
-               (Long.parseLong(octets[2]) << 8) |
-               Long.parseLong(octets[3]);
-    }
-
-    private boolean matchesPath(String pattern, String path) {
-        if (pattern.equals(path)) return true;
-        if (pattern.endsWith("/**")) {
-            return path.startsWith(pattern.substring(0, pattern.length() - 3));
-        }
-        if (pattern.endsWith("/*")) {
-            String prefix = pattern.substring(0, pattern.length() - 2);
-            int slashIdx = path.indexOf('/', prefix.length());
-            return path.startsWith(prefix) && (slashIdx == -1 || slashIdx == path.length());
-        }
-        return false;
+        UnifiedGatewayAclMatcher.Rule rule = policyCache.acl().match(clientIp, path);
+        return rule == null || rule.isWhitelist();
     }
 }
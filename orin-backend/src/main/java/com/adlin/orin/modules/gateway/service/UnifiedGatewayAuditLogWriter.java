@@ -0,0 +1,234 @@
+package com.adlin.orin.modules.gateway.service;
+
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayAuditLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 网关审计日志异步批量写入器
+ *
+ * - 请求线程先用 CAS 预留名额再追加到无锁队列（多生产者、单消费者），不等待数据库
+ * - 后台写线程每 flush-interval-ms 或积压达到 batch-size 时用 JDBC batch insert 落库
+ * - 队列满时按 overflow-policy 处理：DROP_OLDEST 淘汰最旧记录；SAMPLE 只保留每 sample-every 条中的 1 条
+ * - 指标：gateway.audit.queue.depth、gateway.audit.flush（批次耗时）、gateway.audit.dropped{reason}
+ * - 关闭时停止写线程并把队列中剩余记录全部写完
+ */
+@Slf4j
+@Component
+public class UnifiedGatewayAuditLogWriter {
+
+    public enum OverflowPolicy { DROP_OLDEST, SAMPLE }
+
+    private static final String INSERT_SQL = "INSERT INTO gateway_audit_logs (route_id, trace_id, method, path, "
+            + "target_service, target_url, status_code, latency_ms, client_ip, user_agent, api_key_id, result, "
+            + "error_message, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentLinkedQueue<UnifiedGatewayAuditLog> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong overflowSeq = new AtomicLong();
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final OverflowPolicy overflowPolicy;
+    private final Timer flushTimer;
+    private final Counter droppedOverflow;
+    private final Counter droppedError;
+
+    @Value("${orin.gateway.audit.sample-every:10}")
+    private int sampleEvery = 10;
+
+    private volatile boolean running;
+    private volatile Thread writerThread;
+
+    public UnifiedGatewayAuditLogWriter(JdbcTemplate jdbcTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${orin.gateway.audit.queue-capacity:20000}") int capacity,
+            @Value("${orin.gateway.audit.batch-size:500}") int batchSize,
+            @Value("${orin.gateway.audit.flush-interval-ms:200}") long flushIntervalMs,
+            @Value("${orin.gateway.audit.overflow-policy:DROP_OLDEST}") String overflowPolicy) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(10, flushIntervalMs);
+        this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy.trim().toUpperCase(Locale.ROOT));
+        Gauge.builder("gateway.audit.queue.depth", size, AtomicInteger::get)
+                .description("Gateway audit records waiting to be written")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("gateway.audit.flush")
+                .description("Gateway audit batch insert latency")
+                .register(meterRegistry);
+        this.droppedOverflow = Counter.builder("gateway.audit.dropped")
+                .description("Gateway audit records dropped")
+                .tag("reason", "overflow")
+                .register(meterRegistry);
+        this.droppedError = Counter.builder("gateway.audit.dropped")
+                .description("Gateway audit records dropped")
+                .tag("reason", "error")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::runLoop, "gateway-audit-writer");
+        thread.setDaemon(true);
+        writerThread = thread;
+        thread.start();
+    }
+
+    /**
+     * 追加一条审计记录（不阻塞）
+     */
+    public void append(UnifiedGatewayAuditLog record) {
+        if (record == null) {
+            return;
+        }
+        // 先用 CAS 预留名额再入队，并发追加时队列长度不会超过 capacity
+        boolean sampled = false;
+        int reserved;
+        while (true) {
+            int current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    reserved = current + 1;
+                    break;
+                }
+                continue;
+            }
+            if (overflowPolicy == OverflowPolicy.SAMPLE && !sampled) {
+                if (overflowSeq.incrementAndGet() % Math.max(1, sampleEvery) != 0) {
+                    droppedOverflow.increment();
+                    return;
+                }
+                sampled = true;
+            }
+            // DROP_OLDEST，或 SAMPLE 抽中的记录：淘汰最旧的一条，直接接过它的名额
+            if (queue.poll() != null) {
+                droppedOverflow.increment();
+                reserved = current;
+                break;
+            }
+            // 名额已被其它线程预留但尚未入队，稍后重试
+            Thread.onSpinWait();
+        }
+        queue.offer(record);
+        if (reserved >= batchSize) {
+            Thread thread = writerThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return size.get();
+    }
+
+    /**
+     * 写出队列中当前所有记录
+     *
+     * @return 成功写入的条数
+     */
+    public int flush() {
+        int written = 0;
+        while (true) {
+            List<UnifiedGatewayAuditLog> batch = new ArrayList<>(Math.min(batchSize, Math.max(1, size.get())));
+            UnifiedGatewayAuditLog record;
+            while (batch.size() < batchSize && (record = queue.poll()) != null) {
+                size.decrementAndGet();
+                batch.add(record);
+            }
+            if (batch.isEmpty()) {
+                return written;
+            }
+            written += writeBatch(batch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        int remaining = flush();
+        if (remaining > 0) {
+            log.info("Flushed {} pending gateway audit record(s) on shutdown", remaining);
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.warn("Gateway audit writer loop error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private int writeBatch(List<UnifiedGatewayAuditLog> batch) {
+        long start = System.nanoTime();
+        try {
+            List<Object[]> rows = new ArrayList<>(batch.size());
+            for (UnifiedGatewayAuditLog r : batch) {
+                LocalDateTime createdAt = r.getCreatedAt() != null ? r.getCreatedAt() : LocalDateTime.now();
+                rows.add(new Object[]{
+                        r.getRouteId(),
+                        truncate(r.getTraceId(), 64),
+                        truncate(r.getMethod(), 10),
+                        truncate(r.getPath(), 500),
+                        truncate(r.getTargetService(), 100),
+                        truncate(r.getTargetUrl(), 500),
+                        r.getStatusCode(),
+                        r.getLatencyMs(),
+                        truncate(r.getClientIp(), 45),
+                        truncate(r.getUserAgent(), 500),
+                        truncate(r.getApiKeyId(), 100),
+                        truncate(r.getResult(), 20),
+                        truncate(r.getErrorMessage(), 1000),
+                        Timestamp.valueOf(createdAt)
+                });
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            return batch.size();
+        } catch (Exception e) {
+            droppedError.increment(batch.size());
+            log.warn("Failed to write {} gateway audit record(s): {}", batch.size(), e.getMessage());
+            return 0;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
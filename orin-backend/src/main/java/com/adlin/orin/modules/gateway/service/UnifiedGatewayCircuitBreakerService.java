@@ -1,8 +1,6 @@
 package com.adlin.orin.modules.gateway.service;
 
-import com.adlin.orin.modules.gateway.entity.UnifiedGatewayCircuitBreakerPolicy;
 import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayCircuitBreakerPolicyRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -24,7 +22,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 @RequiredArgsConstructor
 public class UnifiedGatewayCircuitBreakerService {
 
-    private final UnifiedGatewayCircuitBreakerPolicyRepository circuitBreakerPolicyRepository;
+    private final UnifiedGatewayEffectivePolicyCache policyCache;
 
     private final ConcurrentHashMap<Long, CircuitBreakerState> states = new ConcurrentHashMap<>();
 
@@ -54,8 +52,8 @@ public class UnifiedGatewayCircuitBreakerService {
             return true;
         }
 
-        UnifiedGatewayCircuitBreakerPolicy policy = circuitBreakerPolicyRepository.findById(policyId).orElse(null);
-        if (policy == null || !Boolean.TRUE.equals(policy.getEnabled())) {
+        UnifiedGatewayEffectivePolicyCache.CircuitBreaker policy = policyCache.forRoute(route).circuitBreaker();
+        if (policy == null) {
             return true;
         }
 
@@ -99,6 +97,7 @@ public class UnifiedGatewayCircuitBreakerService {
         private volatile int successThreshold;
         private volatile long timeoutMs;
         private volatile int halfOpenMaxRequests;
+        private volatile UnifiedGatewayEffectivePolicyCache.CircuitBreaker policy;
 
         private final AtomicInteger failureCount   = new AtomicInteger(0);
         private final AtomicInteger successCount   = new AtomicInteger(0);
@@ -107,15 +106,19 @@ public class UnifiedGatewayCircuitBreakerService {
         /** OPEN 状态的到期时间（毫秒时间戳） */
         private volatile long openUntil = 0;
 
-        CircuitBreakerState(UnifiedGatewayCircuitBreakerPolicy policy) {
+        CircuitBreakerState(UnifiedGatewayEffectivePolicyCache.CircuitBreaker policy) {
             syncPolicy(policy);
         }
 
-        void syncPolicy(UnifiedGatewayCircuitBreakerPolicy policy) {
-            this.failureThreshold   = policy.getFailureThreshold();
-            this.successThreshold   = policy.getSuccessThreshold();
-            this.timeoutMs          = policy.getTimeoutSeconds() * 1000L;
-            this.halfOpenMaxRequests = policy.getHalfOpenMaxRequests();
+        void syncPolicy(UnifiedGatewayEffectivePolicyCache.CircuitBreaker policy) {
+            if (this.policy == policy) {
+                return; // 编译结果未换代，参数不变
+            }
+            this.failureThreshold   = policy.failureThreshold();
+            this.successThreshold   = policy.successThreshold();
+            this.timeoutMs          = policy.timeoutSeconds() * 1000L;
+            this.halfOpenMaxRequests = policy.halfOpenMaxRequests();
+            this.policy = policy;
         }
 
         synchronized boolean allowRequest() {
@@ -0,0 +1,206 @@
+package com.adlin.orin.modules.gateway.service;
+
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayCircuitBreakerPolicy;
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRateLimitPolicy;
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRetryPolicy;
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayAclRuleRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayCircuitBreakerPolicyRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRateLimitPolicyRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRetryPolicyRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 路由生效策略缓存
+ *
+ * 每条路由的限流 / 熔断 / 重试策略在首次使用时编译成不可变对象（状态码集合预先解析），
+ * ACL 规则编译为 {@link UnifiedGatewayAclMatcher}；请求路径上只读内存，不访问数据库。
+ *
+ * 缓存与路由表快照绑定：路由表每次重建（路由变更、策略 / ACL 变更、跨节点广播、定时对账）
+ * 都会产生新快照，此时整体丢弃已编译的策略。策略与 ACL 的变更通过 {@link #invalidate()}
+ * 复用路由表的版本号与广播机制通知所有节点。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UnifiedGatewayEffectivePolicyCache {
+
+    static final Set<Integer> DEFAULT_RETRY_STATUS_CODES = Set.of(500, 502, 503, 504);
+    private static final long DEFAULT_RETRY_INITIAL_MS = 100L;
+    private static final double DEFAULT_RETRY_BACKOFF = 2.0;
+
+    private final UnifiedGatewayRouteTable routeTable;
+    private final UnifiedGatewayRateLimitPolicyRepository rateLimitPolicyRepository;
+    private final UnifiedGatewayCircuitBreakerPolicyRepository circuitBreakerPolicyRepository;
+    private final UnifiedGatewayRetryPolicyRepository retryPolicyRepository;
+    private final UnifiedGatewayAclRuleRepository aclRuleRepository;
+
+    private volatile Generation generation;
+
+    /**
+     * 路由的生效策略
+     */
+    public EffectivePolicy forRoute(UnifiedGatewayRoute route) {
+        Generation current = current();
+        if (route.getId() == null) {
+            return load(route);
+        }
+        EffectivePolicy cached = current.byRoute.computeIfAbsent(route.getId(), id -> load(route));
+        // 调用方持有的路由对象可能来自更旧的快照，策略引用不一致时按其自身配置编译且不回写
+        return cached.compiledFrom(route) ? cached : load(route);
+    }
+
+    /**
+     * 已编译的全局 ACL 规则
+     */
+    public UnifiedGatewayAclMatcher acl() {
+        Generation current = current();
+        UnifiedGatewayAclMatcher matcher = current.acl;
+        if (matcher == null) {
+            synchronized (current) {
+                matcher = current.acl;
+                if (matcher == null) {
+                    matcher = UnifiedGatewayAclMatcher.compile(aclRuleRepository.findByEnabledOrderByPriorityDesc(true));
+                    current.acl = matcher;
+                    log.debug("Compiled {} gateway ACL rule(s)", matcher.size());
+                }
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * 策略或 ACL 已变更：事务提交后路由表换代，本节点与其它节点的缓存随之失效
+     */
+    public void invalidate() {
+        routeTable.invalidate();
+    }
+
+    private Generation current() {
+        UnifiedGatewayRouteTable.Snapshot snapshot = routeTable.current();
+        Generation current = generation;
+        if (current == null || current.source != snapshot) {
+            current = new Generation(snapshot);
+            generation = current;
+        }
+        return current;
+    }
+
+    private EffectivePolicy load(UnifiedGatewayRoute route) {
+        UnifiedGatewayRateLimitPolicy rateLimit = route.getRateLimitPolicyId() != null
+                ? rateLimitPolicyRepository.findById(route.getRateLimitPolicyId()).orElse(null) : null;
+        UnifiedGatewayCircuitBreakerPolicy circuitBreaker = route.getCircuitBreakerPolicyId() != null
+                ? circuitBreakerPolicyRepository.findById(route.getCircuitBreakerPolicyId()).orElse(null) : null;
+        UnifiedGatewayRetryPolicy retry = route.getRetryPolicyId() != null
+                ? retryPolicyRepository.findById(route.getRetryPolicyId()).orElse(null) : null;
+        return compile(route, rateLimit, circuitBreaker, retry);
+    }
+
+    /**
+     * 由路由及其引用的策略实体编译生效策略；未配置或已禁用的限流 / 熔断策略编译为 null
+     */
+    public static EffectivePolicy compile(UnifiedGatewayRoute route,
+                                          UnifiedGatewayRateLimitPolicy rateLimitPolicy,
+                                          UnifiedGatewayCircuitBreakerPolicy circuitBreakerPolicy,
+                                          UnifiedGatewayRetryPolicy retryPolicy) {
+        RateLimit rateLimit = null;
+        if (rateLimitPolicy != null && Boolean.TRUE.equals(rateLimitPolicy.getEnabled())) {
+            rateLimit = new RateLimit(
+                    rateLimitPolicy.getDimension(),
+                    valueOr(rateLimitPolicy.getCapacity(), 100),
+                    valueOr(rateLimitPolicy.getBurst(), 10),
+                    Math.max(1, valueOr(rateLimitPolicy.getWindowSeconds(), 60)));
+        }
+
+        CircuitBreaker circuitBreaker = null;
+        if (circuitBreakerPolicy != null && Boolean.TRUE.equals(circuitBreakerPolicy.getEnabled())) {
+            circuitBreaker = new CircuitBreaker(
+                    valueOr(circuitBreakerPolicy.getFailureThreshold(), 5),
+                    valueOr(circuitBreakerPolicy.getSuccessThreshold(), 2),
+                    valueOr(circuitBreakerPolicy.getTimeoutSeconds(), 60),
+                    valueOr(circuitBreakerPolicy.getHalfOpenMaxRequests(), 3));
+        }
+
+        Retry retry;
+        if (route.getRetryPolicyId() != null) {
+            if (retryPolicy != null && Boolean.TRUE.equals(retryPolicy.getEnabled())) {
+                retry = new Retry(
+                        Math.max(1, valueOr(retryPolicy.getMaxAttempts(), 1)),
+                        parseStatusCodes(retryPolicy.getRetryOnStatusCodes()),
+                        retryPolicy.getInitialIntervalMs() != null
+                                ? retryPolicy.getInitialIntervalMs().longValue() : DEFAULT_RETRY_INITIAL_MS,
+                        retryPolicy.getBackoffMultiplier() != null
+                                ? retryPolicy.getBackoffMultiplier() : DEFAULT_RETRY_BACKOFF);
+            } else {
+                // 引用的重试策略不存在或已禁用：不重试
+                retry = new Retry(1, DEFAULT_RETRY_STATUS_CODES, DEFAULT_RETRY_INITIAL_MS, DEFAULT_RETRY_BACKOFF);
+            }
+        } else {
+            int retryCount = route.getRetryCount() != null ? route.getRetryCount() : 0;
+            retry = new Retry(1 + retryCount, DEFAULT_RETRY_STATUS_CODES, DEFAULT_RETRY_INITIAL_MS, DEFAULT_RETRY_BACKOFF);
+        }
+
+        return new EffectivePolicy(route.getRateLimitPolicyId(), route.getCircuitBreakerPolicyId(),
+                route.getRetryPolicyId(), route.getRetryCount(), rateLimit, circuitBreaker, retry);
+    }
+
+    static Set<Integer> parseStatusCodes(String csv) {
+        if (csv == null || csv.isBlank()) return Set.of();
+        Set<Integer> codes = new HashSet<>();
+        for (String s : csv.split(",")) {
+            try { codes.add(Integer.parseInt(s.trim())); } catch (NumberFormatException ignored) {}
+        }
+        return Set.copyOf(codes);
+    }
+
+    private static int valueOr(Integer value, int defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    private static final class Generation {
+        private final UnifiedGatewayRouteTable.Snapshot source;
+        private final ConcurrentHashMap<Long, EffectivePolicy> byRoute = new ConcurrentHashMap<>();
+        private volatile UnifiedGatewayAclMatcher acl;
+
+        private Generation(UnifiedGatewayRouteTable.Snapshot source) {
+            this.source = source;
+        }
+    }
+
+    /**
+     * 路由生效策略；rateLimit / circuitBreaker 为 null 表示不限流 / 不熔断
+     */
+    public record EffectivePolicy(Long rateLimitPolicyId,
+                                  Long circuitBreakerPolicyId,
+                                  Long retryPolicyId,
+                                  Integer retryCount,
+                                  RateLimit rateLimit,
+                                  CircuitBreaker circuitBreaker,
+                                  Retry retry) {
+
+        boolean compiledFrom(UnifiedGatewayRoute route) {
+            return Objects.equals(rateLimitPolicyId, route.getRateLimitPolicyId())
+                    && Objects.equals(circuitBreakerPolicyId, route.getCircuitBreakerPolicyId())
+                    && Objects.equals(retryPolicyId, route.getRetryPolicyId())
+                    && Objects.equals(retryCount, route.getRetryCount());
+        }
+    }
+
+    public record RateLimit(String dimension, int capacity, int burst, int windowSeconds) {
+    }
+
+    public record CircuitBreaker(int failureThreshold, int successThreshold, int timeoutSeconds,
+                                 int halfOpenMaxRequests) {
+    }
+
+    public record Retry(int maxAttempts, Set<Integer> retryStatusCodes, long initialIntervalMs,
+                        double backoffMultiplier) {
+    }
+}
@@ -25,6 +25,7 @@ public class UnifiedGatewayPolicyService {
     private final UnifiedGatewayRateLimitPolicyRepository rateLimitRepository;
     private final UnifiedGatewayCircuitBreakerPolicyRepository circuitBreakerRepository;
     private final UnifiedGatewayRetryPolicyRepository retryRepository;
+    private final UnifiedGatewayEffectivePolicyCache policyCache;
 
     public UnifiedGatewayPoliciesResponse getAllPolicies() {
         return UnifiedGatewayPoliciesResponse.builder()
@@ -68,6 +69,7 @@ public class UnifiedGatewayPolicyService {
         if (request.getDescription() != null) policy.setDescription(request.getDescription());
         if (request.getEnabled() != null) policy.setEnabled(request.getEnabled());
         policy = rateLimitRepository.save(policy);
+        policyCache.invalidate();
         log.info("Updated rate limit policy: {} ({})", policy.getName(), policy.getId());
         return toRateLimitResponse(policy);
     }
@@ -78,6 +80,7 @@ public class UnifiedGatewayPolicyService {
             throw new RuntimeException("Rate limit policy not found: " + id);
         }
         rateLimitRepository.deleteById(id);
+        policyCache.invalidate();
         log.info("Deleted rate limit policy: {}", id);
     }
 
@@ -115,6 +118,7 @@ public class UnifiedGatewayPolicyService {
         if (request.getDescription() != null) policy.setDescription(request.getDescription());
         if (request.getEnabled() != null) policy.setEnabled(request.getEnabled());
         policy = circuitBreakerRepository.save(policy);
+        policyCache.invalidate();
         log.info("Updated circuit breaker policy: {} ({})", policy.getName(), policy.getId());
         return toCircuitBreakerResponse(policy);
     }
@@ -125,6 +129,7 @@ public class UnifiedGatewayPolicyService {
             throw new RuntimeException("Circuit breaker policy not found: " + id);
         }
         circuitBreakerRepository.deleteById(id);
+        policyCache.invalidate();
         log.info("Deleted circuit breaker policy: {}", id);
     }
 
@@ -164,6 +169,7 @@ public class UnifiedGatewayPolicyService {
         if (request.getDescription() != null) policy.setDescription(request.getDescription());
         if (request.getEnabled() != null) policy.setEnabled(request.getEnabled());
         policy = retryRepository.save(policy);
+        policyCache.invalidate();
         log.info("Updated retry policy: {} ({})", policy.getName(), policy.getId());
         return toRetryResponse(policy);
     }
@@ -174,6 +180,7 @@ public class UnifiedGatewayPolicyService {
             throw new RuntimeException("Retry policy not found: " + id);
         }
         retryRepository.deleteById(id);
+        policyCache.invalidate();
         log.info("Deleted retry policy: {}", id);
     }
 
@@ -1,32 +1,116 @@
 package com.adlin.orin.modules.gateway.service;
 
-import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRateLimitPolicy;
 import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRateLimitPolicyRepository;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * 网关限流服务 —— 令牌桶算法
+ * 网关限流服务 —— 集群令牌桶 + 本地租约
  *
  * 维度支持：
  *   GLOBAL   每条路由全局共用一个桶
  *   IP       每条路由 × 客户端 IP 各一个桶
  *   API_KEY  每条路由 × API Key 各一个桶
+ *
+ * 权威令牌桶保存在 Redis（Lua 脚本原子补充与扣减），各节点一次租借一批令牌，
+ * 之后在本地无锁扣减，一次往返分摊到多个请求上。租约在 lease-ttl-ms 后过期作废，
+ * 集群内任意时间窗的放行总数不超过 Redis 桶发放的令牌数，节点扩容不会放大限额；
+ * 单次租借量按本地消耗速度倍增 / 减半，上限为 burst / (2 × 存活节点数)，避免单个节点囤积。
+ * Redis 不可用时退化为本地令牌桶，按最近一次观测到的节点数均分额度，超发不超过节点数变化的比例。
+ * 空闲桶由时间轮在 idle-ttl-ms 后淘汰，不扫描整张表。
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class UnifiedGatewayRateLimiterService {
 
-    private final UnifiedGatewayRateLimitPolicyRepository rateLimitPolicyRepository;
+    static final String KEY_PREFIX = "gateway:ratelimit:";
+    static final String NODES_KEY = "gateway:ratelimit:nodes";
+    private static final long TICK_MS = 1000L;
+    private static final long REDIS_RETRY_MS = 5000L;
+
+    /**
+     * 从 Redis 桶租借最多 requested 个令牌，返回实际发放数
+     * ARGV: 每毫秒补充的令牌数, 桶容量, 申请数, 键过期时间(ms)；时间取 Redis 服务器时钟，避免节点时钟漂移
+     */
+    private static final String LEASE_SCRIPT = """
+            redis.replicate_commands()
+            local key = KEYS[1]
+            local rate = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local requested = tonumber(ARGV[3])
+            local ttl = tonumber(ARGV[4])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+            local state = redis.call('HMGET', key, 'tokens', 'ts')
+            local tokens = tonumber(state[1])
+            local ts = tonumber(state[2])
+            if tokens == nil or ts == nil then
+                tokens = burst
+                ts = now
+            end
+            if now > ts then
+                tokens = math.min(burst, tokens + (now - ts) * rate)
+                ts = now
+            end
+
+            local granted = math.max(0, math.min(requested, math.floor(tokens)))
+            tokens = tokens - granted
+            redis.call('HSET', key, 'tokens', tostring(tokens), 'ts', tostring(ts))
+            redis.call('PEXPIRE', key, ttl)
+            return granted
+            """;
+
+    private static final RedisScript<Long> LEASE = RedisScript.of(LEASE_SCRIPT, Long.class);
+
+    private final UnifiedGatewayEffectivePolicyCache policyCache;
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final String nodeId = UUID.randomUUID().toString();
 
     /** key = routeId + ":" + bucketKey(ip/apiKey/"GLOBAL") */
-    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final TimeWheel idleWheel;
+
+    private volatile StringRedisTemplate redisTemplate;
+    private volatile int knownNodes = 1;
+    private volatile long redisRetryAt;
+
+    @Value("${orin.gateway.rate-limit.distributed:true}")
+    private boolean distributed = true;
+
+    @Value("${orin.gateway.rate-limit.lease-ttl-ms:1000}")
+    private long leaseTtlMs = 1000;
+
+    @Value("${orin.gateway.rate-limit.max-lease:50}")
+    private int maxLease = 50;
+
+    @Value("${orin.gateway.rate-limit.heartbeat-ms:5000}")
+    private long heartbeatMs = 5000;
+
+    private final long idleTtlMs;
+
+    public UnifiedGatewayRateLimiterService(UnifiedGatewayEffectivePolicyCache policyCache,
+                                            ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+                                            @Value("${orin.gateway.rate-limit.idle-ttl-ms:300000}") long idleTtlMs) {
+        this.policyCache = policyCache;
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.idleTtlMs = Math.max(TICK_MS, idleTtlMs);
+        this.idleWheel = new TimeWheel((int) (this.idleTtlMs / TICK_MS) + 2, TICK_MS, System.currentTimeMillis());
+    }
 
     /**
      * 删除路由时清理对应限流桶，防止内存泄漏
@@ -55,21 +139,26 @@ public class UnifiedGatewayRateLimiterService {
             return true; // 路由没有配置限流策略
         }
 
-        UnifiedGatewayRateLimitPolicy policy = rateLimitPolicyRepository.findById(policyId).orElse(null);
-        if (policy == null || !Boolean.TRUE.equals(policy.getEnabled())) {
+        UnifiedGatewayEffectivePolicyCache.RateLimit policy = policyCache.forRoute(route).rateLimit();
+        if (policy == null) {
             return true;
         }
 
-        String bucketKey = buildBucketKey(policy.getDimension(), route.getId(), clientIp, apiKeyId);
-        TokenBucket bucket = buckets.computeIfAbsent(bucketKey,
-                k -> new TokenBucket(policy.getCapacity(), policy.getBurst(), policy.getWindowSeconds()));
-
-        // 策略参数可能被更新，同步一下
-        bucket.reconfigure(policy.getCapacity(), policy.getBurst(), policy.getWindowSeconds());
+        long now = System.currentTimeMillis();
+        String bucketKey = buildBucketKey(policy.dimension(), route.getId(), clientIp, apiKeyId);
+        Bucket bucket = buckets.get(bucketKey);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(bucketKey, k -> {
+                Bucket created = new Bucket(k, now);
+                idleWheel.schedule(created, now + idleTtlMs);
+                return created;
+            });
+        }
+        bucket.lastAccessAt = now;
 
-        boolean allowed = bucket.tryConsume();
+        boolean allowed = bucket.tryConsume(policy, now);
         if (!allowed) {
-            log.warn("Rate limit exceeded: route={} dimension={} key={}", route.getName(), policy.getDimension(), bucketKey);
+            log.warn("Rate limit exceeded: route={} dimension={} key={}", route.getName(), policy.dimension(), bucketKey);
         }
         return allowed;
     }
@@ -82,56 +171,276 @@ public class UnifiedGatewayRateLimiterService {
         };
     }
 
+    /**
+     * 推进时间轮，淘汰空闲超过 idle-ttl-ms 的桶；仍在使用的桶按最后访问时间重新挂到轮上
+     *
+     * @return 本次淘汰的桶数
+     */
+    @Scheduled(fixedDelay = TICK_MS)
+    public int evictIdleBuckets() {
+        return evictIdleBuckets(System.currentTimeMillis());
+    }
+
+    int evictIdleBuckets(long now) {
+        int evicted = 0;
+        for (Bucket bucket : idleWheel.advance(now)) {
+            if (buckets.get(bucket.key) != bucket) {
+                continue; // 已随路由删除
+            }
+            long idleDeadline = bucket.lastAccessAt + idleTtlMs;
+            if (idleDeadline <= now) {
+                if (buckets.remove(bucket.key, bucket)) {
+                    evicted++;
+                }
+            } else {
+                idleWheel.schedule(bucket, idleDeadline);
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle rate limiter bucket(s), {} remaining", evicted, buckets.size());
+        }
+        return evicted;
+    }
+
+    /**
+     * 节点心跳：登记本节点并统计存活节点数，用于租借上限与 Redis 故障时的本地额度均分
+     */
+    @Scheduled(fixedDelayString = "${orin.gateway.rate-limit.heartbeat-ms:5000}")
+    public void heartbeat() {
+        StringRedisTemplate redis = redis();
+        if (redis == null) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            redis.opsForZSet().add(NODES_KEY, nodeId, now);
+            redis.opsForZSet().removeRangeByScore(NODES_KEY, 0, now - heartbeatMs * 3);
+            Long count = redis.opsForZSet().zCard(NODES_KEY);
+            knownNodes = count != null && count > 0 ? count.intValue() : 1;
+        } catch (Exception e) {
+            log.debug("Rate limiter heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            try {
+                redis.opsForZSet().remove(NODES_KEY, nodeId);
+            } catch (Exception e) {
+                log.debug("Failed to deregister rate limiter node: {}", e.getMessage());
+            }
+        }
+    }
+
+    int getKnownNodes() {
+        return knownNodes;
+    }
+
+    private StringRedisTemplate redis() {
+        if (!distributed) {
+            return null;
+        }
+        StringRedisTemplate redis = redisTemplate;
+        if (redis == null) {
+            redis = redisTemplateProvider.getIfAvailable();
+            redisTemplate = redis;
+        }
+        return redis;
+    }
+
+    /**
+     * 向 Redis 桶租借令牌；Redis 不可用时返回 null，调用方退化为本地桶
+     */
+    private Long lease(String bucketKey, UnifiedGatewayEffectivePolicyCache.RateLimit policy, int requested,
+                       long now) {
+        if (now < redisRetryAt) {
+            return null;
+        }
+        StringRedisTemplate redis = redis();
+        if (redis == null) {
+            return null;
+        }
+        long windowMs = Math.max(1L, policy.windowSeconds() * 1000L);
+        try {
+            return redis.execute(LEASE, List.of(KEY_PREFIX + bucketKey),
+                    String.valueOf((double) policy.capacity() / windowMs),
+                    String.valueOf(policy.burst()),
+                    String.valueOf(requested),
+                    String.valueOf(Math.max(windowMs * 2, leaseTtlMs * 2)));
+        } catch (Exception e) {
+            redisRetryAt = now + REDIS_RETRY_MS;
+            log.warn("Distributed rate limiter unavailable, falling back to local buckets for {} ms: {}",
+                    REDIS_RETRY_MS, e.getMessage());
+            return null;
+        }
+    }
+
     // -------------------------------------------------------------------------
-    // 令牌桶实现
+    // 桶：Redis 租约 + 本地兜底令牌桶
     // -------------------------------------------------------------------------
 
-    static final class TokenBucket {
-        private volatile int capacity;      // 窗口内最大令牌数
-        private volatile int burst;         // 桶容量（允许突发）
-        private volatile long windowMs;     // 补充窗口（毫秒）
+    final class Bucket {
+        final String key;
+        volatile long lastAccessAt;
 
-        private final AtomicLong tokens;    // 当前令牌数 * 1000（精度放大）
-        private volatile long lastRefillAt; // 上次补充时间（毫秒）
+        /** 当前租约内剩余的令牌数，快路径只做 CAS 扣减 */
+        private final AtomicLong leased = new AtomicLong();
+        private volatile long leaseExpiresAt;
+        private volatile long leasedAt;
+        private volatile long retryAt;
+        private int leaseSize = 1;
 
-        TokenBucket(int capacity, int burst, int windowSeconds) {
-            this.capacity = capacity;
-            this.burst = burst;
-            this.windowMs = windowSeconds * 1000L;
-            // 初始桶满（burst）
-            this.tokens = new AtomicLong((long) burst * 1000);
-            this.lastRefillAt = System.currentTimeMillis();
-        }
+        private final LocalTokenBucket local = new LocalTokenBucket();
 
-        synchronized void reconfigure(int capacity, int burst, int windowSeconds) {
-            this.capacity = capacity;
-            this.burst = burst;
-            this.windowMs = windowSeconds * 1000L;
+        Bucket(String key, long now) {
+            this.key = key;
+            this.lastAccessAt = now;
         }
 
-        synchronized boolean tryConsume() {
-            refill();
-            long current = tokens.get();
-            if (current >= 1000L) {
-                tokens.addAndGet(-1000L);
+        boolean tryConsume(UnifiedGatewayEffectivePolicyCache.RateLimit policy, long now) {
+            if (now < leaseExpiresAt && takeLeased()) {
                 return true;
             }
-            return false;
+            if (now < redisRetryAt || redis() == null) {
+                return local.tryConsume(policy, Math.max(1, knownNodes), now);
+            }
+            return refill(policy, now);
         }
 
-        private void refill() {
-            long now = System.currentTimeMillis();
-            long elapsed = now - lastRefillAt;
-            if (elapsed <= 0) return;
-
-            // 每 windowMs 毫秒补充 capacity 个令牌
-            long toAdd = (long) capacity * 1000 * elapsed / windowMs;
-            if (toAdd > 0) {
-                long maxTokens = (long) burst * 1000;
-                long updated = Math.min(tokens.get() + toAdd, maxTokens);
-                tokens.set(updated);
-                lastRefillAt = now;
+        private boolean takeLeased() {
+            long current;
+            do {
+                current = leased.get();
+                if (current <= 0) {
+                    return false;
+                }
+            } while (!leased.compareAndSet(current, current - 1));
+            return true;
+        }
+
+        /**
+         * 慢路径：租约耗尽或过期时向 Redis 续租；同一个桶同时只有一个线程续租
+         */
+        private synchronized boolean refill(UnifiedGatewayEffectivePolicyCache.RateLimit policy, long now) {
+            if (now < leaseExpiresAt && takeLeased()) {
+                return true; // 其它线程刚续过租
+            }
+            if (now < retryAt) {
+                return false; // Redis 桶刚被取空，等待补充
+            }
+            int nodes = Math.max(1, knownNodes);
+            int size = nextLeaseSize(policy, nodes, now);
+            Long granted = lease(key, policy, size, now);
+            if (granted == null) {
+                return local.tryConsume(policy, nodes, now);
+            }
+            leaseSize = size;
+            if (granted <= 0) {
+                leased.set(0);
+                leaseExpiresAt = 0;
+                // 等到 Redis 桶至少补充一个令牌再问，最多 1 秒
+                long perTokenMs = policy.capacity() > 0
+                        ? (policy.windowSeconds() * 1000L + policy.capacity() - 1) / policy.capacity()
+                        : TICK_MS;
+                retryAt = now + Math.max(1L, Math.min(TICK_MS, perTokenMs));
+                return false;
+            }
+            leased.set(granted - 1);
+            leasedAt = now;
+            leaseExpiresAt = now + leaseTtlMs;
+            return true;
+        }
+
+        /**
+         * 上一次租约在半个有效期内用完则加倍，否则减半；上限 burst / (2 × 节点数)
+         */
+        private int nextLeaseSize(UnifiedGatewayEffectivePolicyCache.RateLimit policy, int nodes, long now) {
+            int cap = Math.max(1, Math.min(maxLease, policy.burst() / (2 * nodes)));
+            boolean exhaustedQuickly = leasedAt > 0 && now < leaseExpiresAt
+                    && now - leasedAt < leaseTtlMs / 2;
+            int next = exhaustedQuickly ? leaseSize * 2 : Math.max(1, leaseSize / 2);
+            return Math.min(cap, next);
+        }
+    }
+
+    /**
+     * Redis 不可用时的本地令牌桶；额度按节点数均分，CAS 更新无锁
+     */
+    static final class LocalTokenBucket {
+
+        private record State(long milliTokens, long refillAt) {
+        }
+
+        private final AtomicReference<State> state = new AtomicReference<>();
+
+        boolean tryConsume(UnifiedGatewayEffectivePolicyCache.RateLimit policy, int nodes, long now) {
+            long capacity = Math.max(1L, policy.capacity() / nodes);
+            long maxTokens = Math.max(1L, policy.burst() / nodes) * 1000L;
+            long windowMs = Math.max(1L, policy.windowSeconds() * 1000L);
+            while (true) {
+                State current = state.get();
+                long tokens;
+                long refillAt;
+                if (current == null) {
+                    tokens = maxTokens; // 初始桶满（burst）
+                    refillAt = now;
+                } else {
+                    long elapsed = Math.max(0L, now - current.refillAt());
+                    // 每 windowMs 毫秒补充 capacity 个令牌
+                    long toAdd = capacity * 1000L * elapsed / windowMs;
+                    tokens = Math.min(current.milliTokens() + toAdd, maxTokens);
+                    refillAt = toAdd > 0 ? now : current.refillAt();
+                }
+                if (tokens < 1000L) {
+                    return false;
+                }
+                if (state.compareAndSet(current, new State(tokens - 1000L, refillAt))) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 单层哈希时间轮：每个槽位一个 tick，桶只在创建与到期复查时入轮，访问时只更新时间戳
+     */
+    static final class TimeWheel {
+        private final long tickMs;
+        private final List<Set<Bucket>> slots;
+        private volatile long cursor;
+
+        TimeWheel(int slotCount, long tickMs, long now) {
+            this.tickMs = tickMs;
+            this.slots = new ArrayList<>(slotCount);
+            for (int i = 0; i < slotCount; i++) {
+                slots.add(ConcurrentHashMap.newKeySet());
+            }
+            this.cursor = now / tickMs;
+        }
+
+        void schedule(Bucket bucket, long deadline) {
+            long tick = Math.max(deadline / tickMs, cursor + 1);
+            // 超出一圈的到期时间提前复查，届时按最新时间重新挂轮
+            tick = Math.min(tick, cursor + slots.size() - 1);
+            slots.get((int) (tick % slots.size())).add(bucket);
+        }
+
+        synchronized List<Bucket> advance(long now) {
+            long target = now / tickMs;
+            List<Bucket> due = new ArrayList<>();
+            int steps = 0;
+            while (cursor < target && steps++ < slots.size()) {
+                cursor++;
+                Set<Bucket> slot = slots.get((int) (cursor % slots.size()));
+                for (Bucket bucket : slot) {
+                    slot.remove(bucket);
+                    due.add(bucket);
+                }
             }
+            cursor = Math.max(cursor, target);
+            return due;
         }
     }
 }
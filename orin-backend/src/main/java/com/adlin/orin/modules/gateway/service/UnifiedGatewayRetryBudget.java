@@ -0,0 +1,100 @@
+package com.adlin.orin.modules.gateway.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 网关重试预算 —— 每条路由独立的滑动窗口
+ *
+ * 窗口内允许的重试次数 = 请求数 × ratio + minPerSecond × 窗口秒数。
+ * 上游大面积故障时几乎每个请求都想重试，预算耗尽后直接返回首个失败结果，
+ * 重试放大的流量被限制在 ratio 以内，不会把故障放大成雪崩。
+ */
+@Slf4j
+@Component
+public class UnifiedGatewayRetryBudget {
+
+    private static final int WINDOW_SECONDS = 10;
+
+    @Value("${orin.gateway.retry-budget.ratio:0.2}")
+    private double ratio = 0.2;
+
+    @Value("${orin.gateway.retry-budget.min-per-second:1}")
+    private int minPerSecond = 1;
+
+    private final ConcurrentHashMap<Long, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次（首次）请求，增加该路由的重试额度
+     */
+    public void recordRequest(Long routeId) {
+        if (routeId != null) {
+            windows.computeIfAbsent(routeId, id -> new Window()).add(nowSecond(), 1, 0);
+        }
+    }
+
+    /**
+     * 申请一次重试；额度不足时返回 false，调用方应放弃重试
+     */
+    public boolean tryAcquireRetry(Long routeId) {
+        if (routeId == null) {
+            return true;
+        }
+        Window window = windows.computeIfAbsent(routeId, id -> new Window());
+        long now = nowSecond();
+        synchronized (window) {
+            long[] totals = window.totals(now);
+            double allowed = totals[0] * ratio + (double) minPerSecond * WINDOW_SECONDS;
+            if (totals[1] + 1 > allowed) {
+                log.warn("Retry budget exhausted for routeId={} (requests={}, retries={})", routeId, totals[0], totals[1]);
+                return false;
+            }
+            window.add(now, 0, 1);
+            return true;
+        }
+    }
+
+    /**
+     * 删除路由时清理对应窗口，防止内存泄漏
+     */
+    public void removeRoute(Long routeId) {
+        windows.remove(routeId);
+    }
+
+    private static long nowSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    /** 按秒分槽的环形窗口 */
+    private static final class Window {
+        private final long[] seconds = new long[WINDOW_SECONDS];
+        private final long[] requests = new long[WINDOW_SECONDS];
+        private final long[] retries = new long[WINDOW_SECONDS];
+
+        synchronized void add(long now, long requestDelta, long retryDelta) {
+            int slot = (int) (now % WINDOW_SECONDS);
+            if (seconds[slot] != now) {
+                seconds[slot] = now;
+                requests[slot] = 0;
+                retries[slot] = 0;
+            }
+            requests[slot] += requestDelta;
+            retries[slot] += retryDelta;
+        }
+
+        synchronized long[] totals(long now) {
+            long totalRequests = 0;
+            long totalRetries = 0;
+            for (int i = 0; i < WINDOW_SECONDS; i++) {
+                if (now - seconds[i] < WINDOW_SECONDS) {
+                    totalRequests += requests[i];
+                    totalRetries += retries[i];
+                }
+            }
+            return new long[]{totalRequests, totalRetries};
+        }
+    }
+}
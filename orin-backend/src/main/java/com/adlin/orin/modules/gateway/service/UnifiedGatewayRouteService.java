@@ -22,6 +22,8 @@ public class UnifiedGatewayRouteService {
     private final UnifiedGatewayRouteRepository routeRepository;
     private final UnifiedGatewayCircuitBreakerService circuitBreakerService;
     private final UnifiedGatewayRateLimiterService rateLimiterService;
+    private final UnifiedGatewayRouteTable routeTable;
+    private final UnifiedGatewayRetryBudget retryBudget;
 
     public List<UnifiedGatewayRouteResponse> getAllRoutes() {
         return routeRepository.findAllByOrderByPriorityDesc().stream()
@@ -63,6 +65,7 @@ public class UnifiedGatewayRouteService {
                 .description(request.getDescription())
                 .build();
         route = routeRepository.save(route);
+        routeTable.invalidate();
         log.info("Created gateway route: {} ({})", route.getName(), route.getId());
         return toResponse(route);
     }
@@ -89,6 +92,7 @@ public class UnifiedGatewayRouteService {
         if (request.getEnabled() != null) route.setEnabled(request.getEnabled());
         if (request.getDescription() != null) route.setDescription(request.getDescription());
         route = routeRepository.save(route);
+        routeTable.invalidate();
         log.info("Updated gateway route: {} ({})", route.getName(), route.getId());
         return toResponse(route);
     }
@@ -101,7 +105,9 @@ public class UnifiedGatewayRouteService {
         // 清理路由关联的熔断器和限流器状态，防止内存泄漏
         circuitBreakerService.removeRouteState(id);
         rateLimiterService.removeRouteBuckets(id);
+        retryBudget.removeRoute(id);
         routeRepository.deleteById(id);
+        routeTable.invalidate();
         log.info("Deleted gateway route: {}", id);
     }
 
@@ -118,6 +124,7 @@ public class UnifiedGatewayRouteService {
             }
         });
         route = routeRepository.save(route);
+        routeTable.invalidate();
         return toResponse(route);
     }
 
@@ -0,0 +1,382 @@
+package com.adlin.orin.modules.gateway.service;
+
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayService;
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayServiceInstance;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRouteRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceInstanceRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 网关运行时路由表（编译后的内存快照）
+ *
+ * - 启用的路由、目标服务名与健康实例在重建时一次性加载，请求路径上不再访问数据库
+ * - 按 HTTP 方法 + 路径首段建立索引，每个桶内保持原有的优先级顺序，只对候选路由做 Ant 匹配
+ * - 路由 / 服务 / 实例变更（含健康状态变化）后在事务提交时重建，新快照整体替换旧快照（copy-on-write）
+ * - 每个快照带版本号；开启同步时版本号取自 Redis 计数器并通过 pub/sub 广播，
+ *   其它节点收到更高版本后重建，另有定时对账兜底丢失的消息
+ */
+@Slf4j
+@Component
+public class UnifiedGatewayRouteTable {
+
+    static final String VERSION_KEY = "gateway:routes:version";
+    static final String CHANNEL = "gateway:routes:changed";
+    private static final String ANY_METHOD = "*";
+
+    private final UnifiedGatewayRouteRepository routeRepository;
+    private final UnifiedGatewayServiceRepository serviceRepository;
+    private final UnifiedGatewayServiceInstanceRepository instanceRepository;
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final ObjectProvider<RedisConnectionFactory> connectionFactoryProvider;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private volatile RedisMessageListenerContainer listenerContainer;
+    private long localVersion;
+
+    @Value("${orin.gateway.route-table.sync-enabled:true}")
+    private boolean syncEnabled = true;
+
+    /**
+     * 快照最长存活时间，超过后对账任务强制重建（兜底数据库被直接修改的情况）
+     */
+    @Value("${orin.gateway.route-table.max-age-ms:300000}")
+    private long maxAgeMs = 300000;
+
+    public UnifiedGatewayRouteTable(UnifiedGatewayRouteRepository routeRepository,
+                                    UnifiedGatewayServiceRepository serviceRepository,
+                                    UnifiedGatewayServiceInstanceRepository instanceRepository,
+                                    ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+                                    ObjectProvider<RedisConnectionFactory> connectionFactoryProvider) {
+        this.routeRepository = routeRepository;
+        this.serviceRepository = serviceRepository;
+        this.instanceRepository = instanceRepository;
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.connectionFactoryProvider = connectionFactoryProvider;
+    }
+
+    /**
+     * 当前快照（首次访问时构建）
+     */
+    public Snapshot current() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot.get();
+                if (current == null) {
+                    Long remote = readRemoteVersion();
+                    current = rebuild(remote != null ? remote : 0L);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 路由 / 服务 / 实例已变更：事务提交后分配新版本、重建并广播
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishChange();
+                }
+            });
+        } else {
+            publishChange();
+        }
+    }
+
+    /**
+     * 对账：Redis 版本与本地不一致（漏收广播）或快照过旧时重建
+     */
+    @Scheduled(fixedDelayString = "${orin.gateway.route-table.reconcile-ms:30000}")
+    public void reconcile() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            return;
+        }
+        Long remote = readRemoteVersion();
+        if (remote != null && remote != current.version()) {
+            log.info("Gateway route table behind shared version ({} -> {}), rebuilding", current.version(), remote);
+            rebuild(remote);
+        } else if (System.currentTimeMillis() - current.builtAtMillis() > maxAgeMs) {
+            rebuild(current.version());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSync() {
+        RedisConnectionFactory connectionFactory = syncEnabled ? connectionFactoryProvider.getIfAvailable() : null;
+        if (connectionFactory == null) {
+            return;
+        }
+        try {
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(connectionFactory);
+            container.addMessageListener((message, pattern) ->
+                    onRemoteChange(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(CHANNEL));
+            container.afterPropertiesSet();
+            container.start();
+            listenerContainer = container;
+            log.info("Gateway route table subscribed to {}", CHANNEL);
+        } catch (Exception e) {
+            log.warn("Gateway route table pub/sub unavailable, relying on periodic reconcile: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stopSync() {
+        RedisMessageListenerContainer container = listenerContainer;
+        if (container != null) {
+            try {
+                container.destroy();
+            } catch (Exception e) {
+                log.debug("Failed to stop gateway route listener: {}", e.getMessage());
+            }
+        }
+    }
+
+    void onRemoteChange(String payload) {
+        long version;
+        try {
+            version = Long.parseLong(payload.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed gateway route version: {}", payload);
+            return;
+        }
+        Snapshot current = snapshot.get();
+        if (current == null || version > current.version()) {
+            rebuild(version);
+        }
+    }
+
+    private void publishChange() {
+        long version = nextVersion();
+        rebuild(version);
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            try {
+                redis.convertAndSend(CHANNEL, String.valueOf(version));
+            } catch (Exception e) {
+                log.warn("Failed to broadcast gateway route version {}: {}", version, e.getMessage());
+            }
+        }
+    }
+
+    private synchronized long nextVersion() {
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            try {
+                Long version = redis.opsForValue().increment(VERSION_KEY);
+                if (version != null) {
+                    localVersion = version;
+                    return version;
+                }
+            } catch (Exception e) {
+                log.warn("Failed to bump shared gateway route version, using local version: {}", e.getMessage());
+            }
+        }
+        Snapshot current = snapshot.get();
+        localVersion = Math.max(localVersion, current != null ? current.version() : 0L) + 1;
+        return localVersion;
+    }
+
+    private Long readRemoteVersion() {
+        StringRedisTemplate redis = redis();
+        if (redis == null) {
+            return null;
+        }
+        try {
+            String value = redis.opsForValue().get(VERSION_KEY);
+            return value != null ? Long.parseLong(value) : null;
+        } catch (Exception e) {
+            log.debug("Failed to read shared gateway route version: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private StringRedisTemplate redis() {
+        return syncEnabled ? redisTemplateProvider.getIfAvailable() : null;
+    }
+
+    /**
+     * 从数据库加载并编译快照；加载失败时保留旧快照
+     */
+    synchronized Snapshot rebuild(long version) {
+        long start = System.currentTimeMillis();
+        try {
+            Snapshot built = compile(version);
+            snapshot.set(built);
+            log.info("Gateway route table rebuilt: version={}, routes={}, took {} ms",
+                    version, built.routeCount(), System.currentTimeMillis() - start);
+            return built;
+        } catch (RuntimeException e) {
+            Snapshot previous = snapshot.get();
+            if (previous == null) {
+                throw e;
+            }
+            log.error("Gateway route table rebuild failed, keeping version {}: {}", previous.version(), e.getMessage());
+            return previous;
+        }
+    }
+
+    private Snapshot compile(long version) {
+        List<UnifiedGatewayRoute> routes = routeRepository.findActiveRoutesOrderByPriority();
+
+        Map<Long, String> serviceNames = new HashMap<>();
+        Map<Long, List<UnifiedGatewayServiceInstance>> instancesByService = new HashMap<>();
+        for (UnifiedGatewayRoute route : routes) {
+            Long serviceId = route.getServiceId();
+            if (serviceId == null || instancesByService.containsKey(serviceId)) {
+                continue;
+            }
+            instancesByService.put(serviceId, instanceRepository.findByServiceIdAndEnabledOrderByHost(serviceId, true)
+                    .stream()
+                    .filter(instance -> "UP".equalsIgnoreCase(instance.getStatus()))
+                    .toList());
+            serviceRepository.findById(serviceId)
+                    .map(UnifiedGatewayService::getServiceName)
+                    .ifPresent(name -> serviceNames.put(serviceId, name));
+        }
+
+        List<CompiledRoute> compiled = new ArrayList<>(routes.size());
+        Set<String> methods = new LinkedHashSet<>();
+        Set<String> segments = new LinkedHashSet<>();
+        for (UnifiedGatewayRoute route : routes) {
+            if (route.getPathPattern() == null) {
+                continue;
+            }
+            String method = normalizeMethod(route.getMethod());
+            String firstSegment = staticFirstSegment(route.getPathPattern());
+            compiled.add(new CompiledRoute(route, method, firstSegment,
+                    route.getServiceId() != null ? serviceNames.get(route.getServiceId()) : null,
+                    route.getServiceId() != null
+                            ? instancesByService.getOrDefault(route.getServiceId(), List.of())
+                            : List.of()));
+            if (!ANY_METHOD.equals(method)) {
+                methods.add(method);
+            }
+            if (firstSegment != null) {
+                segments.add(firstSegment);
+            }
+        }
+
+        Map<String, MethodIndex> byMethod = new HashMap<>();
+        byMethod.put(ANY_METHOD, index(compiled, ANY_METHOD, segments));
+        for (String method : methods) {
+            byMethod.put(method, index(compiled, method, segments));
+        }
+        return new Snapshot(version, System.currentTimeMillis(), Collections.unmodifiableMap(byMethod),
+                compiled.size());
+    }
+
+    private MethodIndex index(List<CompiledRoute> compiled, String method, Set<String> segments) {
+        List<CompiledRoute> applicable = compiled.stream()
+                .filter(route -> ANY_METHOD.equals(route.method()) || route.method().equals(method))
+                .toList();
+        List<CompiledRoute> dynamic = applicable.stream()
+                .filter(route -> route.firstSegment() == null)
+                .toList();
+        Map<String, List<CompiledRoute>> bySegment = new LinkedHashMap<>();
+        for (String segment : segments) {
+            List<CompiledRoute> candidates = applicable.stream()
+                    .filter(route -> route.firstSegment() == null || route.firstSegment().equals(segment))
+                    .toList();
+            if (candidates.size() > dynamic.size()) {
+                bySegment.put(segment, candidates);
+            }
+        }
+        return new MethodIndex(Collections.unmodifiableMap(bySegment), dynamic);
+    }
+
+    static String normalizeMethod(String method) {
+        if (method == null || method.isBlank() || "ALL".equalsIgnoreCase(method)) {
+            return ANY_METHOD;
+        }
+        return method.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * 模式的首段不含通配符 / 变量时返回该段，否则返回 null（需要对所有路径尝试匹配）
+     */
+    static String staticFirstSegment(String pattern) {
+        String segment = firstSegment(pattern);
+        if (segment == null || segment.isEmpty()
+                || segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0) {
+            return null;
+        }
+        return segment;
+    }
+
+    static String firstSegment(String path) {
+        if (path == null) {
+            return null;
+        }
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        int end = path.indexOf('/', start);
+        return path.substring(start, end < 0 ? path.length() : end);
+    }
+
+    /**
+     * 编译后的路由：目标服务名与健康实例已预先解析
+     */
+    public record CompiledRoute(UnifiedGatewayRoute route,
+                                String method,
+                                String firstSegment,
+                                String serviceName,
+                                List<UnifiedGatewayServiceInstance> instances) {
+    }
+
+    record MethodIndex(Map<String, List<CompiledRoute>> bySegment, List<CompiledRoute> dynamic) {
+
+        List<CompiledRoute> candidates(String path) {
+            String segment = firstSegment(path);
+            return segment != null ? bySegment.getOrDefault(segment, dynamic) : dynamic;
+        }
+    }
+
+    public record Snapshot(long version, long builtAtMillis, Map<String, MethodIndex> byMethod, int routeCount) {
+
+        /**
+         * 按优先级顺序返回可能匹配该请求的路由（仍需做路径模式匹配）
+         */
+        public List<CompiledRoute> candidates(String requestMethod, String requestPath) {
+            MethodIndex index = byMethod.get(normalizeMethod(requestMethod));
+            if (index == null) {
+                index = byMethod.get(ANY_METHOD);
+            }
+            return index.candidates(requestPath);
+        }
+    }
+}
@@ -1,11 +1,7 @@
 package com.adlin.orin.modules.gateway.service;
 
 import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
-import com.adlin.orin.modules.gateway.entity.UnifiedGatewayService;
 import com.adlin.orin.modules.gateway.entity.UnifiedGatewayServiceInstance;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRouteRepository;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceInstanceRepository;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceRepository;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -17,31 +13,30 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 网关运行时路由解析：基于 {@link UnifiedGatewayRouteTable} 的内存快照，请求路径上不访问数据库
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class UnifiedGatewayRuntimeRoutingService {
 
-    private final UnifiedGatewayRouteRepository routeRepository;
-    private final UnifiedGatewayServiceRepository serviceRepository;
-    private final UnifiedGatewayServiceInstanceRepository instanceRepository;
+    private final UnifiedGatewayRouteTable routeTable;
 
     private final AntPathMatcher pathMatcher = new AntPathMatcher();
     private final Map<Long, AtomicInteger> roundRobinCounters = new ConcurrentHashMap<>();
 
     public Optional<ResolvedRoute> resolveRoute(String requestPath, String requestMethod, String queryString) {
-        List<UnifiedGatewayRoute> routes = routeRepository.findActiveRoutesOrderByPriority();
-        for (UnifiedGatewayRoute route : routes) {
-            if (!matchesMethod(route.getMethod(), requestMethod)) {
-                continue;
-            }
+        for (UnifiedGatewayRouteTable.CompiledRoute compiled : routeTable.current().candidates(requestMethod, requestPath)) {
+            UnifiedGatewayRoute route = compiled.route();
             if (!matchesPath(route.getPathPattern(), requestPath)) {
                 continue;
             }
 
-            Optional<String> targetBaseUrl = resolveTargetBaseUrl(route);
+            Optional<String> targetBaseUrl = resolveTargetBaseUrl(compiled);
             String targetUrl = null;
             if (targetBaseUrl.isPresent()) {
                 String targetPath = resolveTargetPath(route, requestPath);
@@ -54,26 +49,19 @@ public class UnifiedGatewayRuntimeRoutingService {
             return Optional.of(ResolvedRoute.builder()
                     .route(route)
                     .targetUrl(targetUrl)
-                    .targetService(resolveTargetServiceName(route))
+                    .targetService(compiled.serviceName())
                     .build());
         }
         return Optional.empty();
     }
 
     public Optional<UnifiedGatewayRoute> findMatchingRoute(String requestPath, String requestMethod) {
-        return routeRepository.findActiveRoutesOrderByPriority().stream()
-                .filter(route -> matchesMethod(route.getMethod(), requestMethod))
+        return routeTable.current().candidates(requestMethod, requestPath).stream()
+                .map(UnifiedGatewayRouteTable.CompiledRoute::route)
                 .filter(route -> matchesPath(route.getPathPattern(), requestPath))
                 .findFirst();
     }
 
-    private boolean matchesMethod(String routeMethod, String requestMethod) {
-        if (routeMethod == null || routeMethod.isBlank()) {
-            return true;
-        }
-        return "ALL".equalsIgnoreCase(routeMethod) || routeMethod.equalsIgnoreCase(requestMethod);
-    }
-
     private boolean matchesPath(String pattern, String path) {
         if (pattern == null || path == null) {
             return false;
@@ -81,7 +69,8 @@ public class UnifiedGatewayRuntimeRoutingService {
         return pathMatcher.match(pattern, path);
     }
 
-    private Optional<String> resolveTargetBaseUrl(UnifiedGatewayRoute route) {
+    private Optional<String> resolveTargetBaseUrl(UnifiedGatewayRouteTable.CompiledRoute compiled) {
+        UnifiedGatewayRoute route = compiled.route();
         if (route.getTargetUrl() != null && !route.getTargetUrl().isBlank()) {
             return Optional.of(trimTrailingSlash(route.getTargetUrl().trim()));
         }
@@ -91,10 +80,7 @@ public class UnifiedGatewayRuntimeRoutingService {
             return Optional.empty();
         }
 
-        List<UnifiedGatewayServiceInstance> instances = instanceRepository.findByServiceIdAndEnabledOrderByHost(serviceId, true)
-                .stream()
-                .filter(instance -> "UP".equalsIgnoreCase(instance.getStatus()))
-                .toList();
+        List<UnifiedGatewayServiceInstance> instances = compiled.instances();
         if (instances.isEmpty()) {
             return Optional.empty();
         }
@@ -105,7 +91,7 @@ public class UnifiedGatewayRuntimeRoutingService {
 
     private UnifiedGatewayServiceInstance selectInstance(Long serviceId, String loadBalance, List<UnifiedGatewayServiceInstance> instances) {
         if ("RANDOM".equalsIgnoreCase(loadBalance)) {
-            int randomIndex = (int) (Math.random() * instances.size());
+            int randomIndex = ThreadLocalRandom.current().nextInt(instances.size());
             return instances.get(randomIndex);
         }
 
@@ -152,15 +138,6 @@ public class UnifiedGatewayRuntimeRoutingService {
         return prefix;
     }
 
-    private String resolveTargetServiceName(UnifiedGatewayRoute route) {
-        if (route.getServiceId() == null) {
-            return null;
-        }
-        return serviceRepository.findById(route.getServiceId())
-                .map(UnifiedGatewayService::getServiceName)
-                .orElse(null);
-    }
-
     private String ensureLeadingSlash(String path) {
         if (path.startsWith("/")) {
             return path;
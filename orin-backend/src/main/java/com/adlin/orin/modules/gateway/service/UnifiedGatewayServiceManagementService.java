@@ -31,6 +31,7 @@ public class UnifiedGatewayServiceManagementService {
     private final UnifiedGatewayServiceInstanceRepository instanceRepository;
     private final RedisTemplate<String, String> redisTemplate;
     private final RestTemplate restTemplate;
+    private final UnifiedGatewayRouteTable routeTable;
 
     private static final String HEALTH_KEY_PREFIX = "gateway:health:";
 
@@ -74,6 +75,7 @@ public class UnifiedGatewayServiceManagementService {
                 .enabled(request.getEnabled() != null ? request.getEnabled() : true)
                 .build();
         service = serviceRepository.save(service);
+        routeTable.invalidate();
         log.info("Created gateway service: {} ({})", service.getServiceName(), service.getId());
         return toServiceResponse(service);
     }
@@ -89,6 +91,7 @@ public class UnifiedGatewayServiceManagementService {
         if (request.getDescription() != null) service.setDescription(request.getDescription());
         if (request.getEnabled() != null) service.setEnabled(request.getEnabled());
         service = serviceRepository.save(service);
+        routeTable.invalidate();
         log.info("Updated gateway service: {} ({})", service.getServiceName(), service.getId());
         return toServiceResponse(service);
     }
@@ -100,6 +103,7 @@ public class UnifiedGatewayServiceManagementService {
         }
         instanceRepository.deleteAll(instanceRepository.findByServiceIdOrderByHost(id));
         serviceRepository.deleteById(id);
+        routeTable.invalidate();
         log.info("Deleted gateway service: {}", id);
     }
 
@@ -124,6 +128,7 @@ public class UnifiedGatewayServiceManagementService {
                 .enabled(request.getEnabled() != null ? request.getEnabled() : true)
                 .build();
         instance = instanceRepository.save(instance);
+        routeTable.invalidate();
         log.info("Created service instance: {}:{} ({})", instance.getHost(), instance.getPort(), instance.getId());
         return toInstanceResponse(instance);
     }
@@ -139,6 +144,7 @@ public class UnifiedGatewayServiceManagementService {
         if (request.getStatus() != null) instance.setStatus(request.getStatus());
         if (request.getEnabled() != null) instance.setEnabled(request.getEnabled());
         instance = instanceRepository.save(instance);
+        routeTable.invalidate();
         log.info("Updated service instance: {}:{} ({})", instance.getHost(), instance.getPort(), instance.getId());
         return toInstanceResponse(instance);
     }
@@ -148,6 +154,7 @@ public class UnifiedGatewayServiceManagementService {
         UnifiedGatewayServiceInstance instance = instanceRepository.findByIdAndServiceId(instanceId, serviceId)
                 .orElseThrow(() -> new RuntimeException("Instance not found: " + instanceId));
         instanceRepository.delete(instance);
+        routeTable.invalidate();
         redisTemplate.delete(HEALTH_KEY_PREFIX + instanceId);
         log.info("Deleted service instance: {}", instanceId);
     }
@@ -166,6 +173,7 @@ public class UnifiedGatewayServiceManagementService {
         }
 
         String url = buildHealthCheckUrl(instance);
+        String previousStatus = instance.getStatus();
         long start = System.currentTimeMillis();
         try {
             restTemplate.getForEntity(url, String.class);
@@ -188,6 +196,9 @@ public class UnifiedGatewayServiceManagementService {
             result.put("error", e.getMessage());
             result.put("status", "DOWN");
         }
+        if (!java.util.Objects.equals(previousStatus, instance.getStatus())) {
+            routeTable.invalidate();
+        }
         return result;
     }
 
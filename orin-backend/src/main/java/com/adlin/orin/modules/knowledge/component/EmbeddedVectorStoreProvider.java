@@ -0,0 +1,954 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import com.adlin.orin.common.exception.VectorizationException;
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
+import com.adlin.orin.modules.knowledge.util.HnswGraph;
+import com.adlin.orin.modules.knowledge.util.MappedVectorStore;
+import com.adlin.orin.modules.knowledge.util.VectorWal;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * 进程内 HNSW 向量库（无需 Milvus 的单机部署 / Milvus 前置热层）
+ *
+ * - 每个知识库对应一个分区目录 kb_{id}（与 Milvus partition 命名一致），内含一张 HNSW 图
+ * - 向量以 float32 存放在内存映射文件中（堆外），图与分片元数据在 checkpoint 时写入 snapshot
+ * - 每次写入先追加 WAL 并 fsync，崩溃后以 snapshot + WAL 重放恢复
+ * - 删除使用墓碑标记，墓碑过半时在 checkpoint 中重建分区
+ * - 只存储 child 分片向量；parent 分片由检索层从数据库读取
+ *
+ * 通过 knowledge.vector.store=embedded|tiered 启用，由 MilvusVectorService 统一路由。
+ */
+@Slf4j
+@Component
+public class EmbeddedVectorStoreProvider implements VectorStoreProvider {
+
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String WAL_FILE = "wal.log";
+    private static final int SNAPSHOT_MAGIC = 0x4F525653; // "ORVS"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_DELETE_DOC = 2;
+    private static final byte OP_DELETE_CHUNK = 3;
+
+    // 过滤后候选数不超过该值时直接精确计算，避免 HNSW 在强过滤下退化
+    private static final int BRUTE_FORCE_FILTER_LIMIT = 2048;
+    private static final int COMPACT_MIN_DELETED = 1024;
+
+    private final EmbeddingService embeddingService;
+    private final EmbeddingBatcher embeddingBatcher;
+
+    @Value("${knowledge.vector.embedded.dir:${knowledge.storage.root:storage/knowledge}/vector-index}")
+    private String indexDir = "storage/knowledge/vector-index";
+
+    @Value("${knowledge.vector.embedded.m:16}")
+    private int m = 16;
+
+    @Value("${knowledge.vector.embedded.ef-construction:200}")
+    private int efConstruction = 200;
+
+    @Value("${knowledge.vector.embedded.ef-search:96}")
+    private int efSearch = 96;
+
+    @Value("${knowledge.vector.embedded.wal-sync:true}")
+    private boolean walSync = true;
+
+    private final ConcurrentHashMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    private volatile boolean allPartitionsLoaded = false;
+
+    public EmbeddedVectorStoreProvider(EmbeddingService embeddingService, EmbeddingBatcher embeddingBatcher) {
+        this.embeddingService = embeddingService;
+        this.embeddingBatcher = embeddingBatcher;
+    }
+
+    // --- VectorStoreProvider ---
+
+    @Override
+    public void addDocuments(String kbId, List<KnowledgeDocument> documents) {
+        // 当前流程统一走 addChunks
+        log.debug("Embedded vector store ignores addDocuments for KB: {}", kbId);
+    }
+
+    @Override
+    public void addChunks(String kbId, List<KnowledgeDocumentChunk> chunks) {
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        List<KnowledgeDocumentChunk> children = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (KnowledgeDocumentChunk chunk : chunks) {
+            if (!isChild(chunk)) {
+                continue;
+            }
+            children.add(chunk);
+            texts.add(chunk.getContent());
+        }
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (List<Float> embedding : embeddingBatcher.embedAll(embeddingService, texts)) {
+            vectors.add(toArray(embedding));
+        }
+        addVectors(kbId, children, vectors);
+    }
+
+    /**
+     * 写入已计算好的向量（tiered 模式下由 MilvusVectorService 复用同一份 embedding）
+     *
+     * @param vectors 与 chunks 一一对应；parent 分片或 null 向量会被跳过
+     */
+    public void addVectors(String kbId, List<KnowledgeDocumentChunk> chunks, List<float[]> vectors) {
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        if (chunks.size() != vectors.size()) {
+            throw new IllegalArgumentException("chunks and vectors size mismatch: " + chunks.size() + " vs " + vectors.size());
+        }
+        int dimension = -1;
+        for (float[] v : vectors) {
+            if (v != null && v.length > 0) {
+                dimension = v.length;
+                break;
+            }
+        }
+        if (dimension <= 0) {
+            return;
+        }
+
+        Partition partition = partition(kbId, dimension);
+        partition.lock.writeLock().lock();
+        try {
+            int added = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                KnowledgeDocumentChunk chunk = chunks.get(i);
+                float[] vector = vectors.get(i);
+                if (!isChild(chunk) || vector == null || vector.length == 0) {
+                    continue;
+                }
+                if (vector.length != partition.dimension) {
+                    log.error("向量维度不匹配! KB: {}, 分区维度: {}, 向量维度: {}. 请重建该知识库的向量索引.",
+                            kbId, partition.dimension, vector.length);
+                    continue;
+                }
+                ChunkMeta meta = ChunkMeta.of(chunk);
+                partition.wal.append(encodeAdd(meta, vector));
+                partition.apply(meta, vector);
+                added++;
+            }
+            if (walSync) {
+                partition.wal.sync();
+            }
+            partition.dirty = true;
+            log.info("Embedded vector store: added {} vectors to {}", added, partition.name);
+        } catch (IOException e) {
+            throw new VectorizationException("Failed to write embedded vector index: " + e.getMessage(), e);
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteDocuments(String kbId, List<String> docIds) {
+        if (docIds == null || docIds.isEmpty()) {
+            return;
+        }
+        Partition partition = existingPartition(kbId);
+        if (partition == null) {
+            return;
+        }
+        partition.lock.writeLock().lock();
+        try {
+            for (String docId : docIds) {
+                partition.wal.append(encodeDeleteDoc(docId));
+                partition.deleteDocument(docId);
+            }
+            if (walSync) {
+                partition.wal.sync();
+            }
+            partition.dirty = true;
+        } catch (IOException e) {
+            log.error("Failed to delete documents from embedded vector index {}: {}", partition.name, e.getMessage());
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteChunks(String kbId, List<String> chunkIds) {
+        if (chunkIds == null || chunkIds.isEmpty()) {
+            return true;
+        }
+        Partition partition = existingPartition(kbId);
+        if (partition == null) {
+            return true;
+        }
+        partition.lock.writeLock().lock();
+        try {
+            for (String chunkId : chunkIds) {
+                partition.wal.append(encodeDeleteChunk(chunkId));
+                partition.deleteChunk(chunkId);
+            }
+            if (walSync) {
+                partition.wal.sync();
+            }
+            partition.dirty = true;
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to delete chunks from embedded vector index {}: {}", partition.name, e.getMessage());
+            return false;
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteKnowledgeBase(String kbId) {
+        String name = partitionName(kbId);
+        Partition partition = partitions.remove(name);
+        if (partition != null) {
+            partition.lock.writeLock().lock();
+            try {
+                partition.closeQuietly();
+            } finally {
+                partition.lock.writeLock().unlock();
+            }
+        }
+        deleteDirectory(Paths.get(indexDir).resolve(name));
+        log.info("Dropped embedded vector partition {}", name);
+    }
+
+    @Override
+    public List<SearchResult> search(String kbId, String query, int k) {
+        return search(kbId, query, k, null, null);
+    }
+
+    @Override
+    public List<SearchResult> search(String kbId, String query, int k, String embeddingModel) {
+        return search(kbId, query, k, embeddingModel, null);
+    }
+
+    @Override
+    public List<SearchResult> search(String kbId, String query, int k, String embeddingModel,
+            Collection<String> documentIds) {
+        List<Float> embedding = embeddingService.embed(query);
+        if (embedding == null || embedding.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return searchVector(kbId, toArray(embedding), k, documentIds);
+    }
+
+    /**
+     * 以查询向量检索
+     *
+     * @param kbId        知识库 ID，"all" 表示跨全部分区
+     * @param documentIds 可选文档过滤
+     */
+    public List<SearchResult> searchVector(String kbId, float[] queryVector, int k, Collection<String> documentIds) {
+        float[] query = MappedVectorStore.normalize(queryVector);
+        Set<String> docFilter = documentIds == null || documentIds.isEmpty() ? null : new HashSet<>(documentIds);
+
+        List<Partition> targets = new ArrayList<>();
+        if ("all".equalsIgnoreCase(kbId)) {
+            loadAllPartitions();
+            targets.addAll(partitions.values());
+        } else {
+            Partition partition = existingPartition(kbId);
+            if (partition != null) {
+                targets.add(partition);
+            }
+        }
+
+        List<SearchResult> merged = new ArrayList<>();
+        for (Partition partition : targets) {
+            merged.addAll(partition.search(query, k, docFilter, efSearch));
+        }
+        if (targets.size() > 1) {
+            merged.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        }
+        return merged.size() > k ? new ArrayList<>(merged.subList(0, k)) : merged;
+    }
+
+    @Override
+    public List<DocumentChunk> getDocumentChunks(String kbId, String docId) {
+        Partition partition = existingPartition(kbId);
+        if (partition == null) {
+            return Collections.emptyList();
+        }
+        partition.lock.readLock().lock();
+        try {
+            List<DocumentChunk> chunks = new ArrayList<>();
+            for (int ordinal : partition.liveOrdinals(Set.of(docId))) {
+                ChunkMeta meta = partition.metas.get(ordinal);
+                chunks.add(DocumentChunk.builder()
+                        .id(meta.chunkId())
+                        .content(meta.content())
+                        .vector(toDoubleList(partition.store.get(ordinal)))
+                        .metadata(meta.toMetadata())
+                        .build());
+            }
+            return chunks;
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getVectorStats(String kbId) {
+        Map<String, Object> result = new HashMap<>();
+        Partition partition = existingPartition(kbId);
+        result.put("exists", partition != null);
+        result.put("vectorCount", partition != null ? (long) partition.liveCount() : 0L);
+        return result;
+    }
+
+    @Override
+    public Map<String, Object> getChunkVector(String kbId, String chunkId) {
+        Partition partition = existingPartition(kbId);
+        if (partition == null) {
+            return Map.of("success", false, "error", "未找到向量数据");
+        }
+        partition.lock.readLock().lock();
+        try {
+            Integer ordinal = partition.chunkOrdinals.get(chunkId);
+            if (ordinal == null) {
+                return Map.of("success", false, "error", "未找到向量数据");
+            }
+            ChunkMeta meta = partition.metas.get(ordinal);
+            List<Double> embedding = toDoubleList(partition.store.get(ordinal));
+            Map<String, Object> data = new HashMap<>();
+            data.put("chunkId", chunkId);
+            data.put("score", 1.0);
+            data.put("content", meta.content());
+            data.put("docId", meta.documentId());
+            data.put("chunkType", meta.chunkType());
+            data.put("title", meta.title());
+            data.put("embedding", embedding);
+            data.put("embeddingDimension", embedding.size());
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("data", data);
+            return result;
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 分区是否已有向量（tiered 模式下决定是否由热层应答）
+     */
+    public boolean hasVectors(String kbId) {
+        if ("all".equalsIgnoreCase(kbId)) {
+            loadAllPartitions();
+            return partitions.values().stream().anyMatch(p -> p.liveCount() > 0);
+        }
+        Partition partition = existingPartition(kbId);
+        return partition != null && partition.liveCount() > 0;
+    }
+
+    /**
+     * 分区中现存向量的分片 ID（tiered 模式回填时跳过已在热层的分片）
+     */
+    public Set<String> chunkIds(String kbId) {
+        Partition partition = existingPartition(kbId);
+        if (partition == null) {
+            return Set.of();
+        }
+        partition.lock.readLock().lock();
+        try {
+            return new HashSet<>(partition.chunkOrdinals.keySet());
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    // --- Checkpoint / lifecycle ---
+
+    /**
+     * 定时 checkpoint：落盘 mmap 向量页 + 写 snapshot + 截断 WAL
+     */
+    @Scheduled(fixedDelayString = "${knowledge.vector.embedded.checkpoint-interval-ms:60000}",
+            initialDelayString = "${knowledge.vector.embedded.checkpoint-interval-ms:60000}")
+    public void checkpointDirty() {
+        for (Partition partition : partitions.values()) {
+            if (partition.dirty) {
+                checkpoint(partition);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Partition partition : partitions.values()) {
+            if (partition.dirty) {
+                checkpoint(partition);
+            }
+            partition.closeQuietly();
+        }
+        partitions.clear();
+    }
+
+    private void checkpoint(Partition partition) {
+        partition.lock.writeLock().lock();
+        try {
+            if (partition.shouldCompact()) {
+                partition.compact();
+            }
+            partition.writeSnapshot();
+            partition.wal.reset();
+            partition.dirty = false;
+            log.debug("Embedded vector partition {} checkpointed: {} live / {} total",
+                    partition.name, partition.liveCount(), partition.metas.size());
+        } catch (IOException e) {
+            log.warn("Failed to checkpoint embedded vector partition {}: {}", partition.name, e.getMessage());
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // --- Partition management ---
+
+    private Partition existingPartition(String kbId) {
+        String name = partitionName(kbId);
+        Partition partition = partitions.get(name);
+        if (partition != null) {
+            return partition;
+        }
+        Path dir = Paths.get(indexDir).resolve(name);
+        if (!Files.exists(dir.resolve(SNAPSHOT_FILE)) && !Files.exists(dir.resolve(WAL_FILE))) {
+            return null;
+        }
+        return partitions.computeIfAbsent(name, n -> openPartition(n, dir, -1));
+    }
+
+    private Partition partition(String kbId, int dimension) {
+        Partition existing = existingPartition(kbId);
+        if (existing != null) {
+            return existing;
+        }
+        String name = partitionName(kbId);
+        return partitions.computeIfAbsent(name, n -> openPartition(n, Paths.get(indexDir).resolve(n), dimension));
+    }
+
+    private void loadAllPartitions() {
+        if (allPartitionsLoaded) {
+            return;
+        }
+        Path root = Paths.get(indexDir);
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> dirs = Files.list(root)) {
+                dirs.filter(Files::isDirectory).forEach(dir -> {
+                    String name = dir.getFileName().toString();
+                    if (!partitions.containsKey(name)
+                            && (Files.exists(dir.resolve(SNAPSHOT_FILE)) || Files.exists(dir.resolve(WAL_FILE)))) {
+                        partitions.computeIfAbsent(name, n -> openPartition(n, dir, -1));
+                    }
+                });
+            } catch (IOException e) {
+                log.warn("Failed to list embedded vector partitions under {}: {}", root, e.getMessage());
+            }
+        }
+        allPartitionsLoaded = true;
+    }
+
+    /**
+     * 打开分区：读取 snapshot，映射向量文件，重放 WAL，重放后立即 checkpoint
+     */
+    private Partition openPartition(String name, Path dir, int dimension) {
+        try {
+            Files.createDirectories(dir);
+            Path snapshot = dir.resolve(SNAPSHOT_FILE);
+            Path wal = dir.resolve(WAL_FILE);
+            Partition partition = Files.exists(snapshot)
+                    ? readSnapshot(name, dir, snapshot)
+                    : null;
+
+            List<byte[]> pending = new ArrayList<>();
+            VectorWal.replay(wal, pending::add);
+            if (partition == null) {
+                int walDimension = dimension;
+                for (byte[] record : pending) {
+                    if (record[0] == OP_ADD) {
+                        walDimension = decodeAddDimension(record);
+                        break;
+                    }
+                }
+                if (walDimension <= 0) {
+                    // 只有删除记录或空 WAL，无数据可恢复
+                    walDimension = Math.max(dimension, 1);
+                }
+                partition = new Partition(name, dir, walDimension, m, efConstruction,
+                        new MappedVectorStore(dir.resolve("vectors-0.bin"), walDimension, 0), 0,
+                        new HnswGraph(m, efConstruction));
+            }
+            for (byte[] record : pending) {
+                partition.replay(record);
+            }
+            partition.writeSnapshot();
+            Files.deleteIfExists(wal);
+            partition.wal = new VectorWal(wal);
+            if (!pending.isEmpty()) {
+                log.info("Embedded vector partition {} recovered {} WAL records", name, pending.size());
+            }
+            return partition;
+        } catch (IOException e) {
+            throw new VectorizationException("Failed to open embedded vector partition " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Partition readSnapshot(String name, Path dir, Path snapshot) throws IOException {
+        try (InputStream raw = Files.newInputStream(snapshot);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 256 * 1024))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not an embedded vector snapshot: " + snapshot);
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported embedded vector snapshot version: " + version);
+            }
+            int dimension = in.readInt();
+            int generation = in.readInt();
+            int count = in.readInt();
+            List<ChunkMeta> metas = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                metas.add(ChunkMeta.read(in));
+            }
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            HnswGraph graph = HnswGraph.readFrom(in, efConstruction);
+            MappedVectorStore store = new MappedVectorStore(dir.resolve("vectors-" + generation + ".bin"), dimension, count);
+
+            Partition partition = new Partition(name, dir, dimension, m, efConstruction, store, generation, graph);
+            BitSet deleted = BitSet.valueOf(words);
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                partition.metas.add(metas.get(ordinal));
+                if (deleted.get(ordinal)) {
+                    partition.deleted.set(ordinal);
+                } else {
+                    partition.index(ordinal, metas.get(ordinal));
+                }
+            }
+            return partition;
+        }
+    }
+
+    // --- WAL encoding ---
+
+    private static byte[] encodeAdd(ChunkMeta meta, float[] vector) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + vector.length * Float.BYTES + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_ADD);
+        out.writeInt(vector.length);
+        for (float v : vector) {
+            out.writeFloat(v);
+        }
+        meta.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeDeleteDoc(String docId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_DELETE_DOC);
+        writeString(out, docId);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeDeleteChunk(String chunkId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(OP_DELETE_CHUNK);
+        writeString(out, chunkId);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static int decodeAddDimension(byte[] record) {
+        return ((record[1] & 0xFF) << 24) | ((record[2] & 0xFF) << 16) | ((record[3] & 0xFF) << 8) | (record[4] & 0xFF);
+    }
+
+    // --- Helpers ---
+
+    static String partitionName(String kbId) {
+        return "kb_" + kbId.replace("-", "_").replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    private static boolean isChild(KnowledgeDocumentChunk chunk) {
+        return chunk.getChunkType() == null || "child".equals(chunk.getChunkType());
+    }
+
+    private static float[] toArray(List<Float> vector) {
+        if (vector == null) {
+            return null;
+        }
+        float[] out = new float[vector.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = vector.get(i);
+        }
+        return out;
+    }
+
+    private static List<Double> toDoubleList(float[] vector) {
+        List<Double> out = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            out.add((double) v);
+        }
+        return out;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void deleteDirectory(Path dir) {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Collections.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    log.warn("Failed to delete {}: {}", p, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to delete embedded vector partition {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * 分片元数据（与 Milvus 输出字段一致）
+     */
+    private record ChunkMeta(String chunkId, String documentId, String chunkType, String parentId,
+            String title, String source, int position, String content) {
+
+        static ChunkMeta of(KnowledgeDocumentChunk chunk) {
+            return new ChunkMeta(chunk.getId(), chunk.getDocumentId(),
+                    chunk.getChunkType() != null ? chunk.getChunkType() : "child",
+                    chunk.getParentId() != null ? chunk.getParentId() : "",
+                    chunk.getTitle() != null ? chunk.getTitle() : "",
+                    chunk.getSource() != null ? chunk.getSource() : "",
+                    chunk.getPosition() != null ? chunk.getPosition() : 0,
+                    chunk.getContent());
+        }
+
+        ChunkMeta withoutContent() {
+            return new ChunkMeta(chunkId, documentId, chunkType, parentId, title, source, position, null);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeString(out, chunkId);
+            writeString(out, documentId);
+            writeString(out, chunkType);
+            writeString(out, parentId);
+            writeString(out, title);
+            writeString(out, source);
+            out.writeInt(position);
+            writeString(out, content);
+        }
+
+        static ChunkMeta read(DataInputStream in) throws IOException {
+            return new ChunkMeta(readString(in), readString(in), readString(in), readString(in),
+                    readString(in), readString(in), in.readInt(), readString(in));
+        }
+
+        Map<String, Object> toMetadata() {
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("doc_id", documentId);
+            metadata.put("chunk_id", chunkId);
+            metadata.put("chunk_type", chunkType);
+            metadata.put("parent_id", parentId);
+            metadata.put("title", title);
+            metadata.put("source", source);
+            metadata.put("position", position);
+            return metadata;
+        }
+    }
+
+    /**
+     * 单个知识库分区：向量文件 + HNSW 图 + 元数据 + WAL
+     */
+    private static final class Partition {
+        final String name;
+        final Path dir;
+        final int dimension;
+        final int m;
+        final int efConstruction;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        MappedVectorStore store;
+        int generation;
+        HnswGraph graph;
+        VectorWal wal;
+        volatile boolean dirty;
+
+        final List<ChunkMeta> metas = new ArrayList<>();
+        final Map<String, Integer> chunkOrdinals = new HashMap<>();
+        final Map<String, List<Integer>> docOrdinals = new HashMap<>();
+        final BitSet deleted = new BitSet();
+
+        Partition(String name, Path dir, int dimension, int m, int efConstruction,
+                MappedVectorStore store, int generation, HnswGraph graph) {
+            this.name = name;
+            this.dir = dir;
+            this.dimension = dimension;
+            this.m = m;
+            this.efConstruction = efConstruction;
+            this.store = store;
+            this.generation = generation;
+            this.graph = graph;
+        }
+
+        int liveCount() {
+            return metas.size() - deleted.cardinality();
+        }
+
+        /**
+         * 写入一条向量（同 chunkId 已存在时墓碑旧记录）
+         */
+        void apply(ChunkMeta meta, float[] vector) throws IOException {
+            Integer previous = chunkOrdinals.get(meta.chunkId());
+            if (previous != null) {
+                tombstone(previous);
+            }
+            int ordinal = store.append(vector);
+            metas.add(meta);
+            graph.insert(store, ordinal);
+            index(ordinal, meta);
+        }
+
+        void index(int ordinal, ChunkMeta meta) {
+            chunkOrdinals.put(meta.chunkId(), ordinal);
+            docOrdinals.computeIfAbsent(meta.documentId(), d -> new ArrayList<>()).add(ordinal);
+        }
+
+        void tombstone(int ordinal) {
+            deleted.set(ordinal);
+            ChunkMeta meta = metas.get(ordinal);
+            List<Integer> ordinals = docOrdinals.get(meta.documentId());
+            if (ordinals != null) {
+                ordinals.remove(Integer.valueOf(ordinal));
+            }
+            metas.set(ordinal, meta.withoutContent());
+        }
+
+        void deleteDocument(String docId) {
+            List<Integer> ordinals = docOrdinals.remove(docId);
+            if (ordinals == null) {
+                return;
+            }
+            for (int ordinal : ordinals) {
+                deleted.set(ordinal);
+                ChunkMeta meta = metas.get(ordinal);
+                chunkOrdinals.remove(meta.chunkId(), ordinal);
+                metas.set(ordinal, meta.withoutContent());
+            }
+        }
+
+        void deleteChunk(String chunkId) {
+            Integer ordinal = chunkOrdinals.remove(chunkId);
+            if (ordinal != null && !deleted.get(ordinal)) {
+                tombstone(ordinal);
+            }
+        }
+
+        void replay(byte[] record) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            byte op = in.readByte();
+            if (op == OP_ADD) {
+                float[] vector = new float[in.readInt()];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = in.readFloat();
+                }
+                ChunkMeta meta = ChunkMeta.read(in);
+                if (vector.length == dimension) {
+                    apply(meta, vector);
+                }
+            } else if (op == OP_DELETE_DOC) {
+                deleteDocument(readString(in));
+            } else if (op == OP_DELETE_CHUNK) {
+                deleteChunk(readString(in));
+            }
+        }
+
+        List<Integer> liveOrdinals(Set<String> docIds) {
+            List<Integer> out = new ArrayList<>();
+            for (String docId : docIds) {
+                List<Integer> ordinals = docOrdinals.get(docId);
+                if (ordinals != null) {
+                    for (int ordinal : ordinals) {
+                        if (!deleted.get(ordinal)) {
+                            out.add(ordinal);
+                        }
+                    }
+                }
+            }
+            return out;
+        }
+
+        List<SearchResult> search(float[] query, int k, Set<String> docFilter, int efSearch) {
+            lock.readLock().lock();
+            try {
+                if (query.length != dimension) {
+                    log.error("向量维度不匹配! 查询向量维度: {}, 分区 {} 维度: {}", query.length, name, dimension);
+                    return Collections.emptyList();
+                }
+                List<HnswGraph.Neighbor> hits;
+                if (docFilter != null) {
+                    List<Integer> candidates = liveOrdinals(docFilter);
+                    if (candidates.size() <= BRUTE_FORCE_FILTER_LIMIT) {
+                        hits = HnswGraph.bruteForceAmong(store, query, k,
+                                candidates.stream().mapToInt(Integer::intValue).toArray());
+                    } else {
+                        hits = graph.search(store, query, k, efSearch,
+                                o -> !deleted.get(o) && docFilter.contains(metas.get(o).documentId()));
+                    }
+                } else {
+                    hits = graph.search(store, query, k, efSearch, o -> !deleted.get(o));
+                }
+
+                List<SearchResult> results = new ArrayList<>(hits.size());
+                for (HnswGraph.Neighbor hit : hits) {
+                    ChunkMeta meta = metas.get(hit.ordinal());
+                    results.add(SearchResult.builder()
+                            .content(meta.content() != null ? meta.content() : "")
+                            .score((double) hit.score())
+                            .metadata(meta.toMetadata())
+                            .build());
+                }
+                return results;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        boolean shouldCompact() {
+            int dead = deleted.cardinality();
+            return dead >= COMPACT_MIN_DELETED && dead * 2 >= metas.size();
+        }
+
+        /**
+         * 以存活向量重建向量文件与图（新 generation），旧文件在 snapshot 落盘后删除
+         */
+        void compact() throws IOException {
+            int nextGeneration = generation + 1;
+            MappedVectorStore nextStore = new MappedVectorStore(
+                    dir.resolve("vectors-" + nextGeneration + ".bin"), dimension, 0);
+            HnswGraph nextGraph = new HnswGraph(m, efConstruction);
+            List<ChunkMeta> liveMetas = new ArrayList<>();
+            for (int ordinal = 0; ordinal < metas.size(); ordinal++) {
+                if (deleted.get(ordinal)) {
+                    continue;
+                }
+                int next = nextStore.append(store.get(ordinal));
+                nextGraph.insert(nextStore, next);
+                liveMetas.add(metas.get(ordinal));
+            }
+
+            MappedVectorStore previousStore = store;
+            store = nextStore;
+            graph = nextGraph;
+            generation = nextGeneration;
+            metas.clear();
+            chunkOrdinals.clear();
+            docOrdinals.clear();
+            deleted.clear();
+            for (int ordinal = 0; ordinal < liveMetas.size(); ordinal++) {
+                metas.add(liveMetas.get(ordinal));
+                index(ordinal, liveMetas.get(ordinal));
+            }
+            writeSnapshot();
+            previousStore.close();
+            Files.deleteIfExists(previousStore.getFile());
+            log.info("Embedded vector partition {} compacted to {} vectors", name, metas.size());
+        }
+
+        /**
+         * 写 snapshot（临时文件 + 原子替换）；调用前向量页先落盘，保证 snapshot 引用的向量已持久化
+         */
+        void writeSnapshot() throws IOException {
+            store.force();
+            Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+            try (OutputStream raw = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(raw, 256 * 1024))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(dimension);
+                out.writeInt(generation);
+                out.writeInt(metas.size());
+                for (ChunkMeta meta : metas) {
+                    meta.write(out);
+                }
+                long[] words = deleted.toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+                graph.writeTo(out);
+            }
+            Files.move(tmp, dir.resolve(SNAPSHOT_FILE),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void closeQuietly() {
+            try {
+                if (wal != null) {
+                    wal.close();
+                }
+                store.close();
+            } catch (IOException e) {
+                log.warn("Failed to close embedded vector partition {}: {}", name, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文档向量化批处理器
+ *
+ * - 按估算 token 预算与条数上限将文本打包为多输入 /embeddings 请求
+ * - 每个 provider 同时在途的批次数受信号量限制，避免触发上游限流
+ * - 批次失败时逐条重试，单条仍失败的位置返回 null，由调用方决定降级方式
+ * - 打包前先查 {@link EmbeddingCache}，只有未命中的文本才会请求 provider
+ */
+@Slf4j
+@Component
+public class EmbeddingBatcher {
+
+    @Value("${knowledge.embedding.batch.max-tokens:8192}")
+    private int maxBatchTokens = 8192;
+
+    @Value("${knowledge.embedding.batch.max-inputs:32}")
+    private int maxBatchInputs = 32;
+
+    @Value("${knowledge.embedding.batch.max-in-flight:4}")
+    private int maxInFlight = 4;
+
+    @Value("${knowledge.embedding.batch.threads:8}")
+    private int threads = 8;
+
+    private final EmbeddingCache embeddingCache;
+    private final ConcurrentHashMap<String, Semaphore> providerPermits = new ConcurrentHashMap<>();
+    private volatile ExecutorService executor;
+
+    public EmbeddingBatcher(EmbeddingCache embeddingCache) {
+        this.embeddingCache = embeddingCache;
+    }
+
+    /**
+     * 批量向量化
+     *
+     * @return 与 texts 一一对应；逐条重试后仍失败的位置为 null
+     */
+    public List<List<Float>> embedAll(EmbeddingService service, List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String model = service.getModelName();
+        List<List<Float>> results = new ArrayList<>(Collections.nCopies(texts.size(), null));
+        List<String> pending = new ArrayList<>();
+        List<Integer> pendingIndexes = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            float[] cached = embeddingCache.get(model, texts.get(i));
+            if (cached != null) {
+                results.set(i, toList(cached));
+            } else {
+                pending.add(texts.get(i));
+                pendingIndexes.add(i);
+            }
+        }
+        if (pending.isEmpty()) {
+            return results;
+        }
+
+        List<List<Float>> embedded = new ArrayList<>(Collections.nCopies(pending.size(), null));
+        List<int[]> batches = plan(pending);
+        if (batches.size() == 1) {
+            runBatch(service, pending, batches.get(0), embedded);
+        } else {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(batches.size());
+            for (int[] range : batches) {
+                futures.add(CompletableFuture.runAsync(() -> runBatch(service, pending, range, embedded), executor()));
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                throw new IllegalStateException("Embedding batch failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        log.debug("Embedded {} texts ({} cached) in {} batches via {}", texts.size(),
+                texts.size() - pending.size(), batches.size(), service.getProviderName());
+
+        for (int i = 0; i < pending.size(); i++) {
+            List<Float> vector = embedded.get(i);
+            results.set(pendingIndexes.get(i), vector);
+            if (vector != null && !vector.isEmpty()) {
+                embeddingCache.put(model, pending.get(i), toArray(vector));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按 token 预算与条数上限切分批次（超出预算的单条文本独占一个批次）
+     *
+     * @return 每个批次的 [from, to) 区间
+     */
+    List<int[]> plan(List<String> texts) {
+        List<int[]> batches = new ArrayList<>();
+        int from = 0;
+        int tokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            int t = estimateTokens(texts.get(i));
+            int count = i - from;
+            if (count > 0 && (count >= maxBatchInputs || tokens + t > maxBatchTokens)) {
+                batches.add(new int[] { from, i });
+                from = i;
+                tokens = 0;
+            }
+            tokens += t;
+        }
+        batches.add(new int[] { from, texts.size() });
+        return batches;
+    }
+
+    /**
+     * 粗略估算 token 数：ASCII 约 4 字符一个 token，其余字符（中文等）按一字一个 token
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 1;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return Math.max(1, (ascii + 3) / 4 + other);
+    }
+
+    static List<Float> toList(float[] vector) {
+        List<Float> list = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            list.add(v);
+        }
+        return list;
+    }
+
+    static float[] toArray(List<Float> vector) {
+        float[] out = new float[vector.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = vector.get(i);
+        }
+        return out;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runBatch(EmbeddingService service, List<String> texts, int[] range, List<List<Float>> results) {
+        List<String> batch = texts.subList(range[0], range[1]);
+        Semaphore permits = providerPermits.computeIfAbsent(String.valueOf(service.getProviderName()),
+                key -> new Semaphore(Math.max(1, maxInFlight)));
+        permits.acquireUninterruptibly();
+        try {
+            List<List<Float>> vectors = null;
+            try {
+                vectors = service.embedAll(batch);
+            } catch (Exception e) {
+                log.warn("Embedding batch of {} failed, retrying individually: {}", batch.size(), e.getMessage());
+            }
+            if (vectors != null && vectors.size() == batch.size()) {
+                for (int i = 0; i < batch.size(); i++) {
+                    results.set(range[0] + i, vectors.get(i));
+                }
+                return;
+            }
+            if (vectors != null) {
+                log.warn("Embedding batch returned {} vectors for {} inputs, retrying individually",
+                        vectors.size(), batch.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    results.set(range[0] + i, service.embed(batch.get(i)));
+                } catch (Exception e) {
+                    log.warn("Embedding failed for input {}: {}", range[0] + i, e.getMessage());
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private ExecutorService executor() {
+        ExecutorService current = executor;
+        if (current == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    int size = Math.max(1, threads);
+                    executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), r -> {
+                                Thread t = new Thread(r, "embedding-batch-" + counter.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            });
+                    ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+                }
+                current = executor;
+            }
+        }
+        return current;
+    }
+}
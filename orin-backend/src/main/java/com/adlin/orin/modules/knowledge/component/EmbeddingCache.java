@@ -0,0 +1,476 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 内容寻址的 Embedding 缓存（索引与查询路径共用）
+ *
+ * - Key：SHA-256(模型名 + 规范化文本)，规范化为 NFC + 合并空白 + 去首尾空白
+ * - 内存层：Caffeine，按向量字节数限制容量
+ * - 磁盘层：追加写分段文件，向量以 float16 或 int8（逐向量缩放）压缩存储；
+ *   当前分段超过上限时滚动，仅保留最近两个分段
+ * - 指标：embedding.cache.lookups（按层）、hit_ratio、avoided_tokens、avoided_cost、bytes_saved
+ */
+@Slf4j
+@Component
+public class EmbeddingCache {
+
+    static final byte ENCODING_FP16 = 1;
+    static final byte ENCODING_INT8 = 2;
+
+    private static final byte RECORD_MAGIC = (byte) 0xE1;
+    private static final int KEY_BYTES = 32;
+    // magic + key + encoding + dim + scale
+    private static final int HEADER_BYTES = 1 + KEY_BYTES + 1 + Integer.BYTES + Float.BYTES;
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @Value("${knowledge.embedding.cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${knowledge.embedding.cache.disk-enabled:true}")
+    private boolean diskEnabled = true;
+
+    @Value("${knowledge.embedding.cache.dir:${knowledge.storage.root:storage/knowledge}/embedding-cache}")
+    private String cacheDir = "storage/knowledge/embedding-cache";
+
+    /**
+     * 磁盘编码：fp16（近乎无损）| int8（体积再减半）
+     */
+    @Value("${knowledge.embedding.cache.disk-encoding:fp16}")
+    private String diskEncoding = "fp16";
+
+    @Value("${knowledge.embedding.cache.disk-segment-max-mb:256}")
+    private long segmentMaxMb = 256;
+
+    /**
+     * 用于估算节省费用的 embedding 单价（每 1K tokens）
+     */
+    @Value("${knowledge.embedding.cache.cost-per-1k-tokens:0.0}")
+    private double costPer1kTokens = 0.0;
+
+    private record Location(int segment, long offset, int length) {
+    }
+
+    private final Cache<String, float[]> memory;
+    private final Map<String, Location> diskIndex = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+    private volatile Path diskDir;
+    private volatile int activeSegment = -1;
+    private long activeSize;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+    private final Counter avoidedTokens;
+    private final Counter avoidedCost;
+    private final Counter bytesSaved;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong lookupCount = new AtomicLong();
+
+    public EmbeddingCache(MeterRegistry meterRegistry,
+            @Value("${knowledge.embedding.cache.memory-max-mb:64}") long memoryMaxMb) {
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, memoryMaxMb) * 1024 * 1024)
+                .weigher((String key, float[] vector) -> 64 + vector.length * Float.BYTES)
+                .build();
+        this.memoryHits = lookupCounter(meterRegistry, "memory");
+        this.diskHits = lookupCounter(meterRegistry, "disk");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.avoidedTokens = Counter.builder("embedding.cache.avoided_tokens")
+                .description("Estimated embedding tokens served from cache instead of the provider")
+                .register(meterRegistry);
+        this.avoidedCost = Counter.builder("embedding.cache.avoided_cost")
+                .description("Estimated provider spend avoided by cache hits")
+                .register(meterRegistry);
+        this.bytesSaved = Counter.builder("embedding.cache.bytes_saved")
+                .description("Disk bytes saved by compact encoding compared with float32 vectors")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("embedding.cache.hit_ratio", this, EmbeddingCache::hitRatio)
+                .description("Embedding cache hit ratio since startup")
+                .register(meterRegistry);
+        Gauge.builder("embedding.cache.disk_entries", diskIndex, Map::size)
+                .description("Embeddings stored in the disk tier")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled || !diskEnabled) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(cacheDir);
+            Files.createDirectories(dir);
+            List<Integer> ids = new ArrayList<>();
+            try (Stream<Path> files = Files.list(dir)) {
+                files.map(p -> p.getFileName().toString())
+                        .filter(name -> name.startsWith("segment-") && name.endsWith(".bin"))
+                        .forEach(name -> ids.add(Integer.parseInt(name.substring(8, name.length() - 4))));
+            }
+            ids.sort(Integer::compareTo);
+            for (int id : ids) {
+                loadSegment(dir, id);
+            }
+            diskDir = dir;
+            synchronized (this) {
+                rollSegment(ids.isEmpty() ? 0 : ids.get(ids.size() - 1));
+            }
+            log.info("Embedding disk cache ready: {} entries in {}", diskIndex.size(), dir);
+        } catch (Exception e) {
+            log.warn("Embedding disk cache disabled, failed to open {}: {}", cacheDir, e.getMessage());
+            diskDir = null;
+        }
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @return 命中的向量；未命中返回 null
+     */
+    public float[] get(String model, String text) {
+        if (!enabled || text == null) {
+            return null;
+        }
+        String key = key(model, text);
+        lookupCount.incrementAndGet();
+        float[] vector = memory.getIfPresent(key);
+        if (vector != null) {
+            memoryHits.increment();
+            recordHit(text);
+            return vector;
+        }
+        vector = readDisk(key);
+        if (vector != null) {
+            memory.put(key, vector);
+            diskHits.increment();
+            recordHit(text);
+            return vector;
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String model, String text, float[] vector) {
+        if (!enabled || text == null || vector == null || vector.length == 0) {
+            return;
+        }
+        String key = key(model, text);
+        memory.put(key, vector);
+        if (diskDir != null && !diskIndex.containsKey(key)) {
+            writeDisk(key, vector);
+        }
+    }
+
+    public double hitRatio() {
+        long lookups = lookupCount.get();
+        return lookups == 0 ? 0.0 : (double) hitCount.get() / lookups;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (FileChannel channel : segments.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Failed to close embedding cache segment: {}", e.getMessage());
+            }
+        }
+        segments.clear();
+    }
+
+    static String normalize(String text) {
+        String nfc = Normalizer.normalize(text, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(nfc).replaceAll(" ").strip();
+    }
+
+    static String key(String model, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(model).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalize(text).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void recordHit(String text) {
+        hitCount.incrementAndGet();
+        int tokens = EmbeddingBatcher.estimateTokens(text);
+        avoidedTokens.increment(tokens);
+        if (costPer1kTokens > 0) {
+            avoidedCost.increment(tokens / 1000.0 * costPer1kTokens);
+        }
+    }
+
+    private static Counter lookupCounter(MeterRegistry registry, String result) {
+        return Counter.builder("embedding.cache.lookups")
+                .description("Embedding cache lookups by serving tier")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    // --- disk tier ---
+
+    private float[] readDisk(String key) {
+        Location location = diskIndex.get(key);
+        if (location == null) {
+            return null;
+        }
+        FileChannel channel = segments.get(location.segment());
+        if (channel == null) {
+            diskIndex.remove(key, location);
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(location.length()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, location.offset() + buffer.position()) < 0) {
+                    return null;
+                }
+            }
+            buffer.flip();
+            return decodeRecord(buffer, null);
+        } catch (IOException e) {
+            log.debug("Embedding disk cache read failed: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized void writeDisk(String key, float[] vector) {
+        if (diskIndex.containsKey(key) || diskDir == null) {
+            return;
+        }
+        byte encoding = "int8".equalsIgnoreCase(diskEncoding) ? ENCODING_INT8 : ENCODING_FP16;
+        ByteBuffer record = encodeRecord(HexFormat.of().parseHex(key), vector, encoding);
+        try {
+            if (activeSize + record.remaining() > Math.max(1, segmentMaxMb) * 1024 * 1024 && activeSize > 0) {
+                rollSegment(activeSegment + 1);
+            }
+            FileChannel channel = segments.get(activeSegment);
+            long offset = activeSize;
+            int length = record.remaining();
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            activeSize += length;
+            diskIndex.put(key, new Location(activeSegment, offset, length));
+            bytesSaved.increment((double) vector.length * Float.BYTES - payloadBytes(encoding, vector.length));
+        } catch (IOException e) {
+            log.warn("Embedding disk cache write failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 打开新的活动分段，并删除倒数第二个之前的旧分段
+     */
+    private void rollSegment(int id) throws IOException {
+        FileChannel channel = segments.get(id);
+        if (channel == null) {
+            channel = FileChannel.open(diskDir.resolve(segmentName(id)),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segments.put(id, channel);
+        }
+        activeSegment = id;
+        activeSize = channel.size();
+        for (Integer old : new ArrayList<>(segments.keySet())) {
+            if (old < id - 1) {
+                FileChannel stale = segments.remove(old);
+                stale.close();
+                Files.deleteIfExists(diskDir.resolve(segmentName(old)));
+                diskIndex.values().removeIf(location -> location.segment() == old);
+            }
+        }
+    }
+
+    /**
+     * 扫描分段重建索引；遇到残缺或校验失败的记录即截断（进程崩溃时的半条写入）
+     */
+    private void loadSegment(Path dir, int id) throws IOException {
+        Path file = dir.resolve(segmentName(id));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        while (data.hasRemaining() && channel.read(data, data.position()) >= 0) {
+            // read fully
+        }
+        data.flip();
+        long valid = 0;
+        while (data.remaining() >= HEADER_BYTES + Integer.BYTES) {
+            int start = data.position();
+            byte[] keyBytes = new byte[KEY_BYTES];
+            float[] decoded = decodeRecord(data, keyBytes);
+            if (decoded == null) {
+                break;
+            }
+            diskIndex.put(HexFormat.of().formatHex(keyBytes), new Location(id, start, data.position() - start));
+            valid = data.position();
+        }
+        if (valid < channel.size()) {
+            log.warn("Truncating torn embedding cache segment {} at {} bytes", file, valid);
+            channel.truncate(valid);
+        }
+        segments.put(id, channel);
+    }
+
+    static ByteBuffer encodeRecord(byte[] key, float[] vector, byte encoding) {
+        int payload = payloadBytes(encoding, vector.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(RECORD_MAGIC).put(key).put(encoding).putInt(vector.length);
+        if (encoding == ENCODING_INT8) {
+            float maxAbs = 0f;
+            for (float v : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(v));
+            }
+            float scale = maxAbs > 0f ? maxAbs / 127f : 1f;
+            buffer.putFloat(scale);
+            for (float v : vector) {
+                buffer.put((byte) Math.round(v / scale));
+            }
+        } else {
+            buffer.putFloat(0f);
+            for (float v : vector) {
+                buffer.putShort(toHalf(v));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 从 buffer 当前位置解码一条记录；记录不完整或校验失败时返回 null 且不移动位置
+     */
+    static float[] decodeRecord(ByteBuffer buffer, byte[] keyOut) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_BYTES + Integer.BYTES || buffer.get(start) != RECORD_MAGIC) {
+            return null;
+        }
+        byte encoding = buffer.get(start + 1 + KEY_BYTES);
+        int dim = buffer.getInt(start + 2 + KEY_BYTES);
+        if ((encoding != ENCODING_FP16 && encoding != ENCODING_INT8) || dim <= 0 || dim > 65_536) {
+            return null;
+        }
+        int payload = payloadBytes(encoding, dim);
+        int end = start + HEADER_BYTES + payload;
+        if (buffer.limit() < end + Integer.BYTES) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(start).limit(end);
+        crc.update(body);
+        if ((int) crc.getValue() != buffer.getInt(end)) {
+            return null;
+        }
+        if (keyOut != null) {
+            buffer.position(start + 1);
+            buffer.get(keyOut);
+        }
+        float scale = buffer.getFloat(start + HEADER_BYTES - Float.BYTES);
+        float[] vector = new float[dim];
+        int p = start + HEADER_BYTES;
+        for (int i = 0; i < dim; i++) {
+            vector[i] = encoding == ENCODING_INT8
+                    ? buffer.get(p + i) * scale
+                    : fromHalf(buffer.getShort(p + i * 2));
+        }
+        buffer.position(end + Integer.BYTES);
+        return vector;
+    }
+
+    private static int payloadBytes(byte encoding, int dim) {
+        return encoding == ENCODING_INT8 ? dim : dim * 2;
+    }
+
+    private static String segmentName(int id) {
+        return "segment-" + id + ".bin";
+    }
+
+    /**
+     * IEEE 754 binary16 编码（就近舍入，溢出为 Inf）
+     */
+    static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exp = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if (((bits >>> 23) & 0xFF) == 0xFF) {
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exp >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (exp <= 0) {
+            if (exp < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            int shift = 14 - exp;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+        int half = sign | (exp << 10) | (mantissa >> 13);
+        if ((mantissa & 0x1000) != 0) {
+            half++;
+        }
+        return (short) half;
+    }
+
+    static float fromHalf(short half) {
+        int h = half & 0xFFFF;
+        int sign = (h & 0x8000) << 16;
+        int exp = (h >>> 10) & 0x1F;
+        int mantissa = h & 0x3FF;
+        if (exp == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            // subnormal
+            float value = mantissa / 1024f * (float) Math.pow(2, -14);
+            return sign != 0 ? -value : value;
+        }
+        if (exp == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exp - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -1,5 +1,6 @@
 package com.adlin.orin.modules.knowledge.component;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public interface EmbeddingService {
@@ -11,6 +12,22 @@ public interface EmbeddingService {
      */
     List<Float> embed(String text);
 
+    /**
+     * Embed several texts in one call.
+     * Providers with a multi-input endpoint should override this; the default
+     * falls back to one request per text.
+     *
+     * @param texts input texts
+     * @return vectors in the same order as the input
+     */
+    default List<List<Float>> embedAll(List<String> texts) {
+        List<List<Float>> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embed(text));
+        }
+        return vectors;
+    }
+
     /**
      * Get the name of the embedding provider.
      *
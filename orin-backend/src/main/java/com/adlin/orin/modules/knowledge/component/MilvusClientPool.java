@@ -0,0 +1,327 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.CheckHealthResponse;
+import io.milvus.param.ConnectParam;
+import io.milvus.param.R;
+import io.milvus.param.RetryParam;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Milvus 客户端连接池
+ *
+ * - 长连接复用：客户端在首次使用时创建，用完归还，不再每次请求新建 gRPC 连接
+ * - 连接数上限由信号量控制，借用等待超时快速失败
+ * - 调用抛出连接类异常（UNAVAILABLE 等），或 SDK 以 RpcError / ClientNotConnected 等状态返回时
+ *   丢弃该客户端，下次借用时自动重连
+ * - 定时对空闲客户端逐个做 checkHealth，剔除失效连接；探测占用一个池许可，不会让连接数超过上限
+ * - 指标：milvus.pool.wait（借用等待）、milvus.rpc.latency（按操作/结果）、milvus.pool.reconnects
+ */
+@Slf4j
+@Component
+public class MilvusClientPool {
+
+    @Value("${milvus.host:localhost}")
+    private String host = "localhost";
+
+    @Value("${milvus.port:19530}")
+    private int port = 19530;
+
+    @Value("${milvus.token:}")
+    private String token;
+
+    @Value("${milvus.client.connect-timeout-ms:1000}")
+    private long connectTimeoutMs = 1000;
+
+    @Value("${milvus.client.keepalive-timeout-ms:2000}")
+    private long keepAliveTimeoutMs = 2000;
+
+    @Value("${milvus.client.rpc-deadline-ms:1500}")
+    private long rpcDeadlineMs = 1500;
+
+    @Value("${milvus.client.max-retry-times:1}")
+    private int maxRetryTimes = 1;
+
+    @Value("${milvus.client.retry-interval-ms:200}")
+    private long retryIntervalMs = 200;
+
+    @Value("${milvus.client.pool-size:4}")
+    private int poolSize = 4;
+
+    @Value("${milvus.client.pool-wait-ms:2000}")
+    private long poolWaitMs = 2000;
+
+    /**
+     * 池内客户端上的一次调用
+     */
+    @FunctionalInterface
+    public interface MilvusCall<T> {
+        T apply(MilvusServiceClient client) throws Exception;
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentLinkedDeque<MilvusServiceClient> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private volatile Semaphore permits;
+    private Supplier<MilvusServiceClient> clientFactory = this::createClient;
+
+    private final Timer waitTimer;
+    private final Counter reconnects;
+
+    public MilvusClientPool(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.waitTimer = Timer.builder("milvus.pool.wait")
+                .description("Time spent waiting to borrow a Milvus client")
+                .register(meterRegistry);
+        this.reconnects = Counter.builder("milvus.pool.reconnects")
+                .description("Milvus clients discarded after connection failures")
+                .register(meterRegistry);
+        Gauge.builder("milvus.pool.open", open, AtomicInteger::get)
+                .description("Open Milvus clients")
+                .register(meterRegistry);
+        Gauge.builder("milvus.pool.in_use", inUse, AtomicInteger::get)
+                .description("Milvus clients currently borrowed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 借用一个客户端执行调用并归还
+     *
+     * @param operation 操作名（用于 RPC 延迟指标标签）
+     */
+    public <T> T execute(String operation, MilvusCall<T> call) {
+        MilvusServiceClient client = borrow();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        boolean broken = false;
+        String outcome = "success";
+        try {
+            T result = call.apply(client);
+            if (result instanceof R<?> r && r.getStatus() != R.Status.Success.getCode()) {
+                outcome = "error";
+                broken = isConnectionFailure(r);
+            }
+            return result;
+        } catch (Exception e) {
+            outcome = "exception";
+            broken = isConnectionFailure(e);
+            if (e instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("Milvus " + operation + " failed: " + e.getMessage(), e);
+        } finally {
+            sample.stop(Timer.builder("milvus.rpc.latency")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+            release(client, broken);
+        }
+    }
+
+    /**
+     * 创建一个独立的客户端（调用方负责关闭），仅用于池外的一次性场景
+     */
+    public MilvusServiceClient createClient() {
+        ConnectParam.Builder builder = ConnectParam.newBuilder()
+                .withHost(host)
+                .withPort(port)
+                .withConnectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .withKeepAliveTimeout(keepAliveTimeoutMs, TimeUnit.MILLISECONDS)
+                .withRpcDeadline(rpcDeadlineMs, TimeUnit.MILLISECONDS);
+
+        applyAuthorization(builder, token);
+
+        MilvusServiceClient client = new MilvusServiceClient(builder.build());
+        RetryParam retryParam = RetryParam.newBuilder()
+                .withMaxRetryTimes(Math.max(0, maxRetryTimes))
+                .withInitialBackOffMs(Math.max(1, retryIntervalMs))
+                .withMaxBackOffMs(Math.max(1, retryIntervalMs))
+                .build();
+        return (MilvusServiceClient) client.withRetry(retryParam);
+    }
+
+    /**
+     * 定时检查空闲客户端健康状态，剔除失效连接
+     * 每次只取出一个最久未用的客户端探测，并占用一个池许可：探测期间借用方拿不到许可就等待，
+     * 不会因为空闲队列暂时为空而新建连接；池满负荷时跳过本轮
+     */
+    @Scheduled(fixedDelayString = "${milvus.client.health-check-interval-ms:30000}",
+            initialDelayString = "${milvus.client.health-check-interval-ms:30000}")
+    public void checkIdleClients() {
+        int probes = idle.size();
+        for (int i = 0; i < probes; i++) {
+            if (!permits().tryAcquire()) {
+                return;
+            }
+            try {
+                MilvusServiceClient client = idle.pollLast();
+                if (client == null) {
+                    return;
+                }
+                if (isHealthy(client)) {
+                    idle.offerFirst(client);
+                } else {
+                    log.warn("Discarding unhealthy Milvus client");
+                    discard(client);
+                }
+            } finally {
+                permits().release();
+            }
+        }
+    }
+
+    private static boolean isHealthy(MilvusServiceClient client) {
+        try {
+            R<CheckHealthResponse> health = client.checkHealth();
+            return health.getStatus() == R.Status.Success.getCode()
+                    && health.getData() != null && health.getData().getIsHealthy();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public int getOpenClients() {
+        return open.get();
+    }
+
+    public int getIdleClients() {
+        return idle.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        MilvusServiceClient client;
+        while ((client = idle.pollFirst()) != null) {
+            closeQuietly(client);
+            open.decrementAndGet();
+        }
+    }
+
+    private MilvusServiceClient borrow() {
+        long start = System.nanoTime();
+        try {
+            if (!permits().tryAcquire(poolWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Milvus client pool exhausted (size=" + poolSize
+                        + ", waited " + poolWaitMs + "ms)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a Milvus client", e);
+        } finally {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        MilvusServiceClient client = idle.pollFirst();
+        if (client == null) {
+            try {
+                client = clientFactory.get();
+                open.incrementAndGet();
+            } catch (RuntimeException e) {
+                permits().release();
+                throw e;
+            }
+        }
+        inUse.incrementAndGet();
+        return client;
+    }
+
+    private void release(MilvusServiceClient client, boolean broken) {
+        inUse.decrementAndGet();
+        if (broken) {
+            reconnects.increment();
+            discard(client);
+        } else {
+            idle.offerFirst(client);
+        }
+        permits().release();
+    }
+
+    private void discard(MilvusServiceClient client) {
+        open.decrementAndGet();
+        closeQuietly(client);
+    }
+
+    private Semaphore permits() {
+        Semaphore current = permits;
+        if (current == null) {
+            synchronized (this) {
+                if (permits == null) {
+                    permits = new Semaphore(Math.max(1, poolSize), true);
+                }
+                current = permits;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * SDK 会把 gRPC 异常包装成失败的 R 返回而不是抛出，需按状态码 / 携带的异常判断连接是否失效
+     */
+    static boolean isConnectionFailure(R<?> response) {
+        int status = response.getStatus();
+        if (status == R.Status.RpcError.getCode() || status == R.Status.ClientNotConnected.getCode()
+                || status == R.Status.ConnectFailed.getCode()) {
+            return true;
+        }
+        return response.getException() != null && isConnectionFailure(response.getException());
+    }
+
+    static boolean isConnectionFailure(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof StatusRuntimeException sre) {
+                Status.Code code = sre.getStatus().getCode();
+                return code == Status.Code.UNAVAILABLE || code == Status.Code.DEADLINE_EXCEEDED
+                        || code == Status.Code.UNKNOWN;
+            }
+            String name = t.getClass().getSimpleName();
+            if (name.equals("ClientNotConnectedException")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * milvus.token 为 "user:password" 时原样使用，否则视为 root 用户的密码
+     */
+    public static void applyAuthorization(ConnectParam.Builder builder, String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            return;
+        }
+
+        String normalizedToken = rawToken.trim();
+        if (normalizedToken.contains(":")) {
+            builder.withAuthorization(normalizedToken);
+        } else {
+            builder.withAuthorization("root", normalizedToken);
+        }
+    }
+
+    void setClientFactory(Supplier<MilvusServiceClient> clientFactory) {
+        this.clientFactory = clientFactory;
+    }
+
+    private static void closeQuietly(MilvusServiceClient client) {
+        try {
+            client.close();
+        } catch (Exception e) {
+            log.debug("Failed to close Milvus client: {}", e.getMessage());
+        }
+    }
+}
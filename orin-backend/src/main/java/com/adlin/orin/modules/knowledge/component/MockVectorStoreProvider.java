@@ -29,6 +29,12 @@ public class MockVectorStoreProvider implements VectorStoreProvider {
         log.debug("Mock deleting documents from collection: {}", collectionName);
     }
 
+    @Override
+    public boolean deleteChunks(String kbId, List<String> chunkIds) {
+        log.debug("Mock deleting {} chunks from knowledge base: {}", chunkIds.size(), kbId);
+        return true;
+    }
+
     @Override
     public void deleteKnowledgeBase(String kbId) {
         log.debug("Mock deleting entire knowledge base: {}", kbId);
@@ -0,0 +1,76 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
+import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentChunkRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 父分片存储
+ *
+ * 父分片只用于给 LLM 提供上下文，不参与向量检索，因此不写入向量库，
+ * 检索命中子分片后按 parent_id 从这里取回父分片内容：
+ * - Caffeine LRU，按内容字符数限制容量
+ * - 未命中的 ID 通过一次 findByIdIn 批量回源 MySQL
+ * - 重建索引 / 编辑分片时由 DocumentManageService 失效对应条目
+ *
+ * 返回的实体在多个请求间共享，调用方只读不改。
+ */
+@Slf4j
+@Component
+public class ParentChunkStore {
+
+    private final KnowledgeDocumentChunkRepository chunkRepository;
+    private final Cache<String, KnowledgeDocumentChunk> cache;
+
+    public ParentChunkStore(KnowledgeDocumentChunkRepository chunkRepository,
+            MeterRegistry meterRegistry,
+            @Value("${knowledge.parent-store.max-mb:64}") long maxMb) {
+        this.chunkRepository = chunkRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, maxMb) * 1024 * 1024)
+                .weigher((String id, KnowledgeDocumentChunk chunk) ->
+                        256 + (chunk.getContent() != null ? chunk.getContent().length() * 2 : 0))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "knowledge.parent_chunks");
+    }
+
+    /**
+     * 批量获取父分片（不存在的 ID 不出现在结果中）
+     */
+    public Map<String, KnowledgeDocumentChunk> getAll(Collection<String> parentIds) {
+        if (parentIds == null || parentIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return cache.getAll(parentIds, missing -> {
+            Map<String, KnowledgeDocumentChunk> loaded = new HashMap<>();
+            for (KnowledgeDocumentChunk chunk : chunkRepository.findByIdIn(new ArrayList<>(missing))) {
+                loaded.put(chunk.getId(), chunk);
+            }
+            log.debug("Parent chunk store loaded {}/{} chunks from DB", loaded.size(), missing.size());
+            return loaded;
+        });
+    }
+
+    public void invalidate(Collection<String> chunkIds) {
+        if (chunkIds != null && !chunkIds.isEmpty()) {
+            cache.invalidateAll(chunkIds);
+        }
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+}
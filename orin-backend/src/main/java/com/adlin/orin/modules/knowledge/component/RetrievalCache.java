@@ -0,0 +1,253 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import com.adlin.orin.modules.knowledge.component.VectorStoreProvider.SearchResult;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 检索结果缓存
+ *
+ * FAQ 类问题会被反复检索，命中缓存时跳过 embedding、向量检索、父分片加载与 rerank：
+ * - 缓存键：(知识库集合, 归一化查询, topK, alpha, threshold, 嵌入模型, rerank 模型, 融合方式, 文档过滤)
+ * - 每个知识库维护一个代数（generation），文档重建索引 / 删除 / 编辑分片时递增；
+ *   代数是缓存键的一部分，递增后旧条目不再可达，因此不会返回过期结果。
+ *   全局检索（kbId = "all"）覆盖所有知识库，任一知识库失效时它的代数也一起递增
+ * - 进程内 Caffeine 一级缓存（条目数 + TTL 有界），可选 Redis 二级缓存供多节点共享；
+ *   开启 Redis 时代数存放在 Redis 中，任一节点的失效对所有节点生效
+ * - Redis 读取代数失败时本次请求不走缓存，宁可重算也不冒险返回过期结果
+ *
+ * 未开启 Redis 的多节点部署中，代数只在本节点递增，其它节点依赖 TTL 过期。
+ * 返回给调用方的是副本，调用方可以自由修改。
+ */
+@Slf4j
+@Component
+public class RetrievalCache {
+
+    private static final String GENERATION_KEY_PREFIX = "orin:kb:retrieval:gen:";
+    private static final String RESULT_KEY_PREFIX = "orin:kb:retrieval:result:";
+    private static final String GLOBAL_KB_ID = "all";
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, List<SearchResult>> local;
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Duration ttl;
+
+    @Value("${knowledge.retrieval.cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${knowledge.retrieval.cache.redis-enabled:false}")
+    private boolean redisEnabled = false;
+
+    public RetrievalCache(ObjectProvider<StringRedisTemplate> redisTemplateProvider,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${knowledge.retrieval.cache.max-entries:10000}") long maxEntries,
+            @Value("${knowledge.retrieval.cache.ttl-seconds:600}") long ttlSeconds) {
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.ttl = Duration.ofSeconds(Math.max(1, ttlSeconds));
+        this.local = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxEntries))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "knowledge.retrieval_results");
+    }
+
+    /**
+     * 生成缓存键（包含各知识库当前代数）
+     *
+     * 必须在检索开始前调用：检索期间发生的失效会让本次结果写入旧代数的键，之后不会再被读到。
+     *
+     * @return 缓存键；缓存关闭或无法确定代数时返回 null，调用方应直接检索且不回写
+     */
+    public String key(Collection<String> kbIds, String query, int topK, String embeddingModel,
+            double alpha, double threshold, String rerankModel, String fusionMode, List<String> documentIds) {
+        if (!enabled || kbIds == null || kbIds.isEmpty() || query == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder();
+        for (String kbId : new TreeSet<>(kbIds)) {
+            String generation = generation(kbId);
+            if (generation == null) {
+                return null;
+            }
+            key.append(kbId).append('@').append(generation).append(',');
+        }
+        key.append('|').append(normalizeQuery(query))
+                .append('|').append(topK)
+                .append('|').append(alpha)
+                .append('|').append(threshold)
+                .append('|').append(embeddingModel)
+                .append('|').append(rerankModel != null ? rerankModel.toLowerCase(Locale.ROOT) : null)
+                .append('|').append(fusionMode != null ? fusionMode.toLowerCase(Locale.ROOT) : null)
+                .append('|');
+        if (documentIds != null && !documentIds.isEmpty()) {
+            key.append(String.join(",", new TreeSet<>(documentIds)));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return 缓存结果的副本，未命中返回 null
+     */
+    public List<SearchResult> get(String key) {
+        if (key == null) {
+            return null;
+        }
+        List<SearchResult> cached = local.getIfPresent(key);
+        if (cached != null) {
+            count("local");
+            return copyOf(cached);
+        }
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            try {
+                String json = redis.opsForValue().get(RESULT_KEY_PREFIX + sha256(key));
+                if (json != null) {
+                    List<SearchResult> results = objectMapper.readValue(json, new TypeReference<List<SearchResult>>() {
+                    });
+                    local.put(key, results);
+                    count("redis");
+                    return copyOf(results);
+                }
+            } catch (Exception e) {
+                log.debug("Retrieval cache redis read failed: {}", e.getMessage());
+            }
+        }
+        count("miss");
+        return null;
+    }
+
+    public void put(String key, List<SearchResult> results) {
+        if (key == null || results == null) {
+            return;
+        }
+        List<SearchResult> snapshot = copyOf(results);
+        local.put(key, snapshot);
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            try {
+                redis.opsForValue().set(RESULT_KEY_PREFIX + sha256(key),
+                        objectMapper.writeValueAsString(snapshot), ttl);
+            } catch (Exception e) {
+                log.debug("Retrieval cache redis write failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 知识库内容变化：递增该知识库与全局检索的代数，使相关的已缓存结果失效
+     */
+    public void invalidate(String kbId) {
+        if (kbId == null) {
+            return;
+        }
+        List<String> affected = GLOBAL_KB_ID.equalsIgnoreCase(kbId)
+                ? List.of(GLOBAL_KB_ID) : List.of(kbId, GLOBAL_KB_ID);
+        for (String id : affected) {
+            generations.computeIfAbsent(id, k -> new AtomicLong()).incrementAndGet();
+        }
+        StringRedisTemplate redis = redis();
+        if (redis != null) {
+            try {
+                for (String id : affected) {
+                    redis.opsForValue().increment(GENERATION_KEY_PREFIX + id);
+                }
+            } catch (Exception e) {
+                // 共享代数未能递增：至少清空本节点缓存，Redis 中的旧条目随 TTL 过期
+                log.warn("Failed to bump retrieval cache generation in redis for KB {}: {}", kbId, e.getMessage());
+                local.invalidateAll();
+            }
+        }
+        log.debug("Retrieval cache invalidated for KB {}", kbId);
+    }
+
+    static String normalizeQuery(String query) {
+        return Normalizer.normalize(query, Normalizer.Form.NFKC)
+                .trim()
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 开启 Redis 时使用共享代数，使各节点对同一查询得到相同的 Redis 键
+     */
+    private String generation(String kbId) {
+        StringRedisTemplate redis = redis();
+        if (redis == null) {
+            AtomicLong generation = generations.get(kbId);
+            return String.valueOf(generation != null ? generation.get() : 0L);
+        }
+        try {
+            String shared = redis.opsForValue().get(GENERATION_KEY_PREFIX + kbId);
+            return shared != null ? shared : "0";
+        } catch (Exception e) {
+            log.debug("Retrieval cache bypassed, redis generation unavailable: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private StringRedisTemplate redis() {
+        return redisEnabled ? redisTemplateProvider.getIfAvailable() : null;
+    }
+
+    private void count(String result) {
+        Counter.builder("knowledge.retrieval.cache.lookups")
+                .description("Retrieval result cache lookups by tier")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static List<SearchResult> copyOf(List<SearchResult> results) {
+        List<SearchResult> copy = new ArrayList<>(results.size());
+        for (SearchResult r : results) {
+            copy.add(SearchResult.builder()
+                    .content(r.getContent())
+                    .score(r.getScore())
+                    .matchType(r.getMatchType())
+                    .metadata(r.getMetadata() != null ? new HashMap<>(r.getMetadata()) : null)
+                    .build());
+        }
+        return copy;
+    }
+
+    private static String sha256(String value) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 检索 scatter-gather 执行器
+ *
+ * - 关键词 / 向量 / 多知识库等检索分支并发执行，整体耗时约等于最慢分支而非各分支之和
+ * - 所有分支共享同一个截止时间，超时分支被取消并从结果中缺省，调用方用已完成的部分结果继续
+ * - 线程池无队列：没有空闲线程时分支在调用线程上直接执行（退化为串行），
+ *   因此嵌套调用（多 KB 分支内部再拆关键词 / 向量分支）不会互相等待线程而死锁；
+ *   调用线程上执行的分支同样受截止时间约束，到期时被中断并按超时处理
+ * - 指标：knowledge.retrieval.legs{leg, outcome}、knowledge.retrieval.leg.latency{leg}
+ */
+@Slf4j
+@Component
+public class RetrievalExecutor {
+
+    @Value("${knowledge.retrieval.threads:16}")
+    private int threads = 16;
+
+    private final MeterRegistry meterRegistry;
+    private volatile ExecutorService executor;
+    private volatile ScheduledExecutorService watchdog;
+
+    public RetrievalExecutor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 并发执行所有分支并等待到截止时间
+     *
+     * @param legs          分支名 -> 任务（分支名同时作为指标 tag，应为低基数的固定值）
+     * @param deadlineNanos {@link System#nanoTime()} 口径的截止时间
+     * @return 按提交顺序返回已成功完成的分支结果；超时或失败的分支不在结果中
+     */
+    public <T> Map<String, T> gather(Map<String, Callable<T>> legs, long deadlineNanos) {
+        Map<String, Future<T>> futures = new LinkedHashMap<>();
+        Map<String, Long> starts = new LinkedHashMap<>();
+        Map<String, FutureTask<T>> inline = new LinkedHashMap<>();
+        for (Map.Entry<String, Callable<T>> leg : legs.entrySet()) {
+            starts.put(leg.getKey(), System.nanoTime());
+            try {
+                futures.put(leg.getKey(), executor().submit(leg.getValue()));
+            } catch (RejectedExecutionException e) {
+                FutureTask<T> task = new FutureTask<>(leg.getValue());
+                futures.put(leg.getKey(), task);
+                inline.put(leg.getKey(), task);
+            }
+        }
+        // 先把能交给线程池的分支都提交出去，再在调用线程上执行其余分支
+        for (Map.Entry<String, FutureTask<T>> entry : inline.entrySet()) {
+            starts.put(entry.getKey(), System.nanoTime());
+            runInline(entry.getValue(), deadlineNanos);
+        }
+
+        Map<String, T> results = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<T>> entry : futures.entrySet()) {
+            String leg = entry.getKey();
+            Future<T> future = entry.getValue();
+            String outcome;
+            try {
+                long remaining = deadlineNanos - System.nanoTime();
+                T value = future.isDone() ? future.get() : future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                if (value != null) {
+                    results.put(leg, value);
+                }
+                outcome = "ok";
+            } catch (TimeoutException | CancellationException e) {
+                future.cancel(true);
+                outcome = "timeout";
+                log.warn("Retrieval leg '{}' missed the deadline, continuing with partial results", leg);
+            } catch (ExecutionException e) {
+                outcome = "error";
+                log.warn("Retrieval leg '{}' failed: {}", leg, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                outcome = "interrupted";
+            }
+            Counter.builder("knowledge.retrieval.legs")
+                    .description("Retrieval legs by outcome")
+                    .tag("leg", metricLeg(leg))
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .increment();
+            if ("ok".equals(outcome)) {
+                Timer.builder("knowledge.retrieval.leg.latency")
+                        .description("Latency of individual retrieval legs")
+                        .tag("leg", metricLeg(leg))
+                        .register(meterRegistry)
+                        .record(System.nanoTime() - starts.get(leg), TimeUnit.NANOSECONDS);
+            }
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * 在调用线程上执行分支；截止时间已过则不再执行，执行中到期由 watchdog 取消并中断调用线程
+     */
+    private void runInline(FutureTask<?> task, long deadlineNanos) {
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            task.cancel(false);
+            return;
+        }
+        ScheduledFuture<?> timeout = watchdog().schedule(() -> task.cancel(true), remaining, TimeUnit.NANOSECONDS);
+        try {
+            task.run();
+        } finally {
+            timeout.cancel(false);
+            if (task.isCancelled()) {
+                // 清除 watchdog 留下的中断标记，调用线程还要继续汇总结果
+                Thread.interrupted();
+            }
+        }
+    }
+
+    private ScheduledExecutorService watchdog() {
+        ScheduledExecutorService current = watchdog;
+        if (current == null) {
+            synchronized (this) {
+                if (watchdog == null) {
+                    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+                        Thread t = new Thread(r, "retrieval-deadline");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    timer.setRemoveOnCancelPolicy(true);
+                    watchdog = timer;
+                }
+                current = watchdog;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 多知识库分支名形如 kb:{id}，指标上统一为 kb，避免 tag 基数随知识库数量增长
+     */
+    private static String metricLeg(String leg) {
+        int colon = leg.indexOf(':');
+        return colon > 0 ? leg.substring(0, colon) : leg;
+    }
+
+    private ExecutorService executor() {
+        ExecutorService current = executor;
+        if (current == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    AtomicInteger counter = new AtomicInteger();
+                    int size = Math.max(1, threads);
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(), r -> {
+                                Thread t = new Thread(r, "retrieval-" + counter.incrementAndGet());
+                                t.setDaemon(true);
+                                return t;
+                            }, new ThreadPoolExecutor.AbortPolicy());
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
+                current = executor;
+            }
+        }
+        return current;
+    }
+}
@@ -16,6 +16,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -173,6 +174,43 @@ public class SiliconFlowEmbeddingAdapter implements EmbeddingService {
 
     @Override
     public List<Float> embed(String text) {
+        JsonNode data = requestEmbeddings(text);
+        List<Float> embedding = toVector(data.get(0).path("embedding"));
+        log.debug("Successfully generated embedding via SiliconFlow, dimension={}", embedding.size());
+        return embedding;
+    }
+
+    /**
+     * 多输入批量请求：一次 /embeddings 调用返回全部向量（按 index 还原顺序）
+     */
+    @Override
+    public List<List<Float>> embedAll(List<String> texts) {
+        if (texts == null || texts.isEmpty()) {
+            return new ArrayList<>();
+        }
+        JsonNode data = requestEmbeddings(texts);
+        List<List<Float>> vectors = new ArrayList<>(Collections.nCopies(texts.size(), null));
+        for (int i = 0; i < data.size(); i++) {
+            JsonNode item = data.get(i);
+            int index = item.path("index").asInt(i);
+            if (index >= 0 && index < vectors.size()) {
+                vectors.set(index, toVector(item.path("embedding")));
+            }
+        }
+        if (vectors.contains(null)) {
+            throw new RuntimeException("Embedding response returned " + data.size() + " items for "
+                    + texts.size() + " inputs");
+        }
+        log.debug("Successfully generated {} embeddings via SiliconFlow in one request", vectors.size());
+        return vectors;
+    }
+
+    /**
+     * 调用 /embeddings，返回 data 数组
+     *
+     * @param input 单个字符串或字符串列表
+     */
+    private JsonNode requestEmbeddings(Object input) {
         // 检查 API Key 是否有效
         if (effectiveApiKey == null || effectiveApiKey.isEmpty() || effectiveApiKey.equals("sk-placeholder")) {
             log.error("SiliconFlow API Key is invalid or not configured! Cannot generate embeddings. " +
@@ -188,24 +226,18 @@ public class SiliconFlowEmbeddingAdapter implements EmbeddingService {
 
         Map<String, Object> body = Map.of(
                 "model", modelName,
-                "input", text);
+                "input", input);
 
         HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
 
         try {
             ResponseEntity<String> response = restTemplate.postForEntity(url, request, String.class);
             if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                JsonNode root = objectMapper.readTree(response.getBody());
-                JsonNode embeddingNode = root.path("data").get(0).path("embedding");
-
-                List<Float> embedding = new ArrayList<>();
-                if (embeddingNode.isArray()) {
-                    for (JsonNode node : embeddingNode) {
-                        embedding.add((float) node.asDouble());
-                    }
+                JsonNode data = objectMapper.readTree(response.getBody()).path("data");
+                if (!data.isArray() || data.isEmpty()) {
+                    throw new RuntimeException("Embedding API returned no data");
                 }
-                log.info("Successfully generated embedding via SiliconFlow, dimension={}", embedding.size());
-                return embedding;
+                return data;
             } else {
                 log.error("SiliconFlow Embedding Failed: {}, response: {}", response.getStatusCode(), response.getBody());
                 throw new RuntimeException("Embedding API failed with status: " + response.getStatusCode());
@@ -216,6 +248,16 @@ public class SiliconFlowEmbeddingAdapter implements EmbeddingService {
         }
     }
 
+    private static List<Float> toVector(JsonNode embeddingNode) {
+        List<Float> embedding = new ArrayList<>(embeddingNode.size());
+        if (embeddingNode.isArray()) {
+            for (JsonNode node : embeddingNode) {
+                embedding.add((float) node.asDouble());
+            }
+        }
+        return embedding;
+    }
+
     @Override
     public String getProviderName() {
         return "siliconflow";
@@ -1,8 +1,10 @@
 package com.adlin.orin.modules.knowledge.component;
 
 import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface VectorStoreProvider {
     /**
@@ -20,6 +22,16 @@ public interface VectorStoreProvider {
      */
     void deleteDocuments(String collectionName, List<String> docIds);
 
+    /**
+     * Delete individual chunks (by chunk ID) from the vector store
+     *
+     * @return false if the provider cannot address single chunks; callers then
+     *         fall back to rewriting the whole document
+     */
+    default boolean deleteChunks(String kbId, List<String> chunkIds) {
+        return false;
+    }
+
     /**
      * Delete an entire knowledge base (e.g. drop collection or partition)
      */
@@ -41,6 +53,23 @@ public interface VectorStoreProvider {
         return search(collectionName, query, k);
     }
 
+    /**
+     * Search restricted to the given documents (null / empty means no filter).
+     * The default implementation post-filters; providers that can push the filter
+     * down into the index should override it.
+     */
+    default List<SearchResult> search(String collectionName, String query, int k, String embeddingModel,
+            Collection<String> documentIds) {
+        List<SearchResult> results = search(collectionName, query, k, embeddingModel);
+        if (documentIds == null || documentIds.isEmpty()) {
+            return results;
+        }
+        Set<String> allowed = Set.copyOf(documentIds);
+        return results.stream()
+                .filter(r -> r.getMetadata() != null && allowed.contains(String.valueOf(r.getMetadata().get("doc_id"))))
+                .toList();
+    }
+
     /**
      * Get chunks for a specific document
      */
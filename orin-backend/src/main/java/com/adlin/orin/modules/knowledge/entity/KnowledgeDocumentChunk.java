@@ -104,6 +104,12 @@ public class KnowledgeDocumentChunk {
     @Column(name = "position")
     private Integer position;
 
+    /**
+     * 分片内容哈希 (SHA-256)，用于增量重建索引时比对变更
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @PrePersist
     protected void onCreate() {
         if (charCount == null && content != null) {
@@ -36,6 +36,14 @@ public interface KnowledgeDocumentChunkRepository extends JpaRepository<Knowledg
      */
     long countByDocumentId(String documentId);
 
+    /**
+     * 统计知识库中未删除文档的分块数（关键词索引 segment 加载时校验）
+     */
+    @Query("SELECT COUNT(c) FROM KnowledgeDocumentChunk c WHERE c.documentId IN " +
+            "(SELECT d.id FROM KnowledgeDocument d WHERE d.knowledgeBaseId = :kbId " +
+            "AND (d.deletedFlag = false OR d.deletedFlag IS NULL))")
+    long countByKnowledgeBaseId(@Param("kbId") String kbId);
+
     /**
      * 根据文档ID和父分片ID列表查询
      */
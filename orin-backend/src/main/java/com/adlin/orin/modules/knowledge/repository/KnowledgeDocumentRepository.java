@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -23,6 +24,18 @@ public interface KnowledgeDocumentRepository extends JpaRepository<KnowledgeDocu
      */
     List<KnowledgeDocument> findByKnowledgeBaseIdOrderByUploadTimeDesc(String knowledgeBaseId);
 
+    /**
+     * 查询存在文档的所有知识库 ID
+     */
+    @Query("SELECT DISTINCT d.knowledgeBaseId FROM KnowledgeDocument d")
+    List<String> findDistinctKnowledgeBaseIds();
+
+    /**
+     * 知识库内文档的最后修改时间（含软删除），关键词索引 segment 加载时据此判断是否过期
+     */
+    @Query("SELECT MAX(d.lastModified) FROM KnowledgeDocument d WHERE d.knowledgeBaseId = :kbId")
+    LocalDateTime findMaxLastModifiedByKnowledgeBaseId(@Param("kbId") String kbId);
+
     /**
      * 按向量化状态查询文档
      */
@@ -42,6 +42,12 @@ public class DocumentManageService {
     private final com.adlin.orin.modules.knowledge.repository.KnowledgeBaseRepository knowledgeBaseRepository;
     private final FileStorageService fileStorageService;
     private final AgentOwnershipResolver ownershipResolver;
+    private final KeywordIndexService keywordIndexService;
+    private final com.adlin.orin.modules.knowledge.component.ParentChunkStore parentChunkStore;
+    private final com.adlin.orin.modules.knowledge.component.RetrievalCache retrievalCache;
+
+    @org.springframework.beans.factory.annotation.Value("${knowledge.reindex.incremental:true}")
+    private boolean incrementalReindex = true;
 
     /**
      * 上传文档
@@ -182,6 +188,8 @@ public class DocumentManageService {
                     documentId, e);
             // 不抛出异常，继续执行后续删除
         }
+        keywordIndexService.removeDocument(kbId, documentId);
+        retrievalCache.invalidate(kbId);
 
         // 2. 删除数据库记录
         try {
@@ -236,6 +244,8 @@ public class DocumentManageService {
 
         // 2. 批量删除数据库记录
         documentRepository.deleteByKnowledgeBaseId(kbId);
+        keywordIndexService.dropKnowledgeBase(kbId);
+        retrievalCache.invalidate(kbId);
         log.info("Bulk deleted {} documents for KB: {}", documents.size(), kbId);
     }
 
@@ -401,6 +411,7 @@ public class DocumentManageService {
         }
         
         String kbId = doc.getKnowledgeBaseId();
+        final boolean incremental = "SUCCESS".equals(doc.getVectorStatus());
         
         // 更新状态为 INDEXING
         doc.setVectorStatus("INDEXING");
@@ -431,59 +442,12 @@ public class DocumentManageService {
             log.info("Vectorization: Hierarchical split done, parent chunks: {}, child chunks: {}",
                     hierarchicalChunks.getParents().size(), hierarchicalChunks.getChildren().size());
 
-            // Build entities for both parent and child chunks
-            List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> allChunks = new java.util.ArrayList<>();
-
-            // Add parent chunks
-            for (com.adlin.orin.modules.knowledge.util.HierarchicalTextSplitter.ParentChunk parent :
-                    hierarchicalChunks.getParents()) {
-                allChunks.add(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk.builder()
-                        .id(parent.getId())
-                        .documentId(documentIdFinal)
-                        .chunkIndex(parent.getPosition())
-                        .content(parent.getContent())
-                        .charCount(parent.getContent().length())
-                        .chunkType("parent")
-                        .parentId(null)
-                        .childrenIds(parent.getChildrenIds() != null ?
-                                java.util.Arrays.toString(parent.getChildrenIds().toArray()) : "[]")
-                        .title(parent.getTitle())
-                        .source(docTitle)
-                        .position(parent.getPosition())
-                        .build());
-            }
-
-            // Add child chunks
-            for (com.adlin.orin.modules.knowledge.util.HierarchicalTextSplitter.ChildChunk child :
-                    hierarchicalChunks.getChildren()) {
-                allChunks.add(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk.builder()
-                        .id(child.getId())
-                        .documentId(documentIdFinal)
-                        .chunkIndex(child.getPosition())
-                        .content(child.getContent())
-                        .charCount(child.getContent().length())
-                        .chunkType("child")
-                        .parentId(child.getParentId())
-                        .title(child.getSource())
-                        .source(docTitle)
-                        .position(child.getPosition())
-                        .build());
-            }
+            // 2. Write chunks and vectors (incremental when the previous run succeeded)
+            List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> allChunks =
+                    buildChunks(documentIdFinal, docTitle, hierarchicalChunks);
+            writeChunks(kbId, documentIdFinal, allChunks, incremental, transactionTemplate);
 
-            // 2. DB Operations in transaction (Delete old, Save new)
-            transactionTemplate.executeWithoutResult(status -> {
-                chunkRepository.deleteByDocumentId(documentIdFinal);
-                chunkRepository.saveAll(allChunks);
-            });
-
-            // 3. Vector Store Operation (Milvus) - Outside DB transaction
-            log.info("Vectorization: Deleting old vectors from Milvus for document: {}", documentIdFinal);
-            vectorService.deleteDocuments(kbId, java.util.Collections.singletonList(documentIdFinal));
-            log.info("Vectorization: Adding chunks to Milvus, kbId: {}, chunk count: {}", kbId, allChunks.size());
-            vectorService.addChunks(kbId, allChunks);
-            log.info("Vectorization: Chunks added to Milvus successfully!");
-
-            // 4. Update status and count
+            // 3. Update status and count
             final int childChunkCount = hierarchicalChunks.getChildren().size();
             final int totalCharCount = content.length();
             transactionTemplate.executeWithoutResult(status -> {
@@ -541,6 +505,7 @@ public class DocumentManageService {
         }
 
         // 更新状态为 INDEXING
+        final boolean incremental = "SUCCESS".equals(document.getVectorStatus());
         document.setVectorStatus("INDEXING");
         document.setVectorError(null);
         document = documentRepository.save(document);
@@ -587,62 +552,12 @@ public class DocumentManageService {
                 log.info("Vectorization: Hierarchical split done, parent chunks: {}, child chunks: {}",
                         hierarchicalChunks.getParents().size(), hierarchicalChunks.getChildren().size());
 
-                // Build entities for both parent and child chunks
-                List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> allChunks = new java.util.ArrayList<>();
-
-                // Add parent chunks
-                for (com.adlin.orin.modules.knowledge.util.HierarchicalTextSplitter.ParentChunk parent : hierarchicalChunks
-                        .getParents()) {
-                    allChunks.add(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk.builder()
-                            .id(parent.getId())
-                            .documentId(documentIdFinal)
-                            .chunkIndex(parent.getPosition())
-                            .content(parent.getContent())
-                            .charCount(parent.getContent().length())
-                            .chunkType("parent")
-                            .parentId(null)
-                            .childrenIds(parent.getChildrenIds() != null
-                                    ? java.util.Arrays.toString(parent.getChildrenIds().toArray())
-                                    : "[]")
-                            .title(parent.getTitle())
-                            .source(docTitle)
-                            .position(parent.getPosition())
-                            .build());
-                }
-
-                // Add child chunks
-                for (com.adlin.orin.modules.knowledge.util.HierarchicalTextSplitter.ChildChunk child : hierarchicalChunks
-                        .getChildren()) {
-                    allChunks.add(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk.builder()
-                            .id(child.getId())
-                            .documentId(documentIdFinal)
-                            .chunkIndex(child.getPosition())
-                            .content(child.getContent())
-                            .charCount(child.getContent().length())
-                            .chunkType("child")
-                            .parentId(child.getParentId())
-                            .title(child.getSource())
-                            .source(docTitle)
-                            .position(child.getPosition())
-                            .build());
-                }
-
-                // 2. DB Operations in transaction (Delete old, Save new)
-                transactionTemplate.executeWithoutResult(status -> {
-                    chunkRepository.deleteByDocumentId(documentIdFinal);
-                    chunkRepository.saveAll(allChunks);
-                });
-
-                // 3. Vector Store Operation (Milvus) - Outside DB transaction
-                // Only child chunks will be embedded (parent chunks get zero vectors as
-                // placeholder)
-                log.info("Vectorization: Deleting old vectors from Milvus for document: {}", documentIdFinal);
-                vectorService.deleteDocuments(kbId, java.util.Collections.singletonList(documentIdFinal));
-                log.info("Vectorization: Adding chunks to Milvus, kbId: {}, chunk count: {}", kbId, allChunks.size());
-                vectorService.addChunks(kbId, allChunks);
-                log.info("Vectorization: Chunks added to Milvus successfully!");
+                // 2. Write chunks and vectors (incremental when the previous run succeeded)
+                List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> allChunks =
+                        buildChunks(documentIdFinal, docTitle, hierarchicalChunks);
+                writeChunks(kbId, documentIdFinal, allChunks, incremental, transactionTemplate);
 
-                // 4. Update status and count in transaction
+                // 3. Update status and count in transaction
                 final int childChunkCount = hierarchicalChunks.getChildren().size();
                 final int totalCharCount = content != null ? content.length() : 0;
                 transactionTemplate.executeWithoutResult(status -> {
@@ -678,6 +593,118 @@ public class DocumentManageService {
         return document;
     }
 
+    /**
+     * 将分层切分结果转换为分片实体（父分片在前，子分片在后）
+     */
+    private List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> buildChunks(
+            String documentId, String docTitle,
+            com.adlin.orin.modules.knowledge.util.HierarchicalTextSplitter.HierarchicalChunks hierarchicalChunks) {
+        List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> allChunks = new java.util.ArrayList<>();
+
+        // Add parent chunks
+        for (com.adlin.orin.modules.knowledge.util.HierarchicalTextSplitter.ParentChunk parent :
+                hierarchicalChunks.getParents()) {
+            allChunks.add(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk.builder()
+                    .id(parent.getId())
+                    .documentId(documentId)
+                    .chunkIndex(parent.getPosition())
+                    .content(parent.getContent())
+                    .charCount(parent.getContent().length())
+                    .chunkType("parent")
+                    .parentId(null)
+                    .childrenIds(parent.getChildrenIds() != null ?
+                            java.util.Arrays.toString(parent.getChildrenIds().toArray()) : "[]")
+                    .title(parent.getTitle())
+                    .source(docTitle)
+                    .position(parent.getPosition())
+                    .build());
+        }
+
+        // Add child chunks
+        for (com.adlin.orin.modules.knowledge.util.HierarchicalTextSplitter.ChildChunk child :
+                hierarchicalChunks.getChildren()) {
+            allChunks.add(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk.builder()
+                    .id(child.getId())
+                    .documentId(documentId)
+                    .chunkIndex(child.getPosition())
+                    .content(child.getContent())
+                    .charCount(child.getContent().length())
+                    .chunkType("child")
+                    .parentId(child.getParentId())
+                    .title(child.getSource())
+                    .source(docTitle)
+                    .position(child.getPosition())
+                    .build());
+        }
+        return allChunks;
+    }
+
+    /**
+     * 写入分片与向量
+     * incremental 时按内容匹配已存分片（沿用其 ID），只插入/更新/删除有变化的行与向量，
+     * 仅位置变化的分片只更新行、不重新向量化；
+     * 否则（首次向量化或上次失败）整文档重建。两种方式都会写入 content_hash 供下次比对。
+     */
+    private void writeChunks(String kbId, String documentId,
+            List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> allChunks,
+            boolean incremental,
+            org.springframework.transaction.support.TransactionTemplate transactionTemplate) {
+        long start = System.currentTimeMillis();
+        if (incremental && incrementalReindex) {
+            com.adlin.orin.modules.knowledge.util.ChunkDiff.Delta delta =
+                    com.adlin.orin.modules.knowledge.util.ChunkDiff.diff(
+                            chunkRepository.findByDocumentIdOrderByChunkIndex(documentId), allChunks);
+            List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> changed = delta.changed();
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!delta.deletedIds().isEmpty()) {
+                    chunkRepository.deleteAllByIdInBatch(delta.deletedIds());
+                }
+                if (!changed.isEmpty()) {
+                    chunkRepository.saveAll(changed);
+                }
+            });
+            keywordIndexService.indexDocument(kbId, documentId, allChunks);
+            List<String> staleIds = delta.staleIds();
+            List<String> invalidated = new java.util.ArrayList<>(staleIds);
+            delta.moved().forEach(chunk -> invalidated.add(chunk.getId()));
+            parentChunkStore.invalidate(invalidated);
+
+            if (staleIds.isEmpty() || vectorService.deleteChunks(kbId, staleIds)) {
+                vectorService.addChunks(kbId, delta.reembedded());
+            } else {
+                log.warn("Vectorization: chunk-level delete unavailable, rewriting all vectors of document: {}",
+                        documentId);
+                vectorService.deleteDocuments(kbId, java.util.Collections.singletonList(documentId));
+                vectorService.addChunks(kbId, allChunks);
+            }
+            retrievalCache.invalidate(kbId);
+            log.info("Vectorization delta for document {}: {}, took {} ms",
+                    documentId, delta, System.currentTimeMillis() - start);
+            return;
+        }
+
+        allChunks.forEach(chunk -> chunk.setContentHash(
+                com.adlin.orin.modules.knowledge.util.ChunkDiff.hash(chunk)));
+        // DB Operations in transaction (Delete old, Save new)
+        transactionTemplate.executeWithoutResult(status -> {
+            chunkRepository.deleteByDocumentId(documentId);
+            chunkRepository.saveAll(allChunks);
+        });
+        keywordIndexService.indexDocument(kbId, documentId, allChunks);
+        parentChunkStore.invalidate(allChunks.stream()
+                .map(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk::getId)
+                .toList());
+
+        // Vector Store Operation (Milvus) - Outside DB transaction
+        log.info("Vectorization: Deleting old vectors from Milvus for document: {}", documentId);
+        vectorService.deleteDocuments(kbId, java.util.Collections.singletonList(documentId));
+        log.info("Vectorization: Adding chunks to Milvus, kbId: {}, chunk count: {}", kbId, allChunks.size());
+        vectorService.addChunks(kbId, allChunks);
+        retrievalCache.invalidate(kbId);
+        log.info("Vectorization delta for document {}: full rewrite of {} chunks, took {} ms",
+                documentId, allChunks.size(), System.currentTimeMillis() - start);
+    }
+
     /**
      * 更新向量化状态
      */
@@ -740,6 +767,7 @@ public class DocumentManageService {
             } else if ("DISABLED".equals(document.getVectorStatus())) {
                 document.setVectorStatus("PENDING");
             }
+            retrievalCache.invalidate(document.getKnowledgeBaseId());
         }
         // Handle chunking configuration
         if (payload.containsKey("mode")) {
@@ -767,12 +795,28 @@ public class DocumentManageService {
     public com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk updateChunk(String chunkId, String content) {
         com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk chunk = chunkRepository.findById(chunkId)
                 .orElseThrow(() -> new RuntimeException("Chunk not found: " + chunkId));
+        String previousHash = chunk.getContentHash();
         chunk.setContent(content);
         chunk.setCharCount(content.length());
+        chunk.setContentHash(com.adlin.orin.modules.knowledge.util.ChunkDiff.hash(chunk));
         chunk = chunkRepository.save(chunk);
-
-        // Option: we could also trigger vector deletion and re-insertion here for
-        // accurate RAG.
+        parentChunkStore.invalidate(List.of(chunkId));
+        String kbId = documentRepository.findById(chunk.getDocumentId())
+                .map(KnowledgeDocument::getKnowledgeBaseId)
+                .orElse(null);
+        if (kbId != null) {
+            keywordIndexService.indexChunk(kbId, chunk);
+            retrievalCache.invalidate(kbId);
+            // 只重建这一个分片的向量
+            if (!chunk.getContentHash().equals(previousHash)) {
+                try {
+                    vectorService.deleteChunks(kbId, List.of(chunkId));
+                    vectorService.addChunks(kbId, List.of(chunk));
+                } catch (Exception e) {
+                    log.error("Failed to re-embed chunk {}: {}", chunkId, e.getMessage());
+                }
+            }
+        }
         return chunk;
     }
 
@@ -781,8 +825,19 @@ public class DocumentManageService {
      */
     @Transactional
     public void deleteChunk(String chunkId) {
+        chunkRepository.findById(chunkId)
+                .flatMap(chunk -> documentRepository.findById(chunk.getDocumentId()))
+                .ifPresent(doc -> {
+                    keywordIndexService.removeChunk(doc.getKnowledgeBaseId(), chunkId);
+                    retrievalCache.invalidate(doc.getKnowledgeBaseId());
+                    try {
+                        vectorService.deleteChunks(doc.getKnowledgeBaseId(), List.of(chunkId));
+                    } catch (Exception e) {
+                        log.error("Failed to delete vector of chunk {}: {}", chunkId, e.getMessage());
+                    }
+                });
         chunkRepository.deleteById(chunkId);
-        // Option: Delete from vector DB
+        parentChunkStore.invalidate(List.of(chunkId));
     }
 
     /**
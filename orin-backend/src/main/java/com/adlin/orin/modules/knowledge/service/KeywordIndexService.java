@@ -0,0 +1,468 @@
+package com.adlin.orin.modules.knowledge.service;
+
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
+import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentChunkRepository;
+import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentRepository;
+import com.adlin.orin.modules.knowledge.util.Bm25InvertedIndex;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 关键词倒排索引服务
+ * 为每个知识库维护一份 BM25 倒排索引，替代逐词 LIKE 全表扫描。
+ *
+ * - 文档分片入库 / 删除时增量更新 (DocumentManageService / ParsingPipelineService 调用)
+ * - 变更后标记 dirty，定时以 segment 文件形式落盘，重启时直接加载无需回扫 MySQL；
+ *   加载时按分片数与文档最后修改时间核对 MySQL，未及落盘就崩溃留下的过期 segment 会被丢弃并重建
+ * - 没有 segment 的知识库（历史数据、首次入库）在后台从 MySQL 构建一次，构建期间不持有知识库锁；
+ *   构建完成前检索方回退到 LIKE 查询，期间的增量变更先记下，索引发布时按顺序重放
+ */
+@Slf4j
+@Service
+public class KeywordIndexService {
+
+    private static final String SEGMENT_FILE = "keyword.seg";
+
+    private final KnowledgeDocumentChunkRepository chunkRepository;
+    private final KnowledgeDocumentRepository documentRepository;
+
+    @Value("${knowledge.index.keyword.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${knowledge.index.keyword.dir:${knowledge.storage.root:storage/knowledge}/keyword-index}")
+    private String indexDir = "storage/knowledge/keyword-index";
+
+    private final ConcurrentHashMap<String, Bm25InvertedIndex> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    /** 正在后台构建的知识库 -> 本次构建的标识（删除知识库时移除，构建结果随之作废） */
+    private final ConcurrentHashMap<String, Object> building = new ConcurrentHashMap<>();
+    /** 构建期间到达的增量变更，只在持有知识库锁时读写 */
+    private final Map<String, List<Consumer<Bm25InvertedIndex>>> pendingChanges = new HashMap<>();
+    /** "all" 检索覆盖的知识库：首次使用时从 MySQL 加载，之后随入库 / 删除知识库维护 */
+    private final Object knowledgeBaseIdsLock = new Object();
+    private volatile Set<String> knowledgeBaseIds;
+
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "KeywordIndexBuilder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public KeywordIndexService(KnowledgeDocumentChunkRepository chunkRepository,
+            KnowledgeDocumentRepository documentRepository) {
+        this.chunkRepository = chunkRepository;
+        this.documentRepository = documentRepository;
+    }
+
+    /**
+     * 启动后在后台预加载所有已落盘的 segment
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadSegments() {
+        if (!enabled) {
+            return;
+        }
+        buildExecutor.submit(() -> {
+            Path root = Paths.get(indexDir);
+            if (!Files.isDirectory(root)) {
+                return;
+            }
+            try (Stream<Path> dirs = Files.list(root)) {
+                dirs.filter(Files::isDirectory)
+                        .map(p -> p.getFileName().toString())
+                        .forEach(this::loadIfAbsent);
+            } catch (IOException e) {
+                log.warn("Failed to list keyword index segments under {}: {}", root, e.getMessage());
+            }
+            log.info("Keyword index preload finished: {} knowledge bases loaded", indexes.size());
+        });
+    }
+
+    /**
+     * BM25 检索
+     *
+     * @param kbId        知识库 ID，"all" 表示跨所有知识库
+     * @param documentIds 可选文档过滤
+     * @return 索引未就绪时返回 Optional.empty()，调用方应回退到数据库检索
+     */
+    public Optional<List<Bm25InvertedIndex.Hit>> search(String kbId, String query, int topK,
+            Collection<String> documentIds) {
+        if (!enabled || kbId == null) {
+            return Optional.empty();
+        }
+
+        Collection<String> kbIds = "all".equalsIgnoreCase(kbId) ? knowledgeBaseIds() : List.of(kbId);
+
+        List<Bm25InvertedIndex> targets = new ArrayList<>(kbIds.size());
+        boolean ready = true;
+        for (String id : kbIds) {
+            Bm25InvertedIndex index = loadIfAbsent(id);
+            if (index == null) {
+                scheduleRebuild(id);
+                ready = false;
+            } else {
+                targets.add(index);
+            }
+        }
+        if (!ready) {
+            return Optional.empty();
+        }
+
+        Set<String> filter = documentIds != null && !documentIds.isEmpty() ? Set.copyOf(documentIds) : null;
+        if (targets.size() == 1) {
+            return Optional.of(targets.get(0).search(query, topK, filter));
+        }
+
+        // 跨知识库：各自 top-k 后合并（BM25 分数按各自知识库统计，合并时仅做近似比较）
+        List<Bm25InvertedIndex.Hit> merged = new ArrayList<>();
+        for (Bm25InvertedIndex index : targets) {
+            merged.addAll(index.search(query, topK, filter));
+        }
+        merged.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return Optional.of(merged.size() > topK ? new ArrayList<>(merged.subList(0, topK)) : merged);
+    }
+
+    /**
+     * 替换文档的全部分片索引（文档重新切分入库后调用）
+     */
+    public void indexDocument(String kbId, String documentId, List<KnowledgeDocumentChunk> chunks) {
+        if (!enabled || kbId == null) {
+            return;
+        }
+        List<String[]> entries = new ArrayList<>(chunks.size());
+        for (KnowledgeDocumentChunk chunk : chunks) {
+            entries.add(new String[] { chunk.getId(), chunk.getContent() });
+        }
+        trackKnowledgeBase(kbId, true);
+        // 首次接触该知识库时在后台全量构建，不阻塞入库线程
+        apply(kbId, true, index -> {
+            index.removeDocument(documentId);
+            for (String[] entry : entries) {
+                index.addChunk(entry[0], documentId, entry[1]);
+            }
+        });
+    }
+
+    /**
+     * 更新单个分片
+     */
+    public void indexChunk(String kbId, KnowledgeDocumentChunk chunk) {
+        if (!enabled || kbId == null || chunk == null) {
+            return;
+        }
+        String chunkId = chunk.getId();
+        String documentId = chunk.getDocumentId();
+        String content = chunk.getContent();
+        apply(kbId, false, index -> index.addChunk(chunkId, documentId, content));
+    }
+
+    public void removeChunk(String kbId, String chunkId) {
+        if (!enabled || kbId == null) {
+            return;
+        }
+        apply(kbId, false, index -> index.removeChunk(chunkId));
+    }
+
+    public void removeDocument(String kbId, String documentId) {
+        if (!enabled || kbId == null) {
+            return;
+        }
+        apply(kbId, false, index -> index.removeDocument(documentId));
+    }
+
+    /**
+     * 删除整个知识库的索引及 segment 文件
+     */
+    public void dropKnowledgeBase(String kbId) {
+        if (kbId == null) {
+            return;
+        }
+        trackKnowledgeBase(kbId, false);
+        synchronized (lockFor(kbId)) {
+            indexes.remove(kbId);
+            dirty.remove(kbId);
+            building.remove(kbId);
+            pendingChanges.remove(kbId);
+            try {
+                Path dir = segmentDir(kbId);
+                Files.deleteIfExists(dir.resolve(SEGMENT_FILE));
+                Files.deleteIfExists(dir);
+            } catch (IOException e) {
+                log.warn("Failed to delete keyword index segment for kb {}: {}", kbId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 从 MySQL 异步重建知识库索引
+     */
+    public void scheduleRebuild(String kbId) {
+        Object build = new Object();
+        if (!enabled || building.putIfAbsent(kbId, build) != null) {
+            return;
+        }
+        buildExecutor.submit(() -> {
+            try {
+                if (!indexes.containsKey(kbId)) {
+                    publish(kbId, build, buildFromDatabase(kbId));
+                }
+            } catch (Exception e) {
+                log.error("Keyword index rebuild failed for kb {}: {}", kbId, e.getMessage(), e);
+            } finally {
+                synchronized (lockFor(kbId)) {
+                    building.remove(kbId, build);
+                    if (!building.containsKey(kbId)) {
+                        pendingChanges.remove(kbId);
+                    }
+                }
+            }
+        });
+    }
+
+    public boolean isReady(String kbId) {
+        return indexes.containsKey(kbId);
+    }
+
+    /**
+     * 定时把有变更的知识库索引写成 segment 文件
+     */
+    @Scheduled(fixedDelayString = "${knowledge.index.keyword.flush-interval-ms:30000}",
+            initialDelayString = "${knowledge.index.keyword.flush-interval-ms:30000}")
+    public void flushDirty() {
+        for (String kbId : new ArrayList<>(dirty)) {
+            Bm25InvertedIndex index = indexes.get(kbId);
+            dirty.remove(kbId);
+            if (index == null) {
+                continue;
+            }
+            try {
+                writeSegment(kbId, index);
+            } catch (IOException e) {
+                dirty.add(kbId);
+                log.warn("Failed to flush keyword index segment for kb {}: {}", kbId, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushDirty();
+        // 正常停机时内存索引已全部落盘，刷新 segment 时间戳，避免之后只改了元数据的文档让它们显得过期
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (String kbId : indexes.keySet()) {
+            Path segment = segmentDir(kbId).resolve(SEGMENT_FILE);
+            if (!dirty.contains(kbId) && Files.exists(segment)) {
+                try {
+                    Files.setLastModifiedTime(segment, now);
+                } catch (IOException e) {
+                    log.debug("Failed to touch keyword index segment for kb {}: {}", kbId, e.getMessage());
+                }
+            }
+        }
+        buildExecutor.shutdownNow();
+    }
+
+    // ========== Internal ==========
+
+    private Set<String> knowledgeBaseIds() {
+        Set<String> ids = knowledgeBaseIds;
+        if (ids != null) {
+            return ids;
+        }
+        synchronized (knowledgeBaseIdsLock) {
+            if (knowledgeBaseIds == null) {
+                Set<String> loaded = ConcurrentHashMap.newKeySet();
+                loaded.addAll(documentRepository.findDistinctKnowledgeBaseIds());
+                knowledgeBaseIds = loaded;
+            }
+            return knowledgeBaseIds;
+        }
+    }
+
+    /**
+     * 与首次加载互斥，避免加载读到的旧快照覆盖期间的增删
+     */
+    private void trackKnowledgeBase(String kbId, boolean present) {
+        synchronized (knowledgeBaseIdsLock) {
+            Set<String> ids = knowledgeBaseIds;
+            if (ids == null) {
+                return;
+            }
+            if (present) {
+                ids.add(kbId);
+            } else {
+                ids.remove(kbId);
+            }
+        }
+    }
+
+    /**
+     * 对已就绪的索引执行变更；索引尚未构建时记下变更，待后台构建发布后重放
+     *
+     * @param buildIfMissing 索引不存在且未在构建时是否触发构建（否则下次构建会从 MySQL 读到该变更）
+     */
+    private void apply(String kbId, boolean buildIfMissing, Consumer<Bm25InvertedIndex> change) {
+        synchronized (lockFor(kbId)) {
+            Bm25InvertedIndex index = loadIfAbsent(kbId);
+            if (index != null) {
+                change.accept(index);
+                dirty.add(kbId);
+                return;
+            }
+            if (buildIfMissing) {
+                scheduleRebuild(kbId);
+            }
+            // 构建已读过的数据可能早于本次变更，重放保证不丢；重放的是幂等的删除 / 覆盖写
+            if (building.containsKey(kbId)) {
+                pendingChanges.computeIfAbsent(kbId, k -> new ArrayList<>()).add(change);
+            }
+        }
+    }
+
+    /**
+     * 发布后台构建的索引并重放构建期间的变更；知识库在构建期间被删除时丢弃结果
+     */
+    private void publish(String kbId, Object build, Bm25InvertedIndex index) {
+        synchronized (lockFor(kbId)) {
+            if (building.get(kbId) != build || indexes.containsKey(kbId)) {
+                return;
+            }
+            List<Consumer<Bm25InvertedIndex>> changes = pendingChanges.remove(kbId);
+            if (changes != null) {
+                changes.forEach(change -> change.accept(index));
+            }
+            indexes.put(kbId, index);
+            dirty.add(kbId);
+        }
+    }
+
+    private Bm25InvertedIndex buildFromDatabase(String kbId) {
+        long start = System.currentTimeMillis();
+        Bm25InvertedIndex index = new Bm25InvertedIndex();
+        List<KnowledgeDocument> documents = documentRepository.findByKnowledgeBaseIdOrderByUploadTimeDesc(kbId);
+        for (KnowledgeDocument document : documents) {
+            if (Boolean.TRUE.equals(document.getDeletedFlag())) {
+                continue;
+            }
+            for (KnowledgeDocumentChunk chunk : chunkRepository.findByDocumentIdOrderByChunkIndex(document.getId())) {
+                index.addChunk(chunk.getId(), chunk.getDocumentId(), chunk.getContent());
+            }
+        }
+        log.info("Keyword index built from database for kb {}: documents={}, chunks={}, terms={}, cost={}ms",
+                kbId, documents.size(), index.size(), index.termCount(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    private Bm25InvertedIndex loadIfAbsent(String kbId) {
+        Bm25InvertedIndex index = indexes.get(kbId);
+        if (index != null) {
+            return index;
+        }
+        Path segment = segmentDir(kbId).resolve(SEGMENT_FILE);
+        if (!Files.exists(segment)) {
+            return null;
+        }
+        synchronized (lockFor(kbId)) {
+            index = indexes.get(kbId);
+            if (index != null) {
+                return index;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(segment))))) {
+                index = Bm25InvertedIndex.readFrom(in);
+                if (isStale(kbId, index, Files.getLastModifiedTime(segment))) {
+                    // 删除过期 segment，重建完成前检索回退到数据库
+                    Files.deleteIfExists(segment);
+                    scheduleRebuild(kbId);
+                    return null;
+                }
+                indexes.put(kbId, index);
+                log.info("Keyword index segment loaded for kb {}: chunks={}, terms={}",
+                        kbId, index.size(), index.termCount());
+                return index;
+            } catch (IOException e) {
+                log.warn("Corrupt keyword index segment for kb {}, will rebuild: {}", kbId, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * segment 是否落后于 MySQL：分片数不一致，或有文档在 segment 开始写入之后被修改
+     * 核对失败（如数据库不可用）时沿用 segment
+     */
+    private boolean isStale(String kbId, Bm25InvertedIndex index, FileTime writtenAt) {
+        try {
+            long chunks = chunkRepository.countByKnowledgeBaseId(kbId);
+            LocalDateTime lastModified = documentRepository.findMaxLastModifiedByKnowledgeBaseId(kbId);
+            boolean modifiedAfter = lastModified != null
+                    && lastModified.atZone(ZoneId.systemDefault()).toInstant().isAfter(writtenAt.toInstant());
+            if (chunks != index.size() || modifiedAfter) {
+                log.warn("Keyword index segment for kb {} is stale (chunks {} vs {} in database, modifiedAfter={}), "
+                        + "rebuilding", kbId, index.size(), chunks, modifiedAfter);
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("Could not verify keyword index segment for kb {}, using it as is: {}", kbId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void writeSegment(String kbId, Bm25InvertedIndex index) throws IOException {
+        // 以开始写入的时刻作为 segment 时间戳：写入期间的变更会让它显得过期而不是被漏掉
+        FileTime startedAt = FileTime.fromMillis(System.currentTimeMillis());
+        Path dir = segmentDir(kbId);
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(SEGMENT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+            index.writeTo(out);
+        }
+        Files.setLastModifiedTime(tmp, startedAt);
+        Files.move(tmp, dir.resolve(SEGMENT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Keyword index segment written for kb {}: chunks={}", kbId, index.size());
+    }
+
+    private Path segmentDir(String kbId) {
+        return Paths.get(indexDir, kbId.replaceAll("[^A-Za-z0-9_-]", "_"));
+    }
+
+    private Object lockFor(String kbId) {
+        return locks.computeIfAbsent(kbId, k -> new Object());
+    }
+}
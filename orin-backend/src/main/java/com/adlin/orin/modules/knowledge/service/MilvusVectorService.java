@@ -1,6 +1,8 @@
 package com.adlin.orin.modules.knowledge.service;
 
 import com.adlin.orin.common.exception.VectorizationException;
+import com.adlin.orin.modules.knowledge.component.EmbeddedVectorStoreProvider;
+import com.adlin.orin.modules.knowledge.component.MilvusClientPool;
 import com.adlin.orin.modules.knowledge.component.VectorStoreProvider;
 import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
 import io.milvus.client.MilvusServiceClient;
@@ -29,6 +31,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -47,9 +54,6 @@ public class MilvusVectorService implements VectorStoreProvider {
     @Value("${milvus.port}")
     private int port;
 
-    @Value("${milvus.token:}")
-    private String token;
-
     @Value("${milvus.client.connect-timeout-ms:1000}")
     private long connectTimeoutMs;
 
@@ -65,6 +69,28 @@ public class MilvusVectorService implements VectorStoreProvider {
     @Value("${milvus.client.retry-interval-ms:200}")
     private long retryIntervalMs;
 
+    /**
+     * 分区不存在结果的缓存时长（存在结果长期缓存，在创建/删除分区时维护）
+     */
+    @Value("${milvus.partition-cache.negative-ttl-ms:10000}")
+    private long partitionNegativeTtlMs = 10_000L;
+
+    /**
+     * 向量存储模式：
+     * milvus   - 仅使用 Milvus（默认）
+     * embedded - 仅使用进程内 HNSW（无需部署 Milvus）
+     * tiered   - 双写；知识库从 Milvus 回填到进程内热层完成后由热层应答，之前及跨库检索仍走 Milvus
+     */
+    @Value("${knowledge.vector.store:milvus}")
+    private String storeMode = "milvus";
+
+    /**
+     * 是否把父分片（零向量占位）写入向量库。
+     * 默认关闭：只写子分片，父分片由 {@link com.adlin.orin.modules.knowledge.component.ParentChunkStore} 提供
+     */
+    @Value("${knowledge.vector.index-parent-chunks:false}")
+    private boolean indexParentChunks = false;
+
     // 全局唯一的 Collection 名称
     private static final String COLLECTION_NAME = "orin_knowledge_base";
     private static final long VECTOR_STATS_QUERY_PAGE_SIZE = 16_384L;
@@ -73,21 +99,50 @@ public class MilvusVectorService implements VectorStoreProvider {
     private final com.adlin.orin.modules.knowledge.component.EmbeddingService embeddingService;
     private final com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentRepository documentRepository;
     private final com.adlin.orin.modules.knowledge.repository.KnowledgeBaseRepository knowledgeBaseRepository;
+    private final EmbeddedVectorStoreProvider embeddedStore;
+    private final MilvusClientPool clientPool;
+    private final com.adlin.orin.modules.knowledge.component.EmbeddingBatcher embeddingBatcher;
+    private final com.adlin.orin.modules.knowledge.component.EmbeddingCache embeddingCache;
+
+    // 分区注册表：已确认存在的分区；不存在的分区短时缓存，避免每次检索都调用 hasPartition
+    private final Set<String> knownPartitions = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> missingPartitions = new ConcurrentHashMap<>();
+    // Collection 加载状态：加载一次后不再在检索路径上重复 loadCollection
+    private volatile boolean collectionLoaded;
+    // tiered 模式：已从 Milvus 回填完成、可由热层应答的知识库；回填进行中的知识库 -> 期间是否发生过删除
+    private final Set<String> hotTierReady = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicBoolean> hotTierBackfills = new ConcurrentHashMap<>();
+    private Executor hotTierExecutor = ForkJoinPool.commonPool();
+    // 已探测的 embedding 维度（按模型名缓存，避免每次调用都请求一次 embedding）
+    private volatile int embeddingDimension;
+    private volatile String embeddingDimensionModel;
 
     public MilvusVectorService(
             com.adlin.orin.gateway.service.ProviderRegistry providerRegistry,
             com.adlin.orin.modules.knowledge.component.EmbeddingService embeddingService,
             com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentRepository documentRepository,
-            com.adlin.orin.modules.knowledge.repository.KnowledgeBaseRepository knowledgeBaseRepository) {
+            com.adlin.orin.modules.knowledge.repository.KnowledgeBaseRepository knowledgeBaseRepository,
+            EmbeddedVectorStoreProvider embeddedStore,
+            MilvusClientPool clientPool,
+            com.adlin.orin.modules.knowledge.component.EmbeddingBatcher embeddingBatcher,
+            com.adlin.orin.modules.knowledge.component.EmbeddingCache embeddingCache) {
         this.providerRegistry = providerRegistry;
         this.embeddingService = embeddingService;
         this.documentRepository = documentRepository;
         this.knowledgeBaseRepository = knowledgeBaseRepository;
+        this.embeddedStore = embeddedStore;
+        this.clientPool = clientPool;
+        this.embeddingBatcher = embeddingBatcher;
+        this.embeddingCache = embeddingCache;
         log.info("MilvusVectorService constructed with EmbeddingService: {}", embeddingService != null ? embeddingService.getClass().getName() : "NULL");
     }
 
     @PostConstruct
     public void init() {
+        if (isEmbeddedOnly()) {
+            log.info("Vector store mode is 'embedded', skipping Milvus collection initialization");
+            return;
+        }
         // Run initialization in background to avoid blocking server startup if Milvus
         // is down
         java.util.concurrent.CompletableFuture.runAsync(() -> {
@@ -124,12 +179,16 @@ public class MilvusVectorService implements VectorStoreProvider {
                         client.dropCollection(io.milvus.param.collection.DropCollectionParam.newBuilder()
                                 .withCollectionName(COLLECTION_NAME)
                                 .build());
+                        resetCollectionState();
                         log.info("Dropped old collection for recreation");
                     } catch (Exception e) {
                         log.warn("Failed to drop collection: {}", e.getMessage());
                     }
                 } else {
                     log.info("Collection exists with matching dimension {}. Skipping recreation.", embeddingDimension);
+                    if (!indexParentChunks) {
+                        purgeParentPlaceholders(client);
+                    }
                     return;
                 }
             }
@@ -219,6 +278,7 @@ public class MilvusVectorService implements VectorStoreProvider {
             client.loadCollection(io.milvus.param.collection.LoadCollectionParam.newBuilder()
                     .withCollectionName(COLLECTION_NAME)
                     .build());
+            collectionLoaded = true;
 
             log.info("Milvus collection '{}' created successfully.", COLLECTION_NAME);
         } catch (Exception e) {
@@ -230,38 +290,31 @@ public class MilvusVectorService implements VectorStoreProvider {
     }
 
     /**
-     * 创建 Milvus 客户端连接
+     * 清理历史数据中以零向量写入的父分片行（幂等，无父分片时为空操作）
      */
-    public MilvusServiceClient createClient() {
-        ConnectParam.Builder builder = ConnectParam.newBuilder()
-                .withHost(host)
-                .withPort(port)
-                .withConnectTimeout(connectTimeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS)
-                .withKeepAliveTimeout(keepAliveTimeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS)
-                .withRpcDeadline(rpcDeadlineMs, java.util.concurrent.TimeUnit.MILLISECONDS);
-
-        applyAuthorization(builder, token);
-
-        MilvusServiceClient client = new MilvusServiceClient(builder.build());
-        RetryParam retryParam = RetryParam.newBuilder()
-                .withMaxRetryTimes(Math.max(0, maxRetryTimes))
-                .withInitialBackOffMs(Math.max(1, retryIntervalMs))
-                .withMaxBackOffMs(Math.max(1, retryIntervalMs))
-                .build();
-        return (MilvusServiceClient) client.withRetry(retryParam);
-    }
-
-    private void applyAuthorization(ConnectParam.Builder builder, String rawToken) {
-        if (rawToken == null || rawToken.isBlank()) {
-            return;
+    private void purgeParentPlaceholders(MilvusServiceClient client) {
+        try {
+            R<io.milvus.grpc.MutationResult> response = client.delete(io.milvus.param.dml.DeleteParam.newBuilder()
+                    .withCollectionName(COLLECTION_NAME)
+                    .withExpr("chunk_type == 'parent'")
+                    .build());
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                log.warn("Failed to purge parent placeholder vectors: {}", response.getMessage());
+            } else if (response.getData() != null && response.getData().getDeleteCnt() > 0) {
+                log.info("Purged {} parent placeholder vectors from '{}'", response.getData().getDeleteCnt(),
+                        COLLECTION_NAME);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to purge parent placeholder vectors: {}", e.getMessage());
         }
+    }
 
-        String normalizedToken = rawToken.trim();
-        if (normalizedToken.contains(":")) {
-            builder.withAuthorization(normalizedToken);
-        } else {
-            builder.withAuthorization("root", normalizedToken);
-        }
+    /**
+     * 创建独立的 Milvus 客户端连接（调用方负责关闭）
+     * 仅用于建表、重建等一次性管理操作，请求路径统一走 {@link MilvusClientPool}
+     */
+    public MilvusServiceClient createClient() {
+        return clientPool.createClient();
     }
 
     @Override
@@ -278,7 +331,7 @@ public class MilvusVectorService implements VectorStoreProvider {
         MilvusServiceClient client = null;
         try {
             client = createClient();
-            ensurePartitionExists(client, COLLECTION_NAME, partitionName);
+            ensurePartitionExists(partitionName);
 
             // 批处理文档 chunks
             // 注意：这里我们假设 KnowledgeDocument 本身不包含 chunks，addDocuments 接口定义其实略有歧义
@@ -410,16 +463,25 @@ public class MilvusVectorService implements VectorStoreProvider {
     public void addChunks(String kbId, List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> chunks) {
         if (chunks == null || chunks.isEmpty())
             return;
+        if (!indexParentChunks) {
+            // 父分片不参与检索，由 ParentChunkStore 从 MySQL 提供
+            chunks = chunks.stream().filter(c -> !"parent".equals(c.getChunkType())).toList();
+            if (chunks.isEmpty())
+                return;
+        }
+
+        if (isEmbeddedOnly()) {
+            embeddedStore.addChunks(kbId, chunks);
+            return;
+        }
 
         String partitionName = "kb_" + kbId.replace("-", "_");
 
         // 维度检查
         int collectionDimension = getEmbeddingDimension();
 
-        MilvusServiceClient client = null;
         try {
-            client = createClient();
-            ensurePartitionExists(client, COLLECTION_NAME, partitionName);
+            ensurePartitionExists(partitionName);
 
             List<List<Float>> vectors = new ArrayList<>();
             List<String> docIds = new ArrayList<>();
@@ -430,12 +492,15 @@ public class MilvusVectorService implements VectorStoreProvider {
             List<String> titles = new ArrayList<>();
             List<String> sources = new ArrayList<>();
             List<Integer> positions = new ArrayList<>();
+            List<float[]> hotTierVectors = new ArrayList<>();
+
+            // Only embed child chunks, packed into multi-input batches
+            Iterator<List<Float>> childVectors = embedChildChunks(chunks).iterator();
 
             for (var chunk : chunks) {
-                // Only embed child chunks
                 List<Float> vector;
                 if ("child".equals(chunk.getChunkType())) {
-                    vector = textToVector(chunk.getContent(), null);
+                    vector = childVectors.next();
                     // 检查向量维度
                     if (vector.size() != collectionDimension) {
                         log.error("向量维度不匹配! 文档: {}, 向量维度: {}, Collection 维度: {}. " +
@@ -445,10 +510,10 @@ public class MilvusVectorService implements VectorStoreProvider {
                 } else {
                     // Parent chunks don't need vectors (they won't be searched)
                     // Use zero vector as placeholder with dynamic dimension
-                    int dim = getEmbeddingDimension();
-                    vector = Collections.nCopies(dim, 0.0f);
+                    vector = Collections.nCopies(collectionDimension, 0.0f);
                 }
                 vectors.add(vector);
+                hotTierVectors.add("child".equals(chunk.getChunkType()) ? toFloatArray(vector) : null);
 
                 docIds.add(chunk.getDocumentId());
                 chunkIds.add(chunk.getId());
@@ -477,43 +542,79 @@ public class MilvusVectorService implements VectorStoreProvider {
                     .withFields(fields)
                     .build();
 
-            client.insert(insertParam);
+            R<io.milvus.grpc.MutationResult> insertResponse = clientPool.execute("insert",
+                    client -> client.insert(insertParam));
+            if (insertResponse.getStatus() != R.Status.Success.getCode()) {
+                throw new IllegalStateException("Milvus insert failed: " + insertResponse.getMessage());
+            }
             log.info("Inserted {} chunks into partition {}", chunks.size(), partitionName);
 
             // Flush to ensure data is persisted and searchable immediately
-            client.flush(io.milvus.param.collection.FlushParam.newBuilder()
+            clientPool.execute("flush", client -> client.flush(io.milvus.param.collection.FlushParam.newBuilder()
                     .withCollectionNames(Arrays.asList(COLLECTION_NAME))
-                    .build());
+                    .build()));
             log.info("Flushed collection {} to ensure data is searchable", COLLECTION_NAME);
 
+            if (isTiered()) {
+                embeddedStore.addVectors(kbId, chunks, hotTierVectors);
+            }
+
         } catch (Exception e) {
             log.error("Milvus chunks insert error: {}", e.getMessage(), e);
             throw new VectorizationException("Failed to insert chunks into Milvus: " + e.getMessage(), e);
-        } finally {
-            if (client != null)
-                client.close();
         }
     }
 
+    /**
+     * 批量向量化 child 分片；批量与逐条重试均失败的分片沿用 textToVector 的降级逻辑
+     */
+    private List<List<Float>> embedChildChunks(
+            List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> chunks) {
+        List<String> texts = chunks.stream()
+                .filter(chunk -> "child".equals(chunk.getChunkType()))
+                .map(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk::getContent)
+                .collect(Collectors.toList());
+        if (texts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<List<Float>> vectors;
+        if (embeddingService != null) {
+            long start = System.currentTimeMillis();
+            vectors = new ArrayList<>(embeddingBatcher.embedAll(embeddingService, texts));
+            log.info("Embedded {} child chunks in {} ms", texts.size(), System.currentTimeMillis() - start);
+        } else {
+            vectors = new ArrayList<>(Collections.nCopies(texts.size(), null));
+        }
+        for (int i = 0; i < vectors.size(); i++) {
+            List<Float> vector = vectors.get(i);
+            if (vector == null || vector.isEmpty()) {
+                vectors.set(i, textToVector(texts.get(i), null));
+            }
+        }
+        return vectors;
+    }
+
     @Override
     public void deleteDocuments(String kbId, List<String> docIds) {
+        if (!isMilvusOnly()) {
+            markHotTierMutated(kbId);
+            embeddedStore.deleteDocuments(kbId, docIds);
+        }
+
         // Delete by expression in Partition
         String partitionName = "kb_" + kbId.replace("-", "_");
-        MilvusServiceClient client = null;
         try {
-            client = createClient();
-            String expression = "doc_id in "
-                    + docIds.stream().map(id -> "'" + id + "'").collect(Collectors.toList()).toString();
-            client.delete(io.milvus.param.dml.DeleteParam.newBuilder()
-                    .withCollectionName(COLLECTION_NAME)
-                    .withPartitionName(partitionName)
-                    .withExpr(expression)
-                    .build());
+            if (!isEmbeddedOnly()) {
+                String expression = "doc_id in "
+                        + docIds.stream().map(id -> "'" + id + "'").collect(Collectors.toList()).toString();
+                clientPool.execute("delete", client -> client.delete(io.milvus.param.dml.DeleteParam.newBuilder()
+                        .withCollectionName(COLLECTION_NAME)
+                        .withPartitionName(partitionName)
+                        .withExpr(expression)
+                        .build()));
+            }
         } catch (Throwable e) {
             log.error("Delete error: {}", e.getMessage());
-        } finally {
-            if (client != null)
-                client.close();
         }
 
         // Update document metadata after vector deletion
@@ -527,24 +628,67 @@ public class MilvusVectorService implements VectorStoreProvider {
         }
     }
 
+    @Override
+    public boolean deleteChunks(String kbId, List<String> chunkIds) {
+        if (chunkIds == null || chunkIds.isEmpty()) {
+            return true;
+        }
+        boolean deleted = true;
+        if (!isMilvusOnly()) {
+            markHotTierMutated(kbId);
+            deleted = embeddedStore.deleteChunks(kbId, chunkIds);
+        }
+        if (isEmbeddedOnly()) {
+            return deleted;
+        }
+        String partitionName = "kb_" + kbId.replace("-", "_");
+        if (!checkPartitionExists(partitionName)) {
+            return deleted;
+        }
+        String expression = "chunk_id in "
+                + chunkIds.stream().map(id -> "'" + id + "'").collect(Collectors.toList()).toString();
+        try {
+            R<io.milvus.grpc.MutationResult> response = clientPool.execute("delete",
+                    client -> client.delete(io.milvus.param.dml.DeleteParam.newBuilder()
+                            .withCollectionName(COLLECTION_NAME)
+                            .withPartitionName(partitionName)
+                            .withExpr(expression)
+                            .build()));
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                log.error("Milvus chunk delete failed: {}", response.getMessage());
+                return false;
+            }
+            return deleted;
+        } catch (Throwable e) {
+            log.error("Chunk delete error: {}", e.getMessage());
+            return false;
+        }
+    }
+
     @Override
     public void deleteKnowledgeBase(String kbId) {
+        if (!isMilvusOnly()) {
+            hotTierReady.remove(kbId);
+            markHotTierMutated(kbId);
+            embeddedStore.deleteKnowledgeBase(kbId);
+        }
+        if (isEmbeddedOnly()) {
+            return;
+        }
         String partitionName = "kb_" + kbId.replace("-", "_");
         log.info("Deleting Milvus partition {} from collection {}", partitionName, COLLECTION_NAME);
-        MilvusServiceClient client = null;
         try {
-            client = createClient();
-            if (checkPartitionExists(client, COLLECTION_NAME, partitionName)) {
-                client.dropPartition(io.milvus.param.partition.DropPartitionParam.newBuilder()
-                        .withCollectionName(COLLECTION_NAME)
-                        .withPartitionName(partitionName)
-                        .build());
+            if (checkPartitionExists(partitionName)) {
+                clientPool.execute("dropPartition",
+                        client -> client.dropPartition(io.milvus.param.partition.DropPartitionParam.newBuilder()
+                                .withCollectionName(COLLECTION_NAME)
+                                .withPartitionName(partitionName)
+                                .build()));
             }
         } catch (Throwable e) {
             log.error("Failed to drop Milvus partition: {}", e.getMessage());
         } finally {
-            if (client != null)
-                client.close();
+            forgetPartition(partitionName);
         }
     }
 
@@ -553,20 +697,20 @@ public class MilvusVectorService implements VectorStoreProvider {
      */
     @Override
     public Map<String, Object> getVectorStats(String kbId) {
+        if (isEmbeddedOnly()) {
+            return embeddedStore.getVectorStats(kbId);
+        }
         Map<String, Object> result = new HashMap<>();
         String partitionName = "kb_" + kbId.replace("-", "_");
 
-        MilvusServiceClient client = null;
         try {
-            client = createClient();
-
             // 检查分区是否存在且有数据
-            boolean partitionExists = checkPartitionExists(client, COLLECTION_NAME, partitionName);
+            boolean partitionExists = checkPartitionExists(partitionName);
             result.put("exists", partitionExists);
 
             if (partitionExists) {
                 try {
-                    result.put("vectorCount", countPartitionRows(client, partitionName));
+                    result.put("vectorCount", countPartitionRows(partitionName));
                 } catch (Exception e) {
                     log.debug("Failed to count vectors: {}", e.getMessage());
                     result.put("vectorCount", 0L);
@@ -579,22 +723,19 @@ public class MilvusVectorService implements VectorStoreProvider {
             result.put("exists", false);
             result.put("vectorCount", -1L);
             result.put("error", e.getMessage());
-        } finally {
-            if (client != null) {
-                client.close();
-            }
         }
 
         return result;
     }
 
-    private long countPartitionRows(MilvusServiceClient client, String partitionName) {
-        R<io.milvus.grpc.GetPartitionStatisticsResponse> statsResponse = client.getPartitionStatistics(
-                io.milvus.param.partition.GetPartitionStatisticsParam.newBuilder()
-                        .withCollectionName(COLLECTION_NAME)
-                        .withPartitionName(partitionName)
-                        .withFlush(false)
-                        .build());
+    private long countPartitionRows(String partitionName) {
+        R<io.milvus.grpc.GetPartitionStatisticsResponse> statsResponse = clientPool.execute("getPartitionStatistics",
+                client -> client.getPartitionStatistics(
+                        io.milvus.param.partition.GetPartitionStatisticsParam.newBuilder()
+                                .withCollectionName(COLLECTION_NAME)
+                                .withPartitionName(partitionName)
+                                .withFlush(false)
+                                .build()));
 
         if (statsResponse.getStatus() == R.Status.Success.getCode() && statsResponse.getData() != null) {
             OptionalLong rowCount = statsResponse.getData().getStatsList().stream()
@@ -611,23 +752,24 @@ public class MilvusVectorService implements VectorStoreProvider {
                     statsResponse.getMessage() != null ? statsResponse.getMessage() : statsResponse.getStatus());
         }
 
-        return countPartitionRowsByQuery(client, partitionName);
+        return countPartitionRowsByQuery(partitionName);
     }
 
-    private long countPartitionRowsByQuery(MilvusServiceClient client, String partitionName) {
+    private long countPartitionRowsByQuery(String partitionName) {
         long total = 0L;
         long offset = 0L;
 
         while (true) {
-            R<io.milvus.grpc.QueryResults> queryResponse = client.query(
-                    io.milvus.param.dml.QueryParam.newBuilder()
-                            .withCollectionName(COLLECTION_NAME)
-                            .withPartitionNames(Collections.singletonList(partitionName))
-                            .withExpr("chunk_id != \"\"")
-                            .addOutField("chunk_id")
-                            .withOffset(offset)
-                            .withLimit(VECTOR_STATS_QUERY_PAGE_SIZE)
-                            .build());
+            io.milvus.param.dml.QueryParam queryParam = io.milvus.param.dml.QueryParam.newBuilder()
+                    .withCollectionName(COLLECTION_NAME)
+                    .withPartitionNames(Collections.singletonList(partitionName))
+                    .withExpr("chunk_id != \"\"")
+                    .addOutField("chunk_id")
+                    .withOffset(offset)
+                    .withLimit(VECTOR_STATS_QUERY_PAGE_SIZE)
+                    .build();
+            R<io.milvus.grpc.QueryResults> queryResponse = clientPool.execute("query",
+                    client -> client.query(queryParam));
 
             if (queryResponse.getStatus() != R.Status.Success.getCode()) {
                 log.debug("Milvus vector count page query failed: {}", queryResponse.getMessage());
@@ -667,16 +809,14 @@ public class MilvusVectorService implements VectorStoreProvider {
      */
     @Override
     public Map<String, Object> getChunkVector(String kbId, String chunkId) {
+        if (isEmbeddedOnly()) {
+            return embeddedStore.getChunkVector(kbId, chunkId);
+        }
         Map<String, Object> result = new HashMap<>();
 
-        MilvusServiceClient client = null;
         try {
-            client = createClient();
-
-            // 加载 collection
-            client.loadCollection(io.milvus.param.collection.LoadCollectionParam.newBuilder()
-                    .withCollectionName(COLLECTION_NAME)
-                    .build());
+            // 加载 collection（仅首次）
+            ensureCollectionLoaded();
 
             // 创建一个 dummy 向量用于搜索（我们只关心元数据）
             int dim = getEmbeddingDimension();
@@ -696,7 +836,7 @@ public class MilvusVectorService implements VectorStoreProvider {
                     .withOutFields(Arrays.asList("chunk_id", "content", "doc_id", "embedding", "chunk_type", "title"))
                     .build();
 
-            R<SearchResults> response = client.search(searchParam);
+            R<SearchResults> response = searchLoaded(searchParam);
 
             if (response.getStatus() != R.Status.Success.getCode()) {
                 log.warn("Failed to search chunk vector: {}", response.getMessage());
@@ -791,10 +931,6 @@ public class MilvusVectorService implements VectorStoreProvider {
                 errorMsg = "无法连接到 Milvus 服务，请检查网络和配置";
             }
             result.put("error", errorMsg);
-        } finally {
-            if (client != null) {
-                client.close();
-            }
         }
 
         return result;
@@ -807,9 +943,32 @@ public class MilvusVectorService implements VectorStoreProvider {
 
     @Override
     public List<SearchResult> search(String kbId, String query, int k, String embeddingModel) {
+        return search(kbId, query, k, embeddingModel, null);
+    }
+
+    /**
+     * 向量检索（可按文档过滤）；检索失败时返回空列表，需要区分“无结果”与“失败”的调用方使用 searchOrThrow
+     */
+    @Override
+    public List<SearchResult> search(String kbId, String query, int k, String embeddingModel,
+            Collection<String> documentIds) {
+        try {
+            return searchOrThrow(kbId, query, k, embeddingModel, documentIds);
+        } catch (IllegalStateException e) {
+            log.warn("向量检索失败，返回空结果: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 向量检索（可按文档过滤），Embedding 或 Milvus 不可用时抛出 IllegalStateException
+     * tiered 模式下知识库回填完成后由进程内 HNSW 应答，否则回源 Milvus（并触发回填）
+     */
+    public List<SearchResult> searchOrThrow(String kbId, String query, int k, String embeddingModel,
+            Collection<String> documentIds) {
         String partitionName = "kb_" + kbId.replace("-", "_");
 
-        // 快速失败：如果 Embedding 服务不可用，直接返回空结果
+        // 快速失败：Embedding 服务不可用时不再访问向量库
         List<Float> queryVector;
         try {
             queryVector = textToVector(query, embeddingModel);
@@ -822,29 +981,27 @@ public class MilvusVectorService implements VectorStoreProvider {
                         queryVector.size(), collectionDimension);
             }
         } catch (Exception e) {
-            log.warn("Embedding 服务不可用，跳过向量搜索: {}", e.getMessage());
-            return Collections.emptyList();
+            throw new IllegalStateException("Embedding 服务不可用，跳过向量搜索: " + e.getMessage(), e);
         }
 
-        // 快速失败：如果 Milvus 服务不可用，直接返回空结果
-        MilvusServiceClient client = null;
-        try {
-            client = createClient();
+        if (isEmbeddedOnly() || servedByHotTier(kbId, embeddingModel)) {
+            return embeddedStore.searchVector(kbId, toFloatArray(queryVector), k, documentIds);
+        }
 
+        // 快速失败：Milvus 服务不可用时直接抛出
+        try {
             boolean isGlobalSearch = "all".equalsIgnoreCase(kbId);
 
             // Check if partition exists first for specific kb
-            if (!isGlobalSearch && !checkPartitionExists(client, COLLECTION_NAME, partitionName)) {
+            if (!isGlobalSearch && !checkPartitionExists(partitionName)) {
                 log.warn("Partition not found: {}, returning empty results. kbId={}", partitionName, kbId);
                 return Collections.emptyList();
             }
 
-            log.info("Searching in collection: {}, query: {}, topK: {}", COLLECTION_NAME, query, k);
+            log.debug("Searching in collection: {}, query: {}, topK: {}", COLLECTION_NAME, query, k);
 
-            // 总是加载整个 collection（不再使用 partition）
-            client.loadCollection(io.milvus.param.collection.LoadCollectionParam.newBuilder()
-                    .withCollectionName(COLLECTION_NAME)
-                    .build());
+            // 加载整个 collection（仅首次，之后由加载状态缓存跳过）
+            ensureCollectionLoaded();
 
             SearchParam.Builder searchBuilder = SearchParam.newBuilder()
                     .withCollectionName(COLLECTION_NAME)
@@ -856,56 +1013,34 @@ public class MilvusVectorService implements VectorStoreProvider {
 
             // Only search child chunks for vector retrieval - Temporarily disabled for debugging
             // searchBuilder.withExpr("chunk_type == 'child'");
+            if (documentIds != null && !documentIds.isEmpty()) {
+                searchBuilder.withExpr("doc_id in "
+                        + documentIds.stream().map(id -> "'" + id + "'").collect(Collectors.toList()));
+            }
 
             // 使用 partition 来限制搜索特定知识库
             if (!isGlobalSearch) {
                 // 恢复使用 partition 过滤
                 searchBuilder.withPartitionNames(Collections.singletonList(partitionName));
-                log.info("Using partition filter for kbId={}, partition={}", kbId, partitionName);
+                log.debug("Using partition filter for kbId={}, partition={}", kbId, partitionName);
             }
 
             SearchParam searchParam = searchBuilder.build();
 
-            R<SearchResults> response = client.search(searchParam);
+            R<SearchResults> response = searchLoaded(searchParam);
 
             if (response.getStatus() != R.Status.Success.getCode()) {
-                log.error("Milvus search failed: status={}, message={}", response.getStatus(), response.getMessage());
-                return Collections.emptyList();
+                throw new IllegalStateException("Milvus search failed: status=" + response.getStatus()
+                        + ", message=" + response.getMessage());
             }
 
             SearchResults searchResults = response.getData();
-            log.warn("DEBUG: searchResults = {}", searchResults);
 
             io.milvus.response.SearchResultsWrapper wrapper = new io.milvus.response.SearchResultsWrapper(
                     searchResults.getResults());
             List<io.milvus.response.SearchResultsWrapper.IDScore> scores = wrapper.getIDScore(0);
 
-            log.info("Milvus search returned {} results", scores.size());
-
-            // Debug: print raw results
-            if (scores.size() > 0) {
-                log.warn("DEBUG: Got {} search results, first score: {}", scores.size(), scores.get(0).getScore());
-            }
-
-            // Debug: Query actual data count in partition
-            if (scores.size() == 0) {
-                // Debug: Try search without partition filter (entire collection)
-                try {
-                    SearchParam debugSearchParam = SearchParam.newBuilder()
-                            .withCollectionName(COLLECTION_NAME)
-                            .withMetricType(io.milvus.param.MetricType.COSINE)
-                            .withTopK(10)
-                            .withVectors(Collections.singletonList(queryVector))
-                            .withVectorFieldName("embedding")
-                            .build();
-                    R<SearchResults> debugResponse = client.search(debugSearchParam);
-                    log.warn("DEBUG: Search entire collection (no partition) status: {}, results: {}",
-                            debugResponse.getStatus(),
-                            debugResponse.getData() != null ? "got data" : "no data");
-                } catch (Exception e) {
-                    log.warn("Debug search failed: {}", e.getMessage());
-                }
-            }
+            log.debug("Milvus search returned {} results", scores.size());
 
             List<SearchResult> results = new ArrayList<>();
             // Milvus SDK behavior:
@@ -982,15 +1117,29 @@ public class MilvusVectorService implements VectorStoreProvider {
             }
             return results;
 
+        } catch (IllegalStateException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Search error: {}", e.getMessage(), e);
-            return Collections.emptyList();
-        } finally {
-            if (client != null)
-                client.close();
+            throw new IllegalStateException("Search error: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 在已加载的 Collection 上执行检索
+     * Milvus 侧被释放（重启、手动 release）时返回 "not loaded"，此时重置加载状态并重试一次
+     */
+    private R<SearchResults> searchLoaded(SearchParam searchParam) {
+        R<SearchResults> response = clientPool.execute("search", client -> client.search(searchParam));
+        if (response.getStatus() != R.Status.Success.getCode() && isNotLoadedError(response.getMessage())) {
+            log.info("Milvus collection {} is not loaded, reloading", COLLECTION_NAME);
+            collectionLoaded = false;
+            ensureCollectionLoaded();
+            response = clientPool.execute("search", client -> client.search(searchParam));
+        }
+        return response;
+    }
+
     /**
      * Legacy Search Method for SkillServiceImplEnhanced compatibility
      */
@@ -1011,7 +1160,7 @@ public class MilvusVectorService implements VectorStoreProvider {
                     .withConnectTimeout(connectTimeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS)
                     .withKeepAliveTimeout(keepAliveTimeoutMs, java.util.concurrent.TimeUnit.MILLISECONDS)
                     .withRpcDeadline(rpcDeadlineMs, java.util.concurrent.TimeUnit.MILLISECONDS);
-            applyAuthorization(builder, token);
+            MilvusClientPool.applyAuthorization(builder, token);
             client = new MilvusServiceClient(builder.build());
             RetryParam retryParam = RetryParam.newBuilder()
                     .withMaxRetryTimes(Math.max(0, maxRetryTimes))
@@ -1101,16 +1250,158 @@ public class MilvusVectorService implements VectorStoreProvider {
         return Collections.emptyMap();
     }
 
+    // --- Hot tier (tiered mode) ---
+
+    /**
+     * tiered 模式下是否由热层应答：
+     * 热层只含本进程写入或回填过的向量，回填完成前缺少只在 Milvus 中的旧文档，因此未完成时回源并触发回填；
+     * 跨库检索（"all"）需要所有知识库都已回填，统一回源；热层向量由默认 embedding 模型生成，指定其它模型时也回源
+     */
+    private boolean servedByHotTier(String kbId, String embeddingModel) {
+        if (!isTiered() || "all".equalsIgnoreCase(kbId)) {
+            return false;
+        }
+        if (embeddingModel != null && !embeddingModel.isBlank() && embeddingService != null
+                && !embeddingModel.equals(embeddingService.getModelName())) {
+            return false;
+        }
+        if (hotTierReady.contains(kbId)) {
+            return true;
+        }
+        scheduleHotTierBackfill(kbId);
+        return false;
+    }
+
+    private void scheduleHotTierBackfill(String kbId) {
+        AtomicBoolean mutated = new AtomicBoolean();
+        if (hotTierBackfills.putIfAbsent(kbId, mutated) != null) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                backfillHotTier(kbId, mutated);
+            } catch (Exception e) {
+                log.warn("Hot tier backfill failed for KB {}, serving from Milvus: {}", kbId, e.getMessage());
+            } finally {
+                hotTierBackfills.remove(kbId, mutated);
+            }
+        }, hotTierExecutor);
+    }
+
+    /**
+     * 逐文档从 Milvus 读取 child 向量写入热层（跳过热层已有的分片），全部成功后标记该知识库可由热层应答。
+     * 回填期间发生过删除时，已回填的分片可能被重新写回，清空该知识库的热层，下次检索重新回填
+     */
+    private void backfillHotTier(String kbId, AtomicBoolean mutated) {
+        String partitionName = "kb_" + kbId.replace("-", "_");
+        if (checkPartitionExists(partitionName)) {
+            ensureCollectionLoaded();
+            Set<String> present = embeddedStore.chunkIds(kbId);
+            long copied = 0;
+            for (KnowledgeDocument document : documentRepository.findByKnowledgeBaseIdOrderByUploadTimeDesc(kbId)) {
+                copied += backfillDocument(kbId, partitionName, document.getId(), present);
+            }
+            log.info("Hot tier backfill for KB {} copied {} vectors from Milvus", kbId, copied);
+        }
+        if (mutated.get()) {
+            log.info("KB {} changed during hot tier backfill, discarding hot tier", kbId);
+            embeddedStore.deleteKnowledgeBase(kbId);
+            return;
+        }
+        hotTierReady.add(kbId);
+    }
+
+    private int backfillDocument(String kbId, String partitionName, String docId, Set<String> present) {
+        io.milvus.param.dml.QueryParam queryParam = io.milvus.param.dml.QueryParam.newBuilder()
+                .withCollectionName(COLLECTION_NAME)
+                .withPartitionNames(Collections.singletonList(partitionName))
+                .withExpr("doc_id == '" + docId + "' && chunk_type == 'child'")
+                .withOutFields(Arrays.asList("chunk_id", "doc_id", "content", "chunk_type", "parent_id", "title",
+                        "source", "position", "embedding"))
+                .withLimit(VECTOR_STATS_QUERY_PAGE_SIZE)
+                .build();
+        R<io.milvus.grpc.QueryResults> response = clientPool.execute("query", client -> client.query(queryParam));
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("Milvus query failed: " + response.getMessage());
+        }
+
+        List<com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk> chunks = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (io.milvus.response.QueryResultsWrapper.RowRecord row
+                : new io.milvus.response.QueryResultsWrapper(response.getData()).getRowRecords()) {
+            String chunkId = String.valueOf(row.get("chunk_id"));
+            if (present.contains(chunkId) || !(row.get("embedding") instanceof List<?> embedding)) {
+                continue;
+            }
+            String parentId = String.valueOf(row.get("parent_id"));
+            chunks.add(com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk.builder()
+                    .id(chunkId)
+                    .documentId(String.valueOf(row.get("doc_id")))
+                    .content(String.valueOf(row.get("content")))
+                    .chunkType(String.valueOf(row.get("chunk_type")))
+                    .parentId(parentId.isEmpty() ? null : parentId)
+                    .title(String.valueOf(row.get("title")))
+                    .source(String.valueOf(row.get("source")))
+                    .position(row.get("position") instanceof Number position ? position.intValue() : 0)
+                    .build());
+            float[] vector = new float[embedding.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = ((Number) embedding.get(i)).floatValue();
+            }
+            vectors.add(vector);
+        }
+        embeddedStore.addVectors(kbId, chunks, vectors);
+        return chunks.size();
+    }
+
+    private void markHotTierMutated(String kbId) {
+        AtomicBoolean mutated = hotTierBackfills.get(kbId);
+        if (mutated != null) {
+            mutated.set(true);
+        }
+    }
+
+    void setHotTierExecutor(Executor hotTierExecutor) {
+        this.hotTierExecutor = hotTierExecutor;
+    }
+
     // --- Helper Methods ---
 
+    private boolean isEmbeddedOnly() {
+        return "embedded".equalsIgnoreCase(storeMode);
+    }
+
+    private boolean isTiered() {
+        return "tiered".equalsIgnoreCase(storeMode);
+    }
+
+    private boolean isMilvusOnly() {
+        return !isEmbeddedOnly() && !isTiered();
+    }
+
+    private static float[] toFloatArray(List<Float> vector) {
+        float[] out = new float[vector.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = vector.get(i);
+        }
+        return out;
+    }
+
     /**
      * 动态获取 embedding 向量维度
      */
     private int getEmbeddingDimension() {
+        String model = embeddingService != null ? embeddingService.getModelName() : null;
+        int cached = embeddingDimension;
+        if (cached > 0 && Objects.equals(model, embeddingDimensionModel)) {
+            return cached;
+        }
         try {
             List<Float> testEmbedding = embeddingService.embed("test");
             if (testEmbedding != null && !testEmbedding.isEmpty()) {
                 log.info("Embedding dimension detected: {}", testEmbedding.size());
+                embeddingDimensionModel = model;
+                embeddingDimension = testEmbedding.size();
                 return testEmbedding.size();
             }
         } catch (Exception e) {
@@ -1132,23 +1423,93 @@ public class MilvusVectorService implements VectorStoreProvider {
         return -1;
     }
 
-    private void ensurePartitionExists(MilvusServiceClient client, String collectionName, String partitionName) {
-        if (!checkPartitionExists(client, collectionName, partitionName)) {
-            client.createPartition(CreatePartitionParam.newBuilder()
-                    .withCollectionName(collectionName)
-                    .withPartitionName(partitionName)
-                    .build());
+    private void ensurePartitionExists(String partitionName) {
+        if (checkPartitionExists(partitionName)) {
+            return;
         }
+        R<io.milvus.param.RpcStatus> response = clientPool.execute("createPartition",
+                client -> client.createPartition(CreatePartitionParam.newBuilder()
+                        .withCollectionName(COLLECTION_NAME)
+                        .withPartitionName(partitionName)
+                        .build()));
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("Milvus createPartition failed: " + response.getMessage());
+        }
+        markPartitionExists(partitionName);
     }
 
-    private boolean checkPartitionExists(MilvusServiceClient client, String collectionName, String partitionName) {
-        R<Boolean> response = client.hasPartition(HasPartitionParam.newBuilder()
-                .withCollectionName(collectionName)
-                .withPartitionName(partitionName)
-                .build());
-        log.info("hasPartition check: collection={}, partition={}, response={}, data={}",
-                collectionName, partitionName, response.getStatus(), response.getData());
-        return response.getData() != null && response.getData();
+    /**
+     * 分区是否存在（优先读取分区注册表）
+     */
+    private boolean checkPartitionExists(String partitionName) {
+        if (knownPartitions.contains(partitionName)) {
+            return true;
+        }
+        Long missingAt = missingPartitions.get(partitionName);
+        if (missingAt != null && System.currentTimeMillis() - missingAt < partitionNegativeTtlMs) {
+            return false;
+        }
+
+        R<Boolean> response = clientPool.execute("hasPartition",
+                client -> client.hasPartition(HasPartitionParam.newBuilder()
+                        .withCollectionName(COLLECTION_NAME)
+                        .withPartitionName(partitionName)
+                        .build()));
+        log.debug("hasPartition check: collection={}, partition={}, response={}, data={}",
+                COLLECTION_NAME, partitionName, response.getStatus(), response.getData());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            // 查询失败不写缓存
+            return false;
+        }
+        boolean exists = response.getData() != null && response.getData();
+        if (exists) {
+            markPartitionExists(partitionName);
+        } else {
+            missingPartitions.put(partitionName, System.currentTimeMillis());
+        }
+        return exists;
+    }
+
+    private void markPartitionExists(String partitionName) {
+        knownPartitions.add(partitionName);
+        missingPartitions.remove(partitionName);
+    }
+
+    private void forgetPartition(String partitionName) {
+        knownPartitions.remove(partitionName);
+        missingPartitions.remove(partitionName);
+    }
+
+    private void resetCollectionState() {
+        knownPartitions.clear();
+        missingPartitions.clear();
+        collectionLoaded = false;
+    }
+
+    /**
+     * 确保 Collection 已加载到内存（每个进程只加载一次，重建/删除后重置）
+     */
+    private void ensureCollectionLoaded() {
+        if (collectionLoaded) {
+            return;
+        }
+        synchronized (this) {
+            if (collectionLoaded) {
+                return;
+            }
+            R<io.milvus.param.RpcStatus> response = clientPool.execute("loadCollection",
+                    client -> client.loadCollection(io.milvus.param.collection.LoadCollectionParam.newBuilder()
+                            .withCollectionName(COLLECTION_NAME)
+                            .build()));
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                throw new IllegalStateException("Milvus loadCollection failed: " + response.getMessage());
+            }
+            collectionLoaded = true;
+        }
+    }
+
+    private static boolean isNotLoadedError(String message) {
+        return message != null && message.toLowerCase(Locale.ROOT).contains("not loaded");
     }
 
     /**
@@ -1159,9 +1520,19 @@ public class MilvusVectorService implements VectorStoreProvider {
     public List<Float> textToVector(String text, String embeddingModel) {
         // 优先使用已注入的 EmbeddingService (SiliconFlowEmbeddingAdapter)
         if (embeddingService != null) {
+            String model = embeddingService.getModelName();
+            float[] cached = embeddingCache.get(model, text);
+            if (cached != null) {
+                List<Float> embedding = new ArrayList<>(cached.length);
+                for (float v : cached) {
+                    embedding.add(v);
+                }
+                return embedding;
+            }
             try {
                 List<Float> embedding = embeddingService.embed(text);
                 if (embedding != null && !embedding.isEmpty()) {
+                    embeddingCache.put(model, text, toFloatArray(embedding));
                     log.info("Embedding generated via SiliconFlow for query: '{}', dim={}", text.substring(0, Math.min(30, text.length())), embedding.size());
                     return embedding;
                 }
@@ -1386,6 +1757,7 @@ public class MilvusVectorService implements VectorStoreProvider {
             client.dropCollection(io.milvus.param.collection.DropCollectionParam.newBuilder()
                     .withCollectionName(COLLECTION_NAME)
                     .build());
+            resetCollectionState();
             log.info("Dropped collection '{}'", COLLECTION_NAME);
         } catch (Exception e) {
             log.warn("Failed to drop collection (may not exist): {}", e.getMessage());
@@ -1403,28 +1775,17 @@ public class MilvusVectorService implements VectorStoreProvider {
      * 用于检索降级策略
      */
     public boolean isHealthy() {
-        MilvusServiceClient client = null;
+        if (isEmbeddedOnly()) {
+            return true;
+        }
         try {
-            client = createClient();
             // 尝试获取 collection 加载状态
-            R<GetLoadingProgressResponse> response = client.getLoadingProgress(
-                    io.milvus.param.collection.GetLoadingProgressParam.newBuilder()
-                            .withCollectionName(COLLECTION_NAME)
-                            .build()
-            );
+            R<GetLoadingProgressResponse> response = loadingProgress();
             // 如果能获取响应则认为服务可用
             return response.getStatus() == io.milvus.param.R.Status.Success.getCode();
         } catch (Exception e) {
             log.warn("Milvus health check failed: {}", e.getMessage());
             return false;
-        } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (Exception e) {
-                    log.warn("Failed to close Milvus client: {}", e.getMessage());
-                }
-            }
         }
     }
 
@@ -1432,14 +1793,11 @@ public class MilvusVectorService implements VectorStoreProvider {
      * 获取 Milvus 连接状态信息
      */
     public String getConnectionStatus() {
-        MilvusServiceClient client = null;
+        if (isEmbeddedOnly()) {
+            return "CONNECTED";
+        }
         try {
-            client = createClient();
-            R<GetLoadingProgressResponse> response = client.getLoadingProgress(
-                    io.milvus.param.collection.GetLoadingProgressParam.newBuilder()
-                            .withCollectionName(COLLECTION_NAME)
-                            .build()
-            );
+            R<GetLoadingProgressResponse> response = loadingProgress();
             if (response.getStatus() == io.milvus.param.R.Status.Success.getCode()) {
                 return "CONNECTED";
             } else {
@@ -1447,12 +1805,13 @@ public class MilvusVectorService implements VectorStoreProvider {
             }
         } catch (Exception e) {
             return "UNAVAILABLE: " + e.getMessage();
-        } finally {
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (Exception ignored) {}
-            }
         }
     }
+
+    private R<GetLoadingProgressResponse> loadingProgress() {
+        return clientPool.execute("getLoadingProgress", client -> client.getLoadingProgress(
+                io.milvus.param.collection.GetLoadingProgressParam.newBuilder()
+                        .withCollectionName(COLLECTION_NAME)
+                        .build()));
+    }
 }
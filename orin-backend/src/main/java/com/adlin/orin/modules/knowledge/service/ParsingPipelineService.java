@@ -35,6 +35,7 @@ public class ParsingPipelineService {
     private final KnowledgeDocumentChunkRepository chunkRepository;
     private final StorageManagementService storageService;
     private final MilvusVectorService vectorService;
+    private final KeywordIndexService keywordIndexService;
 
     // 状态常量
     public static final String STATUS_QUEUED = "QUEUED";
@@ -138,6 +139,7 @@ public class ParsingPipelineService {
                 chunksToSave.add(chunk);
             }
             chunkRepository.saveAll(chunksToSave);
+            keywordIndexService.indexDocument(document.getKnowledgeBaseId(), document.getId(), chunksToSave);
 
             // 阶段3: 向量化
             updateDocumentStatus(document, STATUS_VECTORIZING, null, null);
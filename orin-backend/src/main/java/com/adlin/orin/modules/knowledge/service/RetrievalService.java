@@ -1,17 +1,27 @@
 package com.adlin.orin.modules.knowledge.service;
 
+import com.adlin.orin.modules.knowledge.component.ParentChunkStore;
+import com.adlin.orin.modules.knowledge.component.RetrievalCache;
+import com.adlin.orin.modules.knowledge.component.RetrievalExecutor;
 import com.adlin.orin.modules.knowledge.component.VectorStoreProvider;
 import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
 import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
 import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentRepository;
 import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentChunkRepository;
+import com.adlin.orin.modules.knowledge.util.Bm25InvertedIndex;
+import com.adlin.orin.modules.knowledge.util.ReciprocalRankFusion;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -30,6 +40,26 @@ public class RetrievalService {
     private final StorageManagementService storageManagementService;
     private final com.adlin.orin.modules.multimodal.service.VisualAnalysisService visualAnalysisService;
     private final RerankService rerankService;
+    private final KeywordIndexService keywordIndexService;
+    private final ParentChunkStore parentChunkStore;
+    private final MeterRegistry meterRegistry;
+    private final RetrievalExecutor retrievalExecutor;
+    private final RetrievalCache retrievalCache;
+
+    /**
+     * 单次检索的截止时间：超时的分支（关键词 / 向量 / 多知识库）被放弃，使用已完成分支的部分结果
+     */
+    @Value("${knowledge.retrieval.deadline-ms:3000}")
+    private long deadlineMs = 3000;
+
+    /**
+     * 融合方式：rrf（Reciprocal Rank Fusion，默认）| weighted（alpha 加权分数）
+     */
+    @Value("${knowledge.retrieval.fusion:rrf}")
+    private String fusionMode = "rrf";
+
+    @Value("${knowledge.retrieval.rrf-k:60}")
+    private int rrfK = ReciprocalRankFusion.DEFAULT_K;
 
     // 关键词检索权重 (混合搜索时使用)
     // 注意：向量检索分数是实际的cosine相似度(0-1)，关键词分数固定为0.3
@@ -45,13 +75,23 @@ public class RetrievalService {
             KnowledgeDocumentRepository documentRepository,
             StorageManagementService storageManagementService,
             com.adlin.orin.modules.multimodal.service.VisualAnalysisService visualAnalysisService,
-            RerankService rerankService) {
+            RerankService rerankService,
+            KeywordIndexService keywordIndexService,
+            ParentChunkStore parentChunkStore,
+            MeterRegistry meterRegistry,
+            RetrievalExecutor retrievalExecutor,
+            RetrievalCache retrievalCache) {
         this.vectorService = vectorService;
         this.chunkRepository = chunkRepository;
         this.documentRepository = documentRepository;
         this.storageManagementService = storageManagementService;
         this.visualAnalysisService = visualAnalysisService;
         this.rerankService = rerankService;
+        this.keywordIndexService = keywordIndexService;
+        this.parentChunkStore = parentChunkStore;
+        this.meterRegistry = meterRegistry;
+        this.retrievalExecutor = retrievalExecutor;
+        this.retrievalCache = retrievalCache;
     }
 
     /**
@@ -113,10 +153,12 @@ public class RetrievalService {
      * Hybrid Search with Parent-Child Retrieval
      *
      * Pipeline:
-     * 1. Search vector DB using child chunks (with fallback to keyword-only if fails)
-     * 2. Retrieve top-k child matches
-     * 3. Use parent_id to fetch corresponding parent chunks from DB
-     * 4. Deduplicate parent chunks
+     * 0. Serve from the retrieval result cache when the KB generation is unchanged
+     * 1. Run keyword and child-chunk vector search concurrently under one deadline
+     *    (keyword-only fallback if the vector store fails; partial results on timeout)
+     * 2. Use parent_id to fetch corresponding parent chunks (batched, cached)
+     * 3. Deduplicate parent chunks, keeping the best child score
+     * 4. Fuse vector and keyword rankings with Reciprocal Rank Fusion
      * 5. Return parent chunks as context
      */
     public List<VectorStoreProvider.SearchResult> hybridSearch(String kbId, String query, int topK,
@@ -140,223 +182,147 @@ public class RetrievalService {
         double actualAlpha = alpha != null ? alpha : 0.7;
         double actualThreshold = threshold != null ? threshold : 0.0;
 
-        log.info("HybridSearch: kbId={}, query={}, alpha={}, threshold={}, rerankModel={}, documentIds={}",
-                kbId, query, actualAlpha, actualThreshold, rerankModel, documentIds);
-
-        // 1. 首先执行关键词检索（始终可用）
-        // 返回 Map.Entry，包含 chunk 和匹配词数
-        List<Map.Entry<KnowledgeDocumentChunk, Integer>> keywordResults = keywordSearch(kbId, query, topK * 3, documentIds);
-        log.info("HybridSearch: keywordResults.size={}", keywordResults.size());
-
-        // 2. 尝试向量检索（可选增强）
-        List<VectorStoreProvider.SearchResult> childResults = new ArrayList<>();
-        boolean vectorSearchFailed = false;
-
-        if (!vectorServiceUnavailable) {
-            try {
-                // 检查向量服务健康状态
-                if (!vectorService.isHealthy()) {
-                    log.warn("Vector service is not healthy, falling back to keyword-only search");
-                    vectorServiceUnavailable = true;
-                    vectorSearchFailed = true;
-                } else {
-                    childResults = vectorService.search(kbId, query, topK * 3, embeddingModel);
-                    // Filter by documentIds if provided
-                    if (documentIds != null && !documentIds.isEmpty()) {
-                        Set<String> docIdSet = new HashSet<>(documentIds);
-                        childResults = childResults.stream()
-                                .filter(r -> {
-                                    String docId = (String) r.getMetadata().get("doc_id");
-                                    return docIdSet.contains(docId);
-                                })
-                                .collect(Collectors.toList());
-                        log.info("HybridSearch: vector results after docId filter size={}", childResults.size());
-                    } else {
-                        log.info("HybridSearch: vector results size={}", childResults.size());
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("Vector search failed, falling back to keyword-only search: {}", e.getMessage());
-                vectorSearchFailed = true;
-                // 标记向量服务不可用，避免后续请求频繁尝试
-                vectorServiceUnavailable = true;
-            }
-        } else {
-            log.info("Vector service previously marked as unavailable, using keyword-only search");
-            vectorSearchFailed = true;
+        // 结果缓存：键中包含知识库代数，文档变更后旧结果不可达
+        String cacheKey = retrievalCache.key(List.of(kbId), query, topK, embeddingModel, actualAlpha,
+                actualThreshold, rerankModel, fusionMode, documentIds);
+        List<VectorStoreProvider.SearchResult> cached = retrievalCache.get(cacheKey);
+        if (cached != null) {
+            log.info("HybridSearch cache hit: kbId={}, query={}, size={}", kbId, query, cached.size());
+            return cached;
         }
 
-        // 如果向量检索失败或无可用结果，降级到纯关键词搜索
-        if (childResults.isEmpty() || vectorSearchFailed) {
-            return keywordOnlySearch(kbId, query, topK, documentIds);
+        Retrieval retrieval = retrieve(kbId, query, topK, embeddingModel, actualAlpha, actualThreshold,
+                rerankModel, documentIds);
+        // 部分结果（分支超时、向量服务降级、rerank 失败）不缓存
+        if (retrieval.complete()) {
+            retrievalCache.put(cacheKey, retrieval.results());
         }
+        return retrieval.results();
+    }
 
-        // 2. Extract parent IDs and ALL doc IDs from child results
-        Set<String> parentIds = new LinkedHashSet<>();
-        Set<String> docIds = new LinkedHashSet<>();
-        Map<String, VectorStoreProvider.SearchResult> childResultMap = new HashMap<>();
-
+    private Retrieval retrieve(String kbId, String query, int topK, String embeddingModel,
+            double actualAlpha, double actualThreshold, String rerankModel, List<String> documentIds) {
+        log.info("HybridSearch: kbId={}, query={}, alpha={}, threshold={}, rerankModel={}, documentIds={}",
+                kbId, query, actualAlpha, actualThreshold, rerankModel, documentIds);
+        StageTimer timer = new StageTimer();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+
+        // 1-2. 关键词检索与向量检索并发执行，共享同一截止时间
+        Map<String, Callable<Object>> legs = new LinkedHashMap<>();
+        legs.put("keyword", () -> keywordSearch(kbId, query, topK * 3, documentIds));
+        legs.put("vector", () -> vectorSearch(kbId, query, topK * 3, embeddingModel, documentIds));
+        Map<String, Object> gathered = retrievalExecutor.gather(legs, deadline);
+        timer.mark("retrieve");
+
+        @SuppressWarnings("unchecked")
+        List<KeywordHit> keywordLeg = (List<KeywordHit>) gathered.get("keyword");
+        List<KeywordHit> keywordResults = keywordLeg != null ? keywordLeg : List.of();
+        VectorLeg vectorLeg = (VectorLeg) gathered.get("vector");
+        List<VectorStoreProvider.SearchResult> childResults = vectorLeg != null ? vectorLeg.results() : null;
+        log.info("HybridSearch: keywordResults.size={}, vectorResults.size={}", keywordResults.size(),
+                childResults != null ? childResults.size() : "timeout");
+        // 分支超时或向量检索降级时结果不完整
+        boolean complete = gathered.size() == legs.size() && !vectorLeg.degraded();
+
+        // 向量检索失败或无结果时降级到纯关键词搜索；仅超时则直接用已返回的关键词结果（部分结果）
+        if (childResults != null && childResults.isEmpty()) {
+            List<VectorStoreProvider.SearchResult> fallback = keywordOnlySearch(kbId, query, topK, documentIds,
+                    keywordLeg);
+            timer.mark("keyword_fallback");
+            timer.finish(kbId);
+            return new Retrieval(fallback, complete);
+        }
+        if (childResults == null) {
+            childResults = List.of();
+        }
+
+        // 3. Single pass over child results: best child score per parent (insertion order = first hit)
+        Map<String, Double> bestScoreByParent = new LinkedHashMap<>();
         for (VectorStoreProvider.SearchResult child : childResults) {
             String parentId = (String) child.getMetadata().get("parent_id");
-            String docId = (String) child.getMetadata().get("doc_id");
-            if (parentId != null && !parentId.isEmpty()) {
-                parentIds.add(parentId);
-            }
-            if (docId != null && !docId.isEmpty()) {
-                docIds.add(docId);
-            }
-            childResultMap.put(child.getContent(), child);
-        }
-
-        // 3. Fetch parent chunks from database for ALL relevant docIds
-        List<KnowledgeDocumentChunk> parentChunks = new ArrayList<>();
-        if (!docIds.isEmpty()) {
-            for (String docId : docIds) {
-                List<KnowledgeDocumentChunk> chunks = chunkRepository.findByDocumentIdAndChunkType(docId, "parent");
-                parentChunks.addAll(chunks);
+            if (parentId != null && !parentId.isEmpty() && child.getScore() != null) {
+                bestScoreByParent.merge(parentId, child.getScore(), Math::max);
             }
         }
-        log.info("All parent chunks in DB: size={}, dbIds={}, milvusParentIds={}",
-                parentChunks.size(),
-                parentChunks.stream().map(c -> c.getId()).toList(),
-                parentIds);
-
-        // 4. Also include keyword-matched chunks (fallback)
-        log.info("Keyword search results: size={}", keywordResults.size());
-
-        // 5. Build final results with parent content (or child content if parent not found)
-        List<VectorStoreProvider.SearchResult> finalResults = new ArrayList<>();
-        Set<String> seenParentIds = new LinkedHashSet<>();
-
-        log.info("Processing parent chunks: total={}, parent type count={}",
-                parentChunks.size(),
-                parentChunks.stream().filter(p -> "parent".equals(p.getChunkType())).count());
 
-        // First, add parent chunks from vector search
-        boolean hasParentResults = false;
-        for (KnowledgeDocumentChunk parent : parentChunks) {
-            if (parent.getChunkType() != null && "parent".equals(parent.getChunkType())) {
-                String parentId = parent.getId();
-                if (seenParentIds.contains(parentId)) {
-                    continue;
-                }
-
-                // Only include if parent_id is in the search results
-                if (!parentIds.contains(parentId)) {
-                    continue;
-                }
-
-                seenParentIds.add(parentId);
-                hasParentResults = true;
-
-                // Find the best matching child score for this parent
-                double bestScore = 0.0;
-                for (VectorStoreProvider.SearchResult child : childResults) {
-                    String childParentId = (String) child.getMetadata().get("parent_id");
-                    if (parentId.equals(childParentId)) {
-                        if (child.getScore() > bestScore) {
-                            bestScore = child.getScore();
-                        }
-                    }
-                }
+        // 4. Resolve parent chunks in one batch from the parent-chunk store
+        Map<String, KnowledgeDocumentChunk> parents = parentChunkStore.getAll(bestScoreByParent.keySet());
+        timer.mark("parents");
+        log.debug("Parent chunks resolved: {}/{}", parents.size(), bestScoreByParent.size());
 
-                Map<String, Object> meta = new HashMap<>();
-                meta.put("doc_id", parent.getDocumentId());
-                meta.put("chunk_id", parent.getId());
-                meta.put("parent_id", parentId);
-                meta.put("chunk_type", "parent");
-                meta.put("title", parent.getTitle());
-                meta.put("source", parent.getSource());
-                meta.put("paragraphIndex", parent.getPosition());
-                meta.put("pageNumber", parent.getPosition() != null ? parent.getPosition() + 1 : 1);
-
-                // Use child content for matching, parent content for context
-                // Apply alpha weight to vector score
-                double weightedVectorScore = bestScore * actualAlpha;
-                VectorStoreProvider.SearchResult result = VectorStoreProvider.SearchResult.builder()
-                        .content(parent.getContent()) // Return parent content for LLM context
-                        .score(weightedVectorScore)
-                        .matchType("VECTOR")
-                        .metadata(meta)
-                        .build();
-                finalResults.add(result);
+        // 5. Vector ranking with parent content (or child content if parent not found)
+        List<VectorStoreProvider.SearchResult> vectorRanked = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : bestScoreByParent.entrySet()) {
+            String parentId = entry.getKey();
+            KnowledgeDocumentChunk parent = parents.get(parentId);
+            if (parent == null || !"parent".equals(parent.getChunkType())) {
+                continue;
             }
+
+            Map<String, Object> meta = new HashMap<>();
+            meta.put("doc_id", parent.getDocumentId());
+            meta.put("chunk_id", parent.getId());
+            meta.put("parent_id", parentId);
+            meta.put("chunk_type", "parent");
+            meta.put("title", parent.getTitle());
+            meta.put("source", parent.getSource());
+            meta.put("paragraphIndex", parent.getPosition());
+            meta.put("pageNumber", parent.getPosition() != null ? parent.getPosition() + 1 : 1);
+
+            // Use child content for matching, parent content for context
+            vectorRanked.add(VectorStoreProvider.SearchResult.builder()
+                    .content(parent.getContent()) // Return parent content for LLM context
+                    .score(entry.getValue())
+                    .matchType("VECTOR")
+                    .metadata(meta)
+                    .build());
         }
 
         // If no parent chunks found (e.g., old data without parent_id), fallback to child chunks
-        if (!hasParentResults) {
+        if (vectorRanked.isEmpty() && !childResults.isEmpty()) {
             log.info("No parent chunks found, falling back to child chunks");
             for (VectorStoreProvider.SearchResult child : childResults) {
                 Map<String, Object> meta = new HashMap<>(child.getMetadata());
                 meta.put("chunk_type", "child");
-                // Apply alpha weight to vector score
-                double weightedVectorScore = child.getScore() * actualAlpha;
-
-                VectorStoreProvider.SearchResult result = VectorStoreProvider.SearchResult.builder()
+                vectorRanked.add(VectorStoreProvider.SearchResult.builder()
                         .content(child.getContent())
-                        .score(weightedVectorScore)
+                        .score(child.getScore())
                         .matchType("VECTOR")
                         .metadata(meta)
-                        .build();
-                finalResults.add(result);
+                        .build());
             }
         }
+        vectorRanked.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
 
-        // 6. Add keyword-matched chunks (if not already included)
-        // 使用 chunk_id 精确去重，而不是 content 字符串匹配
-        // 计算关键词权重：1 - alpha
-        double keywordWeight = 1.0 - actualAlpha;
-
-        int keywordAdded = 0;
-        Set<String> includedChunkIds = finalResults.stream()
-                .map(r -> (String) r.getMetadata().get("chunk_id"))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
-
-        for (Map.Entry<KnowledgeDocumentChunk, Integer> entry : keywordResults) {
-            KnowledgeDocumentChunk chunk = entry.getKey();
-            int matchCount = entry.getValue();
+        // 6. Keyword ranking (BM25 order, relevance normalized to (0, 1])
+        List<VectorStoreProvider.SearchResult> keywordRanked = new ArrayList<>();
+        for (KeywordHit hit : keywordResults) {
+            KnowledgeDocumentChunk chunk = hit.chunk();
             if (chunk.getContent() == null) continue;
 
-            // 使用 chunk_id 精确去重
-            String chunkId = chunk.getId();
-            if (includedChunkIds.contains(chunkId)) {
-                continue;
-            }
-            includedChunkIds.add(chunkId);
-
-            // 计算关键词得分：关键词权重 * 匹配度（匹配词数/总词数，上限1.0）
-            // 这样匹配词越多得分越高
-            double matchRatio = Math.min(matchCount / 3.0, 1.0);
-            double keywordScore = keywordWeight * matchRatio;
-
             Map<String, Object> meta = new HashMap<>();
             meta.put("doc_id", chunk.getDocumentId());
             meta.put("chunk_id", chunk.getId());
             meta.put("chunk_type", chunk.getChunkType());
             meta.put("parent_id", chunk.getParentId());
-            meta.put("match_count", matchCount);
+            meta.put("match_count", hit.matchCount());
             meta.put("paragraphIndex", chunk.getPosition());
             meta.put("pageNumber", chunk.getPosition() != null ? chunk.getPosition() + 1 : 1);
 
-            VectorStoreProvider.SearchResult result = VectorStoreProvider.SearchResult.builder()
+            keywordRanked.add(VectorStoreProvider.SearchResult.builder()
                     .content(chunk.getContent())
-                    .score(keywordScore)
+                    .score(hit.relevance())
                     .matchType("KEYWORD")
                     .metadata(meta)
-                    .build();
-            finalResults.add(result);
-            keywordAdded++;
+                    .build());
         }
 
-        // 统计向量和关键词结果数量
-        long vectorCount = finalResults.stream().filter(r -> "VECTOR".equals(r.getMatchType())).count();
-        long keywordCount = finalResults.stream().filter(r -> "KEYWORD".equals(r.getMatchType())).count();
-        log.info("Keyword chunks added: {}. Before sort: VECTOR={}, KEYWORD={}, total={}",
-                keywordAdded, vectorCount, keywordCount, finalResults.size());
-
-        // 7. Sort by score
-        finalResults.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        // 7. Fuse the two rankings (RRF by default; 'weighted' keeps the legacy alpha-weighted scores)
+        List<VectorStoreProvider.SearchResult> finalResults = "weighted".equalsIgnoreCase(fusionMode)
+                ? weightedFusion(vectorRanked, keywordRanked, actualAlpha)
+                : ReciprocalRankFusion.fuse(vectorRanked, keywordRanked, actualAlpha, rrfK);
+        log.info("Fusion ({}): VECTOR={}, KEYWORD={}, total={}", fusionMode,
+                vectorRanked.size(), keywordRanked.size(), finalResults.size());
 
         // 8. Apply threshold filter (过滤低于阈值的结果)
         if (actualThreshold > 0) {
@@ -366,9 +332,11 @@ public class RetrievalService {
             log.info("After threshold filter ({}): size={}", actualThreshold, finalResults.size());
         }
 
+        timer.mark("fuse");
+
         // 排序后再统计一次
-        vectorCount = finalResults.stream().filter(r -> "VECTOR".equals(r.getMatchType())).count();
-        keywordCount = finalResults.stream().filter(r -> "KEYWORD".equals(r.getMatchType())).count();
+        long vectorCount = finalResults.stream().filter(r -> !"KEYWORD".equals(r.getMatchType())).count();
+        long keywordCount = finalResults.stream().filter(r -> !"VECTOR".equals(r.getMatchType())).count();
 
         // 9. Apply Rerank (if enabled)
         if (rerankModel != null && !"none".equalsIgnoreCase(rerankModel) && !finalResults.isEmpty()) {
@@ -379,39 +347,128 @@ public class RetrievalService {
             if (!rerankedResults.isEmpty()) {
                 finalResults = rerankedResults;
                 log.info("After rerank: size={}", finalResults.size());
+            } else {
+                complete = false;
             }
+            timer.mark("rerank");
         }
+        timer.finish(kbId);
 
         log.info("Returning final results: size={}, topK={}, VECTOR={}, KEYWORD={}",
                 finalResults.size(), topK, vectorCount, keywordCount);
-        return finalResults.stream().limit(topK).collect(Collectors.toList());
+        return new Retrieval(finalResults.stream().limit(topK).collect(Collectors.toList()), complete);
+    }
+
+    private record Retrieval(List<VectorStoreProvider.SearchResult> results, boolean complete) {
+    }
+
+    /**
+     * 向量分支结果；degraded 表示向量服务不可用或检索失败，results 为空且不代表“没有相关内容”
+     */
+    private record VectorLeg(List<VectorStoreProvider.SearchResult> results, boolean degraded) {
+    }
+
+    /**
+     * 并发检索多个知识库（每个知识库一个分支，共享截止时间）
+     *
+     * @return kbId -> 结果，按 kbIds 顺序；超时或失败的知识库不在结果中
+     */
+    public Map<String, List<VectorStoreProvider.SearchResult>> hybridSearchAll(List<String> kbIds, String query,
+            int topK, String embeddingModel, Double alpha, Double threshold, String rerankModel) {
+        if (kbIds == null || kbIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (kbIds.size() == 1) {
+            String kbId = kbIds.get(0);
+            return Map.of(kbId, hybridSearch(kbId, query, topK, embeddingModel, alpha, threshold, rerankModel));
+        }
+        Map<String, Callable<List<VectorStoreProvider.SearchResult>>> legs = new LinkedHashMap<>();
+        for (String kbId : kbIds) {
+            legs.put("kb:" + kbId,
+                    () -> hybridSearch(kbId, query, topK, embeddingModel, alpha, threshold, rerankModel));
+        }
+        Map<String, List<VectorStoreProvider.SearchResult>> gathered = retrievalExecutor.gather(legs,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMs));
+        Map<String, List<VectorStoreProvider.SearchResult>> results = new LinkedHashMap<>();
+        gathered.forEach((leg, value) -> results.put(leg.substring("kb:".length()), value));
+        return results;
+    }
+
+    /**
+     * 向量检索分支：服务不可用或检索失败时返回空结果并标记降级
+     */
+    private VectorLeg vectorSearch(String kbId, String query, int k, String embeddingModel,
+            List<String> documentIds) {
+        if (vectorServiceUnavailable) {
+            log.info("Vector service previously marked as unavailable, using keyword-only search");
+            return new VectorLeg(List.of(), true);
+        }
+        try {
+            // Filter by documentIds if provided (pushed down into the vector store)
+            return new VectorLeg(vectorService.searchOrThrow(kbId, query, k, embeddingModel,
+                    documentIds != null && !documentIds.isEmpty() ? documentIds : null), false);
+        } catch (Exception e) {
+            log.warn("Vector search failed, falling back to keyword-only search: {}", e.getMessage());
+            // 标记向量服务不可用，避免后续请求频繁尝试
+            vectorServiceUnavailable = true;
+            return new VectorLeg(List.of(), true);
+        }
+    }
+
+    /**
+     * 旧版融合：向量分数 * alpha + 关键词相关度 * (1 - alpha)，按 chunk_id 去重（向量结果优先）
+     */
+    private List<VectorStoreProvider.SearchResult> weightedFusion(List<VectorStoreProvider.SearchResult> vectorRanked,
+            List<VectorStoreProvider.SearchResult> keywordRanked, double alpha) {
+        List<VectorStoreProvider.SearchResult> results = new ArrayList<>();
+        Set<String> includedChunkIds = new HashSet<>();
+        for (VectorStoreProvider.SearchResult r : vectorRanked) {
+            r.setScore(r.getScore() * alpha);
+            results.add(r);
+            Object chunkId = r.getMetadata().get("chunk_id");
+            if (chunkId != null) {
+                includedChunkIds.add(String.valueOf(chunkId));
+            }
+        }
+        for (VectorStoreProvider.SearchResult r : keywordRanked) {
+            if (includedChunkIds.add(String.valueOf(r.getMetadata().get("chunk_id")))) {
+                r.setScore(r.getScore() * (1.0 - alpha));
+                results.add(r);
+            }
+        }
+        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return results;
     }
 
     /**
      * Keyword-only search fallback
+     *
+     * keywordHits 为混合检索关键词分支已返回的结果，直接复用；为 null（分支超时或未执行）时才重新检索
      */
-    private List<VectorStoreProvider.SearchResult> keywordOnlySearch(String kbId, String query, int topK, List<String> documentIds) {
+    private List<VectorStoreProvider.SearchResult> keywordOnlySearch(String kbId, String query, int topK,
+            List<String> documentIds, List<KeywordHit> keywordHits) {
         log.warn("keywordOnlySearch called: kbId={}, query={}, topK={}, documentIds={}", kbId, query, topK, documentIds);
         // 先走纯文本索引文件（parsed/*.txt）检索，再补 DB 关键词检索，最后按分数融合。
         List<VectorStoreProvider.SearchResult> textIndexResults =
                 textIndexFallbackSearch(kbId, query, Math.max(topK * 3, 10), documentIds);
-        List<Map.Entry<KnowledgeDocumentChunk, Integer>> keywordResults = keywordSearch(kbId, query, Math.max(topK * 2, 10), documentIds);
+        List<KeywordHit> keywordResults = keywordHits != null
+                ? keywordHits
+                : keywordSearch(kbId, query, Math.max(topK * 2, 10), documentIds);
 
         Map<String, VectorStoreProvider.SearchResult> merged = new LinkedHashMap<>();
         for (VectorStoreProvider.SearchResult result : textIndexResults) {
             merged.put(buildResultDedupKey(result), result);
         }
 
-        for (Map.Entry<KnowledgeDocumentChunk, Integer> entry : keywordResults) {
-            KnowledgeDocumentChunk chunk = entry.getKey();
-            int matchCount = entry.getValue();
+        for (KeywordHit hit : keywordResults) {
+            KnowledgeDocumentChunk chunk = hit.chunk();
+            int matchCount = hit.matchCount();
             if (chunk.getContent() == null || chunk.getContent().isBlank()) {
                 continue;
             }
 
-            double matchRatio = Math.min(matchCount / 3.0, 1.0);
             // 让 DB 关键词结果作为补充，不覆盖文本索引更高质量命中。
-            double keywordScore = 0.55 * matchRatio;
+            double keywordScore = 0.55 * hit.relevance();
 
             Map<String, Object> meta = new HashMap<>();
             meta.put("doc_id", chunk.getDocumentId());
@@ -630,14 +687,52 @@ public class RetrievalService {
     }
 
     /**
-     * Keyword search helper - split query into words and search each
-     * Returns map of chunk to matched word count
+     * Keyword search helper
+     * 优先走 BM25 倒排索引 (KeywordIndexService)；索引未就绪时回退到逐词 LIKE 查询
      */
-    private List<Map.Entry<KnowledgeDocumentChunk, Integer>> keywordSearch(String kbId, String query, int topK, List<String> documentIds) {
+    private List<KeywordHit> keywordSearch(String kbId, String query, int topK, List<String> documentIds) {
         if (query == null || query.trim().isEmpty()) {
             return new ArrayList<>();
         }
 
+        Optional<List<Bm25InvertedIndex.Hit>> indexed = keywordIndexService.search(kbId, query, topK * 2, documentIds);
+        if (indexed.isPresent()) {
+            return resolveIndexHits(indexed.get());
+        }
+        return likeKeywordSearch(kbId, query, topK, documentIds);
+    }
+
+    /**
+     * 将索引命中按 ID 批量加载为分片实体，保持 BM25 排序；分数按最高分归一化到 (0, 1]
+     */
+    private List<KeywordHit> resolveIndexHits(List<Bm25InvertedIndex.Hit> hits) {
+        if (hits.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, KnowledgeDocumentChunk> chunksById = chunkRepository
+                .findByIdIn(hits.stream().map(Bm25InvertedIndex.Hit::chunkId).toList())
+                .stream()
+                .collect(Collectors.toMap(KnowledgeDocumentChunk::getId, c -> c, (a, b) -> a));
+
+        double maxScore = hits.get(0).score();
+        List<KeywordHit> results = new ArrayList<>(hits.size());
+        for (Bm25InvertedIndex.Hit hit : hits) {
+            KnowledgeDocumentChunk chunk = chunksById.get(hit.chunkId());
+            if (chunk == null) {
+                continue;
+            }
+            double relevance = maxScore > 0 ? hit.score() / maxScore : 0.0;
+            results.add(new KeywordHit(chunk, relevance, hit.matchedTerms()));
+        }
+        log.info("Keyword index search returned {} chunks", results.size());
+        return results;
+    }
+
+    /**
+     * LIKE fallback - split query into words and search each
+     * Ranking is matched word count
+     */
+    private List<KeywordHit> likeKeywordSearch(String kbId, String query, int topK, List<String> documentIds) {
         // Split query into words (keep words with length >= 1)
         String[] words = query.split("[\\s,，.。!?;；]+");
         Set<String> searchWords = new java.util.HashSet<>();
@@ -679,13 +774,27 @@ public class RetrievalService {
             }
         }
 
-        List<Map.Entry<KnowledgeDocumentChunk, Integer>> keywordChunks = new ArrayList<>(chunkMap.values());
+        List<KeywordHit> keywordChunks = new ArrayList<>();
+        for (Map.Entry<KnowledgeDocumentChunk, Integer> entry : chunkMap.values()) {
+            // 匹配度（匹配词数/3，上限1.0）
+            double relevance = Math.min(entry.getValue() / 3.0, 1.0);
+            keywordChunks.add(new KeywordHit(entry.getKey(), relevance, entry.getValue()));
+        }
         if (keywordChunks.size() > topK * 2) {
             keywordChunks = keywordChunks.subList(0, topK * 2);
         }
         return keywordChunks;
     }
 
+    /**
+     * 关键词命中
+     *
+     * @param relevance  归一化相关度 [0, 1]
+     * @param matchCount 命中的查询词数
+     */
+    private record KeywordHit(KnowledgeDocumentChunk chunk, double relevance, int matchCount) {
+    }
+
     /**
      * 多模态检索 (图片 -> 文本分析 -> 混合检索)
      */
@@ -708,4 +817,38 @@ public class RetrievalService {
         response.put("embeddingModel", embeddingModel);
         return response;
     }
+
+    /**
+     * 检索各阶段耗时：逐阶段记录到 knowledge.retrieval.stage 计时器，结束时输出一行耗时分解
+     */
+    private final class StageTimer {
+        private final long start = System.nanoTime();
+        private final Map<String, Long> stages = new LinkedHashMap<>();
+        private long last = start;
+
+        void mark(String stage) {
+            long now = System.nanoTime();
+            stages.put(stage, now - last);
+            Timer.builder("knowledge.retrieval.stage")
+                    .description("Hybrid retrieval latency per stage")
+                    .tag("stage", stage)
+                    .register(meterRegistry)
+                    .record(now - last, TimeUnit.NANOSECONDS);
+            last = now;
+        }
+
+        void finish(String kbId) {
+            long total = System.nanoTime() - start;
+            Timer.builder("knowledge.retrieval.stage")
+                    .description("Hybrid retrieval latency per stage")
+                    .tag("stage", "total")
+                    .register(meterRegistry)
+                    .record(total, TimeUnit.NANOSECONDS);
+            StringBuilder breakdown = new StringBuilder();
+            stages.forEach((stage, nanos) -> breakdown.append(stage).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms "));
+            log.info("HybridSearch latency: kbId={}, total={}ms, {}", kbId,
+                    TimeUnit.NANOSECONDS.toMillis(total), breakdown.toString().trim());
+        }
+    }
 }
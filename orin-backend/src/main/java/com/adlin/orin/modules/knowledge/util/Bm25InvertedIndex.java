@@ -0,0 +1,480 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory BM25 inverted index (one instance per knowledge base)
+ *
+ * Layout:
+ * - Each chunk gets an int ordinal; ordinal -> chunkId / documentId / length / postings it appears in
+ * - Postings: term -> (ordinal[], tf[]) append-only arrays plus a live document frequency,
+ *   kept up to date on add / delete so scoring never rescans a posting list
+ * - Deletes only clear the live bit (tombstone); once the dead ratio exceeds {@link #COMPACT_DEAD_RATIO}
+ *   live chunks are renumbered densely and postings, ordinal arrays and document lists are compacted together
+ *
+ * Thread safety: reads share a read lock, mutations take the write lock.
+ */
+public class Bm25InvertedIndex {
+
+    public static final double K1 = 1.2;
+    public static final double B = 0.75;
+
+    private static final int SEGMENT_MAGIC = 0x4F524942; // "ORIB"
+    private static final int SEGMENT_VERSION = 1;
+    private static final double COMPACT_DEAD_RATIO = 0.25;
+    private static final int COMPACT_MIN_DEAD = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> ordinalByChunkId = new HashMap<>();
+    private final Map<String, IntList> ordinalsByDocument = new HashMap<>();
+    private ArrayList<String> chunkIds = new ArrayList<>();
+    private ArrayList<String> documentIds = new ArrayList<>();
+    private IntList lengths = new IntList();
+    /** ordinal -> postings containing the chunk (null once dead), used to maintain live document frequencies */
+    private ArrayList<Posting[]> chunkPostings = new ArrayList<>();
+    private final BitSet live = new BitSet();
+    private final Map<String, Posting> postings = new HashMap<>();
+
+    private long totalLength;
+    private int liveCount;
+    private int deadCount;
+
+    /**
+     * 检索命中
+     *
+     * @param matchedTerms number of distinct query terms found in the chunk
+     */
+    public record Hit(String chunkId, String documentId, double score, int matchedTerms) {
+    }
+
+    /**
+     * Index (or re-index) a single chunk
+     */
+    public void addChunk(String chunkId, String documentId, String content) {
+        if (chunkId == null) {
+            return;
+        }
+        List<String> terms = KeywordTokenizer.tokenize(content);
+
+        lock.writeLock().lock();
+        try {
+            Integer existing = ordinalByChunkId.get(chunkId);
+            if (existing != null) {
+                markDead(existing);
+            }
+
+            int ordinal = chunkIds.size();
+            chunkIds.add(chunkId);
+            documentIds.add(documentId);
+            lengths.add(terms.size());
+            live.set(ordinal);
+            ordinalByChunkId.put(chunkId, ordinal);
+            ordinalsByDocument.computeIfAbsent(documentId, k -> new IntList()).add(ordinal);
+            totalLength += terms.size();
+            liveCount++;
+
+            Map<String, Integer> tf = new HashMap<>();
+            for (String term : terms) {
+                tf.merge(term, 1, Integer::sum);
+            }
+            Posting[] containing = new Posting[tf.size()];
+            int t = 0;
+            for (Map.Entry<String, Integer> entry : tf.entrySet()) {
+                Posting posting = postings.computeIfAbsent(entry.getKey(), k -> new Posting());
+                posting.add(ordinal, entry.getValue());
+                containing[t++] = posting;
+            }
+            chunkPostings.add(containing);
+            maybeCompact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all chunks belonging to a document
+     */
+    public void removeDocument(String documentId) {
+        lock.writeLock().lock();
+        try {
+            IntList ordinals = ordinalsByDocument.remove(documentId);
+            if (ordinals == null) {
+                return;
+            }
+            for (int i = 0; i < ordinals.size; i++) {
+                markDead(ordinals.values[i]);
+            }
+            maybeCompact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a single chunk
+     */
+    public void removeChunk(String chunkId) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinalByChunkId.get(chunkId);
+            if (ordinal != null) {
+                markDead(ordinal);
+                maybeCompact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 top-k search
+     *
+     * @param query          raw query text
+     * @param topK           max hits to return
+     * @param documentFilter optional document id whitelist (null = no filter)
+     * @return hits sorted by score descending
+     */
+    public List<Hit> search(String query, int topK, Set<String> documentFilter) {
+        Set<String> queryTerms = new LinkedHashSet<>(KeywordTokenizer.tokenize(query));
+        if (queryTerms.isEmpty() || topK <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (liveCount == 0) {
+                return Collections.emptyList();
+            }
+            double avgLength = Math.max(1.0, (double) totalLength / liveCount);
+            Map<Integer, double[]> accumulators = new HashMap<>();
+
+            for (String term : queryTerms) {
+                Posting posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+                int df = posting.liveDocFrequency;
+                if (df == 0) {
+                    continue;
+                }
+                double idf = Math.log(1.0 + (liveCount - df + 0.5) / (df + 0.5));
+
+                for (int i = 0; i < posting.size; i++) {
+                    int ordinal = posting.ordinals[i];
+                    if (!live.get(ordinal)) {
+                        continue;
+                    }
+                    if (documentFilter != null && !documentFilter.contains(documentIds.get(ordinal))) {
+                        continue;
+                    }
+                    int tf = posting.frequencies[i];
+                    double norm = K1 * (1 - B + B * lengths.values[ordinal] / avgLength);
+                    double termScore = idf * (tf * (K1 + 1)) / (tf + norm);
+
+                    double[] acc = accumulators.computeIfAbsent(ordinal, k -> new double[2]);
+                    acc[0] += termScore;
+                    acc[1] += 1;
+                }
+            }
+
+            // Min-heap of size k keeps the best hits without sorting every candidate
+            PriorityQueue<Hit> heap = new PriorityQueue<>(topK + 1,
+                    (a, b) -> Double.compare(a.score(), b.score()));
+            for (Map.Entry<Integer, double[]> entry : accumulators.entrySet()) {
+                double score = entry.getValue()[0];
+                if (heap.size() < topK) {
+                    heap.offer(toHit(entry.getKey(), entry.getValue()));
+                } else if (score > heap.peek().score()) {
+                    heap.poll();
+                    heap.offer(toHit(entry.getKey(), entry.getValue()));
+                }
+            }
+
+            List<Hit> hits = new ArrayList<>(heap);
+            hits.sort((a, b) -> Double.compare(b.score(), a.score()));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ========== Segment persistence ==========
+
+    /**
+     * Write a compacted segment (live chunks only)
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            int[] remap = new int[chunkIds.size()];
+            Arrays.fill(remap, -1);
+            int next = 0;
+            for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+                remap[ordinal] = next++;
+            }
+
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(SEGMENT_VERSION);
+            out.writeInt(liveCount);
+            for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+                out.writeUTF(chunkIds.get(ordinal));
+                out.writeUTF(documentIds.get(ordinal) != null ? documentIds.get(ordinal) : "");
+                out.writeInt(lengths.values[ordinal]);
+            }
+
+            List<Map.Entry<String, Posting>> nonEmpty = new ArrayList<>();
+            for (Map.Entry<String, Posting> entry : postings.entrySet()) {
+                if (entry.getValue().liveDocFrequency > 0) {
+                    nonEmpty.add(entry);
+                }
+            }
+            out.writeInt(nonEmpty.size());
+            for (Map.Entry<String, Posting> entry : nonEmpty) {
+                Posting posting = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(posting.liveDocFrequency);
+                for (int i = 0; i < posting.size; i++) {
+                    int ordinal = posting.ordinals[i];
+                    if (live.get(ordinal)) {
+                        out.writeInt(remap[ordinal]);
+                        out.writeInt(posting.frequencies[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Load a segment previously written by {@link #writeTo(DataOutputStream)}
+     */
+    public static Bm25InvertedIndex readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SEGMENT_MAGIC) {
+            throw new IOException("Not a keyword index segment");
+        }
+        int version = in.readInt();
+        if (version != SEGMENT_VERSION) {
+            throw new IOException("Unsupported keyword index segment version: " + version);
+        }
+
+        Bm25InvertedIndex index = new Bm25InvertedIndex();
+        int chunkCount = in.readInt();
+        index.chunkIds.ensureCapacity(chunkCount);
+        index.documentIds.ensureCapacity(chunkCount);
+        for (int ordinal = 0; ordinal < chunkCount; ordinal++) {
+            String chunkId = in.readUTF();
+            String documentId = in.readUTF();
+            int length = in.readInt();
+            index.chunkIds.add(chunkId);
+            index.documentIds.add(documentId);
+            index.lengths.add(length);
+            index.live.set(ordinal);
+            index.ordinalByChunkId.put(chunkId, ordinal);
+            index.ordinalsByDocument.computeIfAbsent(documentId, k -> new IntList()).add(ordinal);
+            index.totalLength += length;
+        }
+        index.liveCount = chunkCount;
+
+        List<List<Posting>> containing = new ArrayList<>(chunkCount);
+        for (int ordinal = 0; ordinal < chunkCount; ordinal++) {
+            containing.add(new ArrayList<>());
+        }
+        int termCount = in.readInt();
+        for (int t = 0; t < termCount; t++) {
+            String term = in.readUTF();
+            int size = in.readInt();
+            Posting posting = new Posting(size);
+            for (int i = 0; i < size; i++) {
+                int ordinal = in.readInt();
+                posting.add(ordinal, in.readInt());
+                containing.get(ordinal).add(posting);
+            }
+            index.postings.put(term, posting);
+        }
+        index.chunkPostings.ensureCapacity(chunkCount);
+        for (List<Posting> list : containing) {
+            index.chunkPostings.add(list.toArray(new Posting[0]));
+        }
+        return index;
+    }
+
+    // ========== Internal ==========
+
+    private Hit toHit(int ordinal, double[] acc) {
+        return new Hit(chunkIds.get(ordinal), documentIds.get(ordinal), acc[0], (int) acc[1]);
+    }
+
+    private void markDead(int ordinal) {
+        if (!live.get(ordinal)) {
+            return;
+        }
+        live.clear(ordinal);
+        ordinalByChunkId.remove(chunkIds.get(ordinal));
+        totalLength -= lengths.values[ordinal];
+        liveCount--;
+        deadCount++;
+        for (Posting posting : chunkPostings.get(ordinal)) {
+            posting.liveDocFrequency--;
+        }
+        chunkPostings.set(ordinal, null);
+    }
+
+    /**
+     * Once tombstones dominate, renumber live chunks densely (order preserved) and rewrite
+     * every structure keyed by ordinal, so re-indexing a knowledge base does not grow memory forever.
+     */
+    private void maybeCompact() {
+        if (deadCount < COMPACT_MIN_DEAD || deadCount < (liveCount + deadCount) * COMPACT_DEAD_RATIO) {
+            return;
+        }
+        int[] remap = new int[chunkIds.size()];
+        Arrays.fill(remap, -1);
+        ArrayList<String> liveChunkIds = new ArrayList<>(liveCount);
+        ArrayList<String> liveDocumentIds = new ArrayList<>(liveCount);
+        IntList liveLengths = new IntList(liveCount);
+        ArrayList<Posting[]> liveChunkPostings = new ArrayList<>(liveCount);
+        for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+            remap[ordinal] = liveChunkIds.size();
+            liveChunkIds.add(chunkIds.get(ordinal));
+            liveDocumentIds.add(documentIds.get(ordinal));
+            liveLengths.add(lengths.values[ordinal]);
+            liveChunkPostings.add(chunkPostings.get(ordinal));
+        }
+
+        postings.values().removeIf(posting -> posting.remap(remap) == 0);
+        ordinalsByDocument.values().removeIf(ordinals -> ordinals.remap(remap) == 0);
+        ordinalByChunkId.replaceAll((chunkId, ordinal) -> remap[ordinal]);
+        chunkIds = liveChunkIds;
+        documentIds = liveDocumentIds;
+        lengths = liveLengths;
+        chunkPostings = liveChunkPostings;
+        live.clear();
+        live.set(0, liveCount);
+        deadCount = 0;
+    }
+
+    /**
+     * Number of allocated ordinals (live + not yet compacted dead chunks)
+     */
+    int ordinalCount() {
+        lock.readLock().lock();
+        try {
+            return chunkIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final class Posting {
+        private int[] ordinals;
+        private int[] frequencies;
+        private int size;
+        private int liveDocFrequency;
+
+        Posting() {
+            this(4);
+        }
+
+        Posting(int capacity) {
+            ordinals = new int[Math.max(1, capacity)];
+            frequencies = new int[Math.max(1, capacity)];
+        }
+
+        void add(int ordinal, int frequency) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            ordinals[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+            liveDocFrequency++;
+        }
+
+        /**
+         * Drop dead entries and rewrite ordinals (remap[ordinal] = -1 for dead); shrinks oversized arrays
+         */
+        int remap(int[] remap) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int mapped = remap[ordinals[i]];
+                if (mapped >= 0) {
+                    ordinals[kept] = mapped;
+                    frequencies[kept] = frequencies[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            if (kept > 0 && kept < ordinals.length / 4) {
+                ordinals = Arrays.copyOf(ordinals, kept);
+                frequencies = Arrays.copyOf(frequencies, kept);
+            }
+            return kept;
+        }
+    }
+
+    private static final class IntList {
+        private int[] values;
+        private int size;
+
+        IntList() {
+            this(4);
+        }
+
+        IntList(int capacity) {
+            values = new int[Math.max(4, capacity)];
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int remap(int[] remap) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int mapped = remap[values[i]];
+                if (mapped >= 0) {
+                    values[kept++] = mapped;
+                }
+            }
+            size = kept;
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 文档分片级差异（增量重建索引用）
+ *
+ * {@link HierarchicalTextSplitter} 的分片 ID 由位置决定，文档开头插入一段就会让之后所有分片换 ID，
+ * 所以不能按 ID 比对：
+ * - 新分片先按内容（类型 + 正文）匹配已存分片，匹配上的沿用已存 ID，parentId / childrenIds 随之改写
+ * - 沿用 ID 后向量相关字段（正文、类型、父分片、标题、来源）不变、只有位置 / 序号 / 子分片列表变化的，
+ *   记为 moved，只更新数据库行，不重新向量化（检索时位置以数据库行为准）
+ * - 未匹配的新分片沿用自己的位置 ID；与沿用的已存 ID 冲突时派生一个新 ID
+ *
+ * 全量哈希（写入 content_hash）覆盖行和向量元数据里的所有字段，没有哈希的旧行总是重写。
+ */
+public final class ChunkDiff {
+
+    private ChunkDiff() {
+    }
+
+    /**
+     * 分片全量哈希（十六进制 SHA-256）：正文、类型、父子关系、标题、来源、位置
+     */
+    public static String hash(KnowledgeDocumentChunk chunk) {
+        MessageDigest digest = sha256();
+        update(digest, chunk.getChunkType());
+        update(digest, chunk.getParentId());
+        update(digest, chunk.getChildrenIds());
+        update(digest, chunk.getTitle());
+        update(digest, chunk.getSource());
+        update(digest, chunk.getPosition() != null ? chunk.getPosition().toString() : null);
+        update(digest, chunk.getChunkIndex() != null ? chunk.getChunkIndex().toString() : null);
+        update(digest, chunk.getContent());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 只含类型与正文的哈希，用于跨位置匹配分片
+     */
+    static String contentKey(KnowledgeDocumentChunk chunk) {
+        MessageDigest digest = sha256();
+        update(digest, chunk.getChunkType());
+        update(digest, chunk.getContent());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 比对已存分片与重新切分的分片。
+     * 副作用：新分片的 id / parentId / childrenIds 改写为沿用后的 ID，并写入 contentHash。
+     */
+    public static Delta diff(List<KnowledgeDocumentChunk> existing, List<KnowledgeDocumentChunk> incoming) {
+        Map<String, KnowledgeDocumentChunk> storedById = new HashMap<>();
+        Map<String, Deque<KnowledgeDocumentChunk>> storedByContent = new HashMap<>();
+        for (KnowledgeDocumentChunk chunk : existing) {
+            storedById.put(chunk.getId(), chunk);
+            storedByContent.computeIfAbsent(contentKey(chunk), k -> new ArrayDeque<>()).add(chunk);
+        }
+
+        // 1. 按内容匹配，同内容多份时按原顺序一一对应
+        Map<KnowledgeDocumentChunk, KnowledgeDocumentChunk> counterpart = new IdentityHashMap<>();
+        Map<String, String> finalIds = new HashMap<>();
+        Set<String> taken = new HashSet<>();
+        for (KnowledgeDocumentChunk chunk : incoming) {
+            Deque<KnowledgeDocumentChunk> candidates = storedByContent.get(contentKey(chunk));
+            KnowledgeDocumentChunk stored = candidates != null ? candidates.poll() : null;
+            if (stored != null) {
+                counterpart.put(chunk, stored);
+                finalIds.put(chunk.getId(), stored.getId());
+                taken.add(stored.getId());
+            }
+        }
+
+        // 2. 未匹配的分片：位置 ID 恰好是某个未沿用的已存分片时视为就地修改，与沿用 ID 冲突时另派生
+        for (KnowledgeDocumentChunk chunk : incoming) {
+            if (counterpart.containsKey(chunk)) {
+                continue;
+            }
+            String id = chunk.getId();
+            if (taken.contains(id)) {
+                id = freshId(id, taken, storedById.keySet());
+            } else if (storedById.containsKey(id)) {
+                counterpart.put(chunk, storedById.get(id));
+            }
+            taken.add(id);
+            finalIds.put(chunk.getId(), id);
+        }
+
+        // 3. 改写 ID 与父子引用后再算全量哈希
+        for (KnowledgeDocumentChunk chunk : incoming) {
+            chunk.setId(finalIds.get(chunk.getId()));
+            if (chunk.getParentId() != null) {
+                chunk.setParentId(finalIds.getOrDefault(chunk.getParentId(), chunk.getParentId()));
+            }
+            chunk.setChildrenIds(remapIdList(chunk.getChildrenIds(), finalIds));
+            chunk.setContentHash(hash(chunk));
+        }
+
+        List<KnowledgeDocumentChunk> inserted = new ArrayList<>();
+        List<KnowledgeDocumentChunk> updated = new ArrayList<>();
+        List<KnowledgeDocumentChunk> moved = new ArrayList<>();
+        int unchanged = 0;
+        for (KnowledgeDocumentChunk chunk : incoming) {
+            KnowledgeDocumentChunk stored = counterpart.get(chunk);
+            if (stored == null) {
+                inserted.add(chunk);
+            } else if (stored.getContentHash() == null) {
+                updated.add(chunk);
+            } else if (chunk.getContentHash().equals(stored.getContentHash())) {
+                unchanged++;
+            } else if (sameVectorFields(chunk, stored)) {
+                moved.add(chunk);
+            } else {
+                updated.add(chunk);
+            }
+        }
+
+        List<String> deletedIds = new ArrayList<>();
+        for (KnowledgeDocumentChunk chunk : existing) {
+            if (!taken.contains(chunk.getId())) {
+                deletedIds.add(chunk.getId());
+            }
+        }
+        return new Delta(inserted, updated, moved, deletedIds, unchanged);
+    }
+
+    /**
+     * 向量及其检索用元数据是否不变（位置、序号、子分片列表只存在数据库行里参与检索）
+     */
+    private static boolean sameVectorFields(KnowledgeDocumentChunk a, KnowledgeDocumentChunk b) {
+        return Objects.equals(a.getContent(), b.getContent())
+                && Objects.equals(a.getChunkType(), b.getChunkType())
+                && Objects.equals(a.getParentId(), b.getParentId())
+                && Objects.equals(a.getTitle(), b.getTitle())
+                && Objects.equals(a.getSource(), b.getSource());
+    }
+
+    /**
+     * 与分片器相同的 "前缀_数字" 形式派生一个未被占用的 ID
+     */
+    private static String freshId(String id, Set<String> taken, Set<String> stored) {
+        String prefix = id.length() > 2 && id.charAt(1) == '_' ? id.substring(0, 2) : "";
+        for (int attempt = 1; ; attempt++) {
+            String candidate = prefix + Math.abs((id + "_moved_" + attempt).hashCode());
+            if (!taken.contains(candidate) && !stored.contains(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * childrenIds 以 Arrays.toString 形式存储，如 "[c_1, c_2]"
+     */
+    private static String remapIdList(String ids, Map<String, String> finalIds) {
+        if (ids == null || ids.length() < 2 || !ids.startsWith("[") || !ids.endsWith("]")) {
+            return ids;
+        }
+        String body = ids.substring(1, ids.length() - 1).trim();
+        if (body.isEmpty()) {
+            return ids;
+        }
+        List<String> remapped = new ArrayList<>();
+        for (String id : body.split(",")) {
+            String trimmed = id.trim();
+            remapped.add(finalIds.getOrDefault(trimmed, trimmed));
+        }
+        return remapped.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) 1);
+        digest.update(new byte[] {
+                (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+                (byte) (bytes.length >>> 8), (byte) bytes.length });
+        digest.update(bytes);
+    }
+
+    /**
+     * 单个文档的差异结果
+     */
+    public record Delta(List<KnowledgeDocumentChunk> inserted,
+            List<KnowledgeDocumentChunk> updated,
+            List<KnowledgeDocumentChunk> moved,
+            List<String> deletedIds,
+            int unchanged) {
+
+        /**
+         * 需要写入数据库的分片（新增、修改、仅元数据变化）
+         */
+        public List<KnowledgeDocumentChunk> changed() {
+            List<KnowledgeDocumentChunk> changed = new ArrayList<>(inserted.size() + updated.size() + moved.size());
+            changed.addAll(inserted);
+            changed.addAll(updated);
+            changed.addAll(moved);
+            return changed;
+        }
+
+        /**
+         * 需要（重新）写入向量库的分片
+         */
+        public List<KnowledgeDocumentChunk> reembedded() {
+            List<KnowledgeDocumentChunk> reembedded = new ArrayList<>(inserted.size() + updated.size());
+            reembedded.addAll(inserted);
+            reembedded.addAll(updated);
+            return reembedded;
+        }
+
+        /**
+         * 重新写入前需要先从向量库删除的向量 ID
+         */
+        public List<String> staleIds() {
+            List<String> stale = new ArrayList<>(deletedIds.size() + updated.size());
+            stale.addAll(deletedIds);
+            updated.forEach(chunk -> stale.add(chunk.getId()));
+            return stale;
+        }
+
+        public boolean isEmpty() {
+            return inserted.isEmpty() && updated.isEmpty() && moved.isEmpty() && deletedIds.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "inserted=" + inserted.size() + ", updated=" + updated.size() + ", moved=" + moved.size()
+                    + ", deleted=" + deletedIds.size() + ", unchanged=" + unchanged;
+        }
+    }
+}
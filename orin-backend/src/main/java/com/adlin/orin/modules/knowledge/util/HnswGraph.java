@@ -0,0 +1,471 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical Navigable Small World graph (Malkov &amp; Yashunin) over an external vector source
+ *
+ * The graph stores only adjacency lists; vectors live in a {@link VectorSource}
+ * (normally a {@link MappedVectorStore}), addressed by dense int ordinals.
+ * Similarity is "larger is closer" (cosine on normalized vectors).
+ *
+ * Deletes are handled by the caller through the {@code accept} predicate of
+ * {@link #search}: rejected nodes are still traversed (so the graph stays connected)
+ * but never returned.
+ *
+ * Thread-safety: one writer / many readers via a read-write lock.
+ */
+public class HnswGraph {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+
+    /**
+     * Vector access used by the graph
+     */
+    public interface VectorSource {
+        int dimension();
+
+        int size();
+
+        float similarity(float[] query, int ordinal);
+
+        float similarity(int a, int b);
+
+        /**
+         * Copy of the stored vector
+         */
+        float[] get(int ordinal);
+    }
+
+    /**
+     * Search hit (ordinal + similarity)
+     */
+    public record Neighbor(int ordinal, float score) {
+    }
+
+    private final int m;
+    private final int maxConnections0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    // links.get(node)[level] = neighbor ordinals; linkCounts.get(node)[level] = used slots
+    private final List<int[][]> links = new ArrayList<>();
+    private final List<int[]> linkCounts = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public HnswGraph(int m, int efConstruction) {
+        this(m, efConstruction, 42L);
+    }
+
+    public HnswGraph(int m, int efConstruction, long seed) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW M must be >= 2: " + m);
+        }
+        this.m = m;
+        this.maxConnections0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1d / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return links.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert the next vector of the source; ordinal must equal the current graph size
+     */
+    public void insert(VectorSource vectors, int ordinal) {
+        lock.writeLock().lock();
+        try {
+            if (ordinal != links.size()) {
+                throw new IllegalArgumentException("HNSW ordinals must be dense: expected " + links.size() + ", got " + ordinal);
+            }
+            int level = randomLevel();
+            int[][] nodeLinks = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                nodeLinks[l] = new int[maxConnections(l)];
+            }
+            links.add(nodeLinks);
+            linkCounts.add(new int[level + 1]);
+
+            if (entryPoint < 0) {
+                entryPoint = ordinal;
+                maxLevel = level;
+                return;
+            }
+
+            float[] vector = vectors.get(ordinal);
+            int current = entryPoint;
+            float currentScore = vectors.similarity(vector, current);
+            // Greedy descent through layers above the node's level
+            for (int l = maxLevel; l > level; l--) {
+                boolean changed = true;
+                while (changed) {
+                    changed = false;
+                    int[] ns = links.get(current)[l];
+                    int count = linkCounts.get(current)[l];
+                    for (int i = 0; i < count; i++) {
+                        float s = vectors.similarity(vector, ns[i]);
+                        if (s > currentScore) {
+                            currentScore = s;
+                            current = ns[i];
+                            changed = true;
+                        }
+                    }
+                }
+            }
+
+            final int node = ordinal;
+            List<Neighbor> entries = List.of(new Neighbor(current, currentScore));
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                final int layer = l;
+                List<Neighbor> candidates = searchLayer(entries, o -> vectors.similarity(vector, o), efConstruction, layer);
+                int[] selected = selectNeighbors(vectors, candidates, m);
+                int[] nodeLevelLinks = links.get(node)[layer];
+                System.arraycopy(selected, 0, nodeLevelLinks, 0, selected.length);
+                linkCounts.get(node)[layer] = selected.length;
+                for (int neighbor : selected) {
+                    connect(vectors, neighbor, node, layer);
+                }
+                entries = candidates;
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = ordinal;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate k-nearest-neighbour search
+     *
+     * @param accept filter for returned ordinals (tombstones, doc-id filters); null accepts everything
+     */
+    public List<Neighbor> search(VectorSource vectors, float[] query, int k, int ef, IntPredicate accept) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            int current = entryPoint;
+            float currentScore = vectors.similarity(query, current);
+            for (int l = maxLevel; l > 0; l--) {
+                boolean changed = true;
+                while (changed) {
+                    changed = false;
+                    int[] ns = links.get(current)[l];
+                    int count = linkCounts.get(current)[l];
+                    for (int i = 0; i < count; i++) {
+                        float s = vectors.similarity(query, ns[i]);
+                        if (s > currentScore) {
+                            currentScore = s;
+                            current = ns[i];
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            return searchBase(vectors, query, current, currentScore, k, Math.max(ef, k), accept);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Exact search over every ordinal (benchmark baseline / small filtered sets)
+     */
+    public static List<Neighbor> bruteForce(VectorSource vectors, float[] query, int k, IntPredicate accept) {
+        PriorityQueue<Neighbor> top = new PriorityQueue<>(Math.max(1, k), (a, b) -> Float.compare(a.score(), b.score()));
+        int size = vectors.size();
+        for (int o = 0; o < size; o++) {
+            if (accept != null && !accept.test(o)) {
+                continue;
+            }
+            offer(top, new Neighbor(o, vectors.similarity(query, o)), k);
+        }
+        return drainDescending(top);
+    }
+
+    /**
+     * Exact search over a given set of ordinals
+     */
+    public static List<Neighbor> bruteForceAmong(VectorSource vectors, float[] query, int k, int[] ordinals) {
+        PriorityQueue<Neighbor> top = new PriorityQueue<>(Math.max(1, k), (a, b) -> Float.compare(a.score(), b.score()));
+        for (int o : ordinals) {
+            offer(top, new Neighbor(o, vectors.similarity(query, o)), k);
+        }
+        return drainDescending(top);
+    }
+
+    // --- Persistence ---
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(m);
+            out.writeInt(links.size());
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < links.size(); node++) {
+                int[][] nodeLinks = links.get(node);
+                int[] counts = linkCounts.get(node);
+                out.writeByte(nodeLinks.length - 1);
+                for (int l = 0; l < nodeLinks.length; l++) {
+                    out.writeShort(counts[l]);
+                    for (int i = 0; i < counts[l]; i++) {
+                        out.writeInt(nodeLinks[l][i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static HnswGraph readFrom(DataInputStream in, int efConstruction) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an HNSW graph segment");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported HNSW graph version: " + version);
+        }
+        HnswGraph graph = new HnswGraph(in.readInt(), efConstruction);
+        int size = in.readInt();
+        graph.entryPoint = in.readInt();
+        graph.maxLevel = in.readInt();
+        for (int node = 0; node < size; node++) {
+            int level = in.readUnsignedByte();
+            int[][] nodeLinks = new int[level + 1][];
+            int[] counts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                nodeLinks[l] = new int[graph.maxConnections(l)];
+                counts[l] = in.readUnsignedShort();
+                for (int i = 0; i < counts[l]; i++) {
+                    nodeLinks[l][i] = in.readInt();
+                }
+            }
+            graph.links.add(nodeLinks);
+            graph.linkCounts.add(counts);
+        }
+        return graph;
+    }
+
+    // --- Internals ---
+
+    private interface Scorer {
+        float score(int ordinal);
+    }
+
+    private int maxConnections(int level) {
+        return level == 0 ? maxConnections0 : m;
+    }
+
+    private int randomLevel() {
+        double r = random.nextDouble();
+        int level = (int) (-Math.log(Math.max(r, Double.MIN_VALUE)) * levelMultiplier);
+        return Math.min(level, 30);
+    }
+
+    /**
+     * Beam search within one layer (used for construction)
+     */
+    private List<Neighbor> searchLayer(List<Neighbor> entries, Scorer scorer, int ef, int level) {
+        BitSet visited = new BitSet(links.size());
+        PriorityQueue<Neighbor> candidates = new PriorityQueue<>((a, b) -> Float.compare(b.score(), a.score()));
+        PriorityQueue<Neighbor> results = new PriorityQueue<>((a, b) -> Float.compare(a.score(), b.score()));
+        for (Neighbor e : entries) {
+            if (!visited.get(e.ordinal())) {
+                visited.set(e.ordinal());
+                candidates.add(e);
+                offer(results, e, ef);
+            }
+        }
+        while (!candidates.isEmpty()) {
+            Neighbor c = candidates.poll();
+            if (results.size() >= ef && c.score() < results.peek().score()) {
+                break;
+            }
+            int[][] cLinks = links.get(c.ordinal());
+            if (level >= cLinks.length) {
+                continue;
+            }
+            int[] ns = cLinks[level];
+            int count = linkCounts.get(c.ordinal())[level];
+            for (int i = 0; i < count; i++) {
+                int n = ns[i];
+                if (visited.get(n)) {
+                    continue;
+                }
+                visited.set(n);
+                float s = scorer.score(n);
+                if (results.size() < ef || s > results.peek().score()) {
+                    Neighbor nb = new Neighbor(n, s);
+                    candidates.add(nb);
+                    offer(results, nb, ef);
+                }
+            }
+        }
+        return drainDescending(results);
+    }
+
+    /**
+     * Layer-0 search with result filtering; rejected nodes still expand the frontier
+     */
+    private List<Neighbor> searchBase(VectorSource vectors, float[] query, int entry, float entryScore,
+                                      int k, int ef, IntPredicate accept) {
+        BitSet visited = new BitSet(links.size());
+        PriorityQueue<Neighbor> candidates = new PriorityQueue<>((a, b) -> Float.compare(b.score(), a.score()));
+        // frontier bound tracks all visited nodes, results only accepted ones
+        PriorityQueue<Neighbor> frontier = new PriorityQueue<>((a, b) -> Float.compare(a.score(), b.score()));
+        PriorityQueue<Neighbor> results = new PriorityQueue<>((a, b) -> Float.compare(a.score(), b.score()));
+
+        Neighbor start = new Neighbor(entry, entryScore);
+        visited.set(entry);
+        candidates.add(start);
+        offer(frontier, start, ef);
+        if (accept == null || accept.test(entry)) {
+            offer(results, start, ef);
+        }
+
+        while (!candidates.isEmpty()) {
+            Neighbor c = candidates.poll();
+            if (frontier.size() >= ef && c.score() < frontier.peek().score()
+                    && results.size() >= k) {
+                break;
+            }
+            int[] ns = links.get(c.ordinal())[0];
+            int count = linkCounts.get(c.ordinal())[0];
+            for (int i = 0; i < count; i++) {
+                int n = ns[i];
+                if (visited.get(n)) {
+                    continue;
+                }
+                visited.set(n);
+                float s = vectors.similarity(query, n);
+                if (frontier.size() < ef || s > frontier.peek().score() || results.size() < k) {
+                    Neighbor nb = new Neighbor(n, s);
+                    candidates.add(nb);
+                    offer(frontier, nb, ef);
+                    if (accept == null || accept.test(n)) {
+                        offer(results, nb, ef);
+                    }
+                }
+            }
+        }
+        List<Neighbor> sorted = drainDescending(results);
+        return sorted.size() > k ? sorted.subList(0, k) : sorted;
+    }
+
+    /**
+     * Neighbour selection heuristic (Algorithm 4): keep a candidate only if it is closer
+     * to the base node than to any already selected neighbour, which preserves
+     * long-range links between clusters
+     */
+    private int[] selectNeighbors(VectorSource vectors, List<Neighbor> candidatesDesc, int max) {
+        int[] selected = new int[Math.min(max, candidatesDesc.size())];
+        int count = 0;
+        for (Neighbor c : candidatesDesc) {
+            if (count >= max) {
+                break;
+            }
+            boolean keep = true;
+            float[] candidate = count > 0 ? vectors.get(c.ordinal()) : null;
+            for (int i = 0; i < count; i++) {
+                if (vectors.similarity(candidate, selected[i]) > c.score()) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = c.ordinal();
+            }
+        }
+        // Fill remaining slots with the closest skipped candidates
+        if (count < selected.length) {
+            for (Neighbor c : candidatesDesc) {
+                if (count >= selected.length) {
+                    break;
+                }
+                if (!contains(selected, count, c.ordinal())) {
+                    selected[count++] = c.ordinal();
+                }
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Add a back-link from {@code node} to {@code newNeighbor}, pruning when the list is full
+     */
+    private void connect(VectorSource vectors, int node, int newNeighbor, int level) {
+        int[] ns = links.get(node)[level];
+        int[] counts = linkCounts.get(node);
+        if (counts[level] < ns.length) {
+            ns[counts[level]++] = newNeighbor;
+            return;
+        }
+        float[] nodeVector = vectors.get(node);
+        List<Neighbor> candidates = new ArrayList<>(ns.length + 1);
+        for (int i = 0; i < counts[level]; i++) {
+            candidates.add(new Neighbor(ns[i], vectors.similarity(nodeVector, ns[i])));
+        }
+        candidates.add(new Neighbor(newNeighbor, vectors.similarity(nodeVector, newNeighbor)));
+        candidates.sort((a, b) -> Float.compare(b.score(), a.score()));
+        int[] selected = selectNeighbors(vectors, candidates, ns.length);
+        System.arraycopy(selected, 0, ns, 0, selected.length);
+        counts[level] = selected.length;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void offer(PriorityQueue<Neighbor> minHeap, Neighbor n, int limit) {
+        if (minHeap.size() < limit) {
+            minHeap.add(n);
+        } else if (n.score() > minHeap.peek().score()) {
+            minHeap.poll();
+            minHeap.add(n);
+        }
+    }
+
+    private static List<Neighbor> drainDescending(PriorityQueue<Neighbor> minHeap) {
+        Neighbor[] out = new Neighbor[minHeap.size()];
+        for (int i = out.length - 1; i >= 0; i--) {
+            out[i] = minHeap.poll();
+        }
+        return new ArrayList<>(Arrays.asList(out));
+    }
+}
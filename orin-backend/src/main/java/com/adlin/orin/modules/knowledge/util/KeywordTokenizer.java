@@ -0,0 +1,92 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * CJK-aware keyword tokenizer for the BM25 keyword index
+ *
+ * Tokenization rules:
+ * 1. Latin letters / digits: consecutive runs form one lower-cased term
+ * 2. CJK (Han / Kana / Hangul): each character is emitted as a unigram,
+ *    and every adjacent pair as a bigram, so "向量检索" matches "向量" and "检索"
+ * 3. Everything else (whitespace, punctuation, symbols) is a separator
+ * 4. A small stopword list is dropped (English function words, Chinese particles)
+ *
+ * The same tokenizer is used at index time and at query time.
+ */
+public final class KeywordTokenizer {
+
+    // Latin terms longer than this are truncated (URLs, base64 blobs, etc.)
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "is", "it",
+            "of", "on", "or", "that", "the", "this", "to", "was", "with",
+            "的", "了", "是", "在", "和", "与", "及", "或", "也", "就", "都", "而", "之");
+
+    private KeywordTokenizer() {
+    }
+
+    /**
+     * Tokenize text into index terms (duplicates preserved, order preserved)
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+
+        String normalized = text.toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        int prevCjk = -1;
+
+        int i = 0;
+        while (i < normalized.length()) {
+            int cp = normalized.codePointAt(i);
+            i += Character.charCount(cp);
+
+            if (isCjk(cp)) {
+                flushWord(word, terms);
+                addTerm(new String(Character.toChars(cp)), terms);
+                if (prevCjk >= 0) {
+                    addTerm(new String(Character.toChars(prevCjk)) + new String(Character.toChars(cp)), terms);
+                }
+                prevCjk = cp;
+            } else if (Character.isLetterOrDigit(cp)) {
+                prevCjk = -1;
+                if (word.length() < MAX_TERM_LENGTH) {
+                    word.appendCodePoint(cp);
+                }
+            } else {
+                prevCjk = -1;
+                flushWord(word, terms);
+            }
+        }
+        flushWord(word, terms);
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> terms) {
+        if (word.length() > 0) {
+            addTerm(word.toString(), terms);
+            word.setLength(0);
+        }
+    }
+
+    private static void addTerm(String term, List<String> terms) {
+        if (!STOPWORDS.contains(term)) {
+            terms.add(term);
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,187 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap float vector storage backed by a memory-mapped file
+ *
+ * Layout: fixed-size vectors (dimension * 4 bytes, little endian) stored back to back.
+ * The file is mapped in regions of {@link #VECTORS_PER_REGION} vectors so that a single
+ * region stays well below the 2GB MappedByteBuffer limit for any realistic dimension.
+ *
+ * Vectors are L2-normalized on write, so {@link #similarity} (dot product) is cosine similarity.
+ * Concurrent reads are safe; writes must be serialized by the caller.
+ */
+public class MappedVectorStore implements HnswGraph.VectorSource, Closeable {
+
+    static final int VECTORS_PER_REGION = 16_384;
+
+    private final Path file;
+    private final int dimension;
+    private final FileChannel channel;
+    private final List<FloatBuffer> regions = new ArrayList<>();
+    private final List<MappedByteBuffer> mappedRegions = new ArrayList<>();
+    // per-thread scratch buffers for similarity computations
+    private final ThreadLocal<float[]> scratchA;
+    private final ThreadLocal<float[]> scratchB;
+    private volatile int size;
+
+    /**
+     * Open (or create) a vector file
+     *
+     * @param file      backing file
+     * @param dimension vector dimension
+     * @param size      number of valid vectors already in the file (from the last snapshot);
+     *                  anything after it is treated as garbage and overwritten
+     */
+    public MappedVectorStore(Path file, int dimension, int size) throws IOException {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Vector dimension must be positive: " + dimension);
+        }
+        this.file = file;
+        this.dimension = dimension;
+        this.scratchA = ThreadLocal.withInitial(() -> new float[dimension]);
+        this.scratchB = ThreadLocal.withInitial(() -> new float[dimension]);
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long available = channel.size() / ((long) dimension * Float.BYTES);
+        if (size > available) {
+            throw new IOException("Vector file " + file + " holds " + available + " vectors, snapshot expects " + size);
+        }
+        this.size = size;
+        ensureCapacity(Math.max(size, 1));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append a vector, returning its ordinal
+     */
+    public int append(float[] vector) throws IOException {
+        int ordinal = size;
+        ensureCapacity(ordinal + 1);
+        write(ordinal, normalize(vector));
+        size = ordinal + 1;
+        return ordinal;
+    }
+
+    /**
+     * Copy of the stored (normalized) vector
+     */
+    @Override
+    public float[] get(int ordinal) {
+        checkOrdinal(ordinal);
+        return read(ordinal, new float[dimension]);
+    }
+
+    @Override
+    public float similarity(float[] query, int ordinal) {
+        float[] v = read(ordinal, scratchA.get());
+        return dot(query, v);
+    }
+
+    @Override
+    public float similarity(int a, int b) {
+        float[] va = read(a, scratchA.get());
+        float[] vb = read(b, scratchB.get());
+        return dot(va, vb);
+    }
+
+    /**
+     * Flush dirty pages to disk
+     */
+    public void force() {
+        for (MappedByteBuffer region : mappedRegions) {
+            region.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        regions.clear();
+        mappedRegions.clear();
+        channel.close();
+    }
+
+    /**
+     * L2-normalize a copy of the vector (zero vectors are returned unchanged)
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0d;
+        for (float v : vector) {
+            norm += (double) v * v;
+        }
+        float[] out = vector.clone();
+        if (norm > 0d) {
+            float inv = (float) (1d / Math.sqrt(norm));
+            for (int i = 0; i < out.length; i++) {
+                out[i] *= inv;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Bulk-copy a vector out of the mapped region (much faster than per-element gets,
+     * and lets the dot-product loop run on plain arrays)
+     */
+    private float[] read(int ordinal, float[] out) {
+        regions.get(ordinal / VECTORS_PER_REGION).get((ordinal % VECTORS_PER_REGION) * dimension, out, 0, dimension);
+        return out;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float dot = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    private void write(int ordinal, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector dimension mismatch: expected " + dimension + ", got " + vector.length);
+        }
+        regions.get(ordinal / VECTORS_PER_REGION).put((ordinal % VECTORS_PER_REGION) * dimension, vector, 0, dimension);
+    }
+
+    private void ensureCapacity(int vectors) throws IOException {
+        long regionBytes = (long) VECTORS_PER_REGION * dimension * Float.BYTES;
+        while ((long) regions.size() * VECTORS_PER_REGION < vectors) {
+            // READ_WRITE mapping beyond EOF grows the file
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE,
+                    regions.size() * regionBytes, regionBytes);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            mappedRegions.add(mapped);
+            regions.add(mapped.asFloatBuffer());
+        }
+    }
+
+    private void checkOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= size) {
+            throw new IndexOutOfBoundsException("Vector ordinal " + ordinal + " out of range [0, " + size + ")");
+        }
+    }
+}
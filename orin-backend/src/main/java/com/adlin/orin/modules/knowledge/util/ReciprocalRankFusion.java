@@ -0,0 +1,89 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import com.adlin.orin.modules.knowledge.component.VectorStoreProvider.SearchResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Weighted Reciprocal Rank Fusion of a vector-ranked and a keyword-ranked list
+ *
+ * score(d) = alpha / (k + rank_vector(d)) + (1 - alpha) / (k + rank_keyword(d))
+ *
+ * Only ranks are used, so cosine similarities and BM25 scores never have to be
+ * put on the same scale. The fused score is multiplied by (k + 1) so that a
+ * document ranked first in both lists scores 1.0, which keeps user-facing
+ * thresholds in the familiar (0, 1] range. Documents are matched across lists
+ * by {@code chunk_id}; a match in both lists is reported as {@code HYBRID}.
+ */
+public final class ReciprocalRankFusion {
+
+    public static final int DEFAULT_K = 60;
+
+    private ReciprocalRankFusion() {
+    }
+
+    public static List<SearchResult> fuse(List<SearchResult> vectorRanked, List<SearchResult> keywordRanked,
+            double alpha, int k) {
+        double vectorWeight = Math.max(0.0, Math.min(1.0, alpha));
+        double keywordWeight = 1.0 - vectorWeight;
+        Map<String, Fused> fused = new LinkedHashMap<>();
+        accumulate(fused, vectorRanked, vectorWeight, k, "vector");
+        accumulate(fused, keywordRanked, keywordWeight, k, "keyword");
+
+        List<SearchResult> results = new ArrayList<>(fused.size());
+        for (Fused f : fused.values()) {
+            Map<String, Object> meta = f.result.getMetadata() != null
+                    ? new HashMap<>(f.result.getMetadata())
+                    : new HashMap<>();
+            meta.putAll(f.ranks);
+            results.add(SearchResult.builder()
+                    .content(f.result.getContent())
+                    .score(f.score * (k + 1))
+                    .matchType(f.ranks.size() > 1 ? "HYBRID" : f.result.getMatchType())
+                    .metadata(meta)
+                    .build());
+        }
+        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return results;
+    }
+
+    private static void accumulate(Map<String, Fused> fused, List<SearchResult> ranked, double weight, int k,
+            String list) {
+        if (ranked == null) {
+            return;
+        }
+        int rank = 0;
+        for (SearchResult result : ranked) {
+            rank++;
+            String key = key(result);
+            Fused f = fused.computeIfAbsent(key, x -> new Fused(result));
+            if (f.ranks.containsKey(list + "_rank")) {
+                continue;
+            }
+            f.score += weight / (k + rank);
+            f.ranks.put(list + "_rank", rank);
+            if (result.getScore() != null) {
+                f.ranks.put(list + "_score", result.getScore());
+            }
+        }
+    }
+
+    private static String key(SearchResult result) {
+        Object chunkId = result.getMetadata() != null ? result.getMetadata().get("chunk_id") : null;
+        return chunkId != null ? "id:" + chunkId : "content:" + result.getContent();
+    }
+
+    private static final class Fused {
+        final SearchResult result;
+        final Map<String, Object> ranks = new LinkedHashMap<>();
+        double score;
+
+        Fused(SearchResult result) {
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log with length + CRC32 framed records
+ *
+ * Frame: [int length][int crc32][payload bytes]. Replay stops at the first torn or
+ * corrupt frame (a crash mid-append), so every fully written record is recovered
+ * and a partial tail is discarded. The payload format is owned by the caller.
+ */
+public class VectorWal implements Closeable {
+
+    private final Path file;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private long records;
+
+    public VectorWal(Path file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    /**
+     * Replay every intact record in order
+     *
+     * @return number of records replayed
+     */
+    public static long replay(Path file, Consumer<byte[]> consumer) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        long count = 0;
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+            while (true) {
+                int length;
+                int crc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    crc = in.readInt();
+                    if (length < 0 || length > 64 * 1024 * 1024) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 checksum = new CRC32();
+                checksum.update(payload);
+                if ((int) checksum.getValue() != crc) {
+                    break;
+                }
+                consumer.accept(payload);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized void append(byte[] payload) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int) checksum.getValue());
+        out.write(payload);
+        records++;
+    }
+
+    /**
+     * Flush buffered frames and fsync the log
+     */
+    public synchronized void sync() throws IOException {
+        out.flush();
+        fileOut.getFD().sync();
+    }
+
+    /**
+     * Number of records appended since the last reset
+     */
+    public synchronized long pendingRecords() {
+        return records;
+    }
+
+    /**
+     * Truncate the log after a successful checkpoint
+     */
+    public synchronized void reset() throws IOException {
+        out.close();
+        Files.deleteIfExists(file);
+        open();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.flush();
+        out.close();
+    }
+
+    private void open() throws IOException {
+        fileOut = new FileOutputStream(file.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+        records = 0;
+    }
+}
@@ -0,0 +1,73 @@
+package com.adlin.orin.modules.monitor.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 延迟直方图汇总实体
+ * 每行是某个维度（全局 / 供应商 / 模型 / 路由 / 智能体）在一个分钟或小时桶内的
+ * HdrHistogram 压缩编码，可跨节点、跨时间桶合并后计算真实分位数
+ */
+@Entity
+@Table(name = "latency_rollups", indexes = {
+        @Index(name = "idx_latency_rollup_series", columnList = "dimension, dimension_key, bucket_start"),
+        @Index(name = "idx_latency_rollup_granularity", columnList = "granularity, bucket_start")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LatencyRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * 时间粒度：MINUTE / HOUR
+     */
+    @Column(nullable = false, length = 8)
+    private String granularity;
+
+    /**
+     * 桶起始时间
+     */
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    /**
+     * 维度：ALL / PROVIDER / MODEL / ROUTE / AGENT
+     */
+    @Column(nullable = false, length = 16)
+    private String dimension;
+
+    /**
+     * 维度取值（供应商 ID、模型名、路由名、智能体 ID；ALL 维度为 "*"）
+     */
+    @Column(name = "dimension_key", nullable = false, length = 191)
+    private String dimensionKey;
+
+    /**
+     * 样本数
+     */
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+
+    /**
+     * 桶内最大延迟 (ms)
+     */
+    @Column(name = "max_ms", nullable = false)
+    private Long maxMs;
+
+    /**
+     * HdrHistogram 压缩编码
+     */
+    @Lob
+    @Column(nullable = false)
+    private byte[] histogram;
+}
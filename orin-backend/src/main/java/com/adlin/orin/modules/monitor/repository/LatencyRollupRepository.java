@@ -0,0 +1,49 @@
+package com.adlin.orin.modules.monitor.repository;
+
+import com.adlin.orin.modules.monitor.entity.LatencyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface LatencyRollupRepository extends JpaRepository<LatencyRollup, Long> {
+
+    /**
+     * 查询某个维度在 [from, to) 内的全部分钟 / 小时桶
+     */
+    @Query("SELECT r FROM LatencyRollup r WHERE r.dimension = :dimension AND r.dimensionKey = :dimensionKey "
+            + "AND r.bucketStart >= :from AND r.bucketStart < :to ORDER BY r.bucketStart")
+    List<LatencyRollup> findSeries(@Param("dimension") String dimension,
+                                   @Param("dimensionKey") String dimensionKey,
+                                   @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to);
+
+    /**
+     * 查询某个粒度在 [from, to) 内的所有桶（用于分钟桶压缩为小时桶）
+     */
+    @Query("SELECT r FROM LatencyRollup r WHERE r.granularity = :granularity "
+            + "AND r.bucketStart >= :from AND r.bucketStart < :to")
+    List<LatencyRollup> findByGranularityBetween(@Param("granularity") String granularity,
+                                                 @Param("from") LocalDateTime from,
+                                                 @Param("to") LocalDateTime to);
+
+    @Query("SELECT MIN(r.bucketStart) FROM LatencyRollup r WHERE r.granularity = :granularity")
+    LocalDateTime findEarliestBucket(@Param("granularity") String granularity);
+
+    @Query("SELECT MAX(r.maxMs) FROM LatencyRollup r WHERE r.dimension = :dimension AND r.dimensionKey = :dimensionKey")
+    Long findMaxLatency(@Param("dimension") String dimension, @Param("dimensionKey") String dimensionKey);
+
+    @Modifying
+    @Query("DELETE FROM LatencyRollup r WHERE r.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM LatencyRollup r WHERE r.granularity = :granularity AND r.bucketStart < :before")
+    int deleteByGranularityBefore(@Param("granularity") String granularity, @Param("before") LocalDateTime before);
+}
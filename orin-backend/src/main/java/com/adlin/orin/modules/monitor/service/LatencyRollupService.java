@@ -0,0 +1,283 @@
+package com.adlin.orin.modules.monitor.service;
+
+import com.adlin.orin.modules.monitor.entity.LatencyRollup;
+import com.adlin.orin.modules.monitor.repository.LatencyRollupRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 延迟分位数汇总服务
+ *
+ * 热路径（网关过滤器、统一 API、智能体对话）只向本节点的 HdrHistogram {@link Recorder} 记录一次延迟，
+ * 无锁且不访问数据库。每分钟把各维度的区间直方图压缩编码后写入 latency_rollups（分钟桶），
+ * 超过 minute-retention-hours 的分钟桶按小时合并为小时桶。
+ * 查询时把时间范围内的桶（含各节点写入的多行）合并成一个直方图再取分位数，
+ * 不扫描审计日志；数据最多滞后一个刷新周期。
+ */
+@Slf4j
+@Service
+public class LatencyRollupService {
+
+    public enum Dimension { ALL, PROVIDER, MODEL, ROUTE, AGENT }
+
+    static final String MINUTE = "MINUTE";
+    static final String HOUR = "HOUR";
+    static final String ALL_KEY = "*";
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int MAX_KEY_LENGTH = 191;
+    private static final int MAX_HOURS_PER_COMPACTION = 48;
+
+    private final LatencyRollupRepository rollupRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentHashMap<SeriesKey, Recorder> recorders = new ConcurrentHashMap<>();
+
+    @Value("${orin.monitor.latency.max-series:2000}")
+    private int maxSeries = 2000;
+
+    @Value("${orin.monitor.latency.minute-retention-hours:48}")
+    private int minuteRetentionHours = 48;
+
+    @Value("${orin.monitor.latency.hour-retention-days:90}")
+    private int hourRetentionDays = 90;
+
+    public LatencyRollupService(LatencyRollupRepository rollupRepository,
+                                PlatformTransactionManager transactionManager) {
+        this.rollupRepository = rollupRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 记录一次业务请求的延迟：计入全局序列以及给出的供应商 / 模型 / 智能体维度
+     */
+    public void recordRequest(long latencyMs, String providerId, String model, String agentId) {
+        record(Dimension.ALL, ALL_KEY, latencyMs);
+        record(Dimension.PROVIDER, providerId, latencyMs);
+        record(Dimension.MODEL, model, latencyMs);
+        record(Dimension.AGENT, agentId, latencyMs);
+    }
+
+    /**
+     * 记录一次网关路由转发的延迟（不计入全局序列，避免与下游 Controller 重复计数）
+     */
+    public void recordRoute(String routeName, long latencyMs) {
+        record(Dimension.ROUTE, routeName, latencyMs);
+    }
+
+    private void record(Dimension dimension, String key, long latencyMs) {
+        if (key == null || key.isBlank()) {
+            return;
+        }
+        SeriesKey seriesKey = new SeriesKey(dimension,
+                key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key);
+        Recorder recorder = recorders.get(seriesKey);
+        if (recorder == null) {
+            // 维度取值来自请求（如模型名），限制序列总数防止内存无限增长
+            if (dimension != Dimension.ALL && recorders.size() >= maxSeries) {
+                return;
+            }
+            recorder = recorders.computeIfAbsent(seriesKey, k -> new Recorder(SIGNIFICANT_DIGITS));
+        }
+        recorder.recordValue(Math.max(0L, latencyMs));
+    }
+
+    /**
+     * 把上一分钟的区间直方图写入分钟桶
+     *
+     * @return 写入的行数
+     */
+    @Scheduled(cron = "${orin.monitor.latency.flush-cron:0 * * * * *}")
+    public synchronized int flushMinute() {
+        LocalDateTime bucketStart = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).minusMinutes(1);
+        List<LatencyRollup> rows = new ArrayList<>();
+        recorders.forEach((key, recorder) -> {
+            Histogram interval = recorder.getIntervalHistogram();
+            if (interval.getTotalCount() > 0) {
+                rows.add(toRow(MINUTE, bucketStart, key.dimension().name(), key.key(), interval));
+            }
+        });
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try {
+            rollupRepository.saveAll(rows);
+        } catch (Exception e) {
+            log.warn("Failed to persist {} latency rollup row(s): {}", rows.size(), e.getMessage());
+            return 0;
+        }
+        return rows.size();
+    }
+
+    /**
+     * 把超过保留期的分钟桶按小时合并为小时桶，并清理过期的小时桶
+     *
+     * @return 本次合并的小时数
+     */
+    @Scheduled(cron = "${orin.monitor.latency.compact-cron:0 5 * * * *}")
+    public int compactHours() {
+        LocalDateTime cutoff = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(minuteRetentionHours);
+        int compacted = 0;
+        try {
+            LocalDateTime earliest = rollupRepository.findEarliestBucket(MINUTE);
+            if (earliest != null) {
+                LocalDateTime hour = earliest.truncatedTo(ChronoUnit.HOURS);
+                for (int attempts = 0; hour.isBefore(cutoff) && attempts < MAX_HOURS_PER_COMPACTION; attempts++) {
+                    LocalDateTime from = hour;
+                    if (Boolean.TRUE.equals(transactionTemplate.execute(status -> compactHour(from, status)))) {
+                        compacted++;
+                    }
+                    hour = hour.plusHours(1);
+                }
+            }
+            LocalDateTime hourCutoff = LocalDateTime.now().minusDays(hourRetentionDays);
+            transactionTemplate.executeWithoutResult(status -> rollupRepository.deleteByGranularityBefore(HOUR, hourCutoff));
+        } catch (Exception e) {
+            log.warn("Failed to compact latency rollups: {}", e.getMessage());
+        }
+        return compacted;
+    }
+
+    private boolean compactHour(LocalDateTime hour, TransactionStatus status) {
+        List<LatencyRollup> minuteRows = rollupRepository.findByGranularityBetween(MINUTE, hour, hour.plusHours(1));
+        if (minuteRows.isEmpty()) {
+            return false;
+        }
+        Map<SeriesKey, Histogram> merged = new LinkedHashMap<>();
+        List<Long> ids = new ArrayList<>(minuteRows.size());
+        for (LatencyRollup row : minuteRows) {
+            ids.add(row.getId());
+            Histogram histogram = decode(row);
+            if (histogram != null) {
+                merged.computeIfAbsent(new SeriesKey(Dimension.valueOf(row.getDimension()), row.getDimensionKey()),
+                        k -> newHistogram()).add(histogram);
+            }
+        }
+        // 删除条数不符说明其它节点已合并过这一小时：回滚，避免重复的小时桶
+        if (rollupRepository.deleteByIds(ids) != ids.size()) {
+            status.setRollbackOnly();
+            return false;
+        }
+        List<LatencyRollup> hourRows = new ArrayList<>(merged.size());
+        merged.forEach((key, histogram) ->
+                hourRows.add(toRow(HOUR, hour, key.dimension().name(), key.key(), histogram)));
+        rollupRepository.saveAll(hourRows);
+        return true;
+    }
+
+    /**
+     * 合并 [from, to) 内的所有桶，给出真实分位数
+     */
+    public LatencySummary summarize(Dimension dimension, String key, LocalDateTime from, LocalDateTime to) {
+        Histogram merged = newHistogram();
+        for (LatencyRollup row : rollupRepository.findSeries(dimension.name(), keyOf(dimension, key), from, to)) {
+            Histogram histogram = decode(row);
+            if (histogram != null) {
+                merged.add(histogram);
+            }
+        }
+        return LatencySummary.of(merged);
+    }
+
+    /**
+     * 按给定的桶起点分组合并，每个桶包含 [起点, 下一个起点) 内的汇总行；最后一个桶截止到 end
+     */
+    public NavigableMap<LocalDateTime, LatencySummary> summarizeBuckets(Dimension dimension, String key,
+                                                                       NavigableSet<LocalDateTime> bucketStarts,
+                                                                       LocalDateTime end) {
+        NavigableMap<LocalDateTime, Histogram> histograms = new TreeMap<>();
+        bucketStarts.forEach(start -> histograms.put(start, newHistogram()));
+        if (!bucketStarts.isEmpty()) {
+            for (LatencyRollup row : rollupRepository.findSeries(dimension.name(), keyOf(dimension, key),
+                    bucketStarts.first(), end)) {
+                Map.Entry<LocalDateTime, Histogram> bucket = histograms.floorEntry(row.getBucketStart());
+                Histogram histogram = bucket != null ? decode(row) : null;
+                if (histogram != null) {
+                    bucket.getValue().add(histogram);
+                }
+            }
+        }
+        NavigableMap<LocalDateTime, LatencySummary> result = new TreeMap<>();
+        histograms.forEach((start, histogram) -> result.put(start, LatencySummary.of(histogram)));
+        return result;
+    }
+
+    /**
+     * 历史最大延迟
+     */
+    public long maxLatency(Dimension dimension, String key) {
+        Long max = rollupRepository.findMaxLatency(dimension.name(), keyOf(dimension, key));
+        return max != null ? max : 0L;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushMinute();
+    }
+
+    private static String keyOf(Dimension dimension, String key) {
+        return dimension == Dimension.ALL ? ALL_KEY : key;
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(SIGNIFICANT_DIGITS);
+    }
+
+    private static LatencyRollup toRow(String granularity, LocalDateTime bucketStart, String dimension, String key,
+                                       Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return LatencyRollup.builder()
+                .granularity(granularity)
+                .bucketStart(bucketStart)
+                .dimension(dimension)
+                .dimensionKey(key)
+                .sampleCount(histogram.getTotalCount())
+                .maxMs(histogram.getMaxValue())
+                .histogram(Arrays.copyOf(buffer.array(), length))
+                .build();
+    }
+
+    private static Histogram decode(LatencyRollup row) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(row.getHistogram()), 0);
+        } catch (Exception e) {
+            log.warn("Skipping undecodable latency rollup id={}: {}", row.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private record SeriesKey(Dimension dimension, String key) {
+    }
+
+    /**
+     * 延迟汇总（毫秒）；count 为 0 时其余字段均为 0
+     */
+    public record LatencySummary(long count, double mean, long p50, long p95, long p99, long max) {
+
+        static LatencySummary of(Histogram histogram) {
+            if (histogram.getTotalCount() == 0) {
+                return new LatencySummary(0, 0, 0, 0, 0, 0);
+            }
+            return new LatencySummary(
+                    histogram.getTotalCount(),
+                    histogram.getMean(),
+                    histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(95),
+                    histogram.getValueAtPercentile(99),
+                    histogram.getMaxValue());
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package com.adlin.orin.modules.monitor.service;
+
+import com.adlin.orin.modules.agent.repository.AgentMetadataRepository;
+import com.adlin.orin.modules.audit.entity.AuditLog;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 调用量 / Token / 成本预聚合服务
+ *
+ * 审计日志写入后调用 {@link #record(AuditLog)}，按全局 / 用户 / 供应商 / 模型 / 智能体五个维度
+ * 同时累加到分钟、小时、天三个粒度的本地增量中；定时任务把增量以 "x = x + ?" 的批量 UPDATE
+ * 合并进 usage_rollups，桶不存在时再批量 INSERT，多节点并发写同一个桶也不会丢失计数。
+ * 查询把时间范围拆成整天 + 整小时 + 零散分钟三段，只读预聚合行，不扫描审计日志；
+ * 数据最多滞后一个刷新周期。分钟桶保留 minute-retention-hours，小时桶保留 hour-retention-days，
+ * 天桶长期保留，超出保留期的边缘按更粗的桶取整。
+ */
+@Slf4j
+@Service
+public class UsageRollupService {
+
+    public enum Dimension { ALL, USER, PROVIDER, MODEL, AGENT }
+
+    public enum Granularity {
+        MINUTE(ChronoUnit.MINUTES), HOUR(ChronoUnit.HOURS), DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Granularity(ChronoUnit unit) {
+            this.unit = unit;
+        }
+    }
+
+    static final String ALL_KEY = "*";
+    private static final String SYSTEM_PROVIDER = "ORIN_CORE";
+    private static final int MAX_KEY_LENGTH = 191;
+
+    private static final String UPDATE_SQL = """
+            UPDATE usage_rollups
+            SET request_count = request_count + ?, error_count = error_count + ?,
+                prompt_tokens = prompt_tokens + ?, completion_tokens = completion_tokens + ?,
+                total_tokens = total_tokens + ?, cost = cost + ?, updated_at = ?
+            WHERE granularity = ? AND bucket_start = ? AND dimension = ? AND dimension_key = ?
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO usage_rollups (request_count, error_count, prompt_tokens, completion_tokens,
+                total_tokens, cost, updated_at, granularity, bucket_start, dimension, dimension_key)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String TOTALS_COLUMNS = """
+            COALESCE(SUM(request_count), 0) AS requests, COALESCE(SUM(error_count), 0) AS errors,
+            COALESCE(SUM(prompt_tokens), 0) AS prompt, COALESCE(SUM(completion_tokens), 0) AS completion,
+            COALESCE(SUM(total_tokens), 0) AS total, COALESCE(SUM(cost), 0) AS cost
+            """;
+
+    private static final RowMapper<Totals> TOTALS_MAPPER = (rs, rowNum) -> new Totals(
+            rs.getLong("requests"), rs.getLong("errors"), rs.getLong("prompt"),
+            rs.getLong("completion"), rs.getLong("total"), rs.getDouble("cost"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AgentMetadataRepository agentMetadataRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentHashMap<RollupKey, Delta> pending = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> agentIds = Caffeine.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .maximumSize(10_000)
+            .build();
+
+    @Value("${orin.monitor.usage.minute-retention-hours:48}")
+    private int minuteRetentionHours = 48;
+
+    @Value("${orin.monitor.usage.hour-retention-days:90}")
+    private int hourRetentionDays = 90;
+
+    public UsageRollupService(JdbcTemplate jdbcTemplate,
+                              AgentMetadataRepository agentMetadataRepository,
+                              PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.agentMetadataRepository = agentMetadataRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 把一条已保存的审计日志计入各维度的分钟 / 小时 / 天桶（系统日志不计入，与原审计求和口径一致）
+     */
+    public void record(AuditLog auditLog) {
+        if (auditLog == null || auditLog.getProviderId() == null
+                || SYSTEM_PROVIDER.equals(auditLog.getProviderId())) {
+            return;
+        }
+        LocalDateTime at = auditLog.getCreatedAt() != null ? auditLog.getCreatedAt() : LocalDateTime.now();
+        Delta delta = Delta.of(auditLog);
+        add(Dimension.ALL, ALL_KEY, at, delta);
+        add(Dimension.USER, auditLog.getUserId(), at, delta);
+        add(Dimension.PROVIDER, auditLog.getProviderId(), at, delta);
+        add(Dimension.MODEL, auditLog.getModel(), at, delta);
+        if (isAgent(auditLog.getProviderId())) {
+            add(Dimension.AGENT, auditLog.getProviderId(), at, delta);
+        }
+    }
+
+    private void add(Dimension dimension, String key, LocalDateTime at, Delta delta) {
+        if (key == null || key.isBlank()) {
+            return;
+        }
+        String dimensionKey = key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+        for (Granularity granularity : Granularity.values()) {
+            RollupKey rollupKey = new RollupKey(granularity, at.truncatedTo(granularity.unit), dimension, dimensionKey);
+            pending.compute(rollupKey, (k, current) -> current == null ? delta.copy() : current.merge(delta));
+        }
+    }
+
+    /**
+     * 审计日志里智能体调用的 providerId 即智能体 ID
+     */
+    private boolean isAgent(String providerId) {
+        try {
+            return Boolean.TRUE.equals(agentIds.get(providerId, agentMetadataRepository::existsById));
+        } catch (Exception e) {
+            log.debug("Agent lookup failed for {}: {}", providerId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 把本地增量合并进 usage_rollups；写入失败的增量放回，下个周期重试
+     *
+     * @return 写入的桶数
+     */
+    @Scheduled(fixedDelayString = "${orin.monitor.usage.flush-interval-ms:5000}")
+    public synchronized int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<Map.Entry<RollupKey, Delta>> batch = new ArrayList<>(pending.size());
+        for (RollupKey key : pending.keySet()) {
+            Delta delta = pending.remove(key);
+            if (delta != null) {
+                batch.add(Map.entry(key, delta));
+            }
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int[] updated;
+        try {
+            updated = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(UPDATE_SQL, toArgs(batch, now)));
+        } catch (Exception e) {
+            log.warn("Failed to flush {} usage rollup bucket(s): {}", batch.size(), e.getMessage());
+            restore(batch);
+            return 0;
+        }
+        List<Map.Entry<RollupKey, Delta>> missing = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (updated == null || updated[i] == 0) {
+                missing.add(batch.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return batch.size();
+        }
+        int written = batch.size() - missing.size();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, toArgs(missing, now)));
+            return batch.size();
+        } catch (DuplicateKeyException e) {
+            // 其它节点并发插入了同一个桶：整批已回滚，逐行 UPDATE / INSERT
+            for (Map.Entry<RollupKey, Delta> entry : missing) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> upsert(entry, now));
+                    written++;
+                } catch (Exception ex) {
+                    log.warn("Failed to flush usage rollup bucket {}: {}", entry.getKey(), ex.getMessage());
+                    restore(List.of(entry));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to insert {} usage rollup bucket(s): {}", missing.size(), e.getMessage());
+            restore(missing);
+        }
+        return written;
+    }
+
+    private void upsert(Map.Entry<RollupKey, Delta> entry, LocalDateTime now) {
+        Object[] args = toArgs(entry.getKey(), entry.getValue(), now);
+        if (jdbcTemplate.update(UPDATE_SQL, args) == 0) {
+            jdbcTemplate.update(INSERT_SQL, args);
+        }
+    }
+
+    private void restore(List<Map.Entry<RollupKey, Delta>> entries) {
+        for (Map.Entry<RollupKey, Delta> entry : entries) {
+            pending.compute(entry.getKey(),
+                    (k, current) -> current == null ? entry.getValue() : current.merge(entry.getValue()));
+        }
+    }
+
+    /**
+     * 清理超过保留期的分钟桶与小时桶
+     *
+     * @return 删除的行数
+     */
+    @Scheduled(cron = "${orin.monitor.usage.purge-cron:0 15 * * * *}")
+    public int purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            String sql = "DELETE FROM usage_rollups WHERE granularity = ? AND bucket_start < ?";
+            return jdbcTemplate.update(sql, Granularity.MINUTE.name(), minuteCutoff(now))
+                    + jdbcTemplate.update(sql, Granularity.HOUR.name(), hourCutoff(now));
+        } catch (Exception e) {
+            log.warn("Failed to purge usage rollups: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 某个维度取值在 [from, to) 内的累计值；ALL 维度忽略 key，其它维度 key 为 null 时合计所有取值
+     */
+    public Totals sum(Dimension dimension, String key, LocalDateTime from, LocalDateTime to) {
+        List<Object> args = new ArrayList<>();
+        String seriesClause = seriesClause(dimension, key, args);
+        String where = segmentClause(from, to, args);
+        if (where == null) {
+            return Totals.EMPTY;
+        }
+        String sql = "SELECT " + TOTALS_COLUMNS + " FROM usage_rollups WHERE " + seriesClause + " AND " + where;
+        Totals totals = jdbcTemplate.queryForObject(sql, TOTALS_MAPPER, args.toArray());
+        return totals != null ? totals : Totals.EMPTY;
+    }
+
+    /**
+     * 某个维度在 [from, to) 内按取值分组的累计值
+     */
+    public Map<String, Totals> sumByKey(Dimension dimension, LocalDateTime from, LocalDateTime to) {
+        List<Object> args = new ArrayList<>(List.of(dimension.name()));
+        String where = segmentClause(from, to, args);
+        Map<String, Totals> result = new LinkedHashMap<>();
+        if (where == null) {
+            return result;
+        }
+        String sql = "SELECT dimension_key, " + TOTALS_COLUMNS + " FROM usage_rollups WHERE dimension = ? AND "
+                + where + " GROUP BY dimension_key ORDER BY total DESC";
+        jdbcTemplate.query(sql, rs -> {
+            result.put(rs.getString("dimension_key"), TOTALS_MAPPER.mapRow(rs, 0));
+        }, args.toArray());
+        return result;
+    }
+
+    /**
+     * [from, to) 内有调用记录的维度取值个数（如活跃用户数）
+     */
+    public long countKeys(Dimension dimension, LocalDateTime from, LocalDateTime to) {
+        List<Object> args = new ArrayList<>(List.of(dimension.name()));
+        String where = segmentClause(from, to, args);
+        if (where == null) {
+            return 0L;
+        }
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(DISTINCT dimension_key) FROM usage_rollups WHERE dimension = ? AND " + where,
+                Long.class, args.toArray());
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * [from, to] 内每天有调用记录的维度取值个数（读天桶）
+     */
+    public NavigableMap<LocalDate, Long> countKeysByDay(Dimension dimension, LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, Long> result = new TreeMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            result.put(day, 0L);
+        }
+        String sql = "SELECT bucket_start, COUNT(DISTINCT dimension_key) AS key_count FROM usage_rollups "
+                + "WHERE dimension = ? AND granularity = ? AND bucket_start >= ? AND bucket_start < ? "
+                + "GROUP BY bucket_start";
+        jdbcTemplate.query(sql, rs -> {
+            result.put(rs.getObject("bucket_start", LocalDateTime.class).toLocalDate(), rs.getLong("key_count"));
+        }, dimension.name(), Granularity.DAY.name(), from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+        return result;
+    }
+
+    /**
+     * 按给定的桶起点分组（key 规则同 {@link #sum}），每个桶包含 [起点, 下一个起点) 内的累计值；最后一个桶截止到 end。
+     * 读取仍保留且与所有桶起点对齐的最粗粒度，未对齐时落到起点之前最近的桶
+     */
+    public NavigableMap<LocalDateTime, Totals> sumBuckets(Dimension dimension, String key,
+                                                          NavigableSet<LocalDateTime> bucketStarts,
+                                                          LocalDateTime end) {
+        NavigableMap<LocalDateTime, Totals> result = new TreeMap<>();
+        bucketStarts.forEach(start -> result.put(start, Totals.EMPTY));
+        if (bucketStarts.isEmpty()) {
+            return result;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime first = bucketStarts.first();
+        Granularity granularity = first.isBefore(hourCutoff(now)) ? Granularity.DAY
+                : first.isBefore(minuteCutoff(now)) ? Granularity.HOUR : Granularity.MINUTE;
+        for (Granularity coarser : List.of(Granularity.HOUR, Granularity.DAY)) {
+            if (coarser.ordinal() > granularity.ordinal()
+                    && bucketStarts.stream().allMatch(start -> start.truncatedTo(coarser.unit).equals(start))) {
+                granularity = coarser;
+            }
+        }
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT bucket_start, " + TOTALS_COLUMNS + " FROM usage_rollups WHERE "
+                + seriesClause(dimension, key, args)
+                + " AND granularity = ? AND bucket_start >= ? AND bucket_start < ? GROUP BY bucket_start";
+        args.addAll(List.of(granularity.name(), first.truncatedTo(granularity.unit), end));
+        jdbcTemplate.query(sql, rs -> {
+            LocalDateTime bucketStart = rs.getObject("bucket_start", LocalDateTime.class);
+            Map.Entry<LocalDateTime, Totals> bucket = result.floorEntry(bucketStart);
+            if (bucket != null) {
+                result.put(bucket.getKey(), bucket.getValue().plus(TOTALS_MAPPER.mapRow(rs, 0)));
+            }
+        }, args.toArray());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * 把 [from, to) 拆成整天、整小时与零散分钟三类桶的 OR 条件，参数追加到 args；范围为空时返回 null
+     */
+    String segmentClause(LocalDateTime from, LocalDateTime to, List<Object> args) {
+        List<Object[]> segments = segments(from, to, LocalDateTime.now());
+        if (segments.isEmpty()) {
+            return null;
+        }
+        StringJoiner clause = new StringJoiner(" OR ", "(", ")");
+        for (Object[] segment : segments) {
+            clause.add("(granularity = ? AND bucket_start >= ? AND bucket_start < ?)");
+            args.addAll(Arrays.asList(segment));
+        }
+        return clause.toString();
+    }
+
+    List<Object[]> segments(LocalDateTime from, LocalDateTime to, LocalDateTime now) {
+        LocalDateTime start = alignToRetention(from, now, false);
+        LocalDateTime end = alignToRetention(to, now, true);
+        List<Object[]> segments = new ArrayList<>();
+        if (!start.isBefore(end)) {
+            return segments;
+        }
+        LocalDateTime dayFrom = ceil(start, ChronoUnit.DAYS);
+        LocalDateTime dayTo = end.truncatedTo(ChronoUnit.DAYS);
+        if (dayFrom.isBefore(dayTo)) {
+            segments.add(new Object[] { Granularity.DAY.name(), dayFrom, dayTo });
+            addHourSegments(segments, start, dayFrom);
+            addHourSegments(segments, dayTo, end);
+        } else {
+            addHourSegments(segments, start, end);
+        }
+        return segments;
+    }
+
+    private static void addHourSegments(List<Object[]> segments, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        LocalDateTime hourFrom = ceil(from, ChronoUnit.HOURS);
+        LocalDateTime hourTo = to.truncatedTo(ChronoUnit.HOURS);
+        if (hourFrom.isBefore(hourTo)) {
+            segments.add(new Object[] { Granularity.HOUR.name(), hourFrom, hourTo });
+            addMinuteSegment(segments, from, hourFrom);
+            addMinuteSegment(segments, hourTo, to);
+        } else {
+            addMinuteSegment(segments, from, to);
+        }
+    }
+
+    private static void addMinuteSegment(List<Object[]> segments, LocalDateTime from, LocalDateTime to) {
+        if (from.isBefore(to)) {
+            segments.add(new Object[] { Granularity.MINUTE.name(), from, to });
+        }
+    }
+
+    /**
+     * 分钟桶 / 小时桶已清理的时间点取整到仍保留的粒度：起点向下、终点向上
+     */
+    private LocalDateTime alignToRetention(LocalDateTime time, LocalDateTime now, boolean roundUp) {
+        ChronoUnit unit;
+        if (time.isBefore(hourCutoff(now))) {
+            unit = ChronoUnit.DAYS;
+        } else if (time.isBefore(minuteCutoff(now))) {
+            unit = ChronoUnit.HOURS;
+        } else {
+            return time;
+        }
+        return roundUp ? ceil(time, unit) : time.truncatedTo(unit);
+    }
+
+    private LocalDateTime minuteCutoff(LocalDateTime now) {
+        return now.truncatedTo(ChronoUnit.HOURS).minusHours(minuteRetentionHours);
+    }
+
+    private LocalDateTime hourCutoff(LocalDateTime now) {
+        return now.truncatedTo(ChronoUnit.DAYS).minusDays(hourRetentionDays);
+    }
+
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime floor = time.truncatedTo(unit);
+        return floor.equals(time) ? time : floor.plus(1, unit);
+    }
+
+    private static String seriesClause(Dimension dimension, String key, List<Object> args) {
+        args.add(dimension.name());
+        if (dimension != Dimension.ALL && key == null) {
+            return "dimension = ?";
+        }
+        args.add(dimension == Dimension.ALL ? ALL_KEY : key);
+        return "dimension = ? AND dimension_key = ?";
+    }
+
+    private static List<Object[]> toArgs(List<Map.Entry<RollupKey, Delta>> entries, LocalDateTime now) {
+        List<Object[]> args = new ArrayList<>(entries.size());
+        entries.forEach(entry -> args.add(toArgs(entry.getKey(), entry.getValue(), now)));
+        return args;
+    }
+
+    private static Object[] toArgs(RollupKey key, Delta delta, LocalDateTime now) {
+        return new Object[] { delta.requests, delta.errors, delta.promptTokens, delta.completionTokens,
+                delta.totalTokens, delta.cost, now,
+                key.granularity().name(), key.bucketStart(), key.dimension().name(), key.key() };
+    }
+
+    private record RollupKey(Granularity granularity, LocalDateTime bucketStart, Dimension dimension, String key) {
+    }
+
+    /**
+     * 待写入的增量；只在 ConcurrentHashMap.compute 内修改，由桶锁保证可见性
+     */
+    private static final class Delta {
+        private long requests;
+        private long errors;
+        private long promptTokens;
+        private long completionTokens;
+        private long totalTokens;
+        private double cost;
+
+        static Delta of(AuditLog auditLog) {
+            Delta delta = new Delta();
+            delta.requests = 1;
+            delta.errors = Boolean.FALSE.equals(auditLog.getSuccess()) ? 1 : 0;
+            delta.promptTokens = auditLog.getPromptTokens() != null ? auditLog.getPromptTokens() : 0;
+            delta.completionTokens = auditLog.getCompletionTokens() != null ? auditLog.getCompletionTokens() : 0;
+            delta.totalTokens = auditLog.getTotalTokens() != null ? auditLog.getTotalTokens() : 0;
+            delta.cost = auditLog.getEstimatedCost() != null ? auditLog.getEstimatedCost() : 0.0;
+            return delta;
+        }
+
+        Delta copy() {
+            return new Delta().merge(this);
+        }
+
+        Delta merge(Delta other) {
+            requests += other.requests;
+            errors += other.errors;
+            promptTokens += other.promptTokens;
+            completionTokens += other.completionTokens;
+            totalTokens += other.totalTokens;
+            cost += other.cost;
+            return this;
+        }
+    }
+
+    /**
+     * 累计值；cost 为外部报价（与 AuditLog.estimatedCost 口径一致）
+     */
+    public record Totals(long requests, long errors, long promptTokens, long completionTokens,
+                         long totalTokens, double cost) {
+
+        public static final Totals EMPTY = new Totals(0, 0, 0, 0, 0, 0.0);
+
+        Totals plus(Totals other) {
+            return new Totals(requests + other.requests, errors + other.errors,
+                    promptTokens + other.promptTokens, completionTokens + other.completionTokens,
+                    totalTokens + other.totalTokens, cost + other.cost);
+        }
+    }
+}
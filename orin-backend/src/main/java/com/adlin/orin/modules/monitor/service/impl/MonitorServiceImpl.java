@@ -7,7 +7,9 @@ import com.adlin.orin.modules.monitor.entity.PrometheusConfig;
 import com.adlin.orin.modules.monitor.entity.RateLimitConfig;
 import com.adlin.orin.modules.monitor.entity.ServerHardwareMetric;
 import com.adlin.orin.modules.monitor.entity.ServerInfo;
+import com.adlin.orin.modules.monitor.service.LatencyRollupService;
 import com.adlin.orin.modules.monitor.service.LocalServerInfoService;
+import com.adlin.orin.modules.monitor.service.UsageRollupService;
 import com.adlin.orin.modules.monitor.repository.AgentHealthStatusRepository;
 import com.adlin.orin.modules.monitor.repository.AgentMetricRepository;
 import com.adlin.orin.modules.monitor.repository.PrometheusConfigRepository;
@@ -67,6 +69,8 @@ public class MonitorServiceImpl implements MonitorService {
         private final AgentMetadataRepository agentMetadataRepository;
         private final AgentOwnershipResolver ownershipResolver;
         private final JdbcTemplate jdbcTemplate;
+        private final LatencyRollupService latencyRollupService;
+        private final UsageRollupService usageRollupService;
 
         // Dedicated thread pool for Prometheus queries to avoid using the common
         // ForkJoinPool
@@ -159,23 +163,24 @@ public class MonitorServiceImpl implements MonitorService {
                                 .orElse(0.0);
                 summary.put("averageHealthScore", Math.round(avgHealthScore * 100.0) / 100.0);
 
-                // 获取最近一条审计日志判断 Dify 连接状态 (仅限业务日志)
-                LocalDateTime startOfDay = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
-                List<com.adlin.orin.modules.audit.entity.AuditLog> todayLogs = auditLogRepository
-                                .findBusinessLogsByCreatedAtBetween(startOfDay, LocalDateTime.now());
+                // 今日 / 昨日同期用量来自预聚合桶 (仅限业务日志)
+                LocalDateTime now = LocalDateTime.now();
+                LocalDateTime startOfDay = now.truncatedTo(ChronoUnit.DAYS);
+                UsageRollupService.Totals today = usageRollupService.sum(
+                                UsageRollupService.Dimension.ALL, null, startOfDay, now);
 
                 // Frontend expects: daily_requests, total_tokens, avg_latency
-                summary.put("daily_requests", todayLogs.size());
+                summary.put("daily_requests", today.requests());
 
-                long totalTokensToday = orZero(
-                                auditLogRepository.sumTotalTokensBetween(startOfDay, LocalDateTime.now()));
+                long totalTokensToday = today.totalTokens();
                 summary.put("total_tokens", totalTokensToday);
 
                 // Calculate Token Trend (compared to same period yesterday)
                 LocalDateTime startOfYesterday = startOfDay.minusDays(1);
-                LocalDateTime sameTimeYesterday = LocalDateTime.now().minusDays(1);
-                long totalTokensYesterday = orZero(
-                                auditLogRepository.sumTotalTokensBetween(startOfYesterday, sameTimeYesterday));
+                LocalDateTime sameTimeYesterday = now.minusDays(1);
+                UsageRollupService.Totals yesterday = usageRollupService.sum(
+                                UsageRollupService.Dimension.ALL, null, startOfYesterday, sameTimeYesterday);
+                long totalTokensYesterday = yesterday.totalTokens();
 
                 double tokensTrend = 0.0;
                 if (totalTokensYesterday > 0) {
@@ -185,23 +190,17 @@ public class MonitorServiceImpl implements MonitorService {
                 summary.put("total_tokens_trend", Math.round(tokensTrend * 10.0) / 10.0);
 
                 // Calculate average latency
-                double avgLatency = todayLogs.stream()
-                                .map(com.adlin.orin.modules.audit.entity.AuditLog::getResponseTime)
-                                .filter(Objects::nonNull)
-                                .mapToLong(Long::longValue)
-                                .average()
-                                .orElse(0.0);
-                long avgLatencyMs = Math.round(avgLatency);
+                long avgLatencyMs = Math.round(latencyRollupService.summarize(
+                                LatencyRollupService.Dimension.ALL, null, startOfDay, now).mean());
                 summary.put("avg_latency", avgLatencyMs + "ms");
                 summary.put("avg_latency_ms", avgLatencyMs);
                 summary.put("avgLatencyMs", avgLatencyMs);
 
-                double totalCostToday = orZero(auditLogRepository.sumTotalCostBetween(startOfDay, LocalDateTime.now()));
+                double totalCostToday = today.cost();
                 summary.put("todayCost", Math.round(totalCostToday * 100.0) / 100.0);
 
                 // Calculate Cost Trend
-                double totalCostYesterday = orZero(
-                                auditLogRepository.sumTotalCostBetween(startOfYesterday, sameTimeYesterday));
+                double totalCostYesterday = yesterday.cost();
                 double costTrend = 0.0;
                 if (totalCostYesterday > 0) {
                         costTrend = ((totalCostToday - totalCostYesterday) / totalCostYesterday) * 100.0;
@@ -317,28 +316,36 @@ public class MonitorServiceImpl implements MonitorService {
                 LocalDateTime startOfYesterday = startOfDay.minusDays(1);
                 LocalDateTime endOfYesterday = startOfDay;
 
+                // 读取预聚合桶：整天 / 整小时 / 零散分钟各一段，不再对审计日志做全表求和
+                UsageRollupService.Totals daily = sumUsage(startOfDay, now);
+                UsageRollupService.Totals weekly = sumUsage(startOfWeek, now);
+                UsageRollupService.Totals monthly = sumUsage(startOfMonth, now);
+                UsageRollupService.Totals total = sumUsage(LocalDateTime.of(2000, 1, 1, 0, 0), now);
+                UsageRollupService.Totals yesterday = sumUsage(startOfYesterday, endOfYesterday);
+
                 // Token 统计
-                stats.put("daily", orZero(auditLogRepository.sumTotalTokensAfter(startOfDay)));
-                stats.put("weekly", orZero(auditLogRepository.sumTotalTokensAfter(startOfWeek)));
-                stats.put("monthly", orZero(auditLogRepository.sumTotalTokensAfter(startOfMonth)));
-                stats.put("total", orZero(auditLogRepository.sumTotalTokensAll()));
+                stats.put("daily", daily.totalTokens());
+                stats.put("weekly", weekly.totalTokens());
+                stats.put("monthly", monthly.totalTokens());
+                stats.put("total", total.totalTokens());
 
                 // 昨日数据（用于计算变化百分比）
-                stats.put("yesterday_tokens", orZero(auditLogRepository.sumTotalTokensBetween(startOfYesterday, endOfYesterday)));
-                stats.put("yesterday_cost", orZero(auditLogRepository.sumCostByUserIdAndDateRange(null, startOfYesterday, endOfYesterday)));
+                stats.put("yesterday_tokens", yesterday.totalTokens());
+                stats.put("yesterday_cost", yesterday.cost());
 
                 // 成本统计
-                stats.put("daily_cost", orZero(auditLogRepository.sumCostByUserIdAndDateRange(null, startOfDay, now)));
-                stats.put("weekly_cost",
-                                orZero(auditLogRepository.sumCostByUserIdAndDateRange(null, startOfWeek, now)));
-                stats.put("monthly_cost",
-                                orZero(auditLogRepository.sumCostByUserIdAndDateRange(null, startOfMonth, now)));
-                stats.put("total_cost", orZero(auditLogRepository.sumCostByUserIdAndDateRange(null,
-                                LocalDateTime.of(2000, 1, 1, 0, 0), now)));
+                stats.put("daily_cost", daily.cost());
+                stats.put("weekly_cost", weekly.cost());
+                stats.put("monthly_cost", monthly.cost());
+                stats.put("total_cost", total.cost());
 
                 return stats;
         }
 
+        private UsageRollupService.Totals sumUsage(LocalDateTime from, LocalDateTime to) {
+                return usageRollupService.sum(UsageRollupService.Dimension.ALL, null, from, to);
+        }
+
         private Long orZero(Long val) {
                 return val != null ? val : 0L;
         }
@@ -376,9 +383,10 @@ public class MonitorServiceImpl implements MonitorService {
                         groupingUnit = ChronoUnit.MINUTES;
                         stepMinutes = 1;
                 } else if ("5m".equalsIgnoreCase(period)) {
+                        // 预聚合最细为分钟桶，更细的步长只会产生恒为 0 的点
                         start = end.minusMinutes(5);
-                        groupingUnit = ChronoUnit.SECONDS;
-                        stepMinutes = 30; // reusing stepMinutes as stepSeconds for 5m
+                        groupingUnit = ChronoUnit.MINUTES;
+                        stepMinutes = 1;
                 } else {
                         // Default to weekly/monthly (legacy support)
                         if ("monthly".equalsIgnoreCase(period))
@@ -399,22 +407,12 @@ public class MonitorServiceImpl implements MonitorService {
                                 current = current.plusMinutes(stepMinutes);
                         else if (groupingUnit == ChronoUnit.MINUTES)
                                 current = current.plusMinutes(stepMinutes);
-                        else if (groupingUnit == ChronoUnit.SECONDS)
-                                current = current.plusSeconds(stepMinutes);
                 }
 
-                List<AuditLog> logs = auditLogRepository.findBusinessLogsByCreatedAtBetween(start, end);
-
-                for (AuditLog log : logs) {
-                        if (log.getTotalTokens() != null) {
-                                LocalDateTime logTime = log.getCreatedAt();
-                                // Match nearest bucket (the one starting before or at logTime)
-                                LocalDateTime targetBucket = bucketMap.floorKey(logTime);
-                                if (targetBucket != null) {
-                                        bucketMap.put(targetBucket, bucketMap.get(targetBucket) + log.getTotalTokens());
-                                }
-                        }
-                }
+                // 预聚合桶按起点落入对应趋势桶，不再加载区间内的全部审计日志
+                usageRollupService.sumBuckets(UsageRollupService.Dimension.ALL, null,
+                                bucketMap.navigableKeySet(), end)
+                                .forEach((bucket, totals) -> bucketMap.put(bucket, totals.totalTokens()));
 
                 List<Map<String, Object>> result = new ArrayList<>();
                 for (Map.Entry<LocalDateTime, Long> entry : bucketMap.entrySet()) {
@@ -461,16 +459,20 @@ public class MonitorServiceImpl implements MonitorService {
                         List<Map<String, Object>> result = new ArrayList<>();
                         String[] days = { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
                         LocalDateTime now = LocalDateTime.now();
-                        LocalDateTime startOfWeek = now.minusDays(now.getDayOfWeek().getValue() - 1);
-
+                        LocalDateTime startOfWeek = now.minusDays(now.getDayOfWeek().getValue() - 1)
+                                        .truncatedTo(ChronoUnit.DAYS);
+                        NavigableSet<LocalDateTime> dayStarts = new TreeSet<>();
                         for (int i = 0; i < 7; i++) {
-                                LocalDateTime dayStart = startOfWeek.plusDays(i).withHour(0).withMinute(0).withSecond(0);
-                                LocalDateTime dayEnd = dayStart.plusDays(1);
-                                Long tokens = orZero(auditLogRepository.sumTotalTokensBetween(dayStart, dayEnd));
+                                dayStarts.add(startOfWeek.plusDays(i));
+                        }
+                        NavigableMap<LocalDateTime, UsageRollupService.Totals> byDay = usageRollupService.sumBuckets(
+                                        UsageRollupService.Dimension.ALL, null, dayStarts, startOfWeek.plusDays(7));
 
+                        int i = 0;
+                        for (UsageRollupService.Totals totals : byDay.values()) {
                                 Map<String, Object> item = new HashMap<>();
-                                item.put("day", days[i]);
-                                item.put("value", tokens);
+                                item.put("day", days[i++]);
+                                item.put("value", totals.totalTokens());
                                 result.add(item);
                         }
                         return result;
@@ -485,18 +487,20 @@ public class MonitorServiceImpl implements MonitorService {
                 try {
                         List<Map<String, Object>> result = new ArrayList<>();
                         LocalDateTime now = LocalDateTime.now();
-                        LocalDateTime startOfDay = now.withHour(0).withMinute(0).withSecond(0);
-
+                        LocalDateTime startOfDay = now.truncatedTo(ChronoUnit.DAYS);
+                        NavigableSet<LocalDateTime> hourStarts = new TreeSet<>();
                         for (int hour = 0; hour < 24; hour++) {
-                                LocalDateTime hourStart = startOfDay.plusHours(hour);
-                                LocalDateTime hourEnd = hourStart.plusHours(1);
-                                Long tokens = orZero(auditLogRepository.sumTotalTokensBetween(hourStart, hourEnd));
+                                hourStarts.add(startOfDay.plusHours(hour));
+                        }
+                        NavigableMap<LocalDateTime, UsageRollupService.Totals> byHour = usageRollupService.sumBuckets(
+                                        UsageRollupService.Dimension.ALL, null, hourStarts, startOfDay.plusDays(1));
 
+                        byHour.forEach((hourStart, totals) -> {
                                 Map<String, Object> item = new HashMap<>();
-                                item.put("hour", hour);
-                                item.put("value", tokens);
+                                item.put("hour", hourStart.getHour());
+                                item.put("value", totals.totalTokens());
                                 result.add(item);
-                        }
+                        });
                         return result;
                 } catch (Exception e) {
                         log.error("Error getting token by hour", e);
@@ -509,16 +513,13 @@ public class MonitorServiceImpl implements MonitorService {
                 try {
                         Map<String, Object> result = new HashMap<>();
                         LocalDateTime now = LocalDateTime.now();
-                        LocalDateTime startOfDay = now.withHour(0).withMinute(0).withSecond(0);
-
-                        // Get total tokens
-                        Long total = orZero(auditLogRepository.sumTotalTokensAfter(startOfDay));
+                        LocalDateTime startOfDay = now.truncatedTo(ChronoUnit.DAYS);
 
-                        // For now, use estimated ratios based on historical data
-                        // In a real implementation, we'd have separate fields in AuditLog
-                        result.put("input", total > 0 ? (long)(total * 0.7) : 0L);
-                        result.put("output", total > 0 ? (long)(total * 0.2) : 0L);
-                        result.put("cacheRead", total > 0 ? (long)(total * 0.1) : 0L);
+                        // 预聚合桶分别累计了 prompt / completion Token，直接使用真实拆分
+                        UsageRollupService.Totals today = sumUsage(startOfDay, now);
+                        result.put("input", today.promptTokens());
+                        result.put("output", today.completionTokens());
+                        result.put("cacheRead", 0L);
                         result.put("cacheWrite", 0L);
 
                         return result;
@@ -608,15 +609,14 @@ public class MonitorServiceImpl implements MonitorService {
                                 start = end.minusDays(30);
                         }
 
-                        List<Object[]> rawData = isToken
-                                        ? auditLogRepository.sumTokensByProviderIdBetween(start, end)
-                                        : auditLogRepository.sumCostByProviderIdBetween(start, end);
+                        Map<String, UsageRollupService.Totals> byProvider = usageRollupService.sumByKey(
+                                        UsageRollupService.Dimension.PROVIDER, start, end);
 
                         // Use ProviderRegistry to get provider names
                         List<Map<String, Object>> result = new ArrayList<>();
-                        for (Object[] row : rawData) {
-                                String providerId = (String) row[0];
-                                Number value = (Number) row[1];
+                        for (Map.Entry<String, UsageRollupService.Totals> row : byProvider.entrySet()) {
+                                String providerId = row.getKey();
+                                Number value = isToken ? row.getValue().totalTokens() : row.getValue().cost();
 
                                 Map<String, Object> item = new HashMap<>();
                                 // Try to get provider name from registry, fallback to providerId
@@ -643,30 +643,28 @@ public class MonitorServiceImpl implements MonitorService {
                 try {
                         LocalDateTime now = LocalDateTime.now();
 
-                        // Today stats
+                        // 百分位来自 HdrHistogram 汇总桶（合并后计算），不扫描审计日志
                         LocalDateTime startOfDay = now.withHour(0).withMinute(0).withSecond(0).withNano(0);
-                        Double dailyAvg = auditLogRepository.avgResponseTimeAfter(startOfDay);
-
-                        // For MySQL compatibility, use average values as approximate percentiles
-                        // (percentile calculation is complex without native support)
-                        stats.put("avg", dailyAvg != null ? Math.round(dailyAvg) : 0);
-                        stats.put("p50", dailyAvg != null ? Math.round(dailyAvg * 0.8) : 0);
-                        stats.put("p95", dailyAvg != null ? Math.round(dailyAvg * 1.5) : 0);
-                        stats.put("p99", dailyAvg != null ? Math.round(dailyAvg * 2) : 0);
+                        LatencyRollupService.LatencySummary daily = latencyRollupService.summarize(
+                                        LatencyRollupService.Dimension.ALL, null, startOfDay, now);
+                        stats.put("avg", Math.round(daily.mean()));
+                        stats.put("p50", daily.p50());
+                        stats.put("p95", daily.p95());
+                        stats.put("p99", daily.p99());
+                        stats.put("count", daily.count());
 
                         // Week Avg (for backward compatibility)
                         LocalDateTime startOfWeek = startOfDay.minusDays(now.getDayOfWeek().getValue() - 1);
-                        Double weekly = auditLogRepository.avgResponseTimeAfter(startOfWeek);
-                        stats.put("weekly", weekly != null ? Math.round(weekly) : 0L);
+                        stats.put("weekly", Math.round(latencyRollupService.summarize(
+                                        LatencyRollupService.Dimension.ALL, null, startOfWeek, now).mean()));
 
                         // Month Avg (for backward compatibility)
                         LocalDateTime startOfMonth = startOfDay.withDayOfMonth(1);
-                        Double monthly = auditLogRepository.avgResponseTimeAfter(startOfMonth);
-                        stats.put("monthly", monthly != null ? Math.round(monthly) : 0L);
+                        stats.put("monthly", Math.round(latencyRollupService.summarize(
+                                        LatencyRollupService.Dimension.ALL, null, startOfMonth, now).mean()));
 
                         // Max
-                        Long max = auditLogRepository.maxResponseTimeAll();
-                        stats.put("max", max != null ? max : 0L);
+                        stats.put("max", latencyRollupService.maxLatency(LatencyRollupService.Dimension.ALL, null));
                 } catch (Exception e) {
                         log.error("Error getting latency stats", e);
                         // Return default values on error
@@ -711,50 +709,39 @@ public class MonitorServiceImpl implements MonitorService {
                         stepMinutes = 1;
                 } else if ("5m".equalsIgnoreCase(period)) {
                         start = end.minusMinutes(5);
-                        groupingUnit = ChronoUnit.SECONDS;
-                        stepMinutes = 30;
+                        groupingUnit = ChronoUnit.MINUTES;
+                        stepMinutes = 1;
                 } else {
                         start = end.minusWeeks(1);
                         groupingUnit = ChronoUnit.DAYS;
                 }
 
-                NavigableMap<LocalDateTime, Long> sumBucket = new TreeMap<>();
-                Map<LocalDateTime, Integer> countBucket = new HashMap<>();
+                NavigableSet<LocalDateTime> bucketStarts = new TreeSet<>();
                 LocalDateTime current = start.truncatedTo(groupingUnit);
                 while (!current.isAfter(end)) {
-                        sumBucket.put(current, 0L);
-                        countBucket.put(current, 0);
+                        bucketStarts.add(current);
                         if (groupingUnit == ChronoUnit.DAYS)
                                 current = current.plusDays(1);
                         else if (groupingUnit == ChronoUnit.HOURS)
                                 current = current.plusMinutes(stepMinutes);
                         else if (groupingUnit == ChronoUnit.MINUTES)
                                 current = current.plusMinutes(stepMinutes);
-                        else if (groupingUnit == ChronoUnit.SECONDS)
-                                current = current.plusSeconds(stepMinutes);
                 }
 
-                List<AuditLog> logs = auditLogRepository.findBusinessLogsByCreatedAtBetween(start, end);
-
-                for (AuditLog log : logs) {
-                        if (log.getResponseTime() != null) {
-                                LocalDateTime logTime = log.getCreatedAt();
-                                LocalDateTime targetBucket = sumBucket.floorKey(logTime);
-                                if (targetBucket != null) {
-                                        sumBucket.put(targetBucket,
-                                                        sumBucket.get(targetBucket) + log.getResponseTime());
-                                        countBucket.put(targetBucket, countBucket.get(targetBucket) + 1);
-                                }
-                        }
-                }
+                // 汇总桶最细为分钟粒度，5m 也按分钟分组
+                NavigableMap<LocalDateTime, LatencyRollupService.LatencySummary> buckets = latencyRollupService
+                                .summarizeBuckets(LatencyRollupService.Dimension.ALL, null, bucketStarts, end);
 
                 List<Map<String, Object>> result = new ArrayList<>();
-                for (Map.Entry<LocalDateTime, Long> entry : sumBucket.entrySet()) {
-                        LocalDateTime key = entry.getKey();
-                        Integer count = countBucket.get(key);
+                for (Map.Entry<LocalDateTime, LatencyRollupService.LatencySummary> entry : buckets.entrySet()) {
+                        LatencyRollupService.LatencySummary summary = entry.getValue();
                         Map<String, Object> item = new HashMap<>();
-                        item.put("timestamp", key.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-                        item.put("latency", count > 0 ? entry.getValue() / count : 0);
+                        item.put("timestamp", entry.getKey().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                        item.put("latency", Math.round(summary.mean()));
+                        item.put("p50", summary.p50());
+                        item.put("p95", summary.p95());
+                        item.put("p99", summary.p99());
+                        item.put("count", summary.count());
                         result.add(item);
                 }
                 return result;
@@ -1,5 +1,6 @@
 package com.adlin.orin.modules.statistics.service;
 
+import com.adlin.orin.modules.monitor.service.UsageRollupService;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,14 +9,17 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.YearMonth;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
 
 /**
  * 统计分析服务
- * 提供多维度统计分析功能
+ * 提供多维度统计分析功能；调用量、活跃用户与 Token 指标读取 usage_rollups 预聚合桶
  */
 @Slf4j
 @Service
@@ -23,44 +27,30 @@ import java.util.*;
 public class StatisticsService {
 
     private final JdbcTemplate jdbcTemplate;
+    private final UsageRollupService usageRollupService;
 
     /**
      * 获取用户活跃度统计
      */
     public Map<String, Object> getUserActivityStats(LocalDate startDate, LocalDate endDate) {
         Map<String, Object> stats = new HashMap<>();
-        
-        // 每日活跃用户
-        String dailyActiveSql = """
-            SELECT DATE(created_at) as date, COUNT(DISTINCT created_by) as count
-            FROM audit_log
-            WHERE created_at BETWEEN ? AND ?
-            GROUP BY DATE(created_at)
-            ORDER BY date
-            """;
-        
-        List<Map<String, Object>> dailyActive = jdbcTemplate.query(dailyActiveSql, 
-            (rs, rowNum) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("date", rs.getString("date"));
-                row.put("count", rs.getInt("count"));
-                return row;
-            },
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        
+
+        // 每日活跃用户（天桶内的不同用户数）
+        List<Map<String, Object>> dailyActive = new ArrayList<>();
+        usageRollupService.countKeysByDay(UsageRollupService.Dimension.USER, startDate, endDate)
+                .forEach((date, count) -> {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("date", date.toString());
+                    row.put("count", count);
+                    dailyActive.add(row);
+                });
+
         stats.put("dailyActiveUsers", dailyActive);
-        
+
         // 总活跃用户
-        String totalActiveSql = """
-            SELECT COUNT(DISTINCT created_by) as count
-            FROM audit_log
-            WHERE created_at BETWEEN ? AND ?
-            """;
-        
-        Integer totalActive = jdbcTemplate.queryForObject(totalActiveSql, Integer.class,
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        stats.put("totalActiveUsers", totalActive != null ? totalActive : 0);
-        
+        stats.put("totalActiveUsers", usageRollupService.countKeys(UsageRollupService.Dimension.USER,
+                startDate.atStartOfDay(), endDate.plusDays(1).atStartOfDay()));
+
         return stats;
     }
 
@@ -69,59 +59,39 @@ public class StatisticsService {
      */
     public Map<String, Object> getAgentCallStats(LocalDate startDate, LocalDate endDate) {
         Map<String, Object> stats = new HashMap<>();
-        
-        // 每日调用量
-        String dailyCallsSql = """
-            SELECT DATE(created_at) as date, COUNT(*) as count
-            FROM audit_log
-            WHERE operation_type LIKE '%AGENT%' AND created_at BETWEEN ? AND ?
-            GROUP BY DATE(created_at)
-            ORDER BY date
-            """;
-        
-        List<Map<String, Object>> dailyCalls = jdbcTemplate.query(dailyCallsSql,
-            (rs, rowNum) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("date", rs.getString("date"));
-                row.put("count", rs.getInt("count"));
-                return row;
-            },
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        
+        LocalDateTime start = startDate.atStartOfDay();
+        LocalDateTime end = endDate.plusDays(1).atStartOfDay();
+
+        // 每日调用量（所有智能体合计）
+        List<Map<String, Object>> dailyCalls = new ArrayList<>();
+        sumByDay(UsageRollupService.Dimension.AGENT, startDate, endDate).forEach((day, totals) -> {
+            Map<String, Object> row = new HashMap<>();
+            row.put("date", day.toLocalDate().toString());
+            row.put("count", totals.requests());
+            dailyCalls.add(row);
+        });
+
         stats.put("dailyCalls", dailyCalls);
-        
+
         // 总调用量
-        String totalCallsSql = """
-            SELECT COUNT(*) as count
-            FROM audit_log
-            WHERE operation_type LIKE '%AGENT%' AND created_at BETWEEN ? AND ?
-            """;
-        
-        Integer totalCalls = jdbcTemplate.queryForObject(totalCallsSql, Integer.class,
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        stats.put("totalCalls", totalCalls != null ? totalCalls : 0);
-        
+        stats.put("totalCalls", usageRollupService.sum(UsageRollupService.Dimension.AGENT, null, start, end).requests());
+
         // 按智能体统计
-        String agentStatsSql = """
-            SELECT operation_type, COUNT(*) as count
-            FROM audit_log
-            WHERE operation_type LIKE '%AGENT%' AND created_at BETWEEN ? AND ?
-            GROUP BY operation_type
-            ORDER BY count DESC
-            LIMIT 10
-            """;
-        
-        List<Map<String, Object>> agentStats = jdbcTemplate.query(agentStatsSql,
-            (rs, rowNum) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("agent", rs.getString("operation_type"));
-                row.put("count", rs.getInt("count"));
-                return row;
-            },
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        
+        List<Map<String, Object>> agentStats = usageRollupService
+                .sumByKey(UsageRollupService.Dimension.AGENT, start, end).entrySet().stream()
+                .sorted(Comparator.comparingLong(
+                        (Map.Entry<String, UsageRollupService.Totals> e) -> e.getValue().requests()).reversed())
+                .limit(10)
+                .map(e -> {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("agent", e.getKey());
+                    row.put("count", e.getValue().requests());
+                    return row;
+                })
+                .toList();
+
         stats.put("topAgents", agentStats);
-        
+
         return stats;
     }
 
@@ -161,46 +131,32 @@ public class StatisticsService {
      */
     public Map<String, Object> getTokenStats(LocalDate startDate, LocalDate endDate) {
         Map<String, Object> stats = new HashMap<>();
-        
+
         // 每日 Token 消耗
-        String dailyTokensSql = """
-            SELECT DATE(created_at) as date, 
-                   SUM(total_tokens) as total,
-                   SUM(prompt_tokens) as prompt,
-                   SUM(completion_tokens) as completion
-            FROM audit_log
-            WHERE total_tokens > 0 AND created_at BETWEEN ? AND ?
-            GROUP BY DATE(created_at)
-            ORDER BY date
-            """;
-        
-        List<Map<String, Object>> dailyTokens = jdbcTemplate.query(dailyTokensSql,
-            (rs, rowNum) -> {
+        List<Map<String, Object>> dailyTokens = new ArrayList<>();
+        sumByDay(UsageRollupService.Dimension.ALL, startDate, endDate).forEach((day, totals) -> {
+            if (totals.totalTokens() > 0) {
                 Map<String, Object> row = new HashMap<>();
-                row.put("date", rs.getString("date"));
-                row.put("total", rs.getLong("total"));
-                row.put("prompt", rs.getLong("prompt"));
-                row.put("completion", rs.getLong("completion"));
-                return row;
-            },
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        
+                row.put("date", day.toLocalDate().toString());
+                row.put("total", totals.totalTokens());
+                row.put("prompt", totals.promptTokens());
+                row.put("completion", totals.completionTokens());
+                dailyTokens.add(row);
+            }
+        });
+
         stats.put("dailyTokens", dailyTokens);
-        
+
         // 总 Token 消耗
-        String totalTokensSql = """
-            SELECT SUM(total_tokens) as total,
-                   SUM(prompt_tokens) as prompt,
-                   SUM(completion_tokens) as completion
-            FROM audit_log
-            WHERE total_tokens > 0 AND created_at BETWEEN ? AND ?
-            """;
-        
-        Map<String, Object> totalTokens = jdbcTemplate.queryForMap(totalTokensSql,
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        
+        UsageRollupService.Totals totals = usageRollupService.sum(UsageRollupService.Dimension.ALL, null,
+                startDate.atStartOfDay(), endDate.plusDays(1).atStartOfDay());
+        Map<String, Object> totalTokens = new HashMap<>();
+        totalTokens.put("total", totals.totalTokens());
+        totalTokens.put("prompt", totals.promptTokens());
+        totalTokens.put("completion", totals.completionTokens());
+
         stats.put("totalTokens", totalTokens);
-        
+
         return stats;
     }
 
@@ -277,27 +233,20 @@ public class StatisticsService {
 
     private Map<String, Object> getDailyStats(LocalDateTime start, LocalDateTime end) {
         Map<String, Object> stats = new HashMap<>();
-        
+
         // 用户活跃数
-        String activeUsersSql = "SELECT COUNT(DISTINCT created_by) FROM audit_log WHERE created_at BETWEEN ? AND ?";
-        Integer activeUsers = jdbcTemplate.queryForObject(activeUsersSql, Integer.class, start, end);
-        stats.put("activeUsers", activeUsers != null ? activeUsers : 0);
-        
-        // API 调用次数
-        String apiCallsSql = "SELECT COUNT(*) FROM audit_log WHERE created_at BETWEEN ? AND ?";
-        Integer apiCalls = jdbcTemplate.queryForObject(apiCallsSql, Integer.class, start, end);
-        stats.put("apiCalls", apiCalls != null ? apiCalls : 0);
-        
-        // Token 消耗
-        String tokensSql = "SELECT COALESCE(SUM(total_tokens), 0) FROM audit_log WHERE created_at BETWEEN ? AND ?";
-        Long tokens = jdbcTemplate.queryForObject(tokensSql, Long.class, start, end);
-        stats.put("tokens", tokens != null ? tokens : 0);
-        
+        stats.put("activeUsers", usageRollupService.countKeys(UsageRollupService.Dimension.USER, start, end));
+
+        // API 调用次数与 Token 消耗
+        UsageRollupService.Totals totals = usageRollupService.sum(UsageRollupService.Dimension.ALL, null, start, end);
+        stats.put("apiCalls", totals.requests());
+        stats.put("tokens", totals.totalTokens());
+
         // 任务数
         String tasksSql = "SELECT COUNT(*) FROM task_queue WHERE created_at BETWEEN ? AND ?";
         Integer tasks = jdbcTemplate.queryForObject(tasksSql, Integer.class, start, end);
         stats.put("tasks", tasks != null ? tasks : 0);
-        
+
         return stats;
     }
 
@@ -345,67 +294,83 @@ public class StatisticsService {
     }
 
     private List<Map<String, Object>> getDailyExportData(LocalDate startDate, LocalDate endDate) {
-        String sql = """
-            SELECT DATE(created_at) as date,
-                   COUNT(*) as apiCalls,
-                   COALESCE(SUM(total_tokens), 0) as tokens,
-                   (SELECT COUNT(*) FROM task_queue WHERE DATE(created_at) = DATE(audit_log.created_at)) as tasks
-            FROM audit_log
+        String tasksSql = """
+            SELECT DATE(created_at) as date, COUNT(*) as tasks
+            FROM task_queue
             WHERE created_at BETWEEN ? AND ?
             GROUP BY DATE(created_at)
-            ORDER BY date
             """;
-        return jdbcTemplate.query(sql,
-            (rs, rowNum) -> {
-                Map<String, Object> row = new HashMap<>();
-                row.put("date", rs.getString("date"));
-                row.put("apiCalls", rs.getInt("apiCalls"));
-                row.put("tokens", rs.getLong("tokens"));
-                row.put("tasks", rs.getInt("tasks"));
-                return row;
+        Map<String, Integer> tasksByDate = new HashMap<>();
+        jdbcTemplate.query(tasksSql,
+            rs -> {
+                tasksByDate.put(rs.getString("date"), rs.getInt("tasks"));
             },
             startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
+
+        List<Map<String, Object>> data = new ArrayList<>();
+        sumByDay(UsageRollupService.Dimension.ALL, startDate, endDate).forEach((day, totals) -> {
+            String date = day.toLocalDate().toString();
+            Integer tasks = tasksByDate.getOrDefault(date, 0);
+            if (totals.requests() > 0 || tasks > 0) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("date", date);
+                row.put("apiCalls", totals.requests());
+                row.put("tokens", totals.totalTokens());
+                row.put("tasks", tasks);
+                data.add(row);
+            }
+        });
+        return data;
     }
 
     private List<Map<String, Object>> getWeeklyExportData(LocalDate startDate, LocalDate endDate) {
-        String sql = """
-            SELECT DATE_FORMAT(created_at, '%Y-W%u') as week,
-                   COUNT(DISTINCT created_by) as activeUsers,
-                   COUNT(*) as apiCalls
-            FROM audit_log
-            WHERE created_at BETWEEN ? AND ?
-            GROUP BY week
-            ORDER BY week
-            """;
-        return jdbcTemplate.query(sql,
-            (rs, rowNum) -> {
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (LocalDate weekStart = startDate; !weekStart.isAfter(endDate); ) {
+            LocalDate next = weekStart.with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+            LocalDateTime from = weekStart.atStartOfDay();
+            LocalDateTime to = (next.isAfter(endDate) ? endDate.plusDays(1) : next).atStartOfDay();
+            long apiCalls = usageRollupService.sum(UsageRollupService.Dimension.ALL, null, from, to).requests();
+            if (apiCalls > 0) {
                 Map<String, Object> row = new HashMap<>();
-                row.put("week", rs.getString("week"));
-                row.put("activeUsers", rs.getInt("activeUsers"));
-                row.put("apiCalls", rs.getInt("apiCalls"));
-                return row;
-            },
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
+                row.put("week", String.format("%d-W%02d", weekStart.get(IsoFields.WEEK_BASED_YEAR),
+                        weekStart.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR)));
+                row.put("activeUsers", usageRollupService.countKeys(UsageRollupService.Dimension.USER, from, to));
+                row.put("apiCalls", apiCalls);
+                data.add(row);
+            }
+            weekStart = next;
+        }
+        return data;
     }
 
     private List<Map<String, Object>> getMonthlyExportData(LocalDate startDate, LocalDate endDate) {
-        String sql = """
-            SELECT DATE_FORMAT(created_at, '%Y-%m') as month,
-                   COUNT(DISTINCT created_by) as activeUsers,
-                   COALESCE(SUM(total_tokens), 0) as tokens
-            FROM audit_log
-            WHERE created_at BETWEEN ? AND ?
-            GROUP BY month
-            ORDER BY month
-            """;
-        return jdbcTemplate.query(sql,
-            (rs, rowNum) -> {
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (LocalDate monthStart = startDate; !monthStart.isAfter(endDate); ) {
+            LocalDate next = monthStart.with(TemporalAdjusters.firstDayOfNextMonth());
+            LocalDateTime from = monthStart.atStartOfDay();
+            LocalDateTime to = (next.isAfter(endDate) ? endDate.plusDays(1) : next).atStartOfDay();
+            UsageRollupService.Totals totals = usageRollupService.sum(UsageRollupService.Dimension.ALL, null, from, to);
+            if (totals.requests() > 0) {
                 Map<String, Object> row = new HashMap<>();
-                row.put("month", rs.getString("month"));
-                row.put("activeUsers", rs.getInt("activeUsers"));
-                row.put("tokens", rs.getLong("tokens"));
-                return row;
-            },
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
+                row.put("month", YearMonth.from(monthStart).toString());
+                row.put("activeUsers", usageRollupService.countKeys(UsageRollupService.Dimension.USER, from, to));
+                row.put("tokens", totals.totalTokens());
+                data.add(row);
+            }
+            monthStart = next;
+        }
+        return data;
+    }
+
+    /**
+     * [startDate, endDate] 内逐日的累计值（读天桶）
+     */
+    private NavigableMap<LocalDateTime, UsageRollupService.Totals> sumByDay(UsageRollupService.Dimension dimension,
+                                                                             LocalDate startDate, LocalDate endDate) {
+        NavigableSet<LocalDateTime> days = new TreeSet<>();
+        for (LocalDate day = startDate; !day.isAfter(endDate); day = day.plusDays(1)) {
+            days.add(day.atStartOfDay());
+        }
+        return usageRollupService.sumBuckets(dimension, null, days, endDate.plusDays(1).atStartOfDay());
     }
 }
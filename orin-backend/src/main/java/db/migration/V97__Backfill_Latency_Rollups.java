@@ -0,0 +1,141 @@
+package db.migration;
+
+import org.HdrHistogram.Histogram;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 从审计日志回填 latency_rollups，过滤条件与保留窗口同 V96 回填 usage_rollups：
+ * 排除系统日志；48 小时内写分钟桶，90 天内写小时桶；维度为 ALL / PROVIDER / MODEL / AGENT。
+ *
+ * 直方图要用 HdrHistogram 压缩编码，SQL 写不出来，所以用 Java 迁移。按天读取审计日志、逐天写入，
+ * 只回填最早一个已有汇总桶之前的日志，避免与上线后已记录的数据重复计数。
+ */
+public class V97__Backfill_Latency_Rollups extends BaseJavaMigration {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private static final int MAX_KEY_LENGTH = 191;
+    private static final int MINUTE_RETENTION_HOURS = 48;
+    private static final int HOUR_RETENTION_DAYS = 90;
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime until = earliestRollup(connection);
+        if (until == null || until.isAfter(now)) {
+            until = now;
+        }
+        LocalDateTime minuteFrom = now.minusHours(MINUTE_RETENTION_HOURS);
+        Set<String> agentIds = agentIds(connection);
+
+        for (LocalDateTime day = LocalDate.now().minusDays(HOUR_RETENTION_DAYS).atStartOfDay();
+                day.isBefore(until); day = day.plusDays(1)) {
+            LocalDateTime to = day.plusDays(1).isBefore(until) ? day.plusDays(1) : until;
+            write(connection, aggregate(connection, day, to, minuteFrom, agentIds));
+        }
+    }
+
+    private static Map<BucketKey, Histogram> aggregate(Connection connection, LocalDateTime from, LocalDateTime to,
+            LocalDateTime minuteFrom, Set<String> agentIds) throws Exception {
+        Map<BucketKey, Histogram> buckets = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT created_at, response_time, provider_id, model FROM audit_logs "
+                        + "WHERE provider_id IS NOT NULL AND provider_id <> 'ORIN_CORE' AND response_time IS NOT NULL "
+                        + "AND created_at >= ? AND created_at < ?")) {
+            statement.setTimestamp(1, Timestamp.valueOf(from));
+            statement.setTimestamp(2, Timestamp.valueOf(to));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    LocalDateTime createdAt = rs.getTimestamp(1).toLocalDateTime();
+                    long latencyMs = Math.max(0L, rs.getLong(2));
+                    String providerId = rs.getString(3);
+                    String model = rs.getString(4);
+                    boolean minute = !createdAt.isBefore(minuteFrom);
+                    String granularity = minute ? "MINUTE" : "HOUR";
+                    LocalDateTime bucketStart = createdAt.truncatedTo(minute ? ChronoUnit.MINUTES : ChronoUnit.HOURS);
+
+                    record(buckets, granularity, bucketStart, "ALL", "*", latencyMs);
+                    record(buckets, granularity, bucketStart, "PROVIDER", providerId, latencyMs);
+                    record(buckets, granularity, bucketStart, "MODEL", model, latencyMs);
+                    if (agentIds.contains(providerId)) {
+                        record(buckets, granularity, bucketStart, "AGENT", providerId, latencyMs);
+                    }
+                }
+            }
+        }
+        return buckets;
+    }
+
+    private static void record(Map<BucketKey, Histogram> buckets, String granularity, LocalDateTime bucketStart,
+            String dimension, String key, long latencyMs) {
+        if (key == null || key.isBlank()) {
+            return;
+        }
+        String dimensionKey = key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+        buckets.computeIfAbsent(new BucketKey(granularity, bucketStart, dimension, dimensionKey),
+                k -> new Histogram(SIGNIFICANT_DIGITS)).recordValue(latencyMs);
+    }
+
+    private static void write(Connection connection, Map<BucketKey, Histogram> buckets) throws Exception {
+        if (buckets.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO latency_rollups (granularity, bucket_start, dimension, dimension_key, sample_count, "
+                        + "max_ms, histogram) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (Map.Entry<BucketKey, Histogram> entry : buckets.entrySet()) {
+                BucketKey key = entry.getKey();
+                Histogram histogram = entry.getValue();
+                ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+                int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+                insert.setString(1, key.granularity());
+                insert.setTimestamp(2, Timestamp.valueOf(key.bucketStart()));
+                insert.setString(3, key.dimension());
+                insert.setString(4, key.dimensionKey());
+                insert.setLong(5, histogram.getTotalCount());
+                insert.setLong(6, histogram.getMaxValue());
+                insert.setBytes(7, Arrays.copyOf(buffer.array(), length));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static LocalDateTime earliestRollup(Connection connection) throws Exception {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT MIN(bucket_start) FROM latency_rollups")) {
+            Timestamp earliest = rs.next() ? rs.getTimestamp(1) : null;
+            return earliest != null ? earliest.toLocalDateTime() : null;
+        }
+    }
+
+    private static Set<String> agentIds(Connection connection) throws Exception {
+        Set<String> ids = new HashSet<>();
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT agent_id FROM agent_metadata")) {
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+        }
+        return ids;
+    }
+
+    private record BucketKey(String granularity, LocalDateTime bucketStart, String dimension, String dimensionKey) {
+    }
+}
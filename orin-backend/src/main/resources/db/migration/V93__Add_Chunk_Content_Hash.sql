@@ -0,0 +1,3 @@
+-- Per-chunk content hash used by incremental re-indexing to detect changed chunks.
+ALTER TABLE kb_document_chunks
+    ADD COLUMN content_hash VARCHAR(64) NULL COMMENT '分片内容 SHA-256，用于增量重建索引' AFTER position;
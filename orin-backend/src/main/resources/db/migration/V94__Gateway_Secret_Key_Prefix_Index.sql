@@ -0,0 +1,2 @@
+-- Client access keys are looked up by their public prefix (sk-orin- + first 8 chars) before the hash check.
+CREATE INDEX idx_gateway_secret_type_key_prefix ON gateway_secrets(secret_type, key_prefix);
@@ -0,0 +1,13 @@
+-- Mergeable latency histograms (HdrHistogram, compressed) per dimension in minute and hour buckets.
+CREATE TABLE IF NOT EXISTS latency_rollups (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    granularity VARCHAR(8) NOT NULL,
+    bucket_start DATETIME NOT NULL,
+    dimension VARCHAR(16) NOT NULL,
+    dimension_key VARCHAR(191) NOT NULL,
+    sample_count BIGINT NOT NULL,
+    max_ms BIGINT NOT NULL,
+    histogram MEDIUMBLOB NOT NULL,
+    INDEX idx_latency_rollup_series (dimension, dimension_key, bucket_start),
+    INDEX idx_latency_rollup_granularity (granularity, bucket_start)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,155 @@
+-- Pre-aggregated request/token/cost counters per dimension in minute, hour and day buckets.
+-- Incrementally maintained by UsageRollupService; dashboards read these rows instead of summing audit_logs.
+CREATE TABLE IF NOT EXISTS usage_rollups (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    granularity VARCHAR(8) NOT NULL,
+    bucket_start DATETIME NOT NULL,
+    dimension VARCHAR(16) NOT NULL,
+    dimension_key VARCHAR(191) NOT NULL,
+    request_count BIGINT NOT NULL DEFAULT 0,
+    error_count BIGINT NOT NULL DEFAULT 0,
+    prompt_tokens BIGINT NOT NULL DEFAULT 0,
+    completion_tokens BIGINT NOT NULL DEFAULT 0,
+    total_tokens BIGINT NOT NULL DEFAULT 0,
+    cost DOUBLE NOT NULL DEFAULT 0,
+    updated_at DATETIME NOT NULL,
+    UNIQUE KEY uk_usage_rollup_bucket (granularity, bucket_start, dimension, dimension_key),
+    INDEX idx_usage_rollup_series (dimension, granularity, bucket_start)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Backfill from existing business logs (system logs excluded, same filter as the old audit sums).
+-- Minute and hour buckets only cover their retention windows; day buckets cover all history.
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'MINUTE', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), 'ALL', '*', COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.created_at >= DATE_SUB(NOW(), INTERVAL 48 HOUR)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00');
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'MINUTE', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), 'USER', LEFT(a.user_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.user_id IS NOT NULL AND a.user_id <> '' AND a.created_at >= DATE_SUB(NOW(), INTERVAL 48 HOUR)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), LEFT(a.user_id, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'MINUTE', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), 'PROVIDER', LEFT(a.provider_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.created_at >= DATE_SUB(NOW(), INTERVAL 48 HOUR)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), LEFT(a.provider_id, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'MINUTE', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), 'MODEL', LEFT(a.model, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.model IS NOT NULL AND a.model <> '' AND a.created_at >= DATE_SUB(NOW(), INTERVAL 48 HOUR)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), LEFT(a.model, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'MINUTE', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), 'AGENT', LEFT(a.provider_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a JOIN agent_metadata m ON m.agent_id = a.provider_id
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.created_at >= DATE_SUB(NOW(), INTERVAL 48 HOUR)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:%i:00'), LEFT(a.provider_id, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'HOUR', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), 'ALL', '*', COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.created_at >= DATE_SUB(CURDATE(), INTERVAL 90 DAY)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00');
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'HOUR', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), 'USER', LEFT(a.user_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.user_id IS NOT NULL AND a.user_id <> '' AND a.created_at >= DATE_SUB(CURDATE(), INTERVAL 90 DAY)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), LEFT(a.user_id, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'HOUR', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), 'PROVIDER', LEFT(a.provider_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.created_at >= DATE_SUB(CURDATE(), INTERVAL 90 DAY)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), LEFT(a.provider_id, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'HOUR', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), 'MODEL', LEFT(a.model, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.model IS NOT NULL AND a.model <> '' AND a.created_at >= DATE_SUB(CURDATE(), INTERVAL 90 DAY)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), LEFT(a.model, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'HOUR', DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), 'AGENT', LEFT(a.provider_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a JOIN agent_metadata m ON m.agent_id = a.provider_id
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.created_at >= DATE_SUB(CURDATE(), INTERVAL 90 DAY)
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d %H:00:00'), LEFT(a.provider_id, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'DAY', DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), 'ALL', '*', COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE'
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00');
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'DAY', DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), 'USER', LEFT(a.user_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.user_id IS NOT NULL AND a.user_id <> '' 
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), LEFT(a.user_id, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'DAY', DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), 'PROVIDER', LEFT(a.provider_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE'
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), LEFT(a.provider_id, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'DAY', DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), 'MODEL', LEFT(a.model, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE' AND a.model IS NOT NULL AND a.model <> '' 
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), LEFT(a.model, 191);
+
+INSERT INTO usage_rollups (granularity, bucket_start, dimension, dimension_key, request_count, error_count,
+  prompt_tokens, completion_tokens, total_tokens, cost, updated_at)
+SELECT 'DAY', DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), 'AGENT', LEFT(a.provider_id, 191), COUNT(*), SUM(CASE WHEN a.success = FALSE THEN 1 ELSE 0 END),
+  COALESCE(SUM(a.prompt_tokens), 0), COALESCE(SUM(a.completion_tokens), 0), COALESCE(SUM(a.total_tokens), 0),
+  COALESCE(SUM(a.estimated_cost), 0), NOW()
+FROM audit_logs a JOIN agent_metadata m ON m.agent_id = a.provider_id
+WHERE a.provider_id IS NOT NULL AND a.provider_id <> 'ORIN_CORE'
+GROUP BY DATE_FORMAT(a.created_at, '%Y-%m-%d 00:00:00'), LEFT(a.provider_id, 191);
@@ -3,24 +3,42 @@ package com.adlin.orin.gateway.controller;
 import com.adlin.orin.gateway.adapter.ProviderAdapter;
 import com.adlin.orin.gateway.dto.ChatCompletionRequest;
 import com.adlin.orin.gateway.dto.ChatCompletionResponse;
+import com.adlin.orin.gateway.service.ChatCompletionCache;
+import com.adlin.orin.gateway.service.EmbeddingMicroBatcher;
+import com.adlin.orin.gateway.service.HedgingService;
+import com.adlin.orin.gateway.service.ProviderLoadTracker;
 import com.adlin.orin.gateway.service.ProviderRegistry;
+import com.adlin.orin.gateway.service.RequestCoalescer;
 import com.adlin.orin.gateway.service.RouterService;
+import com.adlin.orin.modules.apikey.entity.GatewaySecret;
+import com.adlin.orin.modules.apikey.service.GatewaySecretService;
+import com.adlin.orin.modules.knowledge.component.EmbeddingService;
+import com.adlin.orin.modules.monitor.service.LatencyRollupService;
 import com.adlin.orin.modules.workflow.service.WorkflowService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 import reactor.core.publisher.Flux;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,12 +53,30 @@ class UnifiedGatewayApiControllerTest {
     private WorkflowService workflowService;
     @Mock
     private ProviderAdapter provider;
+    @Mock
+    private LatencyRollupService latencyRollupService;
+    @Mock
+    private GatewaySecretService gatewaySecretService;
+
+    @Mock
+    private ObjectProvider<EmbeddingService> embeddingServiceProvider;
 
+    private ChatCompletionCache responseCache;
     private UnifiedGatewayApiController controller;
 
     @BeforeEach
     void setUp() {
-        controller = new UnifiedGatewayApiController(providerRegistry, routerService, workflowService);
+        responseCache = new ChatCompletionCache(embeddingServiceProvider, new SimpleMeterRegistry(),
+                600, 16, 4, 600, 4);
+        controller = new UnifiedGatewayApiController(providerRegistry, routerService, workflowService,
+                latencyRollupService, responseCache, new RequestCoalescer(new SimpleMeterRegistry()),
+                new ProviderLoadTracker(), new HedgingService(new SimpleMeterRegistry()),
+                new EmbeddingMicroBatcher(new SimpleMeterRegistry()), gatewaySecretService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
     }
 
     @Test
@@ -60,7 +96,8 @@ class UnifiedGatewayApiControllerTest {
         when(provider.getProviderType()).thenReturn("openai");
         when(provider.chatCompletionStream(request)).thenReturn(Flux.just(chunk));
 
-        ResponseEntity<Object> response = controller.chatCompletions(request, null, null, "trace-1").block();
+        ResponseEntity<Object> response = controller.chatCompletions(request, null, null, "trace-1", null,
+                new MockHttpServletRequest()).block();
 
         assertThat(response).isNotNull();
         assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.TEXT_EVENT_STREAM);
@@ -87,4 +124,73 @@ class UnifiedGatewayApiControllerTest {
         assertThat(response.getBody()).containsEntry("providers", Map.of("local-ollama", true));
         verify(providerRegistry, never()).checkAllHealth();
     }
+
+    @Test
+    void chatCompletionsStream_shouldShareCacheBetweenJwtCallerAndSameUsersApiKey() {
+        ChatCompletionRequest request = deterministic();
+        stubStreamingProvider(request);
+
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "u-1", null, List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+        assertThat(streamContent(request, new MockHttpServletRequest())).isEqualTo("hello");
+        SecurityContextHolder.clearContext();
+
+        // /v1/chat/completions/stream 没有网关路由，代理过滤器不会设置 apiKey 属性，由控制器自行校验请求头
+        MockHttpServletRequest keyCaller = new MockHttpServletRequest();
+        keyCaller.addHeader("Authorization", "Bearer sk-orin-test");
+        when(gatewaySecretService.validateClientAccessSecret("sk-orin-test"))
+                .thenReturn(Optional.of(GatewaySecret.builder().secretId("ak-1").userId("u-1").build()));
+        assertThat(streamContent(request, keyCaller)).isEqualTo("hello");
+
+        MockHttpServletRequest otherUser = new MockHttpServletRequest();
+        otherUser.addHeader("X-API-Key", "sk-orin-other");
+        when(gatewaySecretService.validateClientAccessSecret("sk-orin-other"))
+                .thenReturn(Optional.of(GatewaySecret.builder().secretId("ak-2").userId("u-2").build()));
+        assertThat(streamContent(request, otherUser)).isEqualTo("hello");
+
+        verify(provider, times(2)).chatCompletionStream(request);
+    }
+
+    @Test
+    void chatCompletionsStream_shouldNotCacheWhenTenantIsUnknown() {
+        ChatCompletionRequest request = deterministic();
+        stubStreamingProvider(request);
+
+        assertThat(streamContent(request, new MockHttpServletRequest())).isEqualTo("hello");
+        assertThat(streamContent(request, new MockHttpServletRequest())).isEqualTo("hello");
+
+        verify(provider, times(2)).chatCompletionStream(request);
+        assertThat(responseCache.getStatistics()).containsEntry("misses", 0L).containsEntry("entries", 0L);
+    }
+
+    private void stubStreamingProvider(ChatCompletionRequest request) {
+        when(routerService.selectProviderByModel("gpt-test", request)).thenReturn(Optional.of(provider));
+        when(provider.getProviderName()).thenReturn("test");
+        when(provider.chatCompletionStream(request)).thenAnswer(invocation -> Flux.just(ChatCompletionResponse.builder()
+                .id("chunk-1")
+                .model("gpt-test")
+                .choices(List.of(ChatCompletionResponse.Choice.builder()
+                        .index(0)
+                        .message(ChatCompletionRequest.Message.builder().content("hello").build())
+                        .finishReason("stop")
+                        .build()))
+                .build()));
+    }
+
+    private String streamContent(ChatCompletionRequest request, MockHttpServletRequest httpRequest) {
+        return controller.chatCompletionsStream(request, null, null, httpRequest)
+                .flatMapIterable(event -> event.data().getChoices())
+                .mapNotNull(choice -> choice.getDelta() != null
+                        ? choice.getDelta().getContent() : choice.getMessage().getContent())
+                .reduce("", String::concat)
+                .block();
+    }
+
+    private static ChatCompletionRequest deterministic() {
+        return ChatCompletionRequest.builder()
+                .model("gpt-test")
+                .temperature(0.0)
+                .messages(List.of(ChatCompletionRequest.Message.builder().role("user").content("hi").build()))
+                .build();
+    }
 }
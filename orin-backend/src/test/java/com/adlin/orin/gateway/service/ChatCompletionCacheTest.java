@@ -0,0 +1,156 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.dto.ChatCompletionRequest;
+import com.adlin.orin.gateway.dto.ChatCompletionResponse;
+import com.adlin.orin.modules.knowledge.component.EmbeddingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChatCompletionCacheTest {
+
+    @Mock
+    private ObjectProvider<EmbeddingService> embeddingServiceProvider;
+    @Mock
+    private EmbeddingService embeddingService;
+
+    private ChatCompletionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ChatCompletionCache(embeddingServiceProvider, new SimpleMeterRegistry(), 600, 16, 1, 600, 4);
+    }
+
+    @Test
+    void lookup_shouldHitOnCanonicallyEqualRequestWithinSameTenantOnly() {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("seed", 7);
+        params.put("safe", true);
+        ChatCompletionRequest.ChatCompletionRequestBuilder builder = ChatCompletionRequest.builder()
+                .model("gpt-4o").temperature(0.0).messages(List.of(user("hi")));
+        ChatCompletionCache.Lookup miss = cache.lookup("user:alice", "openai", builder.providerParams(params).build(), null).block();
+        assertThat(miss.getStatus()).isEqualTo("MISS");
+        miss.store(response("hello"));
+
+        // 参数顺序不同、stream 不同仍是同一个规范化请求
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("safe", true);
+        reordered.put("seed", 7);
+        ChatCompletionRequest same = builder.providerParams(reordered).stream(true).build();
+        ChatCompletionCache.Lookup hit = cache.lookup("user:alice", "openai", same, null).block();
+        assertThat(hit.isHit()).isTrue();
+        assertThat(hit.getResponse().getChoices().get(0).getMessage().getContent()).isEqualTo("hello");
+
+        assertThat(cache.lookup("user:bob", "openai", same, null).block().isHit()).isFalse();
+        assertThat(cache.lookup("user:alice", "openai", same, "bypass").block().getStatus()).isEqualTo("BYPASS");
+
+        // 非确定性采样默认不缓存，显式 exact 时才参与
+        ChatCompletionRequest sampled = builder.temperature(0.8).build();
+        assertThat(cache.lookup("user:alice", "openai", sampled, null).block().getStatus()).isEqualTo("BYPASS");
+        assertThat(cache.lookup("user:alice", "openai", sampled, "exact").block().getStatus()).isEqualTo("MISS");
+        assertThat(cache.isReusable(sampled, null)).isFalse();
+        assertThat(cache.isReusable(sampled, "exact")).isTrue();
+        assertThat(cache.isReusable(same, "bypass")).isFalse();
+    }
+
+    @Test
+    void store_shouldEvictOldestEntriesOfTenantOverItsByteLimit() {
+        String large = "x".repeat(400 * 1024);
+        for (int i = 0; i < 3; i++) {
+            cache.lookup("user:alice", "openai", deterministic("q" + i), null).block().store(response(large));
+        }
+        cache.lookup("user:bob", "openai", deterministic("q0"), null).block().store(response("small"));
+
+        assertThat(cache.tenantBytes("user:alice")).isBetween(1L, 1024L * 1024);
+        assertThat(cache.lookup("user:alice", "openai", deterministic("q0"), null).block().isHit()).isFalse();
+        assertThat(cache.lookup("user:alice", "openai", deterministic("q2"), null).block().isHit()).isTrue();
+        assertThat(cache.lookup("user:bob", "openai", deterministic("q0"), null).block().isHit()).isTrue();
+    }
+
+    @Test
+    void semanticLookup_shouldReuseResponseForSimilarPromptAboveThreshold() {
+        ReflectionTestUtils.setField(cache, "semanticEnabled", true);
+        when(embeddingServiceProvider.getIfAvailable()).thenReturn(embeddingService);
+        when(embeddingService.embed("天气怎么样")).thenReturn(List.of(1f, 0f, 0f));
+        when(embeddingService.embed("天气如何")).thenReturn(List.of(0.99f, 0.1f, 0f));
+        when(embeddingService.embed("讲个笑话")).thenReturn(List.of(0f, 1f, 0f));
+
+        ChatCompletionCache.Lookup first = cache.lookup("user:alice", "openai", deterministic("天气怎么样"), "semantic").block();
+        assertThat(first.getStatus()).isEqualTo("MISS");
+        first.store(response("晴"));
+
+        ChatCompletionCache.Lookup similar = cache.lookup("user:alice", "openai", deterministic("天气如何"), "semantic").block();
+        assertThat(similar.getStatus()).isEqualTo("SEMANTIC_HIT");
+        assertThat(similar.getResponse().getChoices().get(0).getMessage().getContent()).isEqualTo("晴");
+
+        assertThat(cache.lookup("user:alice", "openai", deterministic("讲个笑话"), "semantic").block().isHit()).isFalse();
+        // 未显式选择语义层时只做精确匹配
+        assertThat(cache.lookup("user:alice", "openai", deterministic("天气如何"), null).block().isHit()).isFalse();
+    }
+
+    @Test
+    void record_shouldCacheAggregatedStreamAndReplayItAsChunks() {
+        ChatCompletionCache.Lookup miss = cache.lookup("anonymous", "openai", deterministic("hi"), null).block();
+        Flux<ChatCompletionResponse> upstream = Flux.just(streamChunk("Hel", null), streamChunk("lo", "stop"));
+        assertThat(miss.record(upstream).collectList().block()).hasSize(2);
+
+        ChatCompletionCache.Lookup hit = cache.lookup("anonymous", "openai", deterministic("hi"), null).block();
+        assertThat(hit.isHit()).isTrue();
+        List<ChatCompletionResponse> replayed = cache.replay(hit.getResponse()).collectList().block();
+        assertThat(replayed).allSatisfy(chunk -> assertThat(chunk.getObject()).isEqualTo("chat.completion.chunk"));
+        assertThat(replayed.stream()
+                .flatMap(chunk -> chunk.getChoices().stream())
+                .map(choice -> choice.getDelta().getContent())
+                .filter(content -> content != null)
+                .collect(Collectors.joining())).isEqualTo("Hello");
+        assertThat(replayed.get(replayed.size() - 1).getChoices().get(0).getFinishReason()).isEqualTo("stop");
+    }
+
+    private static ChatCompletionRequest deterministic(String prompt) {
+        return ChatCompletionRequest.builder().model("gpt-4o").temperature(0.0).messages(List.of(user(prompt))).build();
+    }
+
+    private static ChatCompletionRequest.Message user(String content) {
+        return ChatCompletionRequest.Message.builder().role("user").content(content).build();
+    }
+
+    private static ChatCompletionResponse response(String content) {
+        return ChatCompletionResponse.builder()
+                .id("resp-1")
+                .model("gpt-4o")
+                .choices(List.of(ChatCompletionResponse.Choice.builder()
+                        .index(0)
+                        .message(ChatCompletionRequest.Message.builder().role("assistant").content(content).build())
+                        .finishReason("stop")
+                        .build()))
+                .build();
+    }
+
+    private static ChatCompletionResponse streamChunk(String content, String finishReason) {
+        return ChatCompletionResponse.builder()
+                .id("chunk")
+                .object("chat.completion.chunk")
+                .model("gpt-4o")
+                .choices(List.of(ChatCompletionResponse.Choice.builder()
+                        .index(0)
+                        .message(ChatCompletionRequest.Message.builder().content(content).build())
+                        .finishReason(finishReason)
+                        .build()))
+                .build();
+    }
+}
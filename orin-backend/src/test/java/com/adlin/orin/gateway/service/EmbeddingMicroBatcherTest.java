@@ -0,0 +1,181 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.dto.EmbeddingRequest;
+import com.adlin.orin.gateway.dto.EmbeddingResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmbeddingMicroBatcherTest {
+
+    private EmbeddingMicroBatcher batcher;
+    private FakeUpstream upstream;
+
+    @BeforeEach
+    void setUp() {
+        batcher = new EmbeddingMicroBatcher(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(batcher, "maxWaitMs", 20L);
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", 64);
+        upstream = new FakeUpstream(4, 20);
+    }
+
+    @Test
+    void syntheticConcurrentLoad_shouldCutUpstreamCallsAndLatency() {
+        int callers = 256;
+
+        ReflectionTestUtils.setField(batcher, "enabled", false);
+        long startedAt = System.nanoTime();
+        List<EmbeddingResponse> unbatched = runConcurrently(callers);
+        Duration unbatchedTime = Duration.ofNanos(System.nanoTime() - startedAt);
+        int unbatchedCalls = upstream.calls.size();
+
+        upstream.calls.clear();
+        ReflectionTestUtils.setField(batcher, "enabled", true);
+        startedAt = System.nanoTime();
+        List<EmbeddingResponse> batched = runConcurrently(callers);
+        Duration batchedTime = Duration.ofNanos(System.nanoTime() - startedAt);
+        int batchedCalls = upstream.calls.size();
+
+        for (int i = 0; i < callers; i++) {
+            assertThat(batched.get(i).getData()).hasSize(1);
+            assertThat(batched.get(i).getData().get(0).getIndex()).isZero();
+            assertThat(batched.get(i).getData().get(0).getEmbedding())
+                    .isEqualTo(unbatched.get(i).getData().get(0).getEmbedding())
+                    .containsExactly((double) ("text-" + i).hashCode());
+        }
+        assertThat(unbatchedCalls).isEqualTo(callers);
+        assertThat(batchedCalls).isLessThanOrEqualTo(callers / 8);
+        assertThat(upstream.calls).allSatisfy(size -> assertThat(size).isLessThanOrEqualTo(64));
+        // 上游限制 4 并发、每次 20ms：逐条转发至少 256 / 4 × 20ms，合批后只需几个批次
+        assertThat(batchedTime).isLessThan(unbatchedTime.dividedBy(2));
+        System.out.printf("embedding micro-batching: %d callers, upstream calls %d -> %d, wall time %d ms -> %d ms%n",
+                callers, unbatchedCalls, batchedCalls, unbatchedTime.toMillis(), batchedTime.toMillis());
+
+        assertThat(batcher.getStatistics()).containsEntry("requests", (long) callers)
+                .containsEntry("upstreamCalls", (long) batchedCalls)
+                .containsEntry("openBatches", 0);
+    }
+
+    @Test
+    void embedding_shouldFlushAtBatchSizeShareDuplicatesAndSplitUsage() {
+        ReflectionTestUtils.setField(batcher, "maxBatchSize", 2);
+        ReflectionTestUtils.setField(batcher, "maxWaitMs", 5_000L);
+
+        List<EmbeddingResponse> responses = Flux.just("aaaa", "aaaa", "bbbbbbbbbbbb")
+                .flatMapSequential(text -> batcher.embedding("openai", request(text, "u1"), upstream))
+                .collectList()
+                .block(Duration.ofSeconds(2));
+
+        // 第二个 "aaaa" 复用第一个的位置，第三条凑满 2 条立即发出，不等 max-wait
+        assertThat(upstream.calls).containsExactly(2);
+        assertThat(responses).hasSize(3);
+        assertThat(responses.get(1).getData().get(0).getEmbedding()).containsExactly((double) "aaaa".hashCode());
+        assertThat(responses.get(0).getUsage().getPromptTokens()).isEqualTo(10);
+        assertThat(responses.get(2).getUsage().getPromptTokens()).isEqualTo(30);
+    }
+
+    @Test
+    void embedding_shouldKeepUsersApartAndPassMultiInputThrough() {
+        Mono<EmbeddingResponse> first = batcher.embedding("openai", request("same", "u1"), upstream);
+        Mono<EmbeddingResponse> second = batcher.embedding("openai", request("same", "u2"), upstream);
+        Flux.merge(first, second).blockLast(Duration.ofSeconds(2));
+        assertThat(upstream.calls).containsExactly(1, 1);
+
+        upstream.calls.clear();
+        EmbeddingRequest multi = EmbeddingRequest.builder().model("bge-m3").input(List.of("a", "b")).build();
+        assertThat(batcher.embedding("openai", multi, upstream).block().getData()).hasSize(2);
+        assertThat(upstream.calls).containsExactly(2);
+        assertThat(batcher.getStatistics()).containsEntry("requests", 2L);
+    }
+
+    @Test
+    void embedding_shouldFailEveryCallerOfAFailedBatch() {
+        AtomicInteger calls = new AtomicInteger();
+        Function<EmbeddingRequest, Mono<EmbeddingResponse>> failing = batch -> {
+            calls.incrementAndGet();
+            return Mono.error(new IllegalStateException("upstream 503"));
+        };
+
+        List<String> errors = Flux.just("a", "b")
+                .flatMap(text -> batcher.embedding("openai", request(text, null), failing)
+                        .map(EmbeddingResponse::getModel)
+                        .onErrorResume(e -> Mono.just(e.getMessage())))
+                .collectList()
+                .block(Duration.ofSeconds(2));
+
+        assertThat(errors).containsExactly("upstream 503", "upstream 503");
+        assertThat(calls.get()).isEqualTo(1);
+        assertThatThrownBy(() -> batcher.embedding("openai", request("c", null),
+                batch -> Mono.just(EmbeddingResponse.builder().data(List.of()).build())).block(Duration.ofSeconds(2)))
+                .hasMessageContaining("no vector for input 0");
+    }
+
+    private List<EmbeddingResponse> runConcurrently(int callers) {
+        return Flux.range(0, callers)
+                .flatMapSequential(i -> batcher.embedding("openai", request("text-" + i, null), upstream), callers)
+                .collectList()
+                .block(Duration.ofSeconds(30));
+    }
+
+    private static EmbeddingRequest request(String text, String user) {
+        return EmbeddingRequest.builder().model("bge-m3").input(text).user(user).build();
+    }
+
+    /**
+     * 模拟上游：限制并发数、每次调用固定耗时，向量为文本 hashCode，按逆序返回 data 以检验按下标分发
+     */
+    private static final class FakeUpstream implements Function<EmbeddingRequest, Mono<EmbeddingResponse>> {
+        private final Semaphore concurrency;
+        private final long latencyMs;
+        private final List<Integer> calls = new CopyOnWriteArrayList<>();
+
+        private FakeUpstream(int maxConcurrency, long latencyMs) {
+            this.concurrency = new Semaphore(maxConcurrency);
+            this.latencyMs = latencyMs;
+        }
+
+        @Override
+        public Mono<EmbeddingResponse> apply(EmbeddingRequest request) {
+            return Mono.fromCallable(() -> {
+                List<?> inputs = request.getInput() instanceof List<?> list ? list : List.of(request.getInput());
+                calls.add(inputs.size());
+                concurrency.acquire();
+                try {
+                    Thread.sleep(latencyMs);
+                } finally {
+                    concurrency.release();
+                }
+                List<EmbeddingResponse.EmbeddingData> data = new ArrayList<>();
+                int tokens = 0;
+                for (int i = inputs.size() - 1; i >= 0; i--) {
+                    String text = (String) inputs.get(i);
+                    tokens += text.length() * 10 / 4;
+                    data.add(EmbeddingResponse.EmbeddingData.builder()
+                            .index(i)
+                            .embedding(List.of((double) text.hashCode()))
+                            .build());
+                }
+                return EmbeddingResponse.builder()
+                        .model(request.getModel())
+                        .data(data)
+                        .usage(EmbeddingResponse.Usage.builder().promptTokens(tokens).totalTokens(tokens).build())
+                        .build();
+            }).subscribeOn(Schedulers.boundedElastic());
+        }
+    }
+}
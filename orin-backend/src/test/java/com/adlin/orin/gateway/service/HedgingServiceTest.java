@@ -0,0 +1,120 @@
+package com.adlin.orin.gateway.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class HedgingServiceTest {
+
+    private HedgingService hedgingService;
+
+    @BeforeEach
+    void setUp() {
+        hedgingService = new HedgingService(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(hedgingService, "minSamples", 5);
+        ReflectionTestUtils.setField(hedgingService, "budgetRatio", 0.1);
+    }
+
+    @Test
+    void hedge_shouldNotHedgeUntilModelHasEnoughSamples() {
+        AtomicInteger alternates = new AtomicInteger();
+        String result = hedgingService.hedge("bge-m3", Mono.just("primary").delayElement(Duration.ofMillis(50)),
+                () -> {
+                    alternates.incrementAndGet();
+                    return Mono.just("alternate");
+                }).block();
+
+        assertThat(result).isEqualTo("primary");
+        assertThat(alternates.get()).isZero();
+        assertThat(hedgingService.hedgeDelayMs("bge-m3")).isEqualTo(-1);
+    }
+
+    @Test
+    void hedge_shouldUseFasterAlternateAfterP90WithinBudget() {
+        warmUp("bge-m3", 10, 20);
+        assertThat(hedgingService.hedgeDelayMs("bge-m3")).isBetween(10L, 500L);
+
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        Mono<String> slowPrimary = Mono.just("primary").delayElement(Duration.ofSeconds(2))
+                .doOnCancel(() -> primaryCancelled.set(true));
+        long startedAt = System.nanoTime();
+        String result = hedgingService.hedge("bge-m3", slowPrimary, () -> Mono.just("alternate")).block();
+
+        assertThat(result).isEqualTo("alternate");
+        assertThat(Duration.ofNanos(System.nanoTime() - startedAt)).isLessThan(Duration.ofSeconds(1));
+        assertThat(primaryCancelled).isTrue();
+
+        // 11 个请求 × 0.1 只够一次对冲，第二次慢请求只能等主请求
+        String second = hedgingService.hedge("bge-m3", Mono.just("primary").delayElement(Duration.ofMillis(300)),
+                () -> Mono.just("alternate")).block();
+        assertThat(second).isEqualTo("primary");
+
+        Map<String, Object> stats = hedgingService.getStatistics();
+        assertThat(stats).containsEntry("requests", 12L)
+                .containsEntry("hedges", 1L)
+                .containsEntry("hedgeWins", 1L)
+                .containsEntry("budgetDenied", 1L);
+    }
+
+    @Test
+    void hedge_shouldCancelLosingPrimaryAndRecordItAsLowerBound() {
+        AtomicLong nanos = new AtomicLong();
+        hedgingService.setClock(nanos::get);
+        for (int i = 0; i < 10; i++) {
+            Sinks.One<String> call = Sinks.one();
+            hedgingService.hedge("bge-m3", call.asMono(), Mono::empty).subscribe();
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(20));
+            call.tryEmitValue("ok");
+        }
+        hedgingService.rotate();
+
+        Sinks.One<String> slowPrimary = Sinks.one();
+        String result = hedgingService.hedge("bge-m3", slowPrimary.asMono(), () -> {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+            return Mono.just("alternate");
+        }).block(Duration.ofSeconds(5));
+        assertThat(result).isEqualTo("alternate");
+        // 落败的主请求立即取消，之后的完成信号不再计入
+        assertThat(slowPrimary.currentSubscriberCount()).isZero();
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(2_000));
+        slowPrimary.tryEmitValue("primary");
+        hedgingService.rotate();
+
+        assertThat((long) hedgingService.getStatistics().get("primaryP99Ms")).isCloseTo(500L, within(5L));
+    }
+
+    @Test
+    void hedge_shouldPropagatePrimaryFailureWithoutRetrying() {
+        warmUp("gpt-4o-mini", 10, 50);
+        AtomicInteger alternates = new AtomicInteger();
+
+        assertThatThrownBy(() -> hedgingService.hedge("gpt-4o-mini",
+                Mono.<String>error(new IllegalStateException("upstream 500")), () -> {
+                    alternates.incrementAndGet();
+                    return Mono.just("alternate");
+                }).block()).hasMessage("upstream 500");
+        assertThat(alternates.get()).isZero();
+    }
+
+    private void warmUp(String model, int calls, long latencyMs) {
+        for (int i = 0; i < calls; i++) {
+            hedgingService.hedge(model, Mono.just("ok").delayElement(Duration.ofMillis(latencyMs)), Mono::empty).block();
+        }
+        hedgingService.rotate();
+    }
+}
@@ -0,0 +1,143 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.adapter.ProviderAdapter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class ProviderLoadTrackerTest {
+
+    @Mock
+    private ProviderAdapter provider;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private ProviderLoadTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(provider.getProviderName()).thenReturn("openai");
+        tracker = new ProviderLoadTracker();
+        tracker.setClock(now::get);
+    }
+
+    @Test
+    void observe_shouldTrackInFlightAndReleaseOnCompletionOrCancel() {
+        Sinks.One<String> upstream = Sinks.one();
+        Disposable pending = tracker.observe(provider, "gpt-4o", upstream.asMono()).subscribe();
+        Disposable cancelled = tracker.observe(provider, "gpt-4o", Mono.never()).subscribe();
+        assertThat(tracker.view(provider, "gpt-4o").inFlight()).isEqualTo(2);
+
+        now.addAndGet(250);
+        upstream.tryEmitValue("ok");
+        cancelled.dispose();
+
+        ProviderLoadTracker.View view = tracker.view(provider, "gpt-4o");
+        assertThat(view.inFlight()).isZero();
+        assertThat(view.latencyMs()).isEqualTo(250.0);
+        assertThat(view.errorRate()).isZero();
+        assertThat(pending.isDisposed()).isTrue();
+    }
+
+    @Test
+    void observeStream_shouldUseFirstChunkLatencyAndIgnoreClientErrors() {
+        Flux<String> chunks = Flux.just("a", "b").doOnSubscribe(s -> now.addAndGet(80));
+        tracker.observeStream(provider, "gpt-4o", chunks).blockLast();
+        assertThat(tracker.view(provider, "gpt-4o").latencyMs()).isEqualTo(80.0);
+
+        // 400 属于请求问题，不影响 Provider 错误率；500 计入
+        tracker.observe(provider, "gpt-4o", Mono.error(
+                WebClientResponseException.create(400, "Bad Request", null, null, null))).onErrorComplete().block();
+        assertThat(tracker.view(provider, "gpt-4o").errorRate()).isZero();
+        now.addAndGet(10_000);
+        tracker.observe(provider, "gpt-4o", Mono.error(
+                WebClientResponseException.create(503, "Unavailable", null, null, null))).onErrorComplete().block();
+        assertThat(tracker.view(provider, "gpt-4o").errorRate()).isCloseTo(1 - Math.exp(-1), within(1e-6));
+        assertThat(tracker.view(provider, "gpt-4o").ejected()).isFalse();
+    }
+
+    @Test
+    void view_shouldOnlySlowStartAfterRecoveryFromEjection() {
+        tracker.begin(provider, "gpt-4o").success();
+        assertThat(tracker.view(provider, "gpt-4o").weight()).isEqualTo(1.0);
+
+        for (int i = 0; i < 5; i++) {
+            tracker.begin(provider, "gpt-4o").failure(
+                    WebClientResponseException.create(503, "Unavailable", null, null, null));
+        }
+        assertThat(tracker.view(provider, "gpt-4o").ejected()).isTrue();
+
+        now.addAndGet(30_000);
+        ProviderLoadTracker.View recovered = tracker.view(provider, "gpt-4o");
+        assertThat(recovered.ejected()).isFalse();
+        assertThat(recovered.weight()).isCloseTo(0.1, within(1e-9));
+    }
+
+    @Test
+    void eject_shouldOnlyCountEjectionsThatWinTheRace() throws Exception {
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                pool.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 5; j++) {
+                        tracker.begin(provider, "gpt-4o").failure(
+                                WebClientResponseException.create(503, "Unavailable", null, null, null));
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertThat(pool.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        }
+
+        // 并发失败只摘除一次，第二次摘除时长为两倍基础时长
+        assertThat(ejections()).isEqualTo(1);
+        now.addAndGet(30_000);
+        for (int i = 0; i < 5; i++) {
+            tracker.begin(provider, "gpt-4o").failure(
+                    WebClientResponseException.create(503, "Unavailable", null, null, null));
+        }
+        assertThat(ejections()).isEqualTo(2);
+        now.addAndGet(59_999);
+        assertThat(tracker.view(provider, "gpt-4o").ejected()).isTrue();
+        now.addAndGet(1);
+        assertThat(tracker.view(provider, "gpt-4o").ejected()).isFalse();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int ejections() {
+        Map<String, Object> item = (Map<String, Object>) tracker.snapshot().get("openai|gpt-4o");
+        return (int) item.get("ejections");
+    }
+
+    @Test
+    void slowStartWeight_shouldRampLinearlyToFull() {
+        assertThat(tracker.slowStartWeight(0, now.get())).isEqualTo(1.0);
+        assertThat(tracker.slowStartWeight(now.get(), now.get())).isCloseTo(0.1, within(1e-9));
+        assertThat(tracker.slowStartWeight(now.get() - 15_000, now.get())).isCloseTo(0.55, within(1e-9));
+        assertThat(tracker.slowStartWeight(now.get() - 30_000, now.get())).isEqualTo(1.0);
+    }
+}
@@ -0,0 +1,44 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.adapter.ProviderAdapter;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProviderRegistryTest {
+
+    private final ProviderRegistry registry = new ProviderRegistry();
+    private final ProviderAdapter provider = mock(ProviderAdapter.class);
+
+    @Test
+    void healthySince_shouldOnlyBeSetWhenProviderRecovers() {
+        when(provider.getProviderType()).thenReturn("openai");
+        when(provider.healthCheck()).thenReturn(Mono.just(true), Mono.just(false), Mono.just(true));
+        registry.registerProvider("openai-1", provider);
+
+        // 新注册和一直健康的 Provider 满权重参与路由，不慢启动
+        assertThat(registry.getHealthySince(provider)).isZero();
+        assertThat(registry.checkHealth("openai-1").block()).isTrue();
+        assertThat(registry.getHealthySince(provider)).isZero();
+
+        expireHealthCheck();
+        assertThat(registry.checkHealth("openai-1").block()).isFalse();
+        assertThat(registry.getHealthySince(provider)).isZero();
+
+        long before = System.currentTimeMillis();
+        expireHealthCheck();
+        assertThat(registry.checkHealth("openai-1").block()).isTrue();
+        assertThat(registry.getHealthySince(provider)).isGreaterThanOrEqualTo(before);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expireHealthCheck() {
+        ((Map<String, Long>) ReflectionTestUtils.getField(registry, "lastHealthCheck")).put("openai-1", 0L);
+    }
+}
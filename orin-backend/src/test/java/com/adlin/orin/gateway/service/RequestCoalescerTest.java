@@ -0,0 +1,141 @@
+package com.adlin.orin.gateway.service;
+
+import com.adlin.orin.gateway.dto.ChatCompletionRequest;
+import com.adlin.orin.gateway.dto.ChatCompletionResponse;
+import com.adlin.orin.gateway.dto.EmbeddingRequest;
+import com.adlin.orin.gateway.dto.EmbeddingResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCoalescerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new RequestCoalescer(meterRegistry);
+    }
+
+    @Test
+    void chatCompletion_shouldShareOneUpstreamCallAmongConcurrentIdenticalRequests() {
+        Sinks.One<ChatCompletionResponse> upstream = Sinks.one();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        List<ChatCompletionResponse> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            coalescer.chatCompletion("user:1", "openai", request("hi", null), true, () -> {
+                upstreamCalls.incrementAndGet();
+                return upstream.asMono();
+            }).subscribe(results::add);
+        }
+        // 不同终端用户的请求不合并
+        coalescer.chatCompletion("user:1", "openai", request("hi", "bob"), true, () -> {
+            upstreamCalls.incrementAndGet();
+            return Mono.empty();
+        }).subscribe();
+
+        ChatCompletionResponse response = ChatCompletionResponse.builder().id("resp-1").build();
+        upstream.tryEmitValue(response);
+
+        assertThat(upstreamCalls.get()).isEqualTo(2);
+        assertThat(results).hasSize(3).allSatisfy(r -> assertThat(r).isSameAs(response));
+        assertThat(meterRegistry.get("gateway.coalescing.requests").tag("kind", "chat").tag("role", "coalesced")
+                .counter().count()).isEqualTo(2.0);
+        assertThat(coalescer.inFlightCount()).isZero();
+
+        // 完成后不再复用，相同请求重新调用上游
+        coalescer.chatCompletion("user:1", "openai", request("hi", null), true, () -> {
+            upstreamCalls.incrementAndGet();
+            return Mono.just(response);
+        }).block();
+        assertThat(upstreamCalls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void chatCompletion_shouldNotShareAcrossTenantsOrNonReusableRequests() {
+        Sinks.One<ChatCompletionResponse> upstream = Sinks.one();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        Supplier<Mono<ChatCompletionResponse>> call = () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream.asMono();
+        };
+
+        coalescer.chatCompletion("user:1", "openai", request("hi", null), true, call).subscribe();
+        coalescer.chatCompletion("user:2", "openai", request("hi", null), true, call).subscribe();
+        // 采样结果不可复用（如 temperature 高于缓存上限）时每个调用方各自调用上游
+        coalescer.chatCompletion("user:1", "openai", request("hi", null), false, call).subscribe();
+        coalescer.chatCompletion("user:1", "openai", request("hi", null), false, call).subscribe();
+        // 无法确定租户的调用方之间也不合并
+        coalescer.chatCompletion(null, "openai", request("hi", null), true, call).subscribe();
+        coalescer.chatCompletion(null, "openai", request("hi", null), true, call).subscribe();
+
+        assertThat(upstreamCalls.get()).isEqualTo(6);
+        assertThat(coalescer.inFlightCount()).isEqualTo(2);
+        upstream.tryEmitValue(ChatCompletionResponse.builder().id("resp-1").build());
+        assertThat(coalescer.inFlightCount()).isZero();
+    }
+
+    @Test
+    void chatCompletionStream_shouldReplayEarlierChunksToLateJoiners() {
+        Sinks.Many<ChatCompletionResponse> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        List<String> early = new CopyOnWriteArrayList<>();
+        List<String> late = new CopyOnWriteArrayList<>();
+
+        coalescer.chatCompletionStream("user:1", "openai", request("story", null), true, () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream.asFlux();
+        }).subscribe(chunk -> early.add(chunk.getId()));
+        upstream.tryEmitNext(ChatCompletionResponse.builder().id("c1").build());
+
+        coalescer.chatCompletionStream("user:1", "openai", request("story", null), true, () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream.asFlux();
+        }).subscribe(chunk -> late.add(chunk.getId()));
+        upstream.tryEmitNext(ChatCompletionResponse.builder().id("c2").build());
+        upstream.tryEmitComplete();
+
+        assertThat(upstreamCalls.get()).isEqualTo(1);
+        assertThat(early).containsExactly("c1", "c2");
+        assertThat(late).containsExactly("c1", "c2");
+        assertThat(coalescer.inFlightCount()).isZero();
+    }
+
+    @Test
+    void embedding_shouldCancelUpstreamOnceEveryCallerHasCancelled() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        EmbeddingRequest request = EmbeddingRequest.builder().model("bge-m3").input(List.of("a", "b")).build();
+        Mono<EmbeddingResponse> never = Mono.<EmbeddingResponse>never().doOnCancel(() -> cancelled.set(true));
+
+        Disposable first = coalescer.embedding("user:1", "openai", request, () -> never).subscribe();
+        Disposable second = coalescer.embedding("user:1", "openai", request, () -> never).subscribe();
+        assertThat(coalescer.inFlightCount()).isEqualTo(1);
+
+        first.dispose();
+        assertThat(cancelled).isFalse();
+        second.dispose();
+        assertThat(cancelled).isTrue();
+        assertThat(coalescer.inFlightCount()).isZero();
+    }
+
+    private static ChatCompletionRequest request(String prompt, String user) {
+        return ChatCompletionRequest.builder()
+                .model("gpt-4o")
+                .user(user)
+                .messages(List.of(ChatCompletionRequest.Message.builder().role("user").content(prompt).build()))
+                .build();
+    }
+}
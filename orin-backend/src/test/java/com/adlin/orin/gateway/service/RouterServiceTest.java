@@ -8,11 +8,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,7 +34,7 @@ class RouterServiceTest {
 
     @BeforeEach
     void setUp() {
-        routerService = new RouterService(providerRegistry, modelProperties);
+        routerService = new RouterService(providerRegistry, modelProperties, new ProviderLoadTracker());
     }
 
     @Test
@@ -86,4 +89,52 @@ class RouterServiceTest {
 
         assertThat(selected).isEmpty();
     }
+
+    @Test
+    void selectProviderByType_adaptiveShouldAvoidSlowAndEjectedProvidersAndSlowStartOnRecovery() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        ProviderLoadTracker tracker = new ProviderLoadTracker();
+        tracker.setClock(now::get);
+        routerService = new RouterService(providerRegistry, modelProperties, tracker);
+        ChatCompletionRequest request = ChatCompletionRequest.builder().model("gpt-4o").build();
+        when(modelProperties.getDefaultStrategy()).thenReturn("ADAPTIVE");
+        when(providerRegistry.getHealthyProvidersByType("openai")).thenReturn(List.of(openAiProvider, ollamaProvider));
+        lenient().when(openAiProvider.getProviderName()).thenReturn("fast");
+        lenient().when(ollamaProvider.getProviderName()).thenReturn("slow");
+
+        for (int i = 0; i < 20; i++) {
+            ProviderLoadTracker.Call fast = tracker.begin(openAiProvider, "gpt-4o");
+            now.addAndGet(100);
+            fast.success();
+            ProviderLoadTracker.Call slow = tracker.begin(ollamaProvider, "gpt-4o");
+            now.addAndGet(900);
+            slow.success();
+        }
+        now.addAndGet(60_000);
+        assertThat(countSelections(request, openAiProvider)).isEqualTo(100);
+
+        // 连续 429 被摘除，流量全部转向另一个 Provider
+        for (int i = 0; i < 5; i++) {
+            tracker.begin(openAiProvider, "gpt-4o").failure(
+                    WebClientResponseException.create(429, "Too Many Requests", null, null, null));
+        }
+        assertThat(tracker.view(openAiProvider, "gpt-4o").ejected()).isTrue();
+        assertThat(countSelections(request, openAiProvider)).isZero();
+
+        // 摘除结束后慢启动：权重低时仍让给稳定的 Provider，爬升后重新胜出
+        now.addAndGet(30_100);
+        assertThat(countSelections(request, openAiProvider)).isZero();
+        now.addAndGet(20_000);
+        assertThat(countSelections(request, openAiProvider)).isEqualTo(100);
+    }
+
+    private int countSelections(ChatCompletionRequest request, ProviderAdapter expected) {
+        int count = 0;
+        for (int i = 0; i < 100; i++) {
+            if (routerService.selectProviderByType("openai", request).orElseThrow() == expected) {
+                count++;
+            }
+        }
+        return count;
+    }
 }
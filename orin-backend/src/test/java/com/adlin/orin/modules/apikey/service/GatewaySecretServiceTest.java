@@ -10,8 +10,19 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import org.springframework.test.util.ReflectionTestUtils;
+
 import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -23,6 +34,7 @@ class GatewaySecretServiceTest {
     private EncryptionUtil encryptionUtil;
 
     private GatewaySecretService service;
+    private String lastCreatedKey;
 
     @BeforeEach
     void setUp() {
@@ -84,4 +96,84 @@ class GatewaySecretServiceTest {
         verify(gatewaySecretRepository, never()).save(any());
         verify(encryptionUtil, never()).encrypt(anyString());
     }
+
+    @Test
+    void validateClientAccessSecret_looksUpByPrefixAndCachesVerification() {
+        GatewaySecret secret = createClientSecret();
+        String apiKey = lastCreatedKey;
+        when(gatewaySecretRepository.findBySecretTypeAndStatusAndKeyPrefix(
+                GatewaySecret.SecretType.CLIENT_ACCESS, GatewaySecret.SecretStatus.ACTIVE, apiKey.substring(0, 16)))
+                .thenReturn(List.of(secret));
+
+        assertEquals(Optional.of(secret), service.validateClientAccessSecret(apiKey));
+        assertEquals(Optional.of(secret), service.validateClientAccessSecret(apiKey));
+
+        verify(gatewaySecretRepository, times(1)).findBySecretTypeAndStatusAndKeyPrefix(any(), any(), anyString());
+        verify(gatewaySecretRepository, never()).findBySecretTypeAndStatus(any(), any());
+        // lastUsedAt 不在请求路径上同步写库
+        verify(gatewaySecretRepository, times(1)).save(any(GatewaySecret.class));
+
+        service.flushLastUsed();
+        verify(gatewaySecretRepository).updateLastUsedAt(eq(List.of(secret.getSecretId())), any());
+        service.flushLastUsed();
+        verify(gatewaySecretRepository, times(1)).updateLastUsedAt(any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushLastUsed_writesEachSecretItsOwnTimestamp() {
+        LocalDateTime earlier = LocalDateTime.of(2026, 1, 1, 10, 0, 0);
+        LocalDateTime later = earlier.plusSeconds(7);
+        Map<String, LocalDateTime> pending =
+                (Map<String, LocalDateTime>) ReflectionTestUtils.getField(service, "pendingLastUsed");
+        pending.put("gsec_a", earlier);
+        pending.put("gsec_b", later);
+        pending.put("gsec_c", earlier);
+
+        service.flushLastUsed();
+
+        ArgumentCaptor<Collection<String>> ids = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<LocalDateTime> usedAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(gatewaySecretRepository, times(2)).updateLastUsedAt(ids.capture(), usedAt.capture());
+        assertEquals(List.of(earlier, later), usedAt.getAllValues());
+        assertEquals(Set.of("gsec_a", "gsec_c"), Set.copyOf(ids.getAllValues().get(0)));
+        assertEquals(Set.of("gsec_b"), Set.copyOf(ids.getAllValues().get(1)));
+    }
+
+    @Test
+    void validateClientAccessSecret_revocationEvictsVerifiedCache() {
+        GatewaySecret secret = createClientSecret();
+        String apiKey = lastCreatedKey;
+        when(gatewaySecretRepository.findBySecretTypeAndStatusAndKeyPrefix(any(), any(), anyString()))
+                .thenReturn(List.of(secret))
+                .thenReturn(List.of());
+        when(gatewaySecretRepository.findBySecretId(secret.getSecretId())).thenReturn(Optional.of(secret));
+
+        assertTrue(service.validateClientAccessSecret(apiKey).isPresent());
+        assertTrue(service.updateStatus(secret.getSecretId(), GatewaySecret.SecretStatus.DISABLED, "admin"));
+
+        assertTrue(service.validateClientAccessSecret(apiKey).isEmpty());
+        verify(gatewaySecretRepository, times(2)).findBySecretTypeAndStatusAndKeyPrefix(any(), any(), anyString());
+    }
+
+    @Test
+    void validateClientAccessSecret_wrongSecretWithKnownPrefixIsRejected() {
+        GatewaySecret secret = createClientSecret();
+        String forged = lastCreatedKey.substring(0, 16) + "x".repeat(lastCreatedKey.length() - 16);
+        when(gatewaySecretRepository.findBySecretTypeAndStatusAndKeyPrefix(any(), any(), anyString()))
+                .thenReturn(List.of(secret));
+
+        assertTrue(service.validateClientAccessSecret(forged).isEmpty());
+        verify(gatewaySecretRepository).findLegacyPrefixSecrets(
+                GatewaySecret.SecretType.CLIENT_ACCESS, GatewaySecret.SecretStatus.ACTIVE, 16);
+    }
+
+    private GatewaySecret createClientSecret() {
+        when(encryptionUtil.encrypt(anyString())).thenAnswer(inv -> "ENC(" + inv.getArgument(0) + ")");
+        when(gatewaySecretRepository.save(any(GatewaySecret.class))).thenAnswer(inv -> inv.getArgument(0));
+        GatewaySecretService.ClientAccessSecretWithValue created = service.createClientAccessSecret(
+                "user-1", "client", null, null, null, null, null, "admin");
+        lastCreatedKey = created.getSecretValue();
+        return created.getSecret();
+    }
 }
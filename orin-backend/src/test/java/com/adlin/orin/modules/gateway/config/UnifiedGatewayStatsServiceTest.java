@@ -12,17 +12,26 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,6 +42,8 @@ class UnifiedGatewayStatsServiceTest {
     @Mock
     private ValueOperations<String, String> valueOperations;
     @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+    @Mock
     private UnifiedGatewayRouteRepository routeRepository;
     @Mock
     private UnifiedGatewayServiceRepository serviceRepository;
@@ -56,6 +67,8 @@ class UnifiedGatewayStatsServiceTest {
                 providerRegistry);
         lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
         lenient().when(valueOperations.get(anyString())).thenReturn(null);
+        lenient().when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        lenient().when(hashOperations.entries(anyString())).thenReturn(Map.of());
         lenient().when(serviceRepository.findAll()).thenReturn(List.of());
         lenient().when(instanceRepository.findAll()).thenReturn(List.of());
         lenient().when(routeRepository.findActiveRoutesOrderByPriority()).thenReturn(List.of());
@@ -107,4 +120,146 @@ class UnifiedGatewayStatsServiceTest {
 
         assertThat(overview.getErrorRate()).isEqualTo(100.0);
     }
+
+    @Test
+    void recordUnifiedRoute_shouldAccumulateLocallyAndFlushInOneScript() {
+        List<Object[]> calls = recordFlushes();
+        statsService.recordUnifiedRoute("chat", 200, 40);
+        statsService.recordUnifiedRoute("chat", 502, 700);
+        statsService.incrementErrorCount();
+
+        verify(redisTemplate, never()).opsForValue();
+        when(auditLogRepository.findAll()).thenReturn(List.of());
+        var overview = statsService.getOverview();
+        assertThat(overview.getTotalRequests()).isEqualTo(2L);
+        assertThat(overview.getTopRoutes()).singleElement().satisfies(route -> {
+            assertThat(route.getRouteName()).isEqualTo("chat");
+            assertThat(route.getAvgLatencyMs()).isEqualTo(370.0);
+            assertThat(route.getP95LatencyMs()).isEqualTo(1000.0);
+        });
+
+        assertThat(statsService.flush()).isPositive();
+
+        assertThat(calls).hasSize(1);
+        Map<String, Long> increments = increments(calls.get(0));
+        assertThat(increments)
+                .containsEntry("gateway:stats:total_requests", 2L)
+                .containsEntry("gateway:stats:total_errors", 2L)
+                .containsEntry("gateway:stats:latency_sum", 740L)
+                .containsEntry("gateway:stats:latency_count", 2L)
+                .containsEntry("gateway:stats:route:chat", 2L)
+                .containsEntry("gateway:stats:route_latency_count:chat", 2L)
+                .containsEntry("gateway:stats:route_latency_sum:chat", 740L)
+                .containsEntry("gateway:stats:route_latency_hist:chat#50", 1L)
+                .containsEntry("gateway:stats:route_latency_hist:chat#1000", 1L);
+        assertThat(ttls(calls.get(0))).anySatisfy((key, ttl) -> {
+            assertThat(key).startsWith("gateway:stats:minute:");
+            assertThat(ttl).isEqualTo(7200L);
+        });
+
+        // 已刷出的增量不再重复写入
+        assertThat(statsService.flush()).isZero();
+        assertThat(calls).hasSize(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_shouldRetrySameBatchWhenRedisFails() {
+        List<Object[]> calls = new ArrayList<>();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    calls.add(invocation.getRawArguments());
+                    throw new IllegalStateException("redis down");
+                })
+                .thenAnswer(invocation -> {
+                    calls.add(invocation.getRawArguments());
+                    // 上一次其实已写入、只是响应丢失：脚本按 flush id 去重
+                    return 0L;
+                })
+                .thenAnswer(invocation -> {
+                    calls.add(invocation.getRawArguments());
+                    return 1L;
+                });
+        statsService.incrementRequestCount();
+
+        assertThat(statsService.flush()).isZero();
+        when(valueOperations.get("gateway:stats:total_requests")).thenReturn("10");
+        when(auditLogRepository.findAll()).thenReturn(List.of());
+        assertThat(statsService.getOverview().getTotalRequests()).isEqualTo(11L);
+
+        statsService.incrementRequestCount();
+        assertThat(statsService.flush()).isPositive();
+        assertThat(flushMarker(calls.get(1))).isEqualTo(flushMarker(calls.get(0)));
+        assertThat(increments(calls.get(1))).containsEntry("gateway:stats:total_requests", 1L);
+
+        // 重试期间新增的请求进入下一批
+        assertThat(statsService.flush()).isPositive();
+        assertThat(flushMarker(calls.get(2))).isNotEqualTo(flushMarker(calls.get(0)));
+        assertThat(increments(calls.get(2))).containsEntry("gateway:stats:total_requests", 1L);
+        assertThat(statsService.flush()).isZero();
+        assertThat(calls).hasSize(3);
+    }
+
+    @Test
+    void percentile_shouldReturnUpperBoundOfMatchingBucket() {
+        long[] counts = new long[UnifiedGatewayStatsService.LATENCY_BUCKET_BOUNDS_MS.length + 1];
+        counts[3] = 90;
+        counts[6] = 9;
+        counts[counts.length - 1] = 1;
+
+        assertThat(UnifiedGatewayStatsService.percentile(counts, 0.5)).isEqualTo(100.0);
+        assertThat(UnifiedGatewayStatsService.percentile(counts, 0.95)).isEqualTo(1000.0);
+        assertThat(UnifiedGatewayStatsService.percentile(counts, 1.0)).isEqualTo(30000.0);
+        assertThat(UnifiedGatewayStatsService.percentile(new long[counts.length], 0.95)).isNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> recordFlushes() {
+        List<Object[]> calls = new ArrayList<>();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    calls.add(invocation.getRawArguments());
+                    return 1L;
+                });
+        return calls;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String flushMarker(Object[] call) {
+        assertThat(call[0]).isSameAs(UnifiedGatewayStatsService.FLUSH);
+        return ((List<String>) call[1]).get(0);
+    }
+
+    /**
+     * 解析脚本参数为 "键" 或 "键#hash 字段" -> 增量
+     */
+    private static Map<String, Long> increments(Object[] call) {
+        Map<String, Long> increments = new LinkedHashMap<>();
+        forEachEntry(call, (key, argv) -> increments.put(
+                argv[0].isEmpty() ? key : key + "#" + argv[0], Long.parseLong(argv[1])));
+        return increments;
+    }
+
+    private static Map<String, Long> ttls(Object[] call) {
+        Map<String, Long> ttls = new LinkedHashMap<>();
+        forEachEntry(call, (key, argv) -> {
+            if (Long.parseLong(argv[2]) > 0) {
+                ttls.put(key, Long.parseLong(argv[2]));
+            }
+        });
+        return ttls;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void forEachEntry(Object[] call, BiConsumer<String, String[]> consumer) {
+        List<String> keys = (List<String>) call[1];
+        Object[] args = (Object[]) call[2];
+        assertThat(keys.get(0)).startsWith("gateway:stats:flush:");
+        assertThat(args).hasSize(1 + (keys.size() - 1) * 3);
+        for (int i = 1; i < keys.size(); i++) {
+            int base = 1 + (i - 1) * 3;
+            consumer.accept(keys.get(i), new String[] {
+                    (String) args[base], (String) args[base + 1], (String) args[base + 2] });
+        }
+    }
 }
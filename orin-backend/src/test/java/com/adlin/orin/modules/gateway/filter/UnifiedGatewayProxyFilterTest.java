@@ -3,12 +3,14 @@ package com.adlin.orin.modules.gateway.filter;
 import com.adlin.orin.modules.apikey.service.GatewaySecretService;
 import com.adlin.orin.modules.gateway.config.UnifiedGatewayStatsService;
 import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayAuditLogRepository;
-import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRetryPolicyRepository;
 import com.adlin.orin.modules.gateway.service.UnifiedGatewayAclService;
+import com.adlin.orin.modules.gateway.service.UnifiedGatewayAuditLogWriter;
 import com.adlin.orin.modules.gateway.service.UnifiedGatewayCircuitBreakerService;
+import com.adlin.orin.modules.gateway.service.UnifiedGatewayEffectivePolicyCache;
 import com.adlin.orin.modules.gateway.service.UnifiedGatewayRateLimiterService;
+import com.adlin.orin.modules.gateway.service.UnifiedGatewayRetryBudget;
 import com.adlin.orin.modules.gateway.service.UnifiedGatewayRuntimeRoutingService;
+import com.adlin.orin.modules.monitor.service.LatencyRollupService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -23,10 +25,12 @@ import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.IOException;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -41,7 +45,7 @@ class UnifiedGatewayProxyFilterTest {
     @Mock
     private UnifiedGatewayStatsService statsService;
     @Mock
-    private UnifiedGatewayAuditLogRepository auditLogRepository;
+    private UnifiedGatewayAuditLogWriter auditLogWriter;
     @Mock
     private GatewaySecretService gatewaySecretService;
     @Mock
@@ -49,7 +53,18 @@ class UnifiedGatewayProxyFilterTest {
     @Mock
     private UnifiedGatewayCircuitBreakerService circuitBreakerService;
     @Mock
-    private UnifiedGatewayRetryPolicyRepository retryPolicyRepository;
+    private UnifiedGatewayEffectivePolicyCache policyCache;
+    @Mock
+    private LatencyRollupService latencyRollupService;
+
+    /**
+     * 路由超时从订阅上游 exchange 时开始计时（异步代理不再用 block(timeout)），覆盖连接建立和等待响应头。
+     * 新 JVM 里第一次 exchange 要在 JaCoCo 插桩下加载 WebClient / Netty 编解码路径，
+     * 即使预热过 Reactor Netty 也可能超过 2 秒，所以断言成功的用例用宽松的超时
+     */
+    private static final int ROUTE_TIMEOUT_MS = 10_000;
+
+    private final UnifiedGatewayRetryBudget retryBudget = new UnifiedGatewayRetryBudget();
 
     private UnifiedGatewayProxyFilter gatewayProxyFilter;
 
@@ -62,15 +77,19 @@ class UnifiedGatewayProxyFilterTest {
                 aclService,
                 routingService,
                 statsService,
-                auditLogRepository,
+                auditLogWriter,
                 gatewaySecretService,
                 new ObjectMapper(),
                 rateLimiterService,
                 circuitBreakerService,
-                retryPolicyRepository);
+                policyCache,
+                retryBudget,
+                latencyRollupService);
         // 默认放行限流和熔断，不影响现有测试逻辑
         lenient().when(rateLimiterService.tryAcquire(any(), any(), any())).thenReturn(true);
         lenient().when(circuitBreakerService.allowRequest(any())).thenReturn(true);
+        lenient().when(policyCache.forRoute(any())).thenAnswer(invocation ->
+                UnifiedGatewayEffectivePolicyCache.compile(invocation.getArgument(0), null, null, null));
     }
 
     @AfterEach
@@ -105,7 +124,7 @@ class UnifiedGatewayProxyFilterTest {
         assertThat(response.getContentAsString()).contains("Authentication required");
         verify(statsService).incrementRequestCount();
         verify(statsService).incrementErrorCount();
-        verify(auditLogRepository).save(ArgumentMatchers.any());
+        verify(auditLogWriter).append(ArgumentMatchers.any());
     }
 
     @Test
@@ -147,7 +166,7 @@ class UnifiedGatewayProxyFilterTest {
         // 全局 ACL 阶段：路由未匹配，不计入请求统计，不写审计日志
         verify(statsService, never()).incrementRequestCount();
         verify(statsService).incrementErrorCount();
-        verify(auditLogRepository, never()).save(ArgumentMatchers.any());
+        verify(auditLogWriter, never()).append(ArgumentMatchers.any());
         // 全局 ACL 触发时路由服务不应被调用
         verify(routingService, never()).resolveRoute(anyString(), anyString(), any());
     }
@@ -183,7 +202,7 @@ class UnifiedGatewayProxyFilterTest {
         assertThat(chain.getRequest()).isNotNull();
         // 统计和审计
         verify(statsService).incrementRequestCount();
-        verify(auditLogRepository).save(ArgumentMatchers.any());
+        verify(auditLogWriter).append(ArgumentMatchers.any());
         // 熔断服务不应被调用（本地路由不走代理）
         verify(circuitBreakerService, never()).allowRequest(any());
         verify(circuitBreakerService, never()).recordResult(any(), anyBoolean());
@@ -214,7 +233,7 @@ class UnifiedGatewayProxyFilterTest {
         assertThat(response.getContentAsString()).contains("UnifiedGateway upstream request failed");
         verify(statsService).incrementRequestCount();
         verify(statsService).incrementErrorCount();
-        verify(auditLogRepository).save(ArgumentMatchers.any());
+        verify(auditLogWriter).append(ArgumentMatchers.any());
     }
 
     @Test
@@ -231,7 +250,7 @@ class UnifiedGatewayProxyFilterTest {
                 .name("ok-route")
                 .pathPattern("/api/v1/proxy/**")
                 .authRequired(false)
-                .timeoutMs(2000)
+                .timeoutMs(ROUTE_TIMEOUT_MS)
                 .build();
         String targetUrl = String.format("http://localhost:%d/upstream", mockWebServer.getPort());
         UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolved = UnifiedGatewayRuntimeRoutingService.ResolvedRoute.builder()
@@ -255,7 +274,7 @@ class UnifiedGatewayProxyFilterTest {
         assertThat(response.getContentAsString()).contains("\"ok\":true");
         assertThat(response.getHeader("X-Trace-Id")).isEqualTo("trace-001");
         verify(statsService).incrementRequestCount();
-        verify(auditLogRepository).save(ArgumentMatchers.any());
+        verify(auditLogWriter).append(ArgumentMatchers.any());
     }
 
     @Test
@@ -269,7 +288,7 @@ class UnifiedGatewayProxyFilterTest {
                 .name("empty-route")
                 .pathPattern("/api/v1/proxy/**")
                 .authRequired(false)
-                .timeoutMs(2000)
+                .timeoutMs(ROUTE_TIMEOUT_MS)
                 .build();
         String targetUrl = String.format("http://localhost:%d/upstream", mockWebServer.getPort());
         UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolved = UnifiedGatewayRuntimeRoutingService.ResolvedRoute.builder()
@@ -290,7 +309,192 @@ class UnifiedGatewayProxyFilterTest {
         verify(statsService).incrementRequestCount();
         verify(statsService, never()).incrementErrorCount();
         verify(circuitBreakerService).recordResult(route, true);
-        verify(auditLogRepository).save(ArgumentMatchers.any());
+        verify(auditLogWriter).append(ArgumentMatchers.any());
+    }
+
+    @Test
+    void doFilter_shouldStreamEventStreamResponseThrough() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "text/event-stream")
+                .setChunkedBody("data: {\"delta\":\"Hel\"}\n\ndata: {\"delta\":\"lo\"}\n\ndata: [DONE]\n\n", 8));
+
+        UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolved = proxyRoute(6L, "sse-route", null);
+        when(routingService.resolveRoute("/v1/chat/completions", "POST", null)).thenReturn(Optional.of(resolved));
+        when(aclService.testIp(anyString(), anyString())).thenReturn(Map.of("action", "ALLOW", "apiKeyRequired", false));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/chat/completions");
+        request.setContentType("application/json");
+        request.setContent("{\"stream\":true}".getBytes());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        gatewayProxyFilter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.isCommitted()).isTrue();
+        assertThat(response.getContentAsString())
+                .isEqualTo("data: {\"delta\":\"Hel\"}\n\ndata: {\"delta\":\"lo\"}\n\ndata: [DONE]\n\n");
+        assertThat(mockWebServer.takeRequest().getBody().readUtf8()).isEqualTo("{\"stream\":true}");
+        verify(circuitBreakerService).recordResult(resolved.getRoute(), true);
+    }
+
+    @Test
+    void doFilter_shouldReplayBufferedBodyOnRetry() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+
+        UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolved = proxyRoute(7L, "retry-route", 1);
+        when(routingService.resolveRoute("/api/v1/proxy/retry", "POST", null)).thenReturn(Optional.of(resolved));
+        when(aclService.testIp(anyString(), anyString())).thenReturn(Map.of("action", "ALLOW", "apiKeyRequired", false));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/proxy/retry");
+        request.setContent("payload".getBytes());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        gatewayProxyFilter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("ok");
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+        assertThat(mockWebServer.takeRequest().getBody().readUtf8()).isEqualTo("payload");
+        assertThat(mockWebServer.takeRequest().getBody().readUtf8()).isEqualTo("payload");
+    }
+
+    @Test
+    void doFilter_shouldStreamWithoutRetryWhenBodyExceedsReplayBuffer() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200));
+        ReflectionTestUtils.setField(gatewayProxyFilter, "replayBufferBytes", 4);
+
+        UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolved = proxyRoute(8L, "large-body-route", 1);
+        when(routingService.resolveRoute("/api/v1/proxy/upload", "POST", null)).thenReturn(Optional.of(resolved));
+        when(aclService.testIp(anyString(), anyString())).thenReturn(Map.of("action", "ALLOW", "apiKeyRequired", false));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/proxy/upload");
+        request.setContent("larger-than-four".getBytes());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        gatewayProxyFilter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+        assertThat(mockWebServer.takeRequest().getBody().readUtf8()).isEqualTo("larger-than-four");
+    }
+
+    @Test
+    void doFilter_shouldReleaseContainerThreadWhileWaitingForUpstream() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("late")
+                .setHeadersDelay(300, TimeUnit.MILLISECONDS));
+
+        UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolved = proxyRoute(9L, "async-route", null);
+        when(routingService.resolveRoute("/api/v1/proxy/slow", "GET", null)).thenReturn(Optional.of(resolved));
+        when(aclService.testIp(anyString(), anyString())).thenReturn(Map.of("action", "ALLOW", "apiKeyRequired", false));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/proxy/slow");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        gatewayProxyFilter.doFilter(request, response, new MockFilterChain());
+
+        // 过滤器已返回，容器线程被释放，上游响应尚未到达
+        assertThat(request.isAsyncStarted()).isTrue();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (request.isAsyncStarted() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(request.isAsyncStarted()).isFalse();
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("late");
+        // 审计在响应线程写入，trace id 必须与请求阶段生成并回写的一致
+        String traceId = response.getHeader("X-Trace-Id");
+        assertThat(traceId).isNotBlank();
+        verify(auditLogWriter).append(argThat(log -> traceId.equals(log.getTraceId())));
+    }
+
+    @Test
+    void doFilter_shouldReject503WhenProxyStreamCapacityExhausted() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("held")
+                .setHeadersDelay(500, TimeUnit.MILLISECONDS));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200).setBody("after"));
+        ReflectionTestUtils.setField(gatewayProxyFilter, "maxConcurrentStreams", 1);
+
+        UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolved = proxyRoute(12L, "capacity-route", null);
+        when(routingService.resolveRoute("/api/v1/proxy/held", "GET", null)).thenReturn(Optional.of(resolved));
+        when(aclService.testIp(anyString(), anyString())).thenReturn(Map.of("action", "ALLOW", "apiKeyRequired", false));
+
+        MockHttpServletRequest held = new MockHttpServletRequest("GET", "/api/v1/proxy/held");
+        held.setAsyncSupported(true);
+        MockHttpServletResponse heldResponse = new MockHttpServletResponse();
+        gatewayProxyFilter.doFilter(held, heldResponse, new MockFilterChain());
+        assertThat(held.isAsyncStarted()).isTrue();
+
+        // 唯一的名额被占用：第二个调用立即 503，不排队、不访问上游
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        gatewayProxyFilter.doFilter(new MockHttpServletRequest("GET", "/api/v1/proxy/held"), rejected,
+                new MockFilterChain());
+        assertThat(rejected.getStatus()).isEqualTo(503);
+        assertThat(rejected.getContentAsString()).contains("capacity exhausted");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (held.isAsyncStarted() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(heldResponse.getContentAsString()).isEqualTo("held");
+
+        // 名额释放后恢复服务
+        MockHttpServletResponse after = new MockHttpServletResponse();
+        gatewayProxyFilter.doFilter(new MockHttpServletRequest("GET", "/api/v1/proxy/held"), after,
+                new MockFilterChain());
+        assertThat(after.getContentAsString()).isEqualTo("after");
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    void doFilter_shouldNotRetryWhenRetryBudgetExhausted() throws Exception {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(200));
+        ReflectionTestUtils.setField(retryBudget, "ratio", 0.0);
+        ReflectionTestUtils.setField(retryBudget, "minPerSecond", 0);
+
+        UnifiedGatewayRuntimeRoutingService.ResolvedRoute resolved = proxyRoute(10L, "budget-route", 3);
+        when(routingService.resolveRoute("/api/v1/proxy/budget", "GET", null)).thenReturn(Optional.of(resolved));
+        when(aclService.testIp(anyString(), anyString())).thenReturn(Map.of("action", "ALLOW", "apiKeyRequired", false));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/proxy/budget");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        gatewayProxyFilter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+    }
+
+    private UnifiedGatewayRuntimeRoutingService.ResolvedRoute proxyRoute(Long id, String name, Integer retryCount) {
+        UnifiedGatewayRoute route = UnifiedGatewayRoute.builder()
+                .id(id)
+                .name(name)
+                .pathPattern("/**")
+                .authRequired(false)
+                .timeoutMs(ROUTE_TIMEOUT_MS)
+                .retryCount(retryCount)
+                .build();
+        return UnifiedGatewayRuntimeRoutingService.ResolvedRoute.builder()
+                .route(route)
+                .targetUrl(String.format("http://localhost:%d/upstream", mockWebServer.getPort()))
+                .targetService("stream-service")
+                .build();
     }
 
     @Test
@@ -306,7 +510,7 @@ class UnifiedGatewayProxyFilterTest {
 
         assertThat(chain.getRequest()).isNotNull();
         assertThat(response.getHeader("X-Trace-Id")).isNotBlank();
-        verify(auditLogRepository).save(argThat(log ->
+        verify(auditLogWriter).append(argThat(log ->
                 log.getRouteId() == null
                         && "BASELINE_GOVERNED".equals(log.getResult())
                         && "BASELINE_GOVERNED".equals(log.getTargetService())));
@@ -323,7 +527,7 @@ class UnifiedGatewayProxyFilterTest {
         assertThat(chain.getRequest()).isNotNull();
         verify(aclService, never()).testIp(anyString(), anyString());
         verify(routingService, never()).resolveRoute(anyString(), anyString(), any());
-        verify(auditLogRepository).save(argThat(log ->
+        verify(auditLogWriter).append(argThat(log ->
                 log.getRouteId() == null
                         && "RESCUE_RESERVED".equals(log.getResult())
                         && "RESCUE_RESERVED".equals(log.getTargetService())));
@@ -0,0 +1,126 @@
+package com.adlin.orin.modules.gateway.service;
+
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayAuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UnifiedGatewayAuditLogWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_shouldWriteQueuedRecordsInBatches() {
+        UnifiedGatewayAuditLogWriter writer = new UnifiedGatewayAuditLogWriter(
+                jdbcTemplate, meterRegistry, 100, 2, 1000, "DROP_OLDEST");
+        for (int i = 0; i < 5; i++) {
+            writer.append(record("trace-" + i));
+        }
+        assertThat(meterRegistry.get("gateway.audit.queue.depth").gauge().value()).isEqualTo(5.0);
+
+        assertThat(writer.flush()).isEqualTo(5);
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getAllValues()).extracting(List::size).containsExactly(2, 2, 1);
+        assertThat(rows.getAllValues().get(0).get(0)[1]).isEqualTo("trace-0");
+        assertThat(writer.getQueueDepth()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void append_shouldDropOldestWhenFullAndFlushOnShutdown() {
+        UnifiedGatewayAuditLogWriter writer = new UnifiedGatewayAuditLogWriter(
+                jdbcTemplate, meterRegistry, 2, 100, 1000, "DROP_OLDEST");
+        writer.append(record("a"));
+        writer.append(record("b"));
+        writer.append(record("c"));
+
+        writer.shutdown();
+
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getValue()).extracting(row -> row[1]).containsExactly("b", "c");
+        assertThat(meterRegistry.get("gateway.audit.dropped").tag("reason", "overflow").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void append_shouldNotExceedCapacityUnderConcurrentProducers() throws Exception {
+        UnifiedGatewayAuditLogWriter writer = new UnifiedGatewayAuditLogWriter(
+                jdbcTemplate, meterRegistry, 50, 1000, 1000, "DROP_OLDEST");
+        int threads = 8;
+        int perThread = 500;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        writer.append(record(id + "-" + i));
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        } finally {
+            pool.shutdown();
+            assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(writer.getQueueDepth()).isEqualTo(50);
+        assertThat(writer.flush()).isEqualTo(50);
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getValue()).hasSize(50);
+        assertThat(meterRegistry.get("gateway.audit.dropped").tag("reason", "overflow").counter().count())
+                .isEqualTo(threads * perThread - 50.0);
+    }
+
+    @Test
+    void flush_shouldCountDroppedRecordsWhenBatchInsertFails() {
+        UnifiedGatewayAuditLogWriter writer = new UnifiedGatewayAuditLogWriter(
+                jdbcTemplate, meterRegistry, 100, 100, 1000, "SAMPLE");
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new IllegalStateException("db down"));
+        writer.append(record("x"));
+
+        assertThat(writer.flush()).isZero();
+        assertThat(meterRegistry.get("gateway.audit.dropped").tag("reason", "error").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    private UnifiedGatewayAuditLog record(String traceId) {
+        return UnifiedGatewayAuditLog.builder()
+                .traceId(traceId)
+                .method("GET")
+                .path("/v1/models")
+                .statusCode(200)
+                .result("SUCCESS")
+                .build();
+    }
+}
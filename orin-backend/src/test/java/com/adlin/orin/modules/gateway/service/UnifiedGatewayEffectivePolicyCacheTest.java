@@ -0,0 +1,120 @@
+package com.adlin.orin.modules.gateway.service;
+
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayAclRule;
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRetryPolicy;
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayAclRuleRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayCircuitBreakerPolicyRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRateLimitPolicyRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRetryPolicyRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayRouteRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceInstanceRepository;
+import com.adlin.orin.modules.gateway.repository.UnifiedGatewayServiceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UnifiedGatewayEffectivePolicyCacheTest {
+
+    @Mock
+    private UnifiedGatewayRouteRepository routeRepository;
+    @Mock
+    private UnifiedGatewayServiceRepository serviceRepository;
+    @Mock
+    private UnifiedGatewayServiceInstanceRepository instanceRepository;
+    @Mock
+    private UnifiedGatewayRateLimitPolicyRepository rateLimitPolicyRepository;
+    @Mock
+    private UnifiedGatewayCircuitBreakerPolicyRepository circuitBreakerPolicyRepository;
+    @Mock
+    private UnifiedGatewayRetryPolicyRepository retryPolicyRepository;
+    @Mock
+    private UnifiedGatewayAclRuleRepository aclRuleRepository;
+
+    private UnifiedGatewayEffectivePolicyCache policyCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        UnifiedGatewayRouteTable routeTable = new UnifiedGatewayRouteTable(routeRepository, serviceRepository,
+                instanceRepository, mock(ObjectProvider.class), mock(ObjectProvider.class));
+        policyCache = new UnifiedGatewayEffectivePolicyCache(routeTable, rateLimitPolicyRepository,
+                circuitBreakerPolicyRepository, retryPolicyRepository, aclRuleRepository);
+    }
+
+    @Test
+    void forRoute_shouldCompileRetryPolicyOnceUntilInvalidated() {
+        UnifiedGatewayRoute route = UnifiedGatewayRoute.builder().id(1L).name("r").retryPolicyId(7L).build();
+        UnifiedGatewayRetryPolicy retryPolicy = UnifiedGatewayRetryPolicy.builder()
+                .id(7L).name("retry").maxAttempts(4).retryOnStatusCodes("502, 503,abc")
+                .initialIntervalMs(50).backoffMultiplier(1.5).enabled(true).build();
+        when(retryPolicyRepository.findById(7L)).thenReturn(Optional.of(retryPolicy));
+
+        UnifiedGatewayEffectivePolicyCache.Retry retry = policyCache.forRoute(route).retry();
+        policyCache.forRoute(route);
+        policyCache.forRoute(route);
+
+        assertThat(retry.maxAttempts()).isEqualTo(4);
+        assertThat(retry.retryStatusCodes()).containsExactlyInAnyOrder(502, 503);
+        assertThat(retry.initialIntervalMs()).isEqualTo(50L);
+        assertThat(retry.backoffMultiplier()).isEqualTo(1.5);
+        verify(retryPolicyRepository, times(1)).findById(7L);
+
+        retryPolicy.setEnabled(false);
+        policyCache.invalidate();
+
+        assertThat(policyCache.forRoute(route).retry().maxAttempts()).isEqualTo(1);
+        verify(retryPolicyRepository, times(2)).findById(7L);
+    }
+
+    @Test
+    void forRoute_shouldFallBackToRouteRetryCountWithoutPolicy() {
+        UnifiedGatewayRoute route = UnifiedGatewayRoute.builder().id(2L).name("r").retryCount(2).build();
+
+        UnifiedGatewayEffectivePolicyCache.EffectivePolicy policy = policyCache.forRoute(route);
+
+        assertThat(policy.retry().maxAttempts()).isEqualTo(3);
+        assertThat(policy.retry().retryStatusCodes()).isEqualTo(Set.of(500, 502, 503, 504));
+        assertThat(policy.rateLimit()).isNull();
+        assertThat(policy.circuitBreaker()).isNull();
+    }
+
+    @Test
+    void acl_shouldMatchCidrTrieByPriorityAndPath() {
+        when(aclRuleRepository.findByEnabledOrderByPriorityDesc(true)).thenReturn(List.of(
+                aclRule(1L, "WHITELIST", "10.1.2.0/24", "/api/v1/admin/**"),
+                aclRule(2L, "BLACKLIST", "10.0.0.0/8, 192.168.1.7", null),
+                aclRule(3L, "WHITELIST", "", "/v1/public/**")));
+
+        UnifiedGatewayAclMatcher acl = policyCache.acl();
+
+        assertThat(acl.match("10.1.2.9", "/api/v1/admin/users").id()).isEqualTo(1L);
+        assertThat(acl.match("10.1.2.9", "/v1/models").id()).isEqualTo(2L);
+        assertThat(acl.match("10.200.0.1", "/v1/public/ping").id()).isEqualTo(2L);
+        assertThat(acl.match("192.168.1.7", "/v1/models").id()).isEqualTo(2L);
+        assertThat(acl.match("192.168.1.8", "/v1/public/ping").id()).isEqualTo(3L);
+        assertThat(acl.match("::1", "/v1/models")).isNull();
+        assertThat(policyCache.acl()).isSameAs(acl);
+        verify(aclRuleRepository, times(1)).findByEnabledOrderByPriorityDesc(true);
+    }
+
+    private UnifiedGatewayAclRule aclRule(Long id, String type, String ipPattern, String pathPattern) {
+        return UnifiedGatewayAclRule.builder()
+                .id(id).name("rule-" + id).type(type).ipPattern(ipPattern).pathPattern(pathPattern)
+                .enabled(true).build();
+    }
+}
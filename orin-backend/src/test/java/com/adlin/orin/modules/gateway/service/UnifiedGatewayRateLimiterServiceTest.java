@@ -0,0 +1,131 @@
+package com.adlin.orin.modules.gateway.service;
+
+import com.adlin.orin.modules.gateway.entity.UnifiedGatewayRoute;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UnifiedGatewayRateLimiterServiceTest {
+
+    @Mock
+    private UnifiedGatewayEffectivePolicyCache policyCache;
+    @Mock
+    private StringRedisTemplate redisTemplate;
+    @Mock
+    private ObjectProvider<StringRedisTemplate> redisProvider;
+
+    private UnifiedGatewayRoute route;
+
+    @BeforeEach
+    void setUp() {
+        route = new UnifiedGatewayRoute();
+        route.setId(7L);
+        route.setName("chat");
+        route.setRateLimitPolicyId(1L);
+        UnifiedGatewayEffectivePolicyCache.EffectivePolicy effective = new UnifiedGatewayEffectivePolicyCache.EffectivePolicy(
+                1L, null, null, null,
+                new UnifiedGatewayEffectivePolicyCache.RateLimit("GLOBAL", 10, 10, 60), null, null);
+        lenient().when(policyCache.forRoute(route)).thenReturn(effective);
+        lenient().when(redisProvider.getIfAvailable()).thenReturn(redisTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void tryAcquire_shouldShareOneClusterBucketAndAmortizeRoundTrips() {
+        // Redis 中的权威桶：共 10 个令牌，两节点共享
+        AtomicLong remaining = new AtomicLong(10);
+        AtomicInteger roundTrips = new AtomicInteger();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any()))
+                .thenAnswer(inv -> {
+                    roundTrips.incrementAndGet();
+                    long requested = Long.parseLong(inv.getArgument(4));
+                    long granted = Math.min(requested, remaining.get());
+                    remaining.addAndGet(-granted);
+                    return granted;
+                });
+        UnifiedGatewayRateLimiterService nodeA = new UnifiedGatewayRateLimiterService(policyCache, redisProvider, 300000);
+        UnifiedGatewayRateLimiterService nodeB = new UnifiedGatewayRateLimiterService(policyCache, redisProvider, 300000);
+
+        int allowed = 0;
+        for (int i = 0; i < 50; i++) {
+            if ((i % 2 == 0 ? nodeA : nodeB).tryAcquire(route, "10.0.0.1", null)) {
+                allowed++;
+            }
+        }
+
+        assertThat(allowed).isEqualTo(10);
+        assertThat(roundTrips.get()).isLessThan(allowed);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void tryAcquire_shouldFallBackToLocalBucketSplitAcrossKnownNodes() {
+        ZSetOperations<String, String> zSet = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSet);
+        when(zSet.zCard(UnifiedGatewayRateLimiterService.NODES_KEY)).thenReturn(2L);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        UnifiedGatewayRateLimiterService limiter = new UnifiedGatewayRateLimiterService(policyCache, redisProvider, 300000);
+        limiter.heartbeat();
+        assertThat(limiter.getKnownNodes()).isEqualTo(2);
+        verify(zSet).add(eq(UnifiedGatewayRateLimiterService.NODES_KEY), anyString(), anyDouble());
+
+        int allowed = 0;
+        for (int i = 0; i < 20; i++) {
+            if (limiter.tryAcquire(route, "10.0.0.1", null)) {
+                allowed++;
+            }
+        }
+
+        // 两个节点各分到 burst 的一半；故障期间不再反复访问 Redis
+        assertThat(allowed).isEqualTo(5);
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any());
+    }
+
+    @Test
+    void evictIdleBuckets_shouldDropBucketsIdleLongerThanTtl() {
+        when(redisProvider.getIfAvailable()).thenReturn(null);
+        UnifiedGatewayEffectivePolicyCache.EffectivePolicy perIp = new UnifiedGatewayEffectivePolicyCache.EffectivePolicy(
+                1L, null, null, null,
+                new UnifiedGatewayEffectivePolicyCache.RateLimit("IP", 10, 10, 60), null, null);
+        when(policyCache.forRoute(route)).thenReturn(perIp);
+        UnifiedGatewayRateLimiterService limiter = new UnifiedGatewayRateLimiterService(policyCache, redisProvider, 2000);
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire(route, "10.0.0." + i, null)).isTrue();
+        }
+        assertThat(limiter.getBucketCount()).isEqualTo(3);
+
+        assertThat(limiter.evictIdleBuckets(now + 500)).isZero();
+        assertThat(limiter.evictIdleBuckets(now + 5000)).isEqualTo(3);
+        assertThat(limiter.getBucketCount()).isZero();
+
+        // 淘汰后再次访问会重建一个满桶
+        assertThat(limiter.tryAcquire(route, "10.0.0.1", null)).isTrue();
+        assertThat(limiter.getBucketCount()).isEqualTo(1);
+    }
+}
@@ -11,11 +11,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
 
 import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,11 +32,15 @@ class UnifiedGatewayRuntimeRoutingServiceTest {
     @Mock
     private UnifiedGatewayServiceInstanceRepository instanceRepository;
 
+    private UnifiedGatewayRouteTable routeTable;
     private UnifiedGatewayRuntimeRoutingService runtimeRoutingService;
 
     @BeforeEach
+    @SuppressWarnings("unchecked")
     void setUp() {
-        runtimeRoutingService = new UnifiedGatewayRuntimeRoutingService(routeRepository, serviceRepository, instanceRepository);
+        routeTable = new UnifiedGatewayRouteTable(routeRepository, serviceRepository, instanceRepository,
+                mock(ObjectProvider.class), mock(ObjectProvider.class));
+        runtimeRoutingService = new UnifiedGatewayRuntimeRoutingService(routeTable);
     }
 
     @Test
@@ -94,4 +102,66 @@ class UnifiedGatewayRuntimeRoutingServiceTest {
         assertThat(url1).isEqualTo("http://host-a.local:8081/svc/ping");
         assertThat(url2).isEqualTo("http://host-b.local:8082/svc/ping");
     }
+
+    @Test
+    void resolveRoute_shouldServeFromCompiledSnapshotUntilInvalidated() {
+        UnifiedGatewayRoute items = route(3L, "items", "/api/items/**", "GET");
+        when(routeRepository.findActiveRoutesOrderByPriority())
+                .thenReturn(List.of(items))
+                .thenReturn(List.of(route(4L, "orders", "/api/orders/**", "GET"), items));
+
+        assertThat(runtimeRoutingService.resolveRoute("/api/items/1", "GET", null)).isPresent();
+        assertThat(runtimeRoutingService.resolveRoute("/api/orders/1", "GET", null)).isEmpty();
+        verify(routeRepository, times(1)).findActiveRoutesOrderByPriority();
+
+        routeTable.invalidate();
+
+        assertThat(runtimeRoutingService.resolveRoute("/api/orders/1", "GET", null).orElseThrow()
+                .getRoute().getName()).isEqualTo("orders");
+        assertThat(routeTable.current().version()).isEqualTo(1L);
+    }
+
+    @Test
+    void resolveRoute_shouldKeepPriorityOrderAcrossMethodAndSegmentIndex() {
+        when(routeRepository.findActiveRoutesOrderByPriority()).thenReturn(List.of(
+                route(5L, "post-only", "/api/**", "POST"),
+                route(6L, "wildcard", "/**/health", "ALL"),
+                route(7L, "api-get", "/api/**", "GET"),
+                route(8L, "fallback", "/**", null)));
+
+        assertThat(runtimeRoutingService.resolveRoute("/api/x", "POST", null).orElseThrow()
+                .getRoute().getName()).isEqualTo("post-only");
+        assertThat(runtimeRoutingService.resolveRoute("/api/health", "GET", null).orElseThrow()
+                .getRoute().getName()).isEqualTo("wildcard");
+        assertThat(runtimeRoutingService.resolveRoute("/api/x", "GET", null).orElseThrow()
+                .getRoute().getName()).isEqualTo("api-get");
+        assertThat(runtimeRoutingService.resolveRoute("/api/x", "DELETE", null).orElseThrow()
+                .getRoute().getName()).isEqualTo("fallback");
+        assertThat(runtimeRoutingService.resolveRoute("/other", "GET", null).orElseThrow()
+                .getRoute().getName()).isEqualTo("fallback");
+    }
+
+    @Test
+    void remoteChange_shouldRebuildOnlyForNewerVersion() {
+        when(routeRepository.findActiveRoutesOrderByPriority()).thenReturn(List.of());
+
+        routeTable.current();
+        routeTable.onRemoteChange("0");
+        routeTable.onRemoteChange("7");
+        routeTable.onRemoteChange("3");
+
+        assertThat(routeTable.current().version()).isEqualTo(7L);
+        verify(routeRepository, times(2)).findActiveRoutesOrderByPriority();
+    }
+
+    private static UnifiedGatewayRoute route(Long id, String name, String pattern, String method) {
+        return UnifiedGatewayRoute.builder()
+                .id(id)
+                .name(name)
+                .pathPattern(pattern)
+                .method(method)
+                .targetUrl("http://upstream.local")
+                .enabled(true)
+                .build();
+    }
 }
@@ -32,6 +32,8 @@ class UnifiedGatewayServiceManagementServiceTest {
     private HashOperations<String, Object, Object> hashOperations;
     @Mock
     private RestTemplate restTemplate;
+    @Mock
+    private UnifiedGatewayRouteTable routeTable;
 
     private UnifiedGatewayServiceManagementService service;
 
@@ -41,7 +43,8 @@ class UnifiedGatewayServiceManagementServiceTest {
                 serviceRepository,
                 instanceRepository,
                 redisTemplate,
-                restTemplate);
+                restTemplate,
+                routeTable);
     }
 
     @Test
@@ -0,0 +1,124 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingBatcherTest {
+
+    private final EmbeddingBatcher batcher = new EmbeddingBatcher(new EmbeddingCache(new SimpleMeterRegistry(), 16));
+
+    @AfterEach
+    void tearDown() {
+        batcher.shutdown();
+    }
+
+    @Test
+    void packsByInputLimitAndTokenBudget() {
+        ReflectionTestUtils.setField(batcher, "maxBatchInputs", 3);
+        ReflectionTestUtils.setField(batcher, "maxBatchTokens", 10);
+
+        List<String> texts = List.of("aaaa", "bbbb", "cccc", "dddd", "x".repeat(200), "eeee");
+        List<int[]> batches = batcher.plan(texts);
+
+        assertEquals(4, batches.size());
+        assertEquals(List.of(0, 3), List.of(batches.get(0)[0], batches.get(0)[1]));
+        // the oversized text closes the running batch and gets one of its own
+        assertEquals(List.of(3, 4), List.of(batches.get(1)[0], batches.get(1)[1]));
+        assertEquals(List.of(4, 5), List.of(batches.get(2)[0], batches.get(2)[1]));
+        assertEquals(List.of(5, 6), List.of(batches.get(3)[0], batches.get(3)[1]));
+    }
+
+    @Test
+    void keepsInputOrderAcrossConcurrentBatches() {
+        ReflectionTestUtils.setField(batcher, "maxBatchInputs", 4);
+        RecordingService service = new RecordingService(-1);
+
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            texts.add("text-" + i);
+        }
+        List<List<Float>> vectors = batcher.embedAll(service, texts);
+
+        assertEquals(50, vectors.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals((float) ("text-" + i).hashCode(), vectors.get(i).get(0));
+        }
+        assertEquals(13, service.batchCalls.get());
+        assertEquals(0, service.singleCalls.get());
+    }
+
+    @Test
+    void retriesFailedBatchOneByOne() {
+        RecordingService service = new RecordingService(2);
+
+        List<List<Float>> vectors = batcher.embedAll(service, List.of("a", "b", "poison", "c"));
+
+        assertEquals(4, vectors.size());
+        assertEquals((float) "a".hashCode(), vectors.get(0).get(0));
+        assertNull(vectors.get(2));
+        assertEquals((float) "c".hashCode(), vectors.get(3).get(0));
+        assertEquals(1, service.batchCalls.get());
+        assertEquals(4, service.singleCalls.get());
+    }
+
+    @Test
+    void estimatesCjkAsOneTokenPerChar() {
+        assertEquals(4, EmbeddingBatcher.estimateTokens("知识检索"));
+        assertTrue(EmbeddingBatcher.estimateTokens("hello world") < 5);
+    }
+
+    /**
+     * Fake provider: vector is the text hash; a batch containing "poison" fails as a whole
+     */
+    private static class RecordingService implements EmbeddingService {
+        private final AtomicInteger batchCalls = new AtomicInteger();
+        private final AtomicInteger singleCalls = new AtomicInteger();
+        private final int poisonIndex;
+
+        RecordingService(int poisonIndex) {
+            this.poisonIndex = poisonIndex;
+        }
+
+        @Override
+        public List<Float> embed(String text) {
+            singleCalls.incrementAndGet();
+            if ("poison".equals(text)) {
+                throw new IllegalStateException("bad input");
+            }
+            return List.of((float) text.hashCode());
+        }
+
+        @Override
+        public List<List<Float>> embedAll(List<String> texts) {
+            batchCalls.incrementAndGet();
+            if (poisonIndex >= 0 && texts.contains("poison")) {
+                throw new IllegalStateException("batch rejected");
+            }
+            List<List<Float>> out = new ArrayList<>();
+            for (String text : texts) {
+                out.add(List.of((float) text.hashCode()));
+            }
+            return out;
+        }
+
+        @Override
+        public String getProviderName() {
+            return "fake";
+        }
+
+        @Override
+        public String getModelName() {
+            return "fake-model";
+        }
+    }
+}
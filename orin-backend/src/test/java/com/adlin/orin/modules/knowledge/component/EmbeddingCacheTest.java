@@ -0,0 +1,124 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EmbeddingCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keyIgnoresWhitespaceNoiseButNotModel() {
+        assertEquals(EmbeddingCache.key("bge-m3", "向量  检索\n"), EmbeddingCache.key("bge-m3", " 向量 检索"));
+        assertNotEquals(EmbeddingCache.key("bge-m3", "text"), EmbeddingCache.key("other", "text"));
+    }
+
+    @Test
+    void memoryTierServesRepeatedLookups() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddingCache cache = new EmbeddingCache(registry, 16);
+
+        assertNull(cache.get("m", "hello"));
+        cache.put("m", "hello", new float[] { 0.1f, 0.2f });
+
+        assertArrayEquals(new float[] { 0.1f, 0.2f }, cache.get("m", "hello"));
+        assertEquals(1.0, registry.get("embedding.cache.lookups").tag("result", "memory").counter().count());
+        assertEquals(1.0, registry.get("embedding.cache.lookups").tag("result", "miss").counter().count());
+        assertEquals(0.5, cache.hitRatio(), 1e-9);
+    }
+
+    @Test
+    void diskTierSurvivesRestartInFp16AndInt8() {
+        float[] vector = randomUnitVector(256, 7);
+        for (String encoding : new String[] { "fp16", "int8" }) {
+            Path dir = tempDir.resolve(encoding);
+            EmbeddingCache first = openCache(dir, encoding);
+            first.put("m", "chunk text", vector);
+            first.shutdown();
+
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            EmbeddingCache second = openCache(dir, encoding, registry);
+            float[] restored = second.get("m", "chunk text");
+            assertNotNull(restored, encoding);
+            assertEquals(1.0, registry.get("embedding.cache.lookups").tag("result", "disk").counter().count());
+            double cosine = 0;
+            for (int i = 0; i < vector.length; i++) {
+                cosine += vector[i] * restored[i];
+            }
+            assertEquals(1.0, cosine, "int8".equals(encoding) ? 1e-3 : 1e-4, encoding);
+            second.shutdown();
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedOnOpen() throws Exception {
+        Path dir = tempDir.resolve("torn");
+        EmbeddingCache cache = openCache(dir, "fp16");
+        cache.put("m", "kept", randomUnitVector(32, 1));
+        cache.put("m", "torn", randomUnitVector(32, 2));
+        cache.shutdown();
+
+        Path segment = dir.resolve("segment-0.bin");
+        long size = Files.size(segment);
+        try (var channel = Files.newByteChannel(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+
+        EmbeddingCache reopened = openCache(dir, "fp16");
+        assertNotNull(reopened.get("m", "kept"));
+        assertNull(reopened.get("m", "torn"));
+        reopened.shutdown();
+    }
+
+    @Test
+    void halfPrecisionRoundTrip() {
+        for (float v : new float[] { 0f, 1f, -2.5f, 0.000123f, 65504f, 1e-7f }) {
+            float back = EmbeddingCache.fromHalf(EmbeddingCache.toHalf(v));
+            assertEquals(v, back, Math.max(Math.abs(v) * 1e-3, 1e-7));
+        }
+        ByteBuffer record = EmbeddingCache.encodeRecord(new byte[32], new float[] { 0.5f, -0.25f },
+                EmbeddingCache.ENCODING_FP16);
+        assertArrayEquals(new float[] { 0.5f, -0.25f }, EmbeddingCache.decodeRecord(record, null));
+    }
+
+    private EmbeddingCache openCache(Path dir, String encoding) {
+        return openCache(dir, encoding, new SimpleMeterRegistry());
+    }
+
+    private EmbeddingCache openCache(Path dir, String encoding, SimpleMeterRegistry registry) {
+        EmbeddingCache cache = new EmbeddingCache(registry, 16);
+        ReflectionTestUtils.setField(cache, "cacheDir", dir.toString());
+        ReflectionTestUtils.setField(cache, "diskEncoding", encoding);
+        cache.init();
+        return cache;
+    }
+
+    private static float[] randomUnitVector(int dim, long seed) {
+        Random random = new Random(seed);
+        float[] v = new float[dim];
+        double norm = 0;
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+            norm += v[i] * v[i];
+        }
+        for (int i = 0; i < dim; i++) {
+            v[i] /= (float) Math.sqrt(norm);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,98 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.CheckHealthResponse;
+import io.milvus.param.R;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MilvusClientPoolTest {
+
+    @Test
+    void connectionFailuresDiscardClient() {
+        assertTrue(MilvusClientPool.isConnectionFailure(new StatusRuntimeException(Status.UNAVAILABLE)));
+        assertTrue(MilvusClientPool.isConnectionFailure(new StatusRuntimeException(Status.DEADLINE_EXCEEDED)));
+        assertTrue(MilvusClientPool.isConnectionFailure(
+                new IllegalStateException("wrapped", new StatusRuntimeException(Status.UNAVAILABLE))));
+    }
+
+    @Test
+    void applicationErrorsKeepClient() {
+        assertFalse(MilvusClientPool.isConnectionFailure(new StatusRuntimeException(Status.INVALID_ARGUMENT)));
+        assertFalse(MilvusClientPool.isConnectionFailure(new IllegalArgumentException("bad expr")));
+    }
+
+    @Test
+    void failedResponsesWithConnectionStatusDiscardClient() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MilvusClientPool pool = new MilvusClientPool(registry);
+        AtomicInteger created = new AtomicInteger();
+        pool.setClientFactory(() -> {
+            created.incrementAndGet();
+            return mock(MilvusServiceClient.class);
+        });
+
+        pool.execute("search", client -> R.failed(R.Status.IllegalArgument, "bad expr"));
+        assertEquals(1, pool.getIdleClients());
+
+        pool.execute("search", client -> R.failed(new StatusRuntimeException(Status.UNAVAILABLE)));
+        assertEquals(0, pool.getOpenClients());
+        pool.execute("search", client -> R.failed(R.Status.ClientNotConnected, "closed"));
+        assertEquals(0, pool.getOpenClients());
+        assertEquals(2, created.get());
+        assertEquals(2.0, registry.get("milvus.pool.reconnects").counter().count());
+    }
+
+    @Test
+    void healthProbeCountsAgainstPoolCapacity() {
+        MilvusClientPool pool = new MilvusClientPool(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(pool, "poolSize", 1);
+        ReflectionTestUtils.setField(pool, "poolWaitMs", 20L);
+        MilvusServiceClient client = mock(MilvusServiceClient.class);
+        AtomicInteger created = new AtomicInteger();
+        pool.setClientFactory(() -> {
+            created.incrementAndGet();
+            return client;
+        });
+        pool.execute("search", c -> R.success(true));
+
+        // 探测期间借用方拿不到许可，不会因为空闲队列暂时为空而新建连接
+        when(client.checkHealth()).thenAnswer(invocation -> {
+            assertThrows(IllegalStateException.class, () -> pool.execute("search", c -> R.success(true)));
+            return R.success(CheckHealthResponse.newBuilder().setIsHealthy(true).build());
+        });
+        pool.checkIdleClients();
+
+        assertEquals(1, created.get());
+        assertEquals(1, pool.getOpenClients());
+        assertEquals(1, pool.getIdleClients());
+
+        doReturn(R.failed(R.Status.RpcError, "unavailable")).when(client).checkHealth();
+        pool.checkIdleClients();
+        assertEquals(0, pool.getOpenClients());
+    }
+
+    @Test
+    void registersPoolMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MilvusClientPool pool = new MilvusClientPool(registry);
+
+        assertEquals(0, pool.getOpenClients());
+        assertEquals(0.0, registry.get("milvus.pool.open").gauge().value());
+        assertEquals(0.0, registry.get("milvus.pool.in_use").gauge().value());
+        assertEquals(0L, registry.get("milvus.pool.wait").timer().count());
+    }
+}
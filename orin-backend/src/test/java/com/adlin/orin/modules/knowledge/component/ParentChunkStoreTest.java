@@ -0,0 +1,58 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
+import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentChunkRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ParentChunkStoreTest {
+
+    private final KnowledgeDocumentChunkRepository repository = mock(KnowledgeDocumentChunkRepository.class);
+    private final ParentChunkStore store = new ParentChunkStore(repository, new SimpleMeterRegistry(), 16);
+
+    @Test
+    void loadsMissesInOneBatchAndServesRepeatsFromMemory() {
+        when(repository.findByIdIn(anyList())).thenReturn(List.of(parent("p1", "one"), parent("p2", "two")));
+
+        Map<String, KnowledgeDocumentChunk> first = store.getAll(List.of("p1", "p2", "p_missing"));
+        Map<String, KnowledgeDocumentChunk> second = store.getAll(List.of("p1", "p2"));
+
+        assertEquals(2, first.size());
+        assertFalse(first.containsKey("p_missing"));
+        assertEquals("two", second.get("p2").getContent());
+        verify(repository, times(1)).findByIdIn(anyList());
+    }
+
+    @Test
+    void invalidateForcesReload() {
+        when(repository.findByIdIn(anyList()))
+                .thenReturn(List.of(parent("p1", "old")))
+                .thenReturn(List.of(parent("p1", "new")));
+
+        store.getAll(List.of("p1"));
+        store.invalidate(List.of("p1"));
+
+        assertEquals("new", store.getAll(List.of("p1")).get("p1").getContent());
+        verify(repository, times(2)).findByIdIn(anyList());
+    }
+
+    private static KnowledgeDocumentChunk parent(String id, String content) {
+        return KnowledgeDocumentChunk.builder()
+                .id(id)
+                .documentId("doc-1")
+                .chunkType("parent")
+                .content(content)
+                .build();
+    }
+}
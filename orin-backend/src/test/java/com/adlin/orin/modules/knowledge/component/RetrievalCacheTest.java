@@ -0,0 +1,77 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import com.adlin.orin.modules.knowledge.component.VectorStoreProvider.SearchResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class RetrievalCacheTest {
+
+    @SuppressWarnings("unchecked")
+    private final RetrievalCache cache = new RetrievalCache(mock(ObjectProvider.class), new ObjectMapper(),
+            new SimpleMeterRegistry(), 100, 60);
+
+    @Test
+    void keyIgnoresWhitespaceCaseAndOrdering() {
+        String a = cache.key(List.of("kb-1", "kb-2"), "What is  ORIN?", 5, null, 0.7, 0.0, null, "rrf",
+                List.of("d2", "d1"));
+        String b = cache.key(List.of("kb-2", "kb-1"), " what is orin? ", 5, null, 0.7, 0.0, null, "rrf",
+                List.of("d1", "d2"));
+        String c = cache.key(List.of("kb-1", "kb-2"), "what is orin?", 10, null, 0.7, 0.0, null, "rrf",
+                List.of("d1", "d2"));
+
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+    }
+
+    @Test
+    void invalidatingOneKnowledgeBaseHidesItsEntriesOnly() {
+        String kb1 = cache.key(List.of("kb-1"), "q", 5, null, 0.7, 0.0, null, "rrf", null);
+        String kb2 = cache.key(List.of("kb-2"), "q", 5, null, 0.7, 0.0, null, "rrf", null);
+        cache.put(kb1, List.of(result("one")));
+        cache.put(kb2, List.of(result("two")));
+
+        cache.invalidate("kb-1");
+
+        assertNull(cache.get(cache.key(List.of("kb-1"), "q", 5, null, 0.7, 0.0, null, "rrf", null)));
+        assertEquals("two", cache.get(cache.key(List.of("kb-2"), "q", 5, null, 0.7, 0.0, null, "rrf", null))
+                .get(0).getContent());
+    }
+
+    @Test
+    void invalidatingAnyKnowledgeBaseHidesGlobalSearchEntries() {
+        String global = cache.key(List.of("all"), "q", 5, null, 0.7, 0.0, null, "rrf", null);
+        cache.put(global, List.of(result("before")));
+        assertNotNull(cache.get(cache.key(List.of("all"), "q", 5, null, 0.7, 0.0, null, "rrf", null)));
+
+        cache.invalidate("kb-1");
+
+        assertNull(cache.get(cache.key(List.of("all"), "q", 5, null, 0.7, 0.0, null, "rrf", null)));
+    }
+
+    @Test
+    void resultsStoredBeforeInvalidationAreNeverServed() {
+        // key taken before retrieval, invalidation happens while the retrieval is running
+        String key = cache.key(List.of("kb-1"), "q", 5, null, 0.7, 0.0, null, "rrf", null);
+        cache.invalidate("kb-1");
+        cache.put(key, List.of(result("stale")));
+
+        assertNull(cache.get(cache.key(List.of("kb-1"), "q", 5, null, 0.7, 0.0, null, "rrf", null)));
+    }
+
+    private static SearchResult result(String content) {
+        return SearchResult.builder()
+                .content(content)
+                .score(0.9)
+                .matchType("VECTOR")
+                .metadata(Map.of("chunk_id", content))
+                .build();
+    }
+}
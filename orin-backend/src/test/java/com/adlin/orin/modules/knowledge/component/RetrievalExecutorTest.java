@@ -0,0 +1,90 @@
+package com.adlin.orin.modules.knowledge.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetrievalExecutorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RetrievalExecutor executor = new RetrievalExecutor(registry);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void legsRunConcurrently() {
+        Map<String, Callable<String>> legs = new LinkedHashMap<>();
+        legs.put("keyword", () -> sleepThen(300, "k"));
+        legs.put("vector", () -> sleepThen(300, "v"));
+
+        long start = System.nanoTime();
+        Map<String, String> results = executor.gather(legs, System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(Map.of("keyword", "k", "vector", "v"), results);
+        assertTrue(elapsedMs < 550, "expected max(legs), took " + elapsedMs + "ms");
+    }
+
+    @Test
+    void slowLegIsDroppedAtDeadline() {
+        Map<String, Callable<String>> legs = new LinkedHashMap<>();
+        legs.put("keyword", () -> "k");
+        legs.put("vector", () -> sleepThen(5_000, "v"));
+
+        Map<String, String> results = executor.gather(legs, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200));
+
+        assertEquals(Map.of("keyword", "k"), results);
+        assertEquals(1.0, registry.get("knowledge.retrieval.legs")
+                .tag("leg", "vector").tag("outcome", "timeout").counter().count());
+    }
+
+    @Test
+    void failedLegDoesNotFailTheRequest() {
+        Map<String, Callable<String>> legs = new LinkedHashMap<>();
+        legs.put("kb:1", () -> "one");
+        legs.put("kb:2", () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        Map<String, String> results = executor.gather(legs, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(Map.of("kb:1", "one"), results);
+        assertEquals(1.0, registry.get("knowledge.retrieval.legs")
+                .tag("leg", "kb").tag("outcome", "error").counter().count());
+    }
+
+    @Test
+    void legRunOnCallerThreadIsAlsoBoundByDeadline() {
+        ReflectionTestUtils.setField(executor, "threads", 1);
+        Map<String, Callable<String>> legs = new LinkedHashMap<>();
+        legs.put("keyword", () -> sleepThen(5_000, "k"));
+        // 线程池已满，该分支在调用线程上执行
+        legs.put("vector", () -> sleepThen(5_000, "v"));
+
+        long start = System.nanoTime();
+        Map<String, String> results = executor.gather(legs, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(results.isEmpty());
+        assertTrue(elapsedMs < 1_000, "expected deadline to bound the inline leg, took " + elapsedMs + "ms");
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals(1.0, registry.get("knowledge.retrieval.legs")
+                .tag("leg", "vector").tag("outcome", "timeout").counter().count());
+    }
+
+    private static String sleepThen(long ms, String value) throws InterruptedException {
+        Thread.sleep(ms);
+        return value;
+    }
+}
@@ -1,6 +1,8 @@
 package com.adlin.orin.modules.knowledge.service;
 
 import com.adlin.orin.modules.agent.service.AgentOwnershipResolver;
+import com.adlin.orin.modules.knowledge.component.ParentChunkStore;
+import com.adlin.orin.modules.knowledge.component.RetrievalCache;
 import com.adlin.orin.modules.knowledge.entity.KnowledgeBase;
 import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
 import com.adlin.orin.modules.knowledge.repository.KnowledgeBaseRepository;
@@ -33,6 +35,15 @@ class DocumentManageServiceTest {
     @Mock
     private AgentOwnershipResolver ownershipResolver;
 
+    @Mock
+    private KeywordIndexService keywordIndexService;
+
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Mock
+    private RetrievalCache retrievalCache;
+
     @InjectMocks
     private DocumentManageService documentManageService;
 
@@ -0,0 +1,137 @@
+package com.adlin.orin.modules.knowledge.service;
+
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
+import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentChunkRepository;
+import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentRepository;
+import com.adlin.orin.modules.knowledge.util.Bm25InvertedIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KeywordIndexServiceTest {
+
+    @TempDir
+    Path indexDir;
+
+    private final KnowledgeDocumentChunkRepository chunkRepository = mock(KnowledgeDocumentChunkRepository.class);
+    private final KnowledgeDocumentRepository documentRepository = mock(KnowledgeDocumentRepository.class);
+    private KeywordIndexService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new KeywordIndexService(chunkRepository, documentRepository);
+        ReflectionTestUtils.setField(service, "indexDir", indexDir.toString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void firstBuildRunsInBackgroundAndReplaysChangesMadeMeanwhile() throws Exception {
+        CountDownLatch scanStarted = new CountDownLatch(1);
+        CountDownLatch releaseScan = new CountDownLatch(1);
+        when(documentRepository.findByKnowledgeBaseIdOrderByUploadTimeDesc("kb")).thenAnswer(invocation -> {
+            scanStarted.countDown();
+            assertTrue(releaseScan.await(5, TimeUnit.SECONDS));
+            return List.of(KnowledgeDocument.builder().id("d1").knowledgeBaseId("kb").build());
+        });
+        when(chunkRepository.findByDocumentIdOrderByChunkIndex("d1"))
+                .thenReturn(List.of(chunk("c1", "d1", "alpha original")));
+
+        // 首次入库不在调用线程上构建，构建期间检索回退到数据库
+        service.indexDocument("kb", "d2", List.of(chunk("c2", "d2", "beta added")));
+        assertTrue(scanStarted.await(5, TimeUnit.SECONDS));
+        service.indexDocument("kb", "d1", List.of(chunk("c1", "d1", "gamma edited")));
+        assertFalse(service.isReady("kb"));
+        assertTrue(service.search("kb", "beta", 10, null).isEmpty());
+
+        releaseScan.countDown();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!service.isReady("kb") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(service.isReady("kb"));
+        assertEquals(List.of("c2"), chunkIds(service.search("kb", "beta", 10, null).orElseThrow()));
+        assertEquals(List.of("c1"), chunkIds(service.search("kb", "gamma", 10, null).orElseThrow()));
+        assertTrue(service.search("kb", "alpha", 10, null).orElseThrow().isEmpty());
+    }
+
+    @Test
+    void globalSearchKeepsKnowledgeBaseIdsInMemory() throws Exception {
+        when(documentRepository.findDistinctKnowledgeBaseIds()).thenReturn(List.of("kb-a"));
+        service.indexDocument("kb-a", "d1", List.of(chunk("c1", "d1", "alpha one")));
+        awaitReady(service, "kb-a");
+
+        assertEquals(List.of("c1"), chunkIds(service.search("all", "alpha", 10, null).orElseThrow()));
+
+        service.indexDocument("kb-b", "d2", List.of(chunk("c2", "d2", "alpha two")));
+        awaitReady(service, "kb-b");
+        assertEquals(2, service.search("all", "alpha", 10, null).orElseThrow().size());
+
+        service.dropKnowledgeBase("kb-a");
+        assertEquals(List.of("c2"), chunkIds(service.search("all", "alpha", 10, null).orElseThrow()));
+        verify(documentRepository, times(1)).findDistinctKnowledgeBaseIds();
+    }
+
+    @Test
+    void segmentBehindDatabaseAfterCrashIsRebuilt() throws Exception {
+        service.indexDocument("kb", "d1", List.of(chunk("c1", "d1", "alpha one")));
+        awaitReady(service, "kb");
+        service.flushDirty();
+
+        // 落盘后的变更没来得及写 segment 就崩溃：重启加载时按 MySQL 核对
+        when(chunkRepository.countByKnowledgeBaseId("kb")).thenReturn(1L);
+        KeywordIndexService upToDate = new KeywordIndexService(chunkRepository, documentRepository);
+        ReflectionTestUtils.setField(upToDate, "indexDir", indexDir.toString());
+        assertEquals(List.of("c1"), chunkIds(upToDate.search("kb", "alpha", 10, null).orElseThrow()));
+
+        when(chunkRepository.countByKnowledgeBaseId("kb")).thenReturn(2L);
+        when(documentRepository.findByKnowledgeBaseIdOrderByUploadTimeDesc("kb"))
+                .thenReturn(List.of(KnowledgeDocument.builder().id("d1").knowledgeBaseId("kb").build()));
+        when(chunkRepository.findByDocumentIdOrderByChunkIndex("d1"))
+                .thenReturn(List.of(chunk("c1", "d1", "alpha one"), chunk("c3", "d1", "gamma three")));
+        KeywordIndexService restarted = new KeywordIndexService(chunkRepository, documentRepository);
+        ReflectionTestUtils.setField(restarted, "indexDir", indexDir.toString());
+        try {
+            assertTrue(restarted.search("kb", "gamma", 10, null).isEmpty());
+            awaitReady(restarted, "kb");
+            assertEquals(List.of("c3"), chunkIds(restarted.search("kb", "gamma", 10, null).orElseThrow()));
+        } finally {
+            upToDate.shutdown();
+            restarted.shutdown();
+        }
+    }
+
+    private static void awaitReady(KeywordIndexService service, String kbId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!service.isReady(kbId) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(service.isReady(kbId));
+    }
+
+    private static List<String> chunkIds(List<Bm25InvertedIndex.Hit> hits) {
+        return hits.stream().map(Bm25InvertedIndex.Hit::chunkId).toList();
+    }
+
+    private static KnowledgeDocumentChunk chunk(String id, String documentId, String content) {
+        return KnowledgeDocumentChunk.builder().id(id).documentId(documentId).content(content).build();
+    }
+}
@@ -2,6 +2,9 @@ package com.adlin.orin.modules.knowledge.service;
 
 import com.adlin.orin.common.service.FileStorageService;
 import com.adlin.orin.modules.agent.service.AgentOwnershipResolver;
+import com.adlin.orin.modules.knowledge.component.ParentChunkStore;
+import com.adlin.orin.modules.knowledge.component.RetrievalCache;
+import com.adlin.orin.modules.knowledge.component.RetrievalExecutor;
 import com.adlin.orin.modules.knowledge.component.VectorStoreProvider;
 import com.adlin.orin.modules.knowledge.entity.KnowledgeBase;
 import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
@@ -12,12 +15,15 @@ import com.adlin.orin.modules.knowledge.repository.KnowledgeBaseRepository;
 import com.adlin.orin.modules.multimodal.service.VisualAnalysisService;
 import com.adlin.orin.modules.model.service.ModelConfigService;
 import com.adlin.orin.modules.model.service.SiliconFlowIntegrationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.transaction.PlatformTransactionManager;
 
@@ -69,6 +75,9 @@ class KnowledgeSmokeTest {
     @Mock
     private AgentOwnershipResolver ownershipResolver;
 
+    @Mock
+    private KeywordIndexService keywordIndexService;
+
     // RetrievalService dependencies
     @Mock
     private MilvusVectorService milvusVectorService;
@@ -97,6 +106,10 @@ class KnowledgeSmokeTest {
     void setUp() {
         lenient().when(ownershipResolver.isCurrentUserAdmin()).thenReturn(true);
 
+        // Retrieval cache shared by both services so document changes invalidate cached results
+        RetrievalCache retrievalCache = new RetrievalCache(mock(ObjectProvider.class), new ObjectMapper(),
+                new SimpleMeterRegistry(), 100, 60);
+
         // Build DocumentManageService with mocked dependencies
         documentManageService = new DocumentManageService(
                 documentRepository,
@@ -106,7 +119,10 @@ class KnowledgeSmokeTest {
                 multimodalParserService,
                 knowledgeBaseRepository,
                 fileStorageService,
-                ownershipResolver
+                ownershipResolver,
+                keywordIndexService,
+                new ParentChunkStore(chunkRepository, new SimpleMeterRegistry(), 16),
+                retrievalCache
         );
 
         // Build RetrievalService with mocked dependencies
@@ -116,7 +132,12 @@ class KnowledgeSmokeTest {
                 documentRepository,
                 storageManagementService,
                 visualAnalysisService,
-                rerankService
+                rerankService,
+                keywordIndexService,
+                new ParentChunkStore(chunkRepository, new SimpleMeterRegistry(), 16),
+                new SimpleMeterRegistry(),
+                new RetrievalExecutor(new SimpleMeterRegistry()),
+                retrievalCache
         );
 
         // Build MultimodalContentParserService for parsing tests
@@ -298,10 +319,9 @@ class KnowledgeSmokeTest {
                 .content("知识库功能支持文档上传、解析、向量化存储和检索。")
                 .build();
 
-        when(milvusVectorService.isHealthy()).thenReturn(true);
-        when(milvusVectorService.search(eq(kbId), eq(query), anyInt(), any()))
+        when(milvusVectorService.searchOrThrow(eq(kbId), eq(query), anyInt(), any(), any()))
                 .thenReturn(mockChildResults);
-        when(chunkRepository.findByDocumentIdAndChunkType("doc-1", "parent"))
+        when(chunkRepository.findByIdIn(anyList()))
                 .thenReturn(Arrays.asList(parent1, parent2));
         when(chunkRepository.searchByKeyword(eq(kbId), anyString()))
                 .thenReturn(Collections.emptyList());
@@ -314,7 +334,7 @@ class KnowledgeSmokeTest {
         assertFalse(results.isEmpty());
 
         // Verify: 验证向量检索被调用
-        verify(milvusVectorService, times(1)).search(eq(kbId), eq(query), anyInt(), any());
+        verify(milvusVectorService, times(1)).searchOrThrow(eq(kbId), eq(query), anyInt(), any(), any());
     }
 
     @Test
@@ -331,7 +351,8 @@ class KnowledgeSmokeTest {
                 .content("ORIN 知识库支持多种文档格式")
                 .build();
 
-        when(milvusVectorService.isHealthy()).thenReturn(false);
+        when(milvusVectorService.searchOrThrow(anyString(), anyString(), anyInt(), any(), any()))
+                .thenThrow(new IllegalStateException("Milvus unavailable"));
         when(chunkRepository.searchByKeyword(eq(kbId), anyString()))
                 .thenReturn(Arrays.asList(keywordChunk));
 
@@ -359,7 +380,8 @@ class KnowledgeSmokeTest {
         Path parsedFile = Files.createTempFile("parsed-fallback-", ".txt");
         Files.writeString(parsedFile, "这是一个离线检索测试文档，包含应急预案和恢复流程。");
 
-        when(milvusVectorService.isHealthy()).thenReturn(false);
+        when(milvusVectorService.searchOrThrow(anyString(), anyString(), anyInt(), any(), any()))
+                .thenThrow(new IllegalStateException("Milvus unavailable"));
         when(documentRepository.findByKnowledgeBaseIdOrderByUploadTimeDesc(kbId)).thenReturn(List.of(doc));
         when(storageManagementService.getParsedFilePath(eq(kbId), eq("doc-text-1"), eq("txt"))).thenReturn(parsedFile);
         when(chunkRepository.searchByKeyword(eq(kbId), anyString())).thenReturn(Collections.emptyList());
@@ -414,10 +436,9 @@ class KnowledgeSmokeTest {
                 .content("ORIN AI 助手平台提供多种能力")
                 .build();
 
-        when(milvusVectorService.isHealthy()).thenReturn(true);
-        when(milvusVectorService.search(eq("all"), eq(query), anyInt(), any()))
+        when(milvusVectorService.searchOrThrow(eq("all"), eq(query), anyInt(), any(), any()))
                 .thenReturn(mockResults);
-        when(chunkRepository.findByDocumentIdAndChunkType(eq("d1"), eq("parent")))
+        when(chunkRepository.findByIdIn(anyList()))
                 .thenReturn(Arrays.asList(parentChunk));
         when(chunkRepository.searchAllByKeyword(anyString()))
                 .thenReturn(Collections.emptyList());
@@ -440,8 +461,7 @@ class KnowledgeSmokeTest {
         when(visualAnalysisService.analyzeImage(eq(imageUrl), anyString()))
                 .thenReturn("图片中显示了一台电脑和键盘");
 
-        when(milvusVectorService.isHealthy()).thenReturn(true);
-        when(milvusVectorService.search(eq(kbId), anyString(), anyInt(), any()))
+        when(milvusVectorService.searchOrThrow(eq(kbId), anyString(), anyInt(), any(), any()))
                 .thenReturn(Collections.emptyList());
         when(chunkRepository.searchByKeyword(eq(kbId), anyString()))
                 .thenReturn(Collections.emptyList());
@@ -513,10 +533,9 @@ class KnowledgeSmokeTest {
                 .content("ORIN 是一个 AI 助手平台，提供知识库管理和智能体接入功能。")
                 .build();
 
-        when(milvusVectorService.isHealthy()).thenReturn(true);
-        when(milvusVectorService.search(eq(kbId), eq(query), anyInt(), any()))
+        when(milvusVectorService.searchOrThrow(eq(kbId), eq(query), anyInt(), any(), any()))
                 .thenReturn(mockResults);
-        when(chunkRepository.findByDocumentIdAndChunkType("doc-verification", "parent"))
+        when(chunkRepository.findByIdIn(anyList()))
                 .thenReturn(Arrays.asList(parentChunk));
         when(chunkRepository.searchByKeyword(eq(kbId), anyString()))
                 .thenReturn(Collections.emptyList());
@@ -524,12 +543,12 @@ class KnowledgeSmokeTest {
         List<VectorStoreProvider.SearchResult> results = retrievalService.hybridSearch(kbId, query, 5);
 
         // Verify: 检索成功返回结果（hybridSearch 返回 parent chunk 作为 LLM context）
-        // 注意: score 会被 alpha(0.7) 加权，所以 0.95 * 0.7 = 0.665
+        // 注意: RRF 融合后向量第 1 名、关键词未命中的得分为 alpha(0.7) * 1.0
         assertNotNull(results);
         assertFalse(results.isEmpty());
         // hybridSearch 返回 parent content 作为 context，这是正确行为
         assertEquals("ORIN 是一个 AI 助手平台，提供知识库管理和智能体接入功能。", results.get(0).getContent());
-        assertEquals(0.95 * 0.7, results.get(0).getScore(), 0.001);
+        assertEquals(0.7, results.get(0).getScore(), 0.001);
 
         System.out.println("=== E2.1 检索路径验证通过 ===");
         System.out.println("验证点: hybridSearch() 返回正确的检索结果");
@@ -0,0 +1,213 @@
+package com.adlin.orin.modules.knowledge.service;
+
+import com.adlin.orin.modules.knowledge.component.EmbeddedVectorStoreProvider;
+import com.adlin.orin.modules.knowledge.component.EmbeddingBatcher;
+import com.adlin.orin.modules.knowledge.component.EmbeddingCache;
+import com.adlin.orin.modules.knowledge.component.EmbeddingService;
+import com.adlin.orin.modules.knowledge.component.MilvusClientPool;
+import com.adlin.orin.modules.knowledge.component.VectorStoreProvider;
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocument;
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
+import com.adlin.orin.modules.knowledge.repository.KnowledgeBaseRepository;
+import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentRepository;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.FieldData;
+import io.milvus.grpc.FloatArray;
+import io.milvus.grpc.IDs;
+import io.milvus.grpc.IntArray;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.ScalarField;
+import io.milvus.grpc.SearchResultData;
+import io.milvus.grpc.SearchResults;
+import io.milvus.grpc.StringArray;
+import io.milvus.grpc.VectorField;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.SearchParam;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * tiered 模式：热层回填完成前回源 Milvus，回填后新旧文档都能由热层检索到
+ */
+class MilvusVectorServiceTest {
+
+    private static final float[] OLD_VECTOR = {1f, 0f, 0f, 0f};
+    private static final float[] NEW_VECTOR = {0f, 1f, 0f, 0f};
+
+    @TempDir
+    Path indexDir;
+
+    private final EmbeddingService embeddingService = mock(EmbeddingService.class);
+    private final KnowledgeDocumentRepository documentRepository = mock(KnowledgeDocumentRepository.class);
+    private final MilvusClientPool clientPool = mock(MilvusClientPool.class);
+    private final MilvusServiceClient client = mock(MilvusServiceClient.class);
+    private final List<Runnable> backfills = new ArrayList<>();
+    private EmbeddedVectorStoreProvider embeddedStore;
+    private MilvusVectorService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        when(embeddingService.getModelName()).thenReturn("bge-m3");
+        when(embeddingService.embed(anyString())).thenReturn(List.of(1f, 0f, 0f, 0f));
+        embeddedStore = new EmbeddedVectorStoreProvider(embeddingService, mock(EmbeddingBatcher.class));
+        ReflectionTestUtils.setField(embeddedStore, "indexDir", indexDir.toString());
+        service = new MilvusVectorService(mock(com.adlin.orin.gateway.service.ProviderRegistry.class),
+                embeddingService, documentRepository, mock(KnowledgeBaseRepository.class), embeddedStore,
+                clientPool, mock(EmbeddingBatcher.class), mock(EmbeddingCache.class));
+        ReflectionTestUtils.setField(service, "storeMode", "tiered");
+        service.setHotTierExecutor(backfills::add);
+
+        when(clientPool.execute(anyString(), any())).thenAnswer(invocation ->
+                invocation.<MilvusClientPool.MilvusCall<Object>>getArgument(1).apply(client));
+        when(client.hasPartition(any())).thenReturn(R.success(true));
+        when(client.loadCollection(any())).thenReturn(R.success(new RpcStatus(RpcStatus.SUCCESS_MSG)));
+        when(client.search(any(SearchParam.class))).thenReturn(R.success(searchResults("old-c1", "doc-old", "old content")));
+        when(client.query(any(QueryParam.class))).thenAnswer(invocation -> {
+            QueryParam param = invocation.getArgument(0);
+            return R.success(param.getExpr().contains("doc-old")
+                    ? queryResults("old-c1", "doc-old", "old content", OLD_VECTOR)
+                    : queryResults("new-c1", "doc-new", "new content", NEW_VECTOR));
+        });
+        when(documentRepository.findByKnowledgeBaseIdOrderByUploadTimeDesc("kb-1")).thenReturn(List.of(
+                KnowledgeDocument.builder().id("doc-new").knowledgeBaseId("kb-1").build(),
+                KnowledgeDocument.builder().id("doc-old").knowledgeBaseId("kb-1").build()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        embeddedStore.shutdown();
+    }
+
+    @Test
+    void tieredSearchKeepsOldMilvusDocumentsUntilHotTierIsBackfilled() {
+        // 上线热层后新入库的文档双写进热层，旧文档只在 Milvus 中
+        embeddedStore.addVectors("kb-1", List.of(child("new-c1", "doc-new", "new content")), List.of(NEW_VECTOR));
+
+        List<VectorStoreProvider.SearchResult> beforeBackfill = service.search("kb-1", "old", 5);
+        assertEquals(List.of("old-c1"), chunkIds(beforeBackfill));
+        verify(client, times(1)).search(any(SearchParam.class));
+        assertEquals(1, backfills.size());
+
+        backfills.remove(0).run();
+
+        List<VectorStoreProvider.SearchResult> afterBackfill = service.search("kb-1", "old", 5);
+        assertEquals(List.of("old-c1", "new-c1"), chunkIds(afterBackfill));
+        assertEquals("old content", afterBackfill.get(0).getContent());
+        verify(client, times(1)).search(any(SearchParam.class));
+        assertTrue(backfills.isEmpty());
+    }
+
+    @Test
+    void tieredSearchUsesMilvusForGlobalSearchOtherModelsAndInterruptedBackfills() {
+        embeddedStore.addVectors("kb-1", List.of(child("new-c1", "doc-new", "new content")), List.of(NEW_VECTOR));
+        service.search("kb-1", "old", 5);
+        // 回填期间删除了文档：回填结果作废，热层清空，下次检索重新回填
+        service.deleteDocuments("kb-1", List.of("doc-new"));
+        backfills.remove(0).run();
+        assertFalse(embeddedStore.hasVectors("kb-1"));
+
+        service.search("kb-1", "old", 5);
+        backfills.remove(0).run();
+        service.search("kb-1", "old", 5);
+        verify(client, times(2)).search(any(SearchParam.class));
+
+        service.search("all", "old", 5);
+        service.search("kb-1", "old", 5, "text-embedding-3-large");
+        verify(client, times(4)).search(any(SearchParam.class));
+        verify(documentRepository, times(2)).findByKnowledgeBaseIdOrderByUploadTimeDesc(eq("kb-1"));
+    }
+
+    @Test
+    void searchOrThrowReportsMilvusFailureInsteadOfEmptyResults() {
+        ReflectionTestUtils.setField(service, "storeMode", "milvus");
+        when(client.search(any(SearchParam.class))).thenReturn(R.failed(R.Status.UnexpectedError, "node down"));
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class,
+                () -> service.searchOrThrow("kb-1", "old", 5, null, null));
+        assertTrue(failure.getMessage().contains("node down"));
+        assertTrue(service.search("kb-1", "old", 5).isEmpty());
+    }
+
+    private static List<String> chunkIds(List<VectorStoreProvider.SearchResult> results) {
+        return results.stream().map(r -> String.valueOf(r.getMetadata().get("chunk_id"))).toList();
+    }
+
+    private static KnowledgeDocumentChunk child(String id, String documentId, String content) {
+        return KnowledgeDocumentChunk.builder()
+                .id(id)
+                .documentId(documentId)
+                .chunkType("child")
+                .content(content)
+                .parentId("p-" + documentId)
+                .build();
+    }
+
+    private static QueryResults queryResults(String chunkId, String docId, String content, float[] vector) {
+        List<Float> values = new ArrayList<>();
+        for (float v : vector) {
+            values.add(v);
+        }
+        return QueryResults.newBuilder()
+                .addFieldsData(varchar("chunk_id", chunkId))
+                .addFieldsData(varchar("doc_id", docId))
+                .addFieldsData(varchar("content", content))
+                .addFieldsData(varchar("chunk_type", "child"))
+                .addFieldsData(varchar("parent_id", "p-" + docId))
+                .addFieldsData(varchar("title", ""))
+                .addFieldsData(varchar("source", ""))
+                .addFieldsData(FieldData.newBuilder().setFieldName("position").setType(DataType.Int32)
+                        .setScalars(ScalarField.newBuilder().setIntData(IntArray.newBuilder().addData(0))))
+                .addFieldsData(FieldData.newBuilder().setFieldName("embedding").setType(DataType.FloatVector)
+                        .setVectors(VectorField.newBuilder().setDim(vector.length)
+                                .setFloatVector(FloatArray.newBuilder().addAllData(values))))
+                .addAllOutputFields(List.of("chunk_id", "doc_id", "content", "chunk_type", "parent_id", "title",
+                        "source", "position", "embedding"))
+                .build();
+    }
+
+    private static SearchResults searchResults(String chunkId, String docId, String content) {
+        return SearchResults.newBuilder()
+                .setResults(SearchResultData.newBuilder()
+                        .setNumQueries(1)
+                        .setTopK(1)
+                        .addTopks(1)
+                        .setIds(IDs.newBuilder().setStrId(StringArray.newBuilder().addData(chunkId)))
+                        .addScores(0.9f)
+                        .addFieldsData(varchar("content", content))
+                        .addFieldsData(varchar("doc_id", docId))
+                        .addFieldsData(varchar("chunk_id", chunkId))
+                        .addFieldsData(varchar("chunk_type", "child"))
+                        .addFieldsData(varchar("parent_id", "p-" + docId))
+                        .addFieldsData(varchar("title", ""))
+                        .addFieldsData(varchar("source", ""))
+                        .addFieldsData(FieldData.newBuilder().setFieldName("position").setType(DataType.Int32)
+                                .setScalars(ScalarField.newBuilder().setIntData(IntArray.newBuilder().addData(0)))))
+                .build();
+    }
+
+    private static FieldData varchar(String name, String value) {
+        return FieldData.newBuilder().setFieldName(name).setType(DataType.VarChar)
+                .setScalars(ScalarField.newBuilder().setStringData(StringArray.newBuilder().addData(value)))
+                .build();
+    }
+}
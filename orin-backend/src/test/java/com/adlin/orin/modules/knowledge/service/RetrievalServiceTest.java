@@ -3,13 +3,21 @@ package com.adlin.orin.modules.knowledge.service;
 import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
 import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentChunkRepository;
 import com.adlin.orin.modules.knowledge.repository.KnowledgeDocumentRepository;
+import com.adlin.orin.modules.knowledge.component.ParentChunkStore;
+import com.adlin.orin.modules.knowledge.component.RetrievalCache;
+import com.adlin.orin.modules.knowledge.component.RetrievalExecutor;
 import com.adlin.orin.modules.knowledge.component.VectorStoreProvider;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
 
 import java.util.*;
 
@@ -38,6 +46,22 @@ class RetrievalServiceTest {
     @Mock
     private RerankService rerankService;
 
+    @Mock
+    private KeywordIndexService keywordIndexService;
+
+    @Mock
+    private ParentChunkStore parentChunkStore;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private RetrievalExecutor retrievalExecutor = new RetrievalExecutor(new SimpleMeterRegistry());
+
+    @Spy
+    private RetrievalCache retrievalCache = new RetrievalCache(mock(ObjectProvider.class), new ObjectMapper(),
+        new SimpleMeterRegistry(), 100, 60);
+
     @InjectMocks
     private RetrievalService retrievalService;
 
@@ -96,12 +120,11 @@ class RetrievalServiceTest {
     @Test
     void testHybridSearch_WithVectorResults() {
         // Setup mocks
-        when(vectorService.isHealthy()).thenReturn(true);
-        when(vectorService.search(eq("kb-001"), anyString(), anyInt(), any()))
+        when(vectorService.searchOrThrow(eq("kb-001"), anyString(), anyInt(), any(), any()))
             .thenReturn(mockChildResults);
 
-        when(chunkRepository.findByDocumentIdAndChunkType(eq("doc-1"), eq("parent")))
-            .thenReturn(mockParentChunks);
+        when(parentChunkStore.getAll(anyCollection()))
+            .thenReturn(parentsById());
 
         when(chunkRepository.searchByKeyword(anyString(), anyString()))
             .thenReturn(Collections.emptyList());
@@ -112,14 +135,62 @@ class RetrievalServiceTest {
 
         // Verify
         assertNotNull(results);
-        verify(vectorService, times(1)).search(eq("kb-001"), anyString(), anyInt(), any());
+        verify(vectorService, times(1)).searchOrThrow(eq("kb-001"), anyString(), anyInt(), any(), any());
+    }
+
+    @Test
+    void testHybridSearch_ParentScoreIsBestChildAndResolvedInOneBatch() {
+        Map<String, Object> weakMeta = new HashMap<>();
+        weakMeta.put("parent_id", "parent-1");
+        weakMeta.put("doc_id", "doc-1");
+        List<VectorStoreProvider.SearchResult> children = new ArrayList<>(mockChildResults);
+        children.add(VectorStoreProvider.SearchResult.builder()
+            .content("Weak child of parent 1")
+            .score(0.40)
+            .matchType("VECTOR")
+            .metadata(weakMeta)
+            .build());
+
+        when(vectorService.searchOrThrow(eq("kb-001"), anyString(), anyInt(), any(), any())).thenReturn(children);
+        when(parentChunkStore.getAll(anyCollection())).thenReturn(parentsById());
+
+        List<VectorStoreProvider.SearchResult> results = retrievalService.hybridSearch(
+            "kb-001", "test query", 5, null, 1.0, null);
+
+        assertEquals(2, results.size());
+        assertEquals("parent-1", results.get(0).getMetadata().get("chunk_id"));
+        assertEquals(0.95, results.get(0).getMetadata().get("vector_score"));
+        // RRF with alpha=1: rank 1 -> 1.0, rank 2 -> (k + 1) / (k + 2)
+        assertEquals(1.0, results.get(0).getScore(), 1e-9);
+        assertEquals(61.0 / 62.0, results.get(1).getScore(), 1e-9);
+        verify(parentChunkStore, times(1)).getAll(anyCollection());
+        verify(chunkRepository, never()).findByDocumentIdAndChunkType(anyString(), anyString());
+        assertEquals(1L, meterRegistry.get("knowledge.retrieval.stage").tag("stage", "parents").timer().count());
+        assertEquals(1L, meterRegistry.get("knowledge.retrieval.stage").tag("stage", "total").timer().count());
+    }
+
+    @Test
+    void testHybridSearch_CachedUntilKnowledgeBaseInvalidated() {
+        when(vectorService.searchOrThrow(eq("kb-001"), anyString(), anyInt(), any(), any())).thenReturn(mockChildResults);
+        when(parentChunkStore.getAll(anyCollection())).thenReturn(parentsById());
+
+        List<VectorStoreProvider.SearchResult> first = retrievalService.hybridSearch("kb-001", "Test  Query", 5);
+        first.get(0).setScore(-1.0);
+        List<VectorStoreProvider.SearchResult> second = retrievalService.hybridSearch("kb-001", " test query ", 5);
+
+        verify(vectorService, times(1)).searchOrThrow(eq("kb-001"), anyString(), anyInt(), any(), any());
+        assertEquals(2, second.size());
+        assertTrue(second.get(0).getScore() > 0, "cached results must not share state with callers");
+
+        retrievalCache.invalidate("kb-001");
+        retrievalService.hybridSearch("kb-001", "test query", 5);
+        verify(vectorService, times(2)).searchOrThrow(eq("kb-001"), anyString(), anyInt(), any(), any());
     }
 
     @Test
     void testHybridSearch_EmptyVectorResults_FallsbackToKeyword() {
         // Setup mocks - healthy vector service but returns empty results
-        when(vectorService.isHealthy()).thenReturn(true);
-        when(vectorService.search(anyString(), anyString(), anyInt(), any()))
+        when(vectorService.searchOrThrow(anyString(), anyString(), anyInt(), any(), any()))
             .thenReturn(Collections.emptyList());
 
         // Mock keyword search results
@@ -139,11 +210,14 @@ class RetrievalServiceTest {
         // Verify - should return keyword results
         assertNotNull(results);
         assertTrue(results.stream().anyMatch(r -> "KEYWORD".equals(r.getMatchType())));
+        // 降级复用关键词分支结果，不再重复检索
+        verify(keywordIndexService, times(1)).search(eq("kb-001"), anyString(), anyInt(), any());
     }
 
     @Test
     void testHybridSearch_UnhealthyMilvus_FallsbackToKeyword() {
-        when(vectorService.isHealthy()).thenReturn(false);
+        when(vectorService.searchOrThrow(anyString(), anyString(), anyInt(), any(), any()))
+            .thenThrow(new IllegalStateException("Milvus unavailable"));
 
         KnowledgeDocumentChunk keywordChunk = KnowledgeDocumentChunk.builder()
             .id("keyword-1")
@@ -159,20 +233,42 @@ class RetrievalServiceTest {
 
         assertNotNull(results);
         assertTrue(results.stream().anyMatch(r -> "KEYWORD".equals(r.getMatchType())));
-        verify(vectorService, never()).search(anyString(), anyString(), anyInt(), any());
+
+        // 已标记降级后不再访问向量库
+        retrievalService.hybridSearch("kb-001", "another query", 5);
+        verify(vectorService, times(1)).searchOrThrow(anyString(), anyString(), anyInt(), any(), any());
+        verify(vectorService, never()).isHealthy();
+    }
+
+    @Test
+    void testHybridSearch_DegradedResultsAreNotCached() {
+        when(vectorService.searchOrThrow(eq("kb-001"), anyString(), anyInt(), any(), any()))
+            .thenThrow(new IllegalStateException("Milvus unavailable"))
+            .thenReturn(mockChildResults);
+        when(parentChunkStore.getAll(anyCollection())).thenReturn(parentsById());
+
+        List<VectorStoreProvider.SearchResult> degraded = retrievalService.hybridSearch("kb-001", "test query", 5);
+        assertTrue(degraded.stream().noneMatch(r -> "parent-1".equals(r.getMetadata().get("chunk_id"))));
+
+        // 向量服务恢复后同一查询重新检索，而不是命中降级时的关键词结果
+        when(vectorService.isHealthy()).thenReturn(true);
+        assertTrue(retrievalService.isVectorServiceAvailable());
+        List<VectorStoreProvider.SearchResult> recovered = retrievalService.hybridSearch("kb-001", "test query", 5);
+
+        verify(vectorService, times(2)).searchOrThrow(eq("kb-001"), anyString(), anyInt(), any(), any());
+        assertTrue(recovered.stream().anyMatch(r -> "parent-1".equals(r.getMetadata().get("chunk_id"))));
     }
 
     @Test
     void testHybridSearch_GlobalSearch() {
         // Setup mocks for global search
-        when(vectorService.isHealthy()).thenReturn(true);
-        when(vectorService.search(eq("all"), anyString(), anyInt(), any()))
+        when(vectorService.searchOrThrow(eq("all"), anyString(), anyInt(), any(), any()))
             .thenReturn(mockChildResults);
 
-        // Use lenient for findByDocumentIdAndChunkType since it may or may not be called
+        // Use lenient for the parent store since it may or may not be called
         // depending on whether vector results have matching parent chunks
-        lenient().when(chunkRepository.findByDocumentIdAndChunkType(anyString(), eq("parent")))
-            .thenReturn(mockParentChunks);
+        lenient().when(parentChunkStore.getAll(anyCollection()))
+            .thenReturn(parentsById());
 
         // Execute
         List<VectorStoreProvider.SearchResult> results = retrievalService.hybridSearch(
@@ -180,14 +276,13 @@ class RetrievalServiceTest {
 
         // Verify
         assertNotNull(results);
-        verify(vectorService, times(1)).search(eq("all"), anyString(), anyInt(), any());
+        verify(vectorService, times(1)).searchOrThrow(eq("all"), anyString(), anyInt(), any(), any());
     }
 
     @Test
     void testHybridSearch_DefaultParameters() {
         // Test overloaded method with default parameters
-        when(vectorService.isHealthy()).thenReturn(true);
-        when(vectorService.search(anyString(), anyString(), anyInt(), isNull()))
+        when(vectorService.searchOrThrow(anyString(), anyString(), anyInt(), isNull(), any()))
             .thenReturn(Collections.emptyList());
 
         when(chunkRepository.searchByKeyword(anyString(), anyString()))
@@ -199,7 +294,7 @@ class RetrievalServiceTest {
 
         // Verify - empty vector results should trigger keyword fallback
         assertNotNull(results);
-        verify(vectorService, times(1)).isHealthy();
+        verify(vectorService, never()).isHealthy();
     }
 
     @Test
@@ -208,12 +303,11 @@ class RetrievalServiceTest {
         when(visualAnalysisService.analyzeImage(anyString(), anyString()))
             .thenReturn("A picture showing a cat sitting on a desk");
 
-        when(vectorService.isHealthy()).thenReturn(true);
-        when(vectorService.search(anyString(), anyString(), anyInt(), any()))
+        when(vectorService.searchOrThrow(anyString(), anyString(), anyInt(), any(), any()))
             .thenReturn(mockChildResults);
 
-        when(chunkRepository.findByDocumentIdAndChunkType(anyString(), eq("parent")))
-            .thenReturn(mockParentChunks);
+        when(parentChunkStore.getAll(anyCollection()))
+            .thenReturn(parentsById());
 
         when(chunkRepository.searchByKeyword(anyString(), anyString()))
             .thenReturn(Collections.emptyList());
@@ -260,4 +354,10 @@ class RetrievalServiceTest {
         assertEquals("Image description", results.get("description"));
         assertTrue(((List<?>)results.get("results")).isEmpty());
     }
+
+    private Map<String, KnowledgeDocumentChunk> parentsById() {
+        Map<String, KnowledgeDocumentChunk> parents = new LinkedHashMap<>();
+        mockParentChunks.forEach(p -> parents.put(p.getId(), p));
+        return parents;
+    }
 }
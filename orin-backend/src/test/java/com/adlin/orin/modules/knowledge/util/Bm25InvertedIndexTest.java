@@ -0,0 +1,150 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Bm25InvertedIndex and KeywordTokenizer
+ */
+class Bm25InvertedIndexTest {
+
+    @Test
+    void testTokenize_CjkBigramsAndLatinRuns() {
+        List<String> terms = KeywordTokenizer.tokenize("向量检索 Milvus2.3 的 the");
+
+        assertTrue(terms.contains("向量"));
+        assertTrue(terms.contains("量检"));
+        assertTrue(terms.contains("检索"));
+        assertTrue(terms.contains("向"));
+        assertTrue(terms.contains("milvus2"));
+        assertTrue(terms.contains("3"));
+        assertFalse(terms.contains("的"));
+        assertFalse(terms.contains("the"));
+    }
+
+    @Test
+    void testSearch_RanksByBm25() {
+        Bm25InvertedIndex index = new Bm25InvertedIndex();
+        index.addChunk("c1", "d1", "向量数据库支持向量检索和混合检索");
+        index.addChunk("c2", "d1", "关系数据库使用索引加速查询");
+        index.addChunk("c3", "d2", "今天天气很好");
+
+        List<Bm25InvertedIndex.Hit> hits = index.search("向量检索", 10, null);
+
+        assertFalse(hits.isEmpty());
+        assertEquals("c1", hits.get(0).chunkId());
+        assertTrue(hits.stream().noneMatch(h -> h.chunkId().equals("c3")));
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).score() >= hits.get(i).score());
+        }
+    }
+
+    @Test
+    void testSearch_DocumentFilterAndTopK() {
+        Bm25InvertedIndex index = new Bm25InvertedIndex();
+        for (int i = 0; i < 20; i++) {
+            index.addChunk("c" + i, "d" + (i % 2), "spring boot retrieval chunk " + i);
+        }
+
+        List<Bm25InvertedIndex.Hit> hits = index.search("retrieval", 5, Set.of("d1"));
+
+        assertEquals(5, hits.size());
+        assertTrue(hits.stream().allMatch(h -> h.documentId().equals("d1")));
+    }
+
+    @Test
+    void testRemoveDocumentAndReplaceChunk() {
+        Bm25InvertedIndex index = new Bm25InvertedIndex();
+        index.addChunk("c1", "d1", "alpha beta");
+        index.addChunk("c2", "d2", "alpha gamma");
+
+        index.removeDocument("d1");
+        assertEquals(1, index.size());
+        assertEquals(List.of("c2"), index.search("alpha", 10, null).stream().map(Bm25InvertedIndex.Hit::chunkId).toList());
+
+        // Re-adding an existing chunk id replaces its previous content
+        index.addChunk("c2", "d2", "delta");
+        assertTrue(index.search("alpha", 10, null).isEmpty());
+        assertEquals(1, index.search("delta", 10, null).size());
+
+        index.removeChunk("c2");
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testSegmentRoundTrip() throws Exception {
+        Bm25InvertedIndex index = new Bm25InvertedIndex();
+        index.addChunk("c1", "d1", "知识库关键词检索");
+        index.addChunk("c2", "d1", "obsolete content");
+        index.addChunk("c3", "d2", "keyword index segment");
+        index.removeChunk("c2");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.writeTo(out);
+        }
+        Bm25InvertedIndex restored;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored = Bm25InvertedIndex.readFrom(in);
+        }
+
+        assertEquals(index.size(), restored.size());
+        assertTrue(restored.search("obsolete", 10, null).isEmpty());
+        List<Bm25InvertedIndex.Hit> before = index.search("关键词", 10, null);
+        List<Bm25InvertedIndex.Hit> after = restored.search("关键词", 10, null);
+        assertEquals(before.get(0).chunkId(), after.get(0).chunkId());
+        assertEquals(before.get(0).score(), after.get(0).score(), 1e-9);
+    }
+
+    @Test
+    void testCompactionRenumbersOrdinalsAndKeepsScores() throws Exception {
+        Bm25InvertedIndex index = new Bm25InvertedIndex();
+        // 反复重建同一批分片：旧 ordinal 变成墓碑，压缩后 ordinal 数组随之收缩
+        for (int round = 0; round < 6; round++) {
+            for (int i = 0; i < 500; i++) {
+                index.addChunk("c" + i, "d" + (i % 10), (i % 3 == 0 ? "alpha " : "beta ") + "chunk " + i + " round " + round);
+            }
+        }
+        index.removeDocument("d0");
+
+        Bm25InvertedIndex fresh = new Bm25InvertedIndex();
+        for (int i = 0; i < 500; i++) {
+            if (i % 10 != 0) {
+                fresh.addChunk("c" + i, "d" + (i % 10), (i % 3 == 0 ? "alpha " : "beta ") + "chunk " + i + " round 5");
+            }
+        }
+
+        assertEquals(450, index.size());
+        assertTrue(index.ordinalCount() < 1500, "ordinals not compacted: " + index.ordinalCount());
+        List<Bm25InvertedIndex.Hit> expected = fresh.search("alpha round", 20, null);
+        List<Bm25InvertedIndex.Hit> actual = index.search("alpha round", 20, null);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).score(), actual.get(i).score(), 1e-9);
+        }
+
+        // 压缩后继续增删、落盘再加载，文档频率保持一致
+        index.removeChunk("c3");
+        fresh.removeChunk("c3");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.writeTo(out);
+        }
+        Bm25InvertedIndex restored;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored = Bm25InvertedIndex.readFrom(in);
+        }
+        restored.removeDocument("d1");
+        fresh.removeDocument("d1");
+        assertEquals(fresh.search("alpha", 5, null).get(0).score(),
+                restored.search("alpha", 5, null).get(0).score(), 1e-9);
+    }
+}
@@ -0,0 +1,125 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import com.adlin.orin.modules.knowledge.entity.KnowledgeDocumentChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkDiffTest {
+
+    @Test
+    void classifiesInsertedUpdatedDeletedAndUnchanged() {
+        KnowledgeDocumentChunk keep = stored(chunk("c1", "same"));
+        KnowledgeDocumentChunk edit = stored(chunk("c2", "old text"));
+        KnowledgeDocumentChunk gone = stored(chunk("c3", "removed"));
+
+        ChunkDiff.Delta delta = ChunkDiff.diff(List.of(keep, edit, gone),
+                List.of(chunk("c1", "same"), chunk("c2", "new text"), chunk("c4", "added")));
+
+        assertEquals(1, delta.unchanged());
+        assertEquals(List.of("c4"), delta.inserted().stream().map(KnowledgeDocumentChunk::getId).toList());
+        assertEquals(List.of("c2"), delta.updated().stream().map(KnowledgeDocumentChunk::getId).toList());
+        assertEquals(List.of("c3"), delta.deletedIds());
+        assertEquals(List.of("c3", "c2"), delta.staleIds());
+        assertEquals(2, delta.changed().size());
+        assertFalse(delta.isEmpty());
+    }
+
+    @Test
+    void identicalSplitProducesEmptyDelta() {
+        List<KnowledgeDocumentChunk> existing = List.of(stored(chunk("c1", "a")), stored(chunk("c2", "b")));
+
+        ChunkDiff.Delta delta = ChunkDiff.diff(existing, List.of(chunk("c1", "a"), chunk("c2", "b")));
+
+        assertTrue(delta.isEmpty());
+        assertEquals(2, delta.unchanged());
+    }
+
+    @Test
+    void rowsWithoutHashAreRewritten() {
+        ChunkDiff.Delta delta = ChunkDiff.diff(List.of(chunk("c1", "a")), List.of(chunk("c1", "a")));
+
+        assertEquals(1, delta.updated().size());
+        assertNotNull(delta.updated().get(0).getContentHash());
+    }
+
+    @Test
+    void insertAtStartKeepsLaterChunksAndTheirVectors() {
+        KnowledgeDocumentChunk parent = parent("p_1", "a b", "[c_1, c_2]", 0);
+        List<KnowledgeDocumentChunk> existing = List.of(stored(parent),
+                stored(child("c_1", "a", "p_1", 0)), stored(child("c_2", "b", "p_1", 1)));
+
+        // 开头插入一段：分片器按位置重新编号，原有内容整体后移
+        List<KnowledgeDocumentChunk> incoming = List.of(
+                parent("p_1", "new", "[c_1]", 0),
+                child("c_1", "new", "p_1", 0),
+                parent("p_2", "a b", "[c_2, c_3]", 1),
+                child("c_2", "a", "p_2", 1),
+                child("c_3", "b", "p_2", 2));
+
+        ChunkDiff.Delta delta = ChunkDiff.diff(existing, incoming);
+
+        assertEquals(List.of("p_1", "c_1", "c_2"), incoming.subList(2, 5).stream()
+                .map(KnowledgeDocumentChunk::getId).toList());
+        assertEquals("[c_1, c_2]", incoming.get(2).getChildrenIds());
+        assertEquals("p_1", incoming.get(3).getParentId());
+        assertTrue(delta.updated().isEmpty());
+        assertTrue(delta.deletedIds().isEmpty());
+        assertEquals(2, delta.inserted().size());
+        assertEquals(2, delta.reembedded().size());
+        assertEquals(3, delta.moved().size() + delta.unchanged());
+        assertTrue(delta.staleIds().isEmpty());
+
+        String newParentId = incoming.get(0).getId();
+        assertFalse(List.of("p_1", "c_1", "c_2").contains(newParentId));
+        assertEquals(newParentId, incoming.get(1).getParentId());
+        assertEquals("[" + incoming.get(1).getId() + "]", incoming.get(0).getChildrenIds());
+    }
+
+    @Test
+    void hashCoversMetadataNotJustContent() {
+        KnowledgeDocumentChunk a = chunk("c1", "text");
+        KnowledgeDocumentChunk b = chunk("c1", "text");
+        b.setParentId("p_other");
+
+        assertNotEquals(ChunkDiff.hash(a), ChunkDiff.hash(b));
+        assertEquals(64, ChunkDiff.hash(a).length());
+    }
+
+    private static KnowledgeDocumentChunk stored(KnowledgeDocumentChunk chunk) {
+        chunk.setContentHash(ChunkDiff.hash(chunk));
+        return chunk;
+    }
+
+    private static KnowledgeDocumentChunk parent(String id, String content, String childrenIds, int position) {
+        KnowledgeDocumentChunk chunk = chunk(id, content);
+        chunk.setChunkType("parent");
+        chunk.setParentId(null);
+        chunk.setChildrenIds(childrenIds);
+        chunk.setPosition(position);
+        return chunk;
+    }
+
+    private static KnowledgeDocumentChunk child(String id, String content, String parentId, int position) {
+        KnowledgeDocumentChunk chunk = chunk(id, content);
+        chunk.setParentId(parentId);
+        chunk.setPosition(position);
+        chunk.setChunkIndex(position);
+        return chunk;
+    }
+
+    private static KnowledgeDocumentChunk chunk(String id, String content) {
+        return KnowledgeDocumentChunk.builder()
+                .id(id)
+                .documentId("doc-1")
+                .chunkIndex(0)
+                .content(content)
+                .chunkType("child")
+                .parentId("p_1")
+                .source("manual.pdf")
+                .position(0)
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Recall / latency benchmark: HNSW vs brute-force baseline
+ *
+ * 运行方式：mvn test -Pbenchmark -Dtest=HnswBenchmarkTest
+ * 可调参数：-Dhnsw.bench.n=100000 -Dhnsw.bench.dim=1024 -Dhnsw.bench.ef=96
+ * 数据分布：-Dhnsw.bench.data=clustered（默认，近似真实 embedding 的簇状分布）| random（各向同性高斯，最坏情况）
+ */
+@Tag("benchmark")
+class HnswBenchmarkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void benchmarkRecallAndLatency() throws Exception {
+        int n = Integer.getInteger("hnsw.bench.n", 50_000);
+        int dim = Integer.getInteger("hnsw.bench.dim", 256);
+        int ef = Integer.getInteger("hnsw.bench.ef", 96);
+        int m = Integer.getInteger("hnsw.bench.m", 16);
+        int queries = Integer.getInteger("hnsw.bench.queries", 200);
+        boolean clustered = !"random".equals(System.getProperty("hnsw.bench.data", "clustered"));
+        int k = 10;
+        Random random = new Random(42);
+        float[][] centers = new float[Math.max(1, n / 50)][];
+        for (int c = 0; c < centers.length; c++) {
+            centers[c] = HnswGraphTest.randomVector(random, dim);
+        }
+
+        try (MappedVectorStore store = new MappedVectorStore(tempDir.resolve("bench.bin"), dim, 0)) {
+            HnswGraph graph = new HnswGraph(m, 200);
+            long buildStart = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                graph.insert(store, store.append(sample(random, centers, dim, clustered)));
+            }
+            double buildSeconds = (System.nanoTime() - buildStart) / 1e9;
+
+            long[] hnswNanos = new long[queries];
+            long[] bruteNanos = new long[queries];
+            int found = 0;
+            for (int q = 0; q < queries; q++) {
+                float[] query = MappedVectorStore.normalize(sample(random, centers, dim, clustered));
+
+                long t0 = System.nanoTime();
+                List<HnswGraph.Neighbor> exact = HnswGraph.bruteForce(store, query, k, null);
+                bruteNanos[q] = System.nanoTime() - t0;
+
+                long t1 = System.nanoTime();
+                List<HnswGraph.Neighbor> approx = graph.search(store, query, k, ef, null);
+                hnswNanos[q] = System.nanoTime() - t1;
+
+                Set<Integer> truth = new HashSet<>();
+                exact.forEach(h -> truth.add(h.ordinal()));
+                for (HnswGraph.Neighbor hit : approx) {
+                    if (truth.contains(hit.ordinal())) {
+                        found++;
+                    }
+                }
+            }
+            double recall = found / (double) (queries * k);
+
+            System.out.printf("HNSW benchmark: data=%s n=%d dim=%d M=%d ef=%d build=%.1fs (%.0f vec/s)%n",
+                    clustered ? "clustered" : "random", n, dim, m, ef, buildSeconds, n / buildSeconds);
+            System.out.printf("  recall@%d = %.4f%n", k, recall);
+            System.out.printf("  HNSW        p50=%.3fms p99=%.3fms%n", percentileMs(hnswNanos, 50), percentileMs(hnswNanos, 99));
+            System.out.printf("  brute-force p50=%.3fms p99=%.3fms%n", percentileMs(bruteNanos, 50), percentileMs(bruteNanos, 99));
+
+            if (clustered) {
+                assertTrue(recall >= 0.9, "recall@10 below 0.9: " + recall);
+            }
+        }
+    }
+
+    private static float[] sample(Random random, float[][] centers, int dim, boolean clustered) {
+        float[] noise = HnswGraphTest.randomVector(random, dim);
+        if (!clustered) {
+            return noise;
+        }
+        float[] center = centers[random.nextInt(centers.length)];
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = center[i] + 0.35f * noise[i];
+        }
+        return v;
+    }
+
+    private static double percentileMs(long[] nanos, int percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,126 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for HnswGraph / MappedVectorStore / VectorWal
+ */
+class HnswGraphTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSearch_RecallAgainstBruteForce() throws Exception {
+        int dim = 32;
+        int n = 3000;
+        Random random = new Random(7);
+        try (MappedVectorStore store = new MappedVectorStore(tempDir.resolve("v.bin"), dim, 0)) {
+            HnswGraph graph = new HnswGraph(16, 100);
+            for (int i = 0; i < n; i++) {
+                graph.insert(store, store.append(randomVector(random, dim)));
+            }
+
+            int queries = 50;
+            int k = 10;
+            int found = 0;
+            for (int q = 0; q < queries; q++) {
+                float[] query = MappedVectorStore.normalize(randomVector(random, dim));
+                Set<Integer> exact = ordinals(HnswGraph.bruteForce(store, query, k, null));
+                for (HnswGraph.Neighbor hit : graph.search(store, query, k, 64, null)) {
+                    if (exact.contains(hit.ordinal())) {
+                        found++;
+                    }
+                }
+            }
+            double recall = found / (double) (queries * k);
+            assertTrue(recall >= 0.9, "recall@10 too low: " + recall);
+        }
+    }
+
+    @Test
+    void testSearch_FilterExcludesRejectedNodes() throws Exception {
+        Random random = new Random(11);
+        try (MappedVectorStore store = new MappedVectorStore(tempDir.resolve("v.bin"), 8, 0)) {
+            HnswGraph graph = new HnswGraph(8, 50);
+            for (int i = 0; i < 500; i++) {
+                graph.insert(store, store.append(randomVector(random, 8)));
+            }
+            List<HnswGraph.Neighbor> hits = graph.search(store, randomVector(random, 8), 10, 50, o -> o % 2 == 0);
+            assertEquals(10, hits.size());
+            assertTrue(hits.stream().allMatch(h -> h.ordinal() % 2 == 0));
+            for (int i = 1; i < hits.size(); i++) {
+                assertTrue(hits.get(i - 1).score() >= hits.get(i).score());
+            }
+        }
+    }
+
+    @Test
+    void testGraphAndVectorsSurviveReopen() throws Exception {
+        Random random = new Random(3);
+        Path file = tempDir.resolve("v.bin");
+        float[] query = randomVector(random, 16);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        List<HnswGraph.Neighbor> before;
+        try (MappedVectorStore store = new MappedVectorStore(file, 16, 0)) {
+            HnswGraph graph = new HnswGraph(8, 50);
+            for (int i = 0; i < 200; i++) {
+                graph.insert(store, store.append(randomVector(random, 16)));
+            }
+            before = graph.search(store, query, 5, 50, null);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                graph.writeTo(out);
+            }
+        }
+
+        try (MappedVectorStore store = new MappedVectorStore(file, 16, 200);
+             DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            HnswGraph graph = HnswGraph.readFrom(in, 50);
+            assertEquals(200, graph.size());
+            assertEquals(before, graph.search(store, query, 5, 50, null));
+        }
+    }
+
+    @Test
+    void testWalReplayStopsAtTornTail() throws Exception {
+        Path file = tempDir.resolve("wal.log");
+        try (VectorWal wal = new VectorWal(file)) {
+            wal.append(new byte[]{1, 2, 3});
+            wal.append(new byte[]{4, 5});
+            wal.sync();
+        }
+        // Simulate a crash in the middle of the next frame
+        java.nio.file.Files.write(file, new byte[]{0, 0, 0, 9, 1}, java.nio.file.StandardOpenOption.APPEND);
+
+        List<byte[]> replayed = new java.util.ArrayList<>();
+        assertEquals(2, VectorWal.replay(file, replayed::add));
+        assertArrayEquals(new byte[]{4, 5}, replayed.get(1));
+    }
+
+    private static Set<Integer> ordinals(List<HnswGraph.Neighbor> neighbors) {
+        Set<Integer> out = new HashSet<>();
+        neighbors.forEach(n -> out.add(n.ordinal()));
+        return out;
+    }
+
+    static float[] randomVector(Random random, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+        }
+        return v;
+    }
+}
@@ -0,0 +1,55 @@
+package com.adlin.orin.modules.knowledge.util;
+
+import com.adlin.orin.modules.knowledge.component.VectorStoreProvider.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReciprocalRankFusionTest {
+
+    @Test
+    void documentInBothListsOutranksSingleListLeaders() {
+        List<SearchResult> vector = List.of(result("a", 0.91, "VECTOR"), result("b", 0.90, "VECTOR"));
+        List<SearchResult> keyword = List.of(result("c", 1.0, "KEYWORD"), result("b", 0.8, "KEYWORD"));
+
+        List<SearchResult> fused = ReciprocalRankFusion.fuse(vector, keyword, 0.5, 60);
+
+        assertEquals("b", fused.get(0).getMetadata().get("chunk_id"));
+        assertEquals("HYBRID", fused.get(0).getMatchType());
+        assertEquals(2, fused.get(0).getMetadata().get("vector_rank"));
+        assertEquals(2, fused.get(0).getMetadata().get("keyword_rank"));
+        assertEquals(3, fused.size());
+    }
+
+    @Test
+    void scoresAreNormalizedToUnitRange() {
+        List<SearchResult> fused = ReciprocalRankFusion.fuse(
+                List.of(result("a", 0.3, "VECTOR")), List.of(result("a", 0.2, "KEYWORD")), 0.7, 60);
+
+        assertEquals(1.0, fused.get(0).getScore(), 1e-9);
+    }
+
+    @Test
+    void alphaWeightsTheLists() {
+        List<SearchResult> vector = List.of(result("v", 0.9, "VECTOR"));
+        List<SearchResult> keyword = List.of(result("k", 5.0, "KEYWORD"));
+
+        List<SearchResult> fused = ReciprocalRankFusion.fuse(vector, keyword, 0.7, 60);
+
+        assertEquals("v", fused.get(0).getMetadata().get("chunk_id"));
+        assertEquals(0.7, fused.get(0).getScore(), 1e-9);
+        assertEquals(0.3, fused.get(1).getScore(), 1e-9);
+    }
+
+    private static SearchResult result(String chunkId, double score, String type) {
+        return SearchResult.builder()
+                .content("content " + chunkId)
+                .score(score)
+                .matchType(type)
+                .metadata(Map.of("chunk_id", chunkId))
+                .build();
+    }
+}
@@ -0,0 +1,155 @@
+package com.adlin.orin.modules.monitor.service;
+
+import com.adlin.orin.modules.monitor.entity.LatencyRollup;
+import com.adlin.orin.modules.monitor.repository.LatencyRollupRepository;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LatencyRollupServiceTest {
+
+    @Mock
+    private LatencyRollupRepository rollupRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private LatencyRollupService rollupService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(inv -> new SimpleTransactionStatus());
+        rollupService = new LatencyRollupService(rollupRepository, transactionManager);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushMinute_shouldPersistMergeableHistogramsWithTruePercentiles() {
+        for (int i = 1; i <= 1000; i++) {
+            rollupService.recordRequest(i, "openai", "gpt-4o", null);
+        }
+        rollupService.recordRoute("chat-route", 42);
+
+        assertThat(rollupService.flushMinute()).isEqualTo(4);
+
+        ArgumentCaptor<List<LatencyRollup>> saved = ArgumentCaptor.forClass(List.class);
+        verify(rollupRepository).saveAll(saved.capture());
+        List<LatencyRollup> rows = saved.getValue();
+        assertThat(rows).extracting(LatencyRollup::getDimension)
+                .containsExactlyInAnyOrder("ALL", "PROVIDER", "MODEL", "ROUTE");
+        LatencyRollup all = rows.stream().filter(r -> "ALL".equals(r.getDimension())).findFirst().orElseThrow();
+        assertThat(all.getGranularity()).isEqualTo("MINUTE");
+        assertThat(all.getSampleCount()).isEqualTo(1000L);
+        assertThat(all.getHistogram().length).isLessThan(2048);
+
+        // 两个节点各写一行同一分钟的直方图，查询时合并
+        when(rollupRepository.findSeries(eq("ALL"), eq("*"), any(), any())).thenReturn(List.of(all, all));
+        LatencyRollupService.LatencySummary summary = rollupService.summarize(
+                LatencyRollupService.Dimension.ALL, null, LocalDateTime.now().minusHours(1), LocalDateTime.now());
+
+        assertThat(summary.count()).isEqualTo(2000L);
+        assertThat(summary.mean()).isCloseTo(500.5, within(10.0));
+        assertThat(summary.p50()).isBetween(495L, 506L);
+        assertThat(summary.p95()).isBetween(945L, 960L);
+        assertThat(summary.p99()).isBetween(985L, 1000L);
+        assertThat(summary.max()).isBetween(1000L, 1010L);
+
+        // 区间直方图已被取走，下个周期没有新样本就不再写入
+        assertThat(rollupService.flushMinute()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void compactHours_shouldMergeExpiredMinuteBucketsIntoHourBuckets() {
+        LocalDateTime hour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(72);
+        List<LatencyRollup> minuteRows = minuteRows(hour);
+        when(rollupRepository.findEarliestBucket("MINUTE")).thenReturn(hour.plusMinutes(3));
+        when(rollupRepository.findByGranularityBetween(eq("MINUTE"), any(), any())).thenReturn(List.of());
+        when(rollupRepository.findByGranularityBetween("MINUTE", hour, hour.plusHours(1))).thenReturn(minuteRows);
+        when(rollupRepository.deleteByIds(anyList())).thenReturn(minuteRows.size());
+
+        assertThat(rollupService.compactHours()).isEqualTo(1);
+
+        ArgumentCaptor<List<LatencyRollup>> saved = ArgumentCaptor.forClass(List.class);
+        verify(rollupRepository).saveAll(saved.capture());
+        assertThat(saved.getValue()).singleElement().satisfies(row -> {
+            assertThat(row.getGranularity()).isEqualTo("HOUR");
+            assertThat(row.getBucketStart()).isEqualTo(hour);
+            assertThat(row.getSampleCount()).isEqualTo(20L);
+        });
+        verify(rollupRepository).deleteByGranularityBefore(eq("HOUR"), any());
+    }
+
+    @Test
+    void compactHours_shouldSkipHourAlreadyCompactedByAnotherNode() {
+        LocalDateTime hour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(72);
+        List<LatencyRollup> minuteRows = minuteRows(hour);
+        when(rollupRepository.findEarliestBucket("MINUTE")).thenReturn(hour);
+        when(rollupRepository.findByGranularityBetween(eq("MINUTE"), any(), any())).thenReturn(List.of());
+        when(rollupRepository.findByGranularityBetween("MINUTE", hour, hour.plusHours(1))).thenReturn(minuteRows);
+        when(rollupRepository.deleteByIds(anyList())).thenReturn(0);
+
+        assertThat(rollupService.compactHours()).isZero();
+        verify(rollupRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void summarizeBuckets_shouldGroupRowsIntoFloorBuckets() {
+        LocalDateTime start = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(1);
+        List<LatencyRollup> rows = minuteRows(start);
+        when(rollupRepository.findSeries(eq("ALL"), eq("*"), eq(start), any())).thenReturn(rows);
+        TreeSet<LocalDateTime> bucketStarts = new TreeSet<>(List.of(start, start.plusMinutes(30)));
+
+        var buckets = rollupService.summarizeBuckets(LatencyRollupService.Dimension.ALL, null,
+                bucketStarts, start.plusHours(1));
+
+        assertThat(buckets.get(start).count()).isEqualTo(20L);
+        assertThat(buckets.get(start).p95()).isBetween(200L, 202L);
+        assertThat(buckets.get(start.plusMinutes(30)).count()).isZero();
+    }
+
+    private List<LatencyRollup> minuteRows(LocalDateTime hour) {
+        return List.of(minuteRow(1L, hour.plusMinutes(3)), minuteRow(2L, hour.plusMinutes(17)));
+    }
+
+    private LatencyRollup minuteRow(Long id, LocalDateTime bucketStart) {
+        Histogram histogram = new Histogram(2);
+        histogram.recordValueWithCount(10, 9);
+        histogram.recordValue(200);
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return LatencyRollup.builder()
+                .id(id)
+                .granularity("MINUTE")
+                .bucketStart(bucketStart)
+                .dimension("ALL")
+                .dimensionKey("*")
+                .sampleCount(histogram.getTotalCount())
+                .maxMs(histogram.getMaxValue())
+                .histogram(Arrays.copyOf(buffer.array(), length))
+                .build();
+    }
+}
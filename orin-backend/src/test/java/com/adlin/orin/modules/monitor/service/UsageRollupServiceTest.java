@@ -0,0 +1,171 @@
+package com.adlin.orin.modules.monitor.service;
+
+import com.adlin.orin.modules.agent.repository.AgentMetadataRepository;
+import com.adlin.orin.modules.audit.entity.AuditLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+
+@ExtendWith(MockitoExtension.class)
+class UsageRollupServiceTest {
+
+    @Mock
+    private AgentMetadataRepository agentMetadataRepository;
+
+    private JdbcTemplate jdbcTemplate;
+    private UsageRollupService rollupService;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:usage_rollups;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+                CREATE TABLE usage_rollups (
+                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                    granularity VARCHAR(8) NOT NULL,
+                    bucket_start TIMESTAMP NOT NULL,
+                    dimension VARCHAR(16) NOT NULL,
+                    dimension_key VARCHAR(191) NOT NULL,
+                    request_count BIGINT NOT NULL DEFAULT 0,
+                    error_count BIGINT NOT NULL DEFAULT 0,
+                    prompt_tokens BIGINT NOT NULL DEFAULT 0,
+                    completion_tokens BIGINT NOT NULL DEFAULT 0,
+                    total_tokens BIGINT NOT NULL DEFAULT 0,
+                    cost DOUBLE NOT NULL DEFAULT 0,
+                    updated_at TIMESTAMP NOT NULL,
+                    CONSTRAINT uk_usage_rollup_bucket UNIQUE (granularity, bucket_start, dimension, dimension_key)
+                )
+                """);
+        lenient().when(agentMetadataRepository.existsById(anyString()))
+                .thenAnswer(inv -> "agent-1".equals(inv.getArgument(0)));
+        rollupService = new UsageRollupService(jdbcTemplate, agentMetadataRepository,
+                new DataSourceTransactionManager(dataSource));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP TABLE usage_rollups");
+    }
+
+    @Test
+    void flush_shouldMergeDeltasIntoEveryDimensionAndGranularity() {
+        LocalDateTime at = LocalDateTime.now().minusMinutes(5);
+        rollupService.record(log("alice", "agent-1", "gpt-4o", at, 100, 50, 0.5, true));
+        rollupService.record(log("bob", "openai", "gpt-4o", at, 10, 5, 0.1, false));
+        rollupService.record(log("alice", "ORIN_CORE", null, at, 999, 999, 9.9, true));
+
+        // ALL + 2 USER + 2 PROVIDER + 1 MODEL + 1 AGENT，每个三种粒度
+        assertThat(rollupService.flush()).isEqualTo(21);
+        assertThat(rollupService.flush()).isZero();
+
+        // 第二个周期走 UPDATE x = x + ? 分支，与已有行累加
+        rollupService.record(log("alice", "agent-1", "gpt-4o", at, 1, 1, 0.0, true));
+        assertThat(rollupService.flush()).isEqualTo(15);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM usage_rollups", Integer.class)).isEqualTo(21);
+
+        LocalDateTime from = at.minusHours(1);
+        LocalDateTime to = LocalDateTime.now().plusMinutes(1);
+        UsageRollupService.Totals all = rollupService.sum(UsageRollupService.Dimension.ALL, null, from, to);
+        assertThat(all.requests()).isEqualTo(3);
+        assertThat(all.errors()).isEqualTo(1);
+        assertThat(all.promptTokens()).isEqualTo(111);
+        assertThat(all.completionTokens()).isEqualTo(56);
+        assertThat(all.totalTokens()).isEqualTo(167);
+        assertThat(all.cost()).isCloseTo(0.6, within(1e-9));
+
+        assertThat(rollupService.sum(UsageRollupService.Dimension.AGENT, "agent-1", from, to).requests()).isEqualTo(2);
+        assertThat(rollupService.sum(UsageRollupService.Dimension.AGENT, null, from, to).requests()).isEqualTo(2);
+        assertThat(rollupService.sumByKey(UsageRollupService.Dimension.PROVIDER, from, to))
+                .containsOnlyKeys("agent-1", "openai");
+        assertThat(rollupService.countKeys(UsageRollupService.Dimension.USER, from, to)).isEqualTo(2);
+    }
+
+    @Test
+    void sum_shouldCombineDayHourAndMinuteBucketsWithoutDoubleCounting() {
+        LocalDateTime now = LocalDateTime.now();
+        rollupService.record(log("alice", "openai", "gpt-4o", now.minusDays(3), 10, 0, 0.0, true));
+        rollupService.record(log("alice", "openai", "gpt-4o", now.minusHours(2), 20, 0, 0.0, true));
+        rollupService.record(log("alice", "openai", "gpt-4o", now.minusMinutes(1), 30, 0, 0.0, true));
+        rollupService.flush();
+
+        UsageRollupService.Totals totals = rollupService.sum(UsageRollupService.Dimension.ALL, null,
+                now.minusDays(4), now.plusMinutes(1));
+        assertThat(totals.requests()).isEqualTo(3);
+        assertThat(totals.promptTokens()).isEqualTo(60);
+
+        // 超过分钟桶保留期的过期行被清理后，旧时间段仍可从小时 / 天桶读出
+        assertThat(rollupService.purgeExpired()).isGreaterThan(0);
+        assertThat(rollupService.sum(UsageRollupService.Dimension.ALL, null,
+                now.minusDays(4), now.plusMinutes(1)).requests()).isEqualTo(3);
+    }
+
+    @Test
+    void segments_shouldSplitRangeIntoWholeDaysHoursAndTrailingMinutes() {
+        LocalDateTime now = LocalDateTime.of(2026, 10, 18, 12, 34);
+        // 起点早于分钟桶保留期（48h），向下取整到小时
+        List<Object[]> segments = rollupService.segments(LocalDateTime.of(2026, 10, 15, 10, 20), now, now);
+
+        assertThat(segments).extracting(s -> s[0] + " " + s[1] + " " + s[2]).containsExactly(
+                "DAY 2026-10-16T00:00 2026-10-18T00:00",
+                "HOUR 2026-10-15T10:00 2026-10-16T00:00",
+                "HOUR 2026-10-18T00:00 2026-10-18T12:00",
+                "MINUTE 2026-10-18T12:00 2026-10-18T12:34");
+    }
+
+    @Test
+    void sumBuckets_shouldGroupRowsIntoRequestedBuckets() {
+        LocalDate today = LocalDate.now();
+        LocalDateTime dayStart = today.minusDays(1).atStartOfDay();
+        rollupService.record(log("alice", "openai", "gpt-4o", dayStart.plusHours(3), 10, 0, 0.0, true));
+        rollupService.record(log("bob", "openai", "gpt-4o", dayStart.plusHours(5), 20, 0, 0.0, true));
+        rollupService.flush();
+
+        TreeSet<LocalDateTime> days = new TreeSet<>(List.of(dayStart, dayStart.plusDays(1)));
+        var byDay = rollupService.sumBuckets(UsageRollupService.Dimension.ALL, null, days, dayStart.plusDays(2));
+        assertThat(byDay.get(dayStart).totalTokens()).isEqualTo(30);
+        assertThat(byDay.get(dayStart.plusDays(1)).totalTokens()).isZero();
+
+        TreeSet<LocalDateTime> halfDays = new TreeSet<>(List.of(dayStart, dayStart.plusHours(4)));
+        var byHalf = rollupService.sumBuckets(UsageRollupService.Dimension.ALL, null, halfDays, dayStart.plusDays(1));
+        assertThat(new ArrayList<>(byHalf.values())).extracting(UsageRollupService.Totals::totalTokens)
+                .containsExactly(10L, 20L);
+
+        assertThat(rollupService.countKeysByDay(UsageRollupService.Dimension.USER, today.minusDays(1), today))
+                .containsEntry(today.minusDays(1), 2L)
+                .containsEntry(today, 0L);
+    }
+
+    private AuditLog log(String userId, String providerId, String model, LocalDateTime createdAt,
+                         int prompt, int completion, double cost, boolean success) {
+        return AuditLog.builder()
+                .userId(userId)
+                .providerId(providerId)
+                .model(model)
+                .promptTokens(prompt)
+                .completionTokens(completion)
+                .totalTokens(prompt + completion)
+                .estimatedCost(cost)
+                .success(success)
+                .createdAt(createdAt.truncatedTo(ChronoUnit.SECONDS))
+                .build();
+    }
+}
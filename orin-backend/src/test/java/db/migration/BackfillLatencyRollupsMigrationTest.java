@@ -0,0 +1,130 @@
+package db.migration;
+
+import org.HdrHistogram.Histogram;
+import org.flywaydb.core.api.migration.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BackfillLatencyRollupsMigrationTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:latency_backfill;MODE=MySQL", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE audit_logs (id VARCHAR(36), provider_id VARCHAR(255), model VARCHAR(100), "
+                    + "response_time BIGINT, created_at TIMESTAMP)");
+            statement.execute("CREATE TABLE agent_metadata (agent_id VARCHAR(255))");
+            statement.execute("CREATE TABLE latency_rollups (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "granularity VARCHAR(8), bucket_start DATETIME, dimension VARCHAR(16), "
+                    + "dimension_key VARCHAR(191), sample_count BIGINT, max_ms BIGINT, histogram BLOB)");
+            statement.execute("INSERT INTO agent_metadata VALUES ('agent-1')");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Test
+    void backfillsMinuteAndHourHistogramsFromBusinessLogs() throws Exception {
+        LocalDateTime recent = LocalDateTime.now().minusHours(1).truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime old = LocalDateTime.now().minusDays(10).truncatedTo(ChronoUnit.HOURS);
+        auditLog("agent-1", "gpt-4o", 100, recent.plusSeconds(5));
+        auditLog("agent-1", "gpt-4o", 300, recent.plusSeconds(20));
+        auditLog("openai", "gpt-4o", 50, old.plusMinutes(10));
+        auditLog("ORIN_CORE", "gpt-4o", 9_999, recent.plusSeconds(30));
+        auditLog("openai", null, null, recent);
+
+        migrate();
+
+        Histogram minute = histogram("MINUTE", recent, "ALL", "*");
+        assertEquals(2, minute.getTotalCount());
+        assertEquals(300, minute.getMaxValue(), 3);
+        assertEquals(2, histogram("MINUTE", recent, "AGENT", "agent-1").getTotalCount());
+        assertEquals(2, histogram("MINUTE", recent, "MODEL", "gpt-4o").getTotalCount());
+        assertEquals(1, histogram("HOUR", old, "PROVIDER", "openai").getTotalCount());
+        assertEquals(0, count("SELECT COUNT(*) FROM latency_rollups WHERE dimension = 'AGENT' AND granularity = 'HOUR'"));
+    }
+
+    @Test
+    void skipsPeriodAlreadyCoveredByRecordedRollups() throws Exception {
+        LocalDateTime recorded = LocalDateTime.now().minusHours(2).truncatedTo(ChronoUnit.MINUTES);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO latency_rollups (granularity, bucket_start, dimension, dimension_key, "
+                    + "sample_count, max_ms, histogram) VALUES ('MINUTE', '" + Timestamp.valueOf(recorded)
+                    + "', 'ALL', '*', 1, 1, X'00')");
+        }
+        auditLog("openai", "gpt-4o", 100, recorded.minusMinutes(5));
+        auditLog("openai", "gpt-4o", 100, recorded.plusMinutes(5));
+
+        migrate();
+
+        assertEquals(1, count("SELECT COUNT(*) FROM latency_rollups WHERE dimension = 'ALL' AND bucket_start < '"
+                + Timestamp.valueOf(recorded) + "'"));
+        // 已有汇总桶之后的日志由上线后的实时记录覆盖，不再回填
+        assertEquals(0, count("SELECT COUNT(*) FROM latency_rollups WHERE dimension = 'ALL' AND bucket_start > '"
+                + Timestamp.valueOf(recorded) + "'"));
+    }
+
+    private void migrate() throws Exception {
+        Context context = mock(Context.class);
+        when(context.getConnection()).thenReturn(connection);
+        new V97__Backfill_Latency_Rollups().migrate(context);
+    }
+
+    private void auditLog(String providerId, String model, Integer responseTime, LocalDateTime createdAt)
+            throws Exception {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO audit_logs (id, provider_id, model, response_time, created_at) VALUES (?, ?, ?, ?, ?)")) {
+            insert.setString(1, java.util.UUID.randomUUID().toString());
+            insert.setString(2, providerId);
+            insert.setString(3, model);
+            insert.setObject(4, responseTime);
+            insert.setTimestamp(5, Timestamp.valueOf(createdAt));
+            insert.executeUpdate();
+        }
+    }
+
+    private Histogram histogram(String granularity, LocalDateTime bucketStart, String dimension, String key)
+            throws Exception {
+        try (PreparedStatement query = connection.prepareStatement("SELECT histogram FROM latency_rollups "
+                + "WHERE granularity = ? AND bucket_start = ? AND dimension = ? AND dimension_key = ?")) {
+            query.setString(1, granularity);
+            query.setTimestamp(2, Timestamp.valueOf(bucketStart));
+            query.setString(3, dimension);
+            query.setString(4, key);
+            try (ResultSet rs = query.executeQuery()) {
+                rs.next();
+                return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(rs.getBytes(1)), 0);
+            }
+        }
+    }
+
+    private long count(String sql) throws Exception {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}